@@ -0,0 +1,126 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.numenta.nupic.Parameters;
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.util.MersenneTwister;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Base state of the benchmarks sized like production models: region
+ * widths of 2048 to 65536 columns of 32 cells each, with 1 to 2 percent
+ * of the columns active.
+ * <p>
+ * Run with the GC profiler (see build.gradle) to get the allocation
+ * rate next to the throughput of each benchmark.
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractProductionBenchmark {
+    protected static final int CELLS_PER_COLUMN = 32;
+    
+    @Param({ "2048", "16384", "65536" })
+    public int numColumns;
+    
+    @Param({ "0.01", "0.02" })
+    public double sparsity;
+    
+    protected Random random = new MersenneTwister(42);
+    
+    /**
+     * Returns the number of active columns per step
+     * @return
+     */
+    protected int getNumActiveColumns() {
+        return Math.max(1, (int)Math.round(numColumns * sparsity));
+    }
+    
+    /**
+     * Returns the specified number of distinct random indexes below
+     * the specified limit, in ascending order.
+     * 
+     * @param limit
+     * @param count
+     * @return
+     */
+    protected int[] randomIndexes(int limit, int count) {
+        boolean[] chosen = new boolean[limit];
+        int[] indexes = new int[count];
+        for(int i = 0;i < count;) {
+            int index = random.nextInt(limit);
+            if(!chosen[index]) {
+                chosen[index] = true;
+                indexes[i++] = index;
+            }
+        }
+        Arrays.sort(indexes);
+        return indexes;
+    }
+    
+    /**
+     * Create and return a {@link Parameters} object for a region
+     * of this benchmark's size over an input of the specified width.
+     * 
+     * @param inputWidth
+     * @return
+     */
+    protected Parameters getParameters(int inputWidth) {
+        Parameters parameters = Parameters.getAllDefaultParameters();
+        parameters.setParameterByKey(KEY.INPUT_DIMENSIONS, new int[] { inputWidth });
+        parameters.setParameterByKey(KEY.COLUMN_DIMENSIONS, new int[] { numColumns });
+        parameters.setParameterByKey(KEY.CELLS_PER_COLUMN, CELLS_PER_COLUMN);
+        
+        //SpatialPooler specific
+        parameters.setParameterByKey(KEY.POTENTIAL_RADIUS, inputWidth);
+        parameters.setParameterByKey(KEY.POTENTIAL_PCT, 0.85);
+        parameters.setParameterByKey(KEY.GLOBAL_INHIBITIONS, true);
+        parameters.setParameterByKey(KEY.LOCAL_AREA_DENSITY, -1.0);
+        parameters.setParameterByKey(KEY.NUM_ACTIVE_COLUMNS_PER_INH_AREA, (double)getNumActiveColumns());
+        parameters.setParameterByKey(KEY.STIMULUS_THRESHOLD, 0.0);
+        parameters.setParameterByKey(KEY.SYN_PERM_INACTIVE_DEC, 0.005);
+        parameters.setParameterByKey(KEY.SYN_PERM_ACTIVE_INC, 0.04);
+        parameters.setParameterByKey(KEY.SYN_PERM_CONNECTED, 0.1);
+        parameters.setParameterByKey(KEY.MAX_BOOST, 1.0);
+        parameters.setParameterByKey(KEY.SEED, 42);
+        parameters.setParameterByKey(KEY.SP_VERBOSITY, 0);
+        
+        //Temporal Memory specific
+        parameters.setParameterByKey(KEY.INITIAL_PERMANENCE, 0.21);
+        parameters.setParameterByKey(KEY.CONNECTED_PERMANENCE, 0.5);
+        parameters.setParameterByKey(KEY.MIN_THRESHOLD, 12);
+        parameters.setParameterByKey(KEY.MAX_NEW_SYNAPSE_COUNT, 20);
+        parameters.setParameterByKey(KEY.PERMANENCE_INCREMENT, 0.1);
+        parameters.setParameterByKey(KEY.PERMANENCE_DECREMENT, 0.1);
+        parameters.setParameterByKey(KEY.ACTIVATION_THRESHOLD, 16);
+        
+        parameters.setRandom(new MersenneTwister(42));
+        
+        return parameters;
+    }
+}
@@ -0,0 +1,86 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.numenta.nupic.algorithms.Anomaly;
+import org.numenta.nupic.algorithms.Anomaly.Mode;
+import org.numenta.nupic.algorithms.AnomalyLikelihood;
+import org.numenta.nupic.util.MersenneTwister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link AnomalyLikelihood#anomalyProbability(double, double, DateTime)}
+ * on a stream well past its probationary period, so that the cost of
+ * periodic re-estimation is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AnomalyLikelihoodBenchmark {
+    private static final int NUM_INPUTS = 1024;
+    
+    private AnomalyLikelihood likelihood;
+    private double[] values;
+    private double[] scores;
+    private DateTime[] timestamps;
+    private int index;
+    
+    @Setup
+    public void init() {
+        Map<String, Object> params = new HashMap<>();
+        params.put(Anomaly.KEY_MODE, Mode.LIKELIHOOD);
+        likelihood = (AnomalyLikelihood)Anomaly.create(params);
+        
+        MersenneTwister random = new MersenneTwister(42);
+        values = new double[NUM_INPUTS];
+        scores = new double[NUM_INPUTS];
+        timestamps = new DateTime[NUM_INPUTS];
+        DateTime start = new DateTime(2015, 1, 1, 0, 0);
+        for(int i = 0;i < NUM_INPUTS;i++) {
+            values[i] = random.nextDouble() * 100;
+            scores[i] = random.nextDouble() < 0.9 ? random.nextDouble() * 0.2 : random.nextDouble();
+            timestamps[i] = start.plusMinutes(5 * i);
+        }
+        
+        for(int i = 0;i < NUM_INPUTS * 2;i++) {
+            measureAnomalyProbability();
+        }
+    }
+    
+    @Benchmark
+    public double measureAnomalyProbability() {
+        int i = index = (index + 1) % NUM_INPUTS;
+        return likelihood.anomalyProbability(values[i], scores[i], timestamps[i]);
+    }
+}
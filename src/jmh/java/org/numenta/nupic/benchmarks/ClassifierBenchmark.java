@@ -0,0 +1,80 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.benchmarks;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.numenta.nupic.algorithms.CLAClassifier;
+import org.numenta.nupic.algorithms.ClassifierResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Measures {@link CLAClassifier#compute(int, Map, int[], boolean, boolean)}
+ * learning and inferring 1 and 5 steps ahead from the active cells of a
+ * production sized region, cycling through a sequence of patterns.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClassifierBenchmark extends AbstractProductionBenchmark {
+    private static final int NUM_PATTERNS = 100;
+    private static final int NUM_BUCKETS = 40;
+    
+    private CLAClassifier classifier;
+    private int[][] patterns;
+    private Map<String, Object> classification;
+    private int recordNum;
+    
+    @Setup
+    public void init() {
+        classifier = new CLAClassifier(new TIntArrayList(new int[] { 1, 5 }), 0.001, 0.3, 0);
+        
+        // One active cell in each active column
+        patterns = new int[NUM_PATTERNS][];
+        for(int i = 0;i < NUM_PATTERNS;i++) {
+            patterns[i] = randomIndexes(numColumns * CELLS_PER_COLUMN, getNumActiveColumns());
+        }
+        
+        classification = new HashMap<String, Object>();
+        for(int i = 0;i < NUM_PATTERNS * 10;i++) {
+            measureCompute();
+        }
+    }
+    
+    @Benchmark
+    public ClassifierResult<Double> measureCompute() {
+        int i = recordNum % NUM_PATTERNS;
+        int bucket = i % NUM_BUCKETS;
+        classification.put("bucketIdx", bucket);
+        classification.put("actValue", (double)bucket);
+        return classifier.compute(recordNum++, classification, patterns[i], true, true);
+    }
+}
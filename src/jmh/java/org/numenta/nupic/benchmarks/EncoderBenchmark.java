@@ -0,0 +1,185 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.benchmarks;
+
+import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.numenta.nupic.encoders.CoordinateEncoder;
+import org.numenta.nupic.encoders.DateEncoder;
+import org.numenta.nupic.encoders.MultiEncoder;
+import org.numenta.nupic.encoders.RandomDistributedScalarEncoder;
+import org.numenta.nupic.encoders.ScalarEncoder;
+import org.numenta.nupic.util.MersenneTwister;
+import org.numenta.nupic.util.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the encoding of one value by each of the commonly used
+ * encoders, cycling through a fixed set of inputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EncoderBenchmark {
+    private static final int NUM_INPUTS = 1024;
+    
+    private ScalarEncoder scalarEncoder;
+    private RandomDistributedScalarEncoder rdse;
+    private DateEncoder dateEncoder;
+    private MultiEncoder multiEncoder;
+    private CoordinateEncoder coordinateEncoder;
+    
+    private double[] values;
+    private Date[] dates;
+    private List<Map<String, Object>> records;
+    private Tuple[] coordinates;
+    
+    private int[] scalarOutput;
+    private int[] rdseOutput;
+    private int[] dateOutput;
+    private int[] multiOutput;
+    private int[] coordinateOutput;
+    
+    private int index;
+    
+    @Setup
+    public void init() {
+        scalarEncoder = ScalarEncoder.builder()
+            .n(400)
+            .w(21)
+            .minVal(0)
+            .maxVal(100)
+            .forced(true)
+            .build();
+        
+        rdse = RandomDistributedScalarEncoder.builder()
+            .name("rdse")
+            .resolution(0.25)
+            .w(21)
+            .n(400)
+            .build();
+        
+        dateEncoder = DateEncoder.builder()
+            .season(3)
+            .dayOfWeek(3)
+            .weekend(3)
+            .timeOfDay(21)
+            .forced(true)
+            .build();
+        
+        multiEncoder = MultiEncoder.builder().name("").build();
+        multiEncoder.addEncoder("value", ScalarEncoder.builder()
+            .n(400)
+            .w(21)
+            .minVal(0)
+            .maxVal(100)
+            .forced(true)
+            .build());
+        multiEncoder.addEncoder("timestamp", DateEncoder.builder()
+            .season(3)
+            .dayOfWeek(3)
+            .weekend(3)
+            .timeOfDay(21)
+            .forced(true)
+            .build());
+        
+        coordinateEncoder = CoordinateEncoder.builder()
+            .name("coordinate")
+            .n(1024)
+            .w(21)
+            .build();
+        
+        MersenneTwister random = new MersenneTwister(42);
+        values = new double[NUM_INPUTS];
+        dates = new Date[NUM_INPUTS];
+        records = new ArrayList<Map<String, Object>>(NUM_INPUTS);
+        coordinates = new Tuple[NUM_INPUTS];
+        DateTime start = new DateTime(2015, 1, 1, 0, 0);
+        for(int i = 0;i < NUM_INPUTS;i++) {
+            values[i] = random.nextDouble() * 100;
+            dates[i] = start.plusMinutes(5 * i).toDate();
+            Map<String, Object> record = new HashMap<String, Object>();
+            record.put("value", values[i]);
+            record.put("timestamp", dates[i]);
+            records.add(record);
+            coordinates[i] = new Tuple(new int[] { random.nextInt(1000), random.nextInt(1000) }, 5.0);
+        }
+        
+        scalarOutput = new int[scalarEncoder.getWidth()];
+        rdseOutput = new int[rdse.getWidth()];
+        dateOutput = new int[dateEncoder.getWidth()];
+        multiOutput = new int[multiEncoder.getWidth()];
+        coordinateOutput = new int[coordinateEncoder.getWidth()];
+    }
+    
+    /**
+     * Returns the index of the next input to encode
+     * @return
+     */
+    private int next() {
+        return index = (index + 1) % NUM_INPUTS;
+    }
+    
+    @Benchmark
+    public int[] measureScalarEncoder() {
+        scalarEncoder.encodeIntoArray(values[next()], scalarOutput);
+        return scalarOutput;
+    }
+    
+    @Benchmark
+    public int[] measureRandomDistributedScalarEncoder() {
+        rdse.encodeIntoArray(values[next()], rdseOutput);
+        return rdseOutput;
+    }
+    
+    @Benchmark
+    public int[] measureDateEncoder() {
+        dateEncoder.encodeIntoArray(dates[next()], dateOutput);
+        return dateOutput;
+    }
+    
+    @Benchmark
+    public int[] measureMultiEncoder() {
+        multiEncoder.encodeIntoArray(records.get(next()), multiOutput);
+        return multiOutput;
+    }
+    
+    @Benchmark
+    public int[] measureCoordinateEncoder() {
+        coordinateEncoder.encodeIntoArray(coordinates[next()], coordinateOutput);
+        return coordinateOutput;
+    }
+}
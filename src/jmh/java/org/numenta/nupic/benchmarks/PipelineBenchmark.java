@@ -0,0 +1,133 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.benchmarks;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.numenta.nupic.Connections;
+import org.numenta.nupic.algorithms.CLAClassifier;
+import org.numenta.nupic.algorithms.ClassifierResult;
+import org.numenta.nupic.encoders.DateEncoder;
+import org.numenta.nupic.encoders.MultiEncoder;
+import org.numenta.nupic.encoders.ScalarEncoder;
+import org.numenta.nupic.model.CellSet;
+import org.numenta.nupic.research.ComputeCycle;
+import org.numenta.nupic.research.SpatialPooler;
+import org.numenta.nupic.research.TemporalMemory;
+import org.numenta.nupic.util.ArrayUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Measures one record going through the whole model: encoding of a value 
+ * and its timestamp, spatial pooling, temporal memory and classification.
+ * The input is a noisy daily cycle, so the region has sequences to learn.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PipelineBenchmark extends AbstractProductionBenchmark {
+    private static final int NUM_INPUTS = 288;
+    
+    private MultiEncoder encoder;
+    private ScalarEncoder valueEncoder;
+    private SpatialPooler pooler;
+    private TemporalMemory temporalMemory;
+    private CLAClassifier classifier;
+    private Connections memory;
+    
+    private List<Map<String, Object>> records;
+    private int[] encoding;
+    private int[] activeArray;
+    private Map<String, Object> classification;
+    private int recordNum;
+    
+    @Setup
+    public void init() {
+        valueEncoder = ScalarEncoder.builder()
+            .n(400)
+            .w(21)
+            .minVal(0)
+            .maxVal(100)
+            .forced(true)
+            .build();
+        encoder = MultiEncoder.builder().name("").build();
+        encoder.addEncoder("value", valueEncoder);
+        encoder.addEncoder("timestamp", DateEncoder.builder()
+            .dayOfWeek(21)
+            .timeOfDay(21)
+            .forced(true)
+            .build());
+        
+        memory = new Connections();
+        getParameters(encoder.getWidth()).apply(memory);
+        pooler = new SpatialPooler();
+        pooler.init(memory);
+        temporalMemory = new TemporalMemory();
+        temporalMemory.init(memory);
+        classifier = new CLAClassifier(new TIntArrayList(new int[] { 1 }), 0.001, 0.3, 0);
+        
+        // One day of five minute records
+        records = new ArrayList<Map<String, Object>>(NUM_INPUTS);
+        DateTime start = new DateTime(2015, 1, 1, 0, 0);
+        for(int i = 0;i < NUM_INPUTS;i++) {
+            double value = 50 + 40 * Math.sin(2 * Math.PI * i / NUM_INPUTS) + random.nextDouble() * 2;
+            Map<String, Object> record = new HashMap<String, Object>();
+            record.put("value", value);
+            record.put("timestamp", start.plusMinutes(5 * i).toDate());
+            records.add(record);
+        }
+        encoding = new int[encoder.getWidth()];
+        activeArray = new int[numColumns];
+        classification = new HashMap<String, Object>();
+        
+        for(int i = 0;i < NUM_INPUTS;i++) {
+            measureRecord();
+        }
+    }
+    
+    @Benchmark
+    public ClassifierResult<Double> measureRecord() {
+        Map<String, Object> record = records.get(recordNum % NUM_INPUTS);
+        
+        encoder.encodeIntoArray(record, encoding);
+        pooler.compute(memory, encoding, activeArray, true, false);
+        int[] activeColumns = ArrayUtils.where(activeArray, ArrayUtils.WHERE_1);
+        ComputeCycle cycle = temporalMemory.compute(memory, activeColumns, true);
+        
+        double value = (Double)record.get("value");
+        classification.put("bucketIdx", valueEncoder.getBucketIndices(value)[0]);
+        classification.put("actValue", value);
+        return classifier.compute(recordNum++, classification, ((CellSet)cycle.activeCells()).getIndexes(), true, true);
+    }
+}
@@ -22,7 +22,10 @@
 
 package org.numenta.nupic;
 
+import gnu.trove.list.array.TIntArrayList;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -30,14 +33,22 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 
 import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.model.CellSampler;
 import org.numenta.nupic.model.Column;
 import org.numenta.nupic.model.DistalDendrite;
+import org.numenta.nupic.model.FlatSegmentStore;
 import org.numenta.nupic.model.Pool;
 import org.numenta.nupic.model.ProximalDendrite;
 import org.numenta.nupic.model.Segment;
 import org.numenta.nupic.model.Synapse;
+import org.numenta.nupic.research.ColumnNeighborhoods;
+import org.numenta.nupic.research.ComputeCycle;
+import org.numenta.nupic.research.ComputeScratch;
+import org.numenta.nupic.research.LazyColumns;
 import org.numenta.nupic.research.SpatialPooler;
 import org.numenta.nupic.research.TemporalMemory;
 import org.numenta.nupic.util.MersenneTwister;
@@ -72,6 +83,16 @@ public class Connections {
     private int dutyCyclePeriod = 1000;
     private double maxBoost = 10.0;
     private int spVerbosity = 0;
+    /** Number of threads sharing the spatial pooler's column work */
+    private int spParallelism = 1;
+    /** Lazily created pool executing the sharded spatial pooler work */
+    private ForkJoinPool spPool;
+    /** If true, columns and their potential pools are created on first use */
+    private boolean spLazyInit = false;
+    /** If true, each column is initialized from its own random generator */
+    private boolean spDerivedSeeds = false;
+    /** Tracks the columns created so far when {@link #spLazyInit} is set */
+    private LazyColumns lazyColumns;
     
     private int numInputs = 1;  //product of input dimensions
     private int numColumns = 1; //product of column dimensions
@@ -133,6 +154,10 @@ public class Connections {
      */
     private int inhibitionRadius = 0;
     
+    /** 
+     * Count of the proximal synapses, kept apart from the distal {@link #synapseCounter}
+     * as lazily initialized columns create theirs on the spatial pooler's thread
+     */
     private int proximalSynapseCounter = 0;
     
     private double[] overlapDutyCycles;
@@ -193,6 +218,49 @@ public class Connections {
      * are decremented during learning.
      */
     private double permanenceDecrement = 0.10;
+    /**
+     * If true, distal segments and synapses are kept in a 
+     * {@link FlatSegmentStore} rather than as individual objects.
+     */
+    private boolean flatStorage = false;
+    /**
+     * The maximum number of distal segments per cell. When a cell at
+     * the limit needs a new segment, its least recently used one is destroyed.
+     */
+    private int maxSegmentsPerCell = Integer.MAX_VALUE;
+    /**
+     * The maximum number of synapses per distal segment. When a segment
+     * at the limit grows new synapses, its weakest ones are destroyed.
+     */
+    private int maxSynapsesPerSegment = Integer.MAX_VALUE;
+    /**
+     * If true, distal synapses whose permanence is decremented to 0 are
+     * destroyed, as are segments left without synapses.
+     */
+    private boolean pruneSynapses = false;
+    
+    /** Primitive array storage of the distal topology, when {@link #flatStorage} is set */
+    private FlatSegmentStore segmentStore;
+    /** Reusable working memory for the flat compute path */
+    private ComputeScratch computeScratch;
+    /** The index based state of the last flat compute cycle */
+    private ComputeCycle lastCycle;
+    /** Working memory of picking cells to learn on, created on first use */
+    private CellSampler cellSampler;
+    /** Idle working memories of threads advancing multiple input streams */
+    private final ConcurrentLinkedQueue<ComputeScratch> streamScratches = new ConcurrentLinkedQueue<>();
+    
+    /** Column neighborhoods used by local inhibition, rebuilt when the inhibition radius changes */
+    private ColumnNeighborhoods inhibitionNeighborhoods;
+    /** Wrapped column neighborhoods used by the local duty cycle update */
+    private ColumnNeighborhoods dutyCycleNeighborhoods;
+    
+    /** Number of active synapses per segment, indexed by segment index */
+    private int[] numActivePotential = new int[0];
+    /** Number of active connected synapses per segment, indexed by segment index */
+    private int[] numActiveConnected = new int[0];
+    /** Segments with at least one active synapse, in order of first activation */
+    private List<DistalDendrite> matchingSegments = new ArrayList<DistalDendrite>();
     
     /** The main data structure containing columns, cells, and synapses */
     private SparseObjectMatrix<Column> memory;
@@ -210,6 +278,15 @@ public class Connections {
     protected int segmentCounter = 0;
     /** Helps index each new Synapse */
     protected int synapseCounter = 0;
+    /** Indexes of destroyed segments, reused (last in first out) before the segment counter advances */
+    protected TIntArrayList freeSegmentIndexes = new TIntArrayList();
+    /** Incremented by the {@link TemporalMemory} once per compute cycle, stamps segment use */
+    protected int tmIteration = 0;
+    /** Churn of the distal topology: segments and synapses created and destroyed by the {@link TemporalMemory} */
+    protected int numSegmentsCreated = 0;
+    protected int numSegmentsDestroyed = 0;
+    protected int numSynapsesCreated = 0;
+    protected int numSynapsesDestroyed = 0;
     /** The default random number seed */
     protected int seed = 42;
     /** The random number generator */
@@ -241,6 +318,10 @@ public class Connections {
         activeSegments.clear();
         learningSegments.clear();
         activeSynapsesForSegment.clear();
+        if(lastCycle != null) {
+            lastCycle.clear();
+        }
+        clearSegmentActivity();
     }
     
     /**
@@ -259,6 +340,97 @@ public class Connections {
     	this.segmentCounter = counter;
     }
     
+    /**
+     * Returns the indexes of destroyed distal segments which will be 
+     * reused by {@link #createSegment(Cell)}, the last one first.
+     * @return
+     */
+    public TIntArrayList getFreeSegmentIndexes() {
+        return freeSegmentIndexes;
+    }
+    
+    /**
+     * Returns the temporal memory iteration, used to stamp segment use
+     * @return
+     */
+    public int getTmIteration() {
+        return tmIteration;
+    }
+    
+    /**
+     * Sets the temporal memory iteration
+     * @param iteration
+     */
+    public void setTmIteration(int iteration) {
+        this.tmIteration = iteration;
+    }
+    
+    /**
+     * Returns the number of distal segments created by the temporal memory
+     * @return
+     */
+    public int getNumSegmentsCreated() {
+        return numSegmentsCreated;
+    }
+    
+    /**
+     * Sets the number of distal segments created by the temporal memory
+     * @param n
+     */
+    public void setNumSegmentsCreated(int n) {
+        this.numSegmentsCreated = n;
+    }
+    
+    /**
+     * Returns the number of distal segments destroyed by the temporal memory, 
+     * either to make room for new ones or because their last synapse was pruned.
+     * @return
+     */
+    public int getNumSegmentsDestroyed() {
+        return numSegmentsDestroyed;
+    }
+    
+    /**
+     * Sets the number of distal segments destroyed by the temporal memory
+     * @param n
+     */
+    public void setNumSegmentsDestroyed(int n) {
+        this.numSegmentsDestroyed = n;
+    }
+    
+    /**
+     * Returns the number of distal synapses created by the temporal memory
+     * @return
+     */
+    public int getNumSynapsesCreated() {
+        return numSynapsesCreated;
+    }
+    
+    /**
+     * Sets the number of distal synapses created by the temporal memory
+     * @param n
+     */
+    public void setNumSynapsesCreated(int n) {
+        this.numSynapsesCreated = n;
+    }
+    
+    /**
+     * Returns the number of distal synapses destroyed by the temporal memory, 
+     * including those of destroyed segments.
+     * @return
+     */
+    public int getNumSynapsesDestroyed() {
+        return numSynapsesDestroyed;
+    }
+    
+    /**
+     * Sets the number of distal synapses destroyed by the temporal memory
+     * @param n
+     */
+    public void setNumSynapsesDestroyed(int n) {
+        this.numSynapsesDestroyed = n;
+    }
+    
     /**
      * Returns the cycle count.
      * @return
@@ -551,12 +723,15 @@ public class Connections {
     }
     
     /**
-     * Sets the indexed count of synapses connected at the columns in each index.
+     * Re-derives the count of synapses connected at the columns in each index
+     * of the specified array. The counts are maintained by the connected matrix 
+     * from its bits, so they can't be forced to other values than the bits 
+     * imply and the specified values are ignored.
      * @param counts
      */
     public void setConnectedCounts(int[] counts) {
         for(int i = 0;i < counts.length;i++) {
-        	connectedCounts.setTrueCount(i, counts[i]);
+        	connectedCounts.recountRow(i);
         }
     }
     
@@ -899,6 +1074,105 @@ public class Connections {
     public int getSpVerbosity() {
         return spVerbosity;
     }
+    
+    /**
+     * Sets the number of threads across which the {@link SpatialPooler} 
+     * shards its per column work. 1 computes serially.
+     * 
+     * @param spParallelism
+     */
+    public void setSpParallelism(int spParallelism) {
+        if(spParallelism < 1) {
+            throw new IllegalArgumentException("spParallelism must be at least 1: " + spParallelism);
+        }
+        if(spParallelism != this.spParallelism && spPool != null) {
+            spPool.shutdown();
+            spPool = null;
+        }
+        this.spParallelism = spParallelism;
+    }
+    
+    /**
+     * Returns the number of threads sharing the spatial pooler's column work
+     * @return
+     * @see {@link #setSpParallelism(int)}
+     */
+    public int getSpParallelism() {
+        return spParallelism;
+    }
+    
+    /**
+     * If true, the {@link SpatialPooler} creates each {@link Column} and its 
+     * potential pool on first use rather than at initialization, so that
+     * a large region can start immediately and only pays for the columns
+     * its input reaches. See {@link LazyColumns}.
+     * 
+     * @param spLazyInit
+     */
+    public void setSpLazyInit(boolean spLazyInit) {
+        this.spLazyInit = spLazyInit;
+    }
+    
+    /**
+     * Returns the configured lazy initialization flag
+     * @return
+     * @see {@link #setSpLazyInit(boolean)}
+     */
+    public boolean getSpLazyInit() {
+        return spLazyInit;
+    }
+    
+    /**
+     * If true, the {@link SpatialPooler} initializes each column from a random
+     * generator derived from the seed and the column index (see 
+     * {@link SpatialPooler#columnRandom(Connections, int)}) instead of the 
+     * shared one. Initialization then runs on {@link #getSpParallelism()} 
+     * threads and gives the same result for any number of them.
+     * 
+     * @param spDerivedSeeds
+     */
+    public void setSpDerivedSeeds(boolean spDerivedSeeds) {
+        this.spDerivedSeeds = spDerivedSeeds;
+    }
+    
+    /**
+     * Returns the configured derived seeds flag
+     * @return
+     * @see {@link #setSpDerivedSeeds(boolean)}
+     */
+    public boolean getSpDerivedSeeds() {
+        return spDerivedSeeds;
+    }
+    
+    /**
+     * Returns the record of the columns created so far by a lazily
+     * initialized {@link SpatialPooler}, or null if all columns exist.
+     * @return
+     */
+    public LazyColumns getLazyColumns() {
+        return lazyColumns;
+    }
+    
+    /**
+     * Sets the record of the columns created so far by a lazily 
+     * initialized {@link SpatialPooler}
+     * @param lazyColumns
+     */
+    public void setLazyColumns(LazyColumns lazyColumns) {
+        this.lazyColumns = lazyColumns;
+    }
+    
+    /**
+     * Returns the {@link ForkJoinPool} executing the spatial pooler's
+     * sharded column work, creating it on first use.
+     * @return
+     */
+    public ForkJoinPool getSpPool() {
+        if(spPool == null) {
+            spPool = new ForkJoinPool(spParallelism);
+        }
+        return spPool;
+    }
 
     /**
      * Sets the synPermTrimThreshold
@@ -1042,6 +1316,14 @@ public class Connections {
 	public int getProxSynCount() {
 		return proximalSynapseCounter;
 	}
+	
+	/**
+	 * Sets the current count of {@link Synapse}s for {@link ProximalDendrite}s.
+	 * @param count
+	 */
+	public void setProxSynCount(int count) {
+		this.proximalSynapseCounter = count;
+	}
 
 	/**
      * High verbose output useful for debugging
@@ -1255,6 +1537,47 @@ public class Connections {
         return retVal;
     }
     
+    /**
+     * Creates a new {@link DistalDendrite} on the specified {@link Cell}, indexed 
+     * by the most recently freed segment index or else by the segment counter.
+     * 
+     * @param cell      the {@link Cell} to add the segment to
+     * @return          the new segment
+     */
+    public DistalDendrite createSegment(Cell cell) {
+        if(freeSegmentIndexes.isEmpty()) {
+            return cell.createSegment(this, segmentCounter++);
+        }
+        return cell.createSegment(this, freeSegmentIndexes.removeAt(freeSegmentIndexes.size() - 1));
+    }
+    
+    /**
+     * Removes the specified {@link DistalDendrite} and all of its {@link Synapse}s,
+     * and frees its index for reuse.
+     * 
+     * @param segment   the segment to destroy
+     */
+    public void destroySegment(DistalDendrite segment) {
+        List<Synapse> segmentSynapses = getSynapses(segment);
+        for(Synapse synapse : segmentSynapses) {
+            getReceptorSynapses(synapse.getSourceCell()).remove(synapse);
+        }
+        synapses.remove(segment);
+        getSegments(segment.getParentCell()).remove(segment);
+        freeSegmentIndexes.add(segment.getIndex());
+    }
+    
+    /**
+     * Removes the specified {@link Synapse} from its {@link DistalDendrite}
+     * and from the receptors of its source {@link Cell}.
+     * 
+     * @param synapse   the synapse to destroy
+     */
+    public void destroySynapse(Synapse synapse) {
+        getSynapses((DistalDendrite)synapse.getSegment()).remove(synapse);
+        getReceptorSynapses(synapse.getSourceCell()).remove(synapse);
+    }
+    
     /**
      * Returns the mapping of {@link ProximalDendrite}s to their {@link Synapse}s.
      * 
@@ -1284,7 +1607,11 @@ public class Connections {
      * @return
      */
     public Column getColumn(int index) {
-        return memory.getObject(index);
+        Column column = memory.getObject(index);
+        if(column == null && spLazyInit) {
+            memory.set(index, column = new Column(cellsPerColumn, index));
+        }
+        return column;
     }
     
     /**
@@ -1501,6 +1828,253 @@ public class Connections {
         return this.permanenceDecrement;
     }
     
+    /**
+     * If true, the {@link TemporalMemory} keeps its distal segments and 
+     * synapses in a {@link FlatSegmentStore} rather than as individual objects.
+     * 
+     * @param flatStorage
+     */
+    public void setFlatStorage(boolean flatStorage) {
+        this.flatStorage = flatStorage;
+    }
+    
+    /**
+     * Returns the configured flat storage flag
+     * @return  the configured flat storage flag
+     * @see {@link #setFlatStorage(boolean)}
+     */
+    public boolean getFlatStorage() {
+        return flatStorage;
+    }
+    
+    /**
+     * Sets the maximum number of distal segments per cell. When a cell at
+     * the limit needs a new segment, its least recently used one is destroyed.
+     * 
+     * @param maxSegmentsPerCell
+     */
+    public void setMaxSegmentsPerCell(int maxSegmentsPerCell) {
+        this.maxSegmentsPerCell = maxSegmentsPerCell;
+    }
+    
+    /**
+     * Returns the maximum number of distal segments per cell
+     * @return
+     */
+    public int getMaxSegmentsPerCell() {
+        return maxSegmentsPerCell;
+    }
+    
+    /**
+     * Sets the maximum number of synapses per distal segment. When a segment
+     * at the limit grows new synapses, its weakest ones are destroyed.
+     * 
+     * @param maxSynapsesPerSegment
+     */
+    public void setMaxSynapsesPerSegment(int maxSynapsesPerSegment) {
+        this.maxSynapsesPerSegment = maxSynapsesPerSegment;
+    }
+    
+    /**
+     * Returns the maximum number of synapses per distal segment
+     * @return
+     */
+    public int getMaxSynapsesPerSegment() {
+        return maxSynapsesPerSegment;
+    }
+    
+    /**
+     * If true, distal synapses whose permanence is decremented to 0 
+     * are destroyed, as are segments left without synapses.
+     * 
+     * @param pruneSynapses
+     */
+    public void setPruneSynapses(boolean pruneSynapses) {
+        this.pruneSynapses = pruneSynapses;
+    }
+    
+    /**
+     * Returns the configured synapse pruning flag
+     * @return
+     * @see {@link #setPruneSynapses(boolean)}
+     */
+    public boolean getPruneSynapses() {
+        return pruneSynapses;
+    }
+    
+    /**
+     * Returns the {@link FlatSegmentStore} holding the distal topology, 
+     * or null if the object representation is in use.
+     * @return
+     */
+    public FlatSegmentStore getSegmentStore() {
+        return segmentStore;
+    }
+    
+    /**
+     * Sets the {@link FlatSegmentStore} holding the distal topology
+     * @param store
+     */
+    public void setSegmentStore(FlatSegmentStore store) {
+        this.segmentStore = store;
+    }
+    
+    /**
+     * Returns the reusable working memory of the flat compute path
+     * @return
+     */
+    public ComputeScratch getComputeScratch() {
+        return computeScratch;
+    }
+    
+    /**
+     * Sets the reusable working memory of the flat compute path
+     * @param scratch
+     */
+    public void setComputeScratch(ComputeScratch scratch) {
+        this.computeScratch = scratch;
+    }
+    
+    /**
+     * Returns the reusable working memory of picking cells to learn on
+     * with object storage, creating it on first use.
+     * @return
+     */
+    public CellSampler getCellSampler() {
+        if(cellSampler == null) {
+            cellSampler = new CellSampler();
+        }
+        return cellSampler;
+    }
+    
+    /**
+     * Returns the index based state of the last flat compute cycle
+     * @return
+     */
+    public ComputeCycle getLastCycle() {
+        return lastCycle;
+    }
+    
+    /**
+     * Sets the index based state of the last flat compute cycle
+     * @param cycle
+     */
+    public void setLastCycle(ComputeCycle cycle) {
+        this.lastCycle = cycle;
+    }
+    
+    /**
+     * Returns an idle {@link ComputeScratch} for a thread advancing input 
+     * streams, creating one if none is available. It must be handed back 
+     * with {@link #releaseStreamScratch(ComputeScratch)} when done.
+     * @return
+     */
+    public ComputeScratch acquireStreamScratch() {
+        ComputeScratch scratch = streamScratches.poll();
+        return scratch == null ? new ComputeScratch(cells.length, cells.length / cellsPerColumn) : scratch;
+    }
+    
+    /**
+     * Returns a {@link ComputeScratch} obtained from {@link #acquireStreamScratch()}
+     * to the idle working memories.
+     * @param scratch
+     */
+    public void releaseStreamScratch(ComputeScratch scratch) {
+        streamScratches.offer(scratch);
+    }
+    
+    /**
+     * Returns the cached column neighborhoods used by local inhibition
+     * @return
+     */
+    public ColumnNeighborhoods getInhibitionNeighborhoods() {
+        return inhibitionNeighborhoods;
+    }
+    
+    /**
+     * Sets the cached column neighborhoods used by local inhibition
+     * @param neighborhoods
+     */
+    public void setInhibitionNeighborhoods(ColumnNeighborhoods neighborhoods) {
+        this.inhibitionNeighborhoods = neighborhoods;
+    }
+    
+    /**
+     * Returns the cached (wrapped) column neighborhoods used by
+     * the local duty cycle update
+     * @return
+     */
+    public ColumnNeighborhoods getDutyCycleNeighborhoods() {
+        return dutyCycleNeighborhoods;
+    }
+    
+    /**
+     * Sets the cached (wrapped) column neighborhoods used by
+     * the local duty cycle update
+     * @param neighborhoods
+     */
+    public void setDutyCycleNeighborhoods(ColumnNeighborhoods neighborhoods) {
+        this.dutyCycleNeighborhoods = neighborhoods;
+    }
+    
+    /**
+     * Returns the number of synapses on each segment whose presynaptic cell 
+     * was active during the last compute cycle, indexed by segment index. 
+     * Only segments in {@link #getMatchingSegments()} have non-zero counts.
+     * 
+     * @return
+     */
+    public int[] getNumActivePotential() {
+        return numActivePotential;
+    }
+    
+    /**
+     * Returns the number of connected synapses on each segment whose presynaptic 
+     * cell was active during the last compute cycle, indexed by segment index. 
+     * Only segments in {@link #getMatchingSegments()} have non-zero counts.
+     * 
+     * @return
+     */
+    public int[] getNumActiveConnected() {
+        return numActiveConnected;
+    }
+    
+    /**
+     * Returns the segments having at least one synapse whose presynaptic 
+     * cell was active during the last compute cycle, in order of first activation.
+     * @return
+     */
+    public List<DistalDendrite> getMatchingSegments() {
+        return matchingSegments;
+    }
+    
+    /**
+     * Ensures the per segment activity counters can be indexed by 
+     * segment indexes below the specified capacity.
+     * 
+     * @param capacity
+     */
+    public void ensureSegmentActivityCapacity(int capacity) {
+        if(numActivePotential.length < capacity) {
+            int newCapacity = Math.max(capacity, numActivePotential.length * 2);
+            numActivePotential = Arrays.copyOf(numActivePotential, newCapacity);
+            numActiveConnected = Arrays.copyOf(numActiveConnected, newCapacity);
+        }
+    }
+    
+    /**
+     * Zeroes the activity counters of all matching segments 
+     * and clears the list of matching segments.
+     */
+    public void clearSegmentActivity() {
+        for(int i = 0;i < matchingSegments.size();i++) {
+            int index = matchingSegments.get(i).getIndex();
+            numActivePotential[index] = 0;
+            numActiveConnected[index] = 0;
+        }
+        matchingSegments.clear();
+    }
+    
     /**
      * Converts a {@link Collection} of {@link Cell}s to a list
      * of cell indexes.
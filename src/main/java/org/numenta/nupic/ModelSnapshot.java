@@ -0,0 +1,362 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.research.SpatialPooler;
+import org.numenta.nupic.research.TemporalMemory;
+import org.numenta.nupic.util.BeanUtil;
+import org.numenta.nupic.util.MersenneTwister;
+import org.numenta.nupic.util.SnapshotReader;
+import org.numenta.nupic.util.SnapshotWriter;
+import org.numenta.nupic.util.Snapshottable;
+
+/**
+ * A versioned binary snapshot of a complete model: the parameters and learned
+ * state of a {@link Connections} object shared by a {@link SpatialPooler} and/or
+ * a {@link TemporalMemory}, plus any number of named {@link Snapshottable} 
+ * sections such as encoders and classifiers.
+ * <p>
+ * The file starts with a magic number, the format version and a table of
+ * (name, offset, length) entries, followed by the sections themselves. Loading 
+ * maps the file read only and hands each section to its reader as a slice of the 
+ * mapping, so primitive arrays are copied straight out of the page cache without
+ * any intermediate object stream.
+ * <pre>
+ *  new ModelSnapshot(connections)
+ *      .add("encoder", encoder)
+ *      .add("classifier", classifier)
+ *      .write(file);
+ *  
+ *  ModelSnapshot snapshot = ModelSnapshot.load(file);
+ *  Connections c = snapshot.getConnections();
+ *  snapshot.restore("encoder", newEncoder);
+ *  snapshot.restore("classifier", newClassifier);
+ * </pre>
+ */
+public class ModelSnapshot {
+    /** The bytes "HTMS" read as a little endian int */
+    public static final int MAGIC = 0x534D5448;
+    /** Version of the format written by this class */
+    public static final int VERSION = 3;
+    
+    /** Name of the section holding the {@link Connections} */
+    public static final String CONNECTIONS = "connections";
+    
+    private static final int INTEGER = 0;
+    private static final int DOUBLE = 1;
+    private static final int BOOLEAN = 2;
+    private static final int INT_ARRAY = 3;
+    
+    private Connections connections;
+    /** Sections to write, in order */
+    private final Map<String, Snapshottable> members = new LinkedHashMap<String, Snapshottable>();
+    /** Sections read, as slices of the mapped file */
+    private final Map<String, ByteBuffer> sections = new LinkedHashMap<String, ByteBuffer>();
+    
+    
+    /**
+     * Constructs a new {@code ModelSnapshot} of the specified {@link Connections}
+     * 
+     * @param c     the connection memory, which may have been initialized by a
+     *              {@link SpatialPooler}, a {@link TemporalMemory} or both
+     */
+    public ModelSnapshot(Connections c) {
+        if(c == null) {
+            throw new IllegalArgumentException("Connections can not be null");
+        }
+        this.connections = c;
+    }
+    
+    /**
+     * Constructs an empty {@code ModelSnapshot} to be filled from a file
+     */
+    private ModelSnapshot() {}
+    
+    /**
+     * Adds a section holding the state of the specified object.
+     * 
+     * @param name      the name under which to store the section
+     * @param member    the object to snapshot
+     * @return  this {@code ModelSnapshot}
+     */
+    public ModelSnapshot add(String name, Snapshottable member) {
+        if(CONNECTIONS.equals(name) || members.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate snapshot section: " + name);
+        }
+        members.put(name, member);
+        return this;
+    }
+    
+    /**
+     * Writes this snapshot to the specified file, replacing its contents.
+     * 
+     * @param file  the destination
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        Map<String, SnapshotWriter> bodies = new LinkedHashMap<String, SnapshotWriter>();
+        SnapshotWriter body = new SnapshotWriter();
+        writeConnections(connections, body);
+        bodies.put(CONNECTIONS, body);
+        for(Map.Entry<String, Snapshottable> member : members.entrySet()) {
+            member.getValue().writeSnapshot(body = new SnapshotWriter());
+            bodies.put(member.getKey(), body);
+        }
+        
+        long offset = 12;
+        for(String name : bodies.keySet()) {
+            offset += 4 + name.getBytes(StandardCharsets.UTF_8).length + 16;
+        }
+        SnapshotWriter header = new SnapshotWriter(256);
+        header.writeInt(MAGIC).writeInt(VERSION).writeInt(bodies.size());
+        for(Map.Entry<String, SnapshotWriter> section : bodies.entrySet()) {
+            header.writeString(section.getKey());
+            header.writeLong(offset);
+            header.writeLong(section.getValue().size());
+            offset += section.getValue().size();
+        }
+        
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, 
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            
+            header.writeTo(channel);
+            for(SnapshotWriter section : bodies.values()) {
+                section.writeTo(channel);
+            }
+        }
+    }
+    
+    /**
+     * Loads the snapshot held by the specified file, rebuilding its
+     * {@link Connections}. The remaining sections are restored on demand 
+     * with {@link #restore(String, Snapshottable)}.
+     * 
+     * @param file  the snapshot file
+     * @return  the loaded snapshot
+     * @throws IOException  if the file can not be read, or isn't a snapshot
+     *                      of a supported version
+     */
+    public static ModelSnapshot load(File file) throws IOException {
+        MappedByteBuffer mapped;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + channel.size() + " bytes");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        
+        ModelSnapshot snapshot = new ModelSnapshot();
+        try {
+            SnapshotReader header = new SnapshotReader(mapped);
+            if(header.readInt() != MAGIC) {
+                throw new IOException("Not a model snapshot: " + file);
+            }
+            int version = header.readInt();
+            if(version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ", expected " + VERSION);
+            }
+            int numSections = header.readInt();
+            for(int i = 0;i < numSections;i++) {
+                String name = header.readString();
+                long offset = header.readLong();
+                long length = header.readLong();
+                if(offset < 0 || length < 0 || offset + length > mapped.capacity()) {
+                    throw new IOException("Corrupt snapshot section table: " + file);
+                }
+                ByteBuffer section = mapped.duplicate();
+                section.position((int)offset);
+                section.limit((int)(offset + length));
+                snapshot.sections.put(name, section.slice());
+            }
+            if(!snapshot.sections.containsKey(CONNECTIONS)) {
+                throw new IOException("Snapshot has no " + CONNECTIONS + " section: " + file);
+            }
+            snapshot.connections = readConnections(new SnapshotReader(snapshot.sections.get(CONNECTIONS)));
+        }catch(BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot: " + file, e);
+        }
+        
+        return snapshot;
+    }
+    
+    /**
+     * Returns the {@link Connections} of this snapshot
+     * @return
+     */
+    public Connections getConnections() {
+        return connections;
+    }
+    
+    /**
+     * Returns the names of the sections of a loaded snapshot
+     * @return
+     */
+    public Set<String> getSectionNames() {
+        return Collections.unmodifiableSet(sections.keySet());
+    }
+    
+    /**
+     * Restores the state held by the named section of a loaded snapshot
+     * into the specified object, which must have been configured like the 
+     * one the section was written from.
+     * 
+     * @param name      the name of the section
+     * @param member    the object to restore
+     * @return  the restored object
+     */
+    public <T extends Snapshottable> T restore(String name, T member) {
+        ByteBuffer section = sections.get(name);
+        if(section == null) {
+            throw new IllegalArgumentException("No snapshot section named " + name);
+        }
+        member.readSnapshot(new SnapshotReader(section));
+        return member;
+    }
+    
+    /**
+     * Writes the parameters of the specified {@link Connections}, followed 
+     * by the state of its spatial pooler and temporal memory parts.
+     */
+    private static void writeConnections(Connections c, SnapshotWriter out) {
+        BeanUtil beanUtil = BeanUtil.getInstance();
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        for(KEY key : KEY.values()) {
+            BeanUtil.PropertyInfo info = beanUtil.getPropertyInfo(c, key.getFieldName());
+            if(key != KEY.RANDOM && info != null && info.getReadMethod() != null) {
+                params.put(key.getFieldName(), beanUtil.getSimpleProperty(c, key.getFieldName()));
+            }
+        }
+        out.writeInt(params.size());
+        for(Map.Entry<String, Object> param : params.entrySet()) {
+            Object value = param.getValue();
+            out.writeString(param.getKey());
+            if(value instanceof Integer) {
+                out.writeInt(INTEGER).writeInt((Integer)value);
+            }else if(value instanceof Double) {
+                out.writeInt(DOUBLE).writeDouble((Double)value);
+            }else if(value instanceof Boolean) {
+                out.writeInt(BOOLEAN).writeBoolean((Boolean)value);
+            }else if(value instanceof int[]) {
+                out.writeInt(INT_ARRAY).writeIntArray((int[])value);
+            }else{
+                throw new IllegalArgumentException("Can not snapshot parameter " + param.getKey() + " of type " + 
+                    (value == null ? null : value.getClass()));
+            }
+        }
+        
+        out.writeInt(c.getUpdatePeriod());
+        out.writeInt(c.iterationNum);
+        out.writeInt(c.iterationLearnNum);
+        
+        boolean hasSpatialPooler = c.getPotentialPools() != null;
+        out.writeBoolean(hasSpatialPooler);
+        if(hasSpatialPooler) {
+            new SpatialPooler().writeSnapshot(c, out);
+        }
+        boolean hasTemporalMemory = c.getCells() != null;
+        out.writeBoolean(hasTemporalMemory);
+        if(hasTemporalMemory) {
+            new TemporalMemory().writeSnapshot(c, out);
+        }
+        
+        out.writeInt(c.getSegmentCount());
+        out.writeInt(c.getSynapseCount());
+        out.writeInt(c.getNumSegmentsCreated());
+        out.writeInt(c.getNumSegmentsDestroyed());
+        out.writeInt(c.getNumSynapsesCreated());
+        out.writeInt(c.getNumSynapsesDestroyed());
+        Random random = c.getRandom();
+        out.writeBoolean(random instanceof MersenneTwister);
+        if(random instanceof MersenneTwister) {
+            out.writeRandom((MersenneTwister)random);
+        }
+    }
+    
+    /**
+     * Rebuilds a {@link Connections} from the state written by 
+     * {@link #writeConnections(Connections, SnapshotWriter)}.
+     */
+    private static Connections readConnections(SnapshotReader in) {
+        Connections c = new Connections();
+        BeanUtil beanUtil = BeanUtil.getInstance();
+        int numParams = in.readInt();
+        for(int i = 0;i < numParams;i++) {
+            String name = in.readString();
+            Object value;
+            switch(in.readInt()) {
+                case INTEGER: value = in.readInt(); break;
+                case DOUBLE: value = in.readDouble(); break;
+                case BOOLEAN: value = in.readBoolean(); break;
+                case INT_ARRAY: value = in.readIntArray(); break;
+                default: throw new IllegalArgumentException("Corrupt snapshot parameter: " + name);
+            }
+            beanUtil.setSimpleProperty(c, name, value);
+        }
+        c.setRandom(new MersenneTwister(c.getSeed()));
+        
+        c.setUpdatePeriod(in.readInt());
+        c.iterationNum = in.readInt();
+        c.iterationLearnNum = in.readInt();
+        
+        if(in.readBoolean()) {
+            SpatialPooler sp = new SpatialPooler();
+            sp.initMatrices(c);
+            sp.readSnapshot(c, in);
+        }
+        if(in.readBoolean()) {
+            TemporalMemory tm = new TemporalMemory();
+            tm.init(c);
+            tm.readSnapshot(c, in);
+        }
+        
+        c.setSegmentCount(in.readInt());
+        c.setSynapseCount(in.readInt());
+        c.setNumSegmentsCreated(in.readInt());
+        c.setNumSegmentsDestroyed(in.readInt());
+        c.setNumSynapsesCreated(in.readInt());
+        c.setNumSynapsesDestroyed(in.readInt());
+        if(in.readBoolean()) {
+            in.readRandom((MersenneTwister)c.getRandom());
+        }
+        
+        return c;
+    }
+}
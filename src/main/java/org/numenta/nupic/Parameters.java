@@ -77,6 +77,10 @@ public class Parameters {
         defaultTemporalParams.put(KEY.PERMANENCE_INCREMENT, 0.10);
         defaultTemporalParams.put(KEY.PERMANENCE_DECREMENT, 0.10);
         defaultTemporalParams.put(KEY.TM_VERBOSITY, 0);
+        defaultTemporalParams.put(KEY.FLAT_STORAGE, false);
+        defaultTemporalParams.put(KEY.MAX_SEGMENTS_PER_CELL, Integer.MAX_VALUE);
+        defaultTemporalParams.put(KEY.MAX_SYNAPSES_PER_SEGMENT, Integer.MAX_VALUE);
+        defaultTemporalParams.put(KEY.PRUNE_SYNAPSES, false);
         DEFAULTS_TEMPORAL = Collections.unmodifiableMap(defaultTemporalParams);
         defaultParams.putAll(DEFAULTS_TEMPORAL);
 
@@ -100,6 +104,9 @@ public class Parameters {
         defaultSpatialParams.put(KEY.DUTY_CYCLE_PERIOD, 1000);
         defaultSpatialParams.put(KEY.MAX_BOOST, 10.0);
         defaultSpatialParams.put(KEY.SP_VERBOSITY, 0);
+        defaultSpatialParams.put(KEY.SP_PARALLELISM, 1);
+        defaultSpatialParams.put(KEY.SP_LAZY_INIT, false);
+        defaultSpatialParams.put(KEY.SP_DERIVED_SEEDS, false);
         DEFAULTS_SPATIAL = Collections.unmodifiableMap(defaultSpatialParams);
         defaultParams.putAll(DEFAULTS_SPATIAL);
 
@@ -170,6 +177,27 @@ public class Parameters {
          */
         PERMANENCE_DECREMENT("permanenceDecrement", Double.class, 0.0, 1.0),
         TM_VERBOSITY("tmVerbosity", Integer.class, 0, 10),
+        /**
+         * If true, distal segments and synapses are kept in a
+         * {@link org.numenta.nupic.model.FlatSegmentStore} rather
+         * than as individual objects.
+         */
+        FLAT_STORAGE("flatStorage", Boolean.class),
+        /**
+         * The maximum number of distal segments per cell, the least
+         * recently used segment is destroyed to make room for a new one.
+         */
+        MAX_SEGMENTS_PER_CELL("maxSegmentsPerCell", Integer.class, 1, null),
+        /**
+         * The maximum number of synapses per distal segment, the weakest
+         * synapses are destroyed to make room for new ones.
+         */
+        MAX_SYNAPSES_PER_SEGMENT("maxSynapsesPerSegment", Integer.class, 1, null),
+        /**
+         * If true, distal synapses whose permanence is decremented to 0 are
+         * destroyed, as are segments left without synapses.
+         */
+        PRUNE_SYNAPSES("pruneSynapses", Boolean.class),
 
         /////////// Spatial Pooler Parameters ///////////
         INPUT_DIMENSIONS("inputDimensions", int[].class),
@@ -189,7 +217,24 @@ public class Parameters {
         MIN_PCT_ACTIVE_DUTY_CYCLE("minPctActiveDutyCycles", Double.class),//TODO add range here?
         DUTY_CYCLE_PERIOD("dutyCyclePeriod", Integer.class),//TODO add range here?
         MAX_BOOST("maxBoost", Double.class), //TODO add range here?
-        SP_VERBOSITY("spVerbosity", Integer.class, 0, 10);
+        SP_VERBOSITY("spVerbosity", Integer.class, 0, 10),
+        /**
+         * Number of threads sharing the column work of the {@link SpatialPooler}.
+         * 1 (the default) computes serially.
+         */
+        SP_PARALLELISM("spParallelism", Integer.class, 1, null),
+        /**
+         * If true, the {@link SpatialPooler} creates columns and their potential
+         * pools on first use, see {@link org.numenta.nupic.research.LazyColumns}.
+         */
+        SP_LAZY_INIT("spLazyInit", Boolean.class),
+        /**
+         * If true, each column of the {@link SpatialPooler} is initialized from its 
+         * own random generator, derived from the seed and the column index, which 
+         * lets the initialization run in parallel with a result independent of
+         * {@link #SP_PARALLELISM}.
+         */
+        SP_DERIVED_SEEDS("spDerivedSeeds", Boolean.class);
 
         private static final Map<String, KEY> fieldMap = new HashMap<>();
 
@@ -541,6 +586,46 @@ public class Parameters {
         paramMap.put(KEY.PERMANENCE_DECREMENT, permanenceDecrement);
     }
 
+    /**
+     * If true, distal segments and synapses are kept in primitive
+     * arrays rather than as individual objects.
+     *
+     * @param flatStorage
+     */
+    public void setFlatStorage(boolean flatStorage) {
+        paramMap.put(KEY.FLAT_STORAGE, flatStorage);
+    }
+
+    /**
+     * The maximum number of distal segments per cell, the least
+     * recently used segment is destroyed to make room for a new one.
+     *
+     * @param maxSegmentsPerCell
+     */
+    public void setMaxSegmentsPerCell(int maxSegmentsPerCell) {
+        paramMap.put(KEY.MAX_SEGMENTS_PER_CELL, maxSegmentsPerCell);
+    }
+
+    /**
+     * The maximum number of synapses per distal segment, the weakest
+     * synapses are destroyed to make room for new ones.
+     *
+     * @param maxSynapsesPerSegment
+     */
+    public void setMaxSynapsesPerSegment(int maxSynapsesPerSegment) {
+        paramMap.put(KEY.MAX_SYNAPSES_PER_SEGMENT, maxSynapsesPerSegment);
+    }
+
+    /**
+     * If true, distal synapses whose permanence is decremented to 0 are
+     * destroyed, as are segments left without synapses.
+     *
+     * @param pruneSynapses
+     */
+    public void setPruneSynapses(boolean pruneSynapses) {
+        paramMap.put(KEY.PRUNE_SYNAPSES, pruneSynapses);
+    }
+
     ////////////////////////////// SPACIAL POOLER PARAMS //////////////////////////////////
 
     /**
@@ -807,6 +892,40 @@ public class Parameters {
         paramMap.put(KEY.SP_VERBOSITY, spVerbosity);
     }
 
+    /**
+     * The number of threads across which the {@link SpatialPooler} shards
+     * its per column work. Results are identical to the serial computation;
+     * 1 computes serially.
+     *
+     * @param spParallelism
+     */
+    public void setSpParallelism(int spParallelism) {
+        paramMap.put(KEY.SP_PARALLELISM, spParallelism);
+    }
+
+    /**
+     * If true, columns and their potential pools are created when first
+     * reached by the input rather than at initialization, each from a random 
+     * generator derived from the seed and the column index.
+     *
+     * @param spLazyInit
+     */
+    public void setSpLazyInit(boolean spLazyInit) {
+        paramMap.put(KEY.SP_LAZY_INIT, spLazyInit);
+    }
+
+    /**
+     * If true, each column is initialized from a random generator derived
+     * from the seed and the column index rather than from the shared one,
+     * so that initialization is spread over {@link KEY#SP_PARALLELISM} threads
+     * with the same result for any number of them.
+     *
+     * @param spDerivedSeeds
+     */
+    public void setSpDerivedSeeds(boolean spDerivedSeeds) {
+        paramMap.put(KEY.SP_DERIVED_SEEDS, spDerivedSeeds);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.numenta.nupic.util.ArrayUtils;
+import org.numenta.nupic.util.SDR;
 
 
 /**
@@ -161,7 +162,12 @@ public abstract class Anomaly {
            case PURE: return new Anomaly(useMovingAvg, windowSize) {
             @Override
             public double compute(int[] activeColumns, int[] predictedColumns, double inputValue, long timestamp) {
-               double retVal = computeRawAnomalyScore(activeColumns, predictedColumns);
+               return compute(computeRawAnomalyScore(activeColumns, predictedColumns), inputValue, timestamp);
+            }
+            
+            @Override
+            public double compute(double rawScore, double inputValue, long timestamp) {
+               double retVal = rawScore;
                if(this.useMovingAverage) {
                    retVal = movingAverage.next(retVal);
                }
@@ -181,6 +187,8 @@ public abstract class Anomaly {
     
     /**
      * The raw anomaly score is the fraction of active columns not predicted.
+     * Sorted arrays (as the spatial and temporal poolers produce) are
+     * intersected without allocating.
      * 
      * @param   activeColumns           an array of active column indices
      * @param   prevPredictedColumns    array of column indices predicted in the 
@@ -191,21 +199,46 @@ public abstract class Anomaly {
         double score = 0;
         
         int nActiveColumns = activeColumns.length;
+        // No previous prediction (e.g. on the first record) means no overlap
+        int nPrevPredictedColumns = prevPredictedColumns == null ? 0 : prevPredictedColumns.length;
         if(nActiveColumns > 0) {
             // Test whether each element of a 1-D array is also present in a second
             // array. Sum to get the total # of columns that are active and were
             // predicted.
-            score = ArrayUtils.in1d(activeColumns, prevPredictedColumns).length;
+            if(nPrevPredictedColumns == 0) {
+                score = 0;
+            }else if(ArrayUtils.isSorted(activeColumns) && ArrayUtils.isSorted(prevPredictedColumns)) {
+                score = ArrayUtils.intersectionCount(activeColumns, prevPredictedColumns);
+            }else{
+                score = ArrayUtils.in1d(activeColumns, prevPredictedColumns).length;
+            }
             // Get the percent of active columns that were NOT predicted, that is
             // our anomaly score.
             score = (nActiveColumns - score) / (double)nActiveColumns;
-        }else if(prevPredictedColumns.length > 0) {
+        }else if(nPrevPredictedColumns > 0) {
             score = 1.0d;
         }
         
         return score;
     }
     
+    /**
+     * Same as {@link #computeRawAnomalyScore(int[], int[])} for columns held
+     * in {@link SDR}s, whose overlap is counted a word at a time.
+     * 
+     * @param   activeColumns           the active columns
+     * @param   prevPredictedColumns    the columns predicted in the previous step
+     * @return  anomaly score 0..1 
+     */
+    public static double computeRawAnomalyScore(SDR activeColumns, SDR prevPredictedColumns) {
+        int nActiveColumns = activeColumns.cardinality();
+        if(nActiveColumns > 0) {
+            int predicted = activeColumns.overlap(prevPredictedColumns);
+            return (nActiveColumns - predicted) / (double)nActiveColumns;
+        }
+        return prevPredictedColumns.cardinality() > 0 ? 1.0d : 0;
+    }
+    
     /**
      * Compute the anomaly score as the percent of active columns not predicted.
      * 
@@ -221,6 +254,25 @@ public abstract class Anomaly {
      */
     public abstract double compute(int[] activeColumns, int[] predictedColumns, double inputValue, long timestamp);
     
+    /**
+     * Compute the anomaly score from the raw anomaly score returned by
+     * {@link #computeRawAnomalyScore(int[], int[])}. The modes created by
+     * {@link #create(Map)} support this; other subclasses must override it
+     * to be scored from a raw score (e.g. by {@link AnomalyBatch}).
+     * 
+     * @param rawScore              the raw anomaly score of this step
+     * @param inputValue            (optional) value of current input to encoders 
+     *                              (used in anomaly-likelihood)
+     * @param timestamp             timestamp: (optional) date timestamp when the sample occurred
+     *                              (used in anomaly-likelihood)
+     * @return
+     * @throws UnsupportedOperationException if this subclass only scores column arrays
+     */
+    public double compute(double rawScore, double inputValue, long timestamp) {
+        throw new UnsupportedOperationException(getClass().getName() + 
+            " does not compute an anomaly score from a raw score");
+    }
+    
     
     //////////////////////////////////////////////////////////////////////////////////////
     //                            Inner Class Definitions                               //
@@ -0,0 +1,178 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.algorithms;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.numenta.nupic.util.IndexShards;
+
+/**
+ * Scores one record of each of many independent streams at once. Every
+ * stream owns an {@link Anomaly} created from the same parameters (so each
+ * keeps its own moving average or likelihood estimate), and a call to
+ * {@link #compute(int[][], int[][], double[], long[], double[], double[])}
+ * advances all of them by one step.
+ * <p>
+ * The streams can be sharded across a {@link ForkJoinPool}, which is shut
+ * down by {@link #close()}. Results are written into caller supplied arrays;
+ * computing the raw scores of sorted column arrays allocates nothing.
+ * 
+ * <pre>
+ * AnomalyBatch batch = new AnomalyBatch(params, numStreams, 4);
+ * batch.compute(activeColumns, predictedColumns, inputValues, timestamps, rawScores, scores);
+ * </pre>
+ * 
+ * @see Anomaly
+ */
+public class AnomalyBatch implements AutoCloseable {
+    private final Anomaly[] anomalies;
+    private final int parallelism;
+    private ForkJoinPool pool;
+    
+    
+    /**
+     * Constructs a new serial {@code AnomalyBatch}
+     * 
+     * @param params        the parameters of each stream's {@link Anomaly}, 
+     *                      see {@link Anomaly#create(Map)}
+     * @param numStreams    the number of streams
+     */
+    public AnomalyBatch(Map<String, Object> params, int numStreams) {
+        this(params, numStreams, 1);
+    }
+    
+    /**
+     * Constructs a new {@code AnomalyBatch}
+     * 
+     * @param params        the parameters of each stream's {@link Anomaly}, 
+     *                      see {@link Anomaly#create(Map)}
+     * @param numStreams    the number of streams
+     * @param parallelism   the number of threads streams are scored on; 1 scores
+     *                      them on the calling thread
+     */
+    public AnomalyBatch(Map<String, Object> params, int numStreams, int parallelism) {
+        if(numStreams < 1) {
+            throw new IllegalArgumentException("numStreams must be > 0");
+        }
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be > 0");
+        }
+        this.parallelism = parallelism;
+        this.anomalies = new Anomaly[numStreams];
+        for(int i = 0;i < numStreams;i++) {
+            anomalies[i] = Anomaly.create(params);
+        }
+    }
+    
+    /**
+     * Returns the number of streams
+     * @return
+     */
+    public int getNumStreams() {
+        return anomalies.length;
+    }
+    
+    /**
+     * Returns the {@link Anomaly} scoring the specified stream
+     * @param stream
+     * @return
+     */
+    public Anomaly getAnomaly(int stream) {
+        return anomalies[stream];
+    }
+    
+    /**
+     * Scores the current record of every stream.
+     * 
+     * @param activeColumns     per stream, the active column indices
+     * @param predictedColumns  per stream, the column indices predicted in the previous step
+     * @param inputValues       per stream, the value of the current input; required
+     *                          by the likelihood modes, may be null in {@link Anomaly.Mode#PURE}
+     * @param timestamps        (optional) per stream, the timestamp of the current input
+     *                          (used in anomaly-likelihood), may be null to use the
+     *                          current time
+     * @param rawScores         filled in with each stream's raw anomaly score
+     * @param scores            filled in with each stream's anomaly score, see 
+     *                          {@link Anomaly#compute(double, double, long)}
+     * @throws IllegalArgumentException if an array does not have one entry per stream,
+     *                                  or inputValues is null in a likelihood mode
+     */
+    public void compute(final int[][] activeColumns, final int[][] predictedColumns, 
+        final double[] inputValues, final long[] timestamps, final double[] rawScores, final double[] scores) {
+        
+        int numStreams = anomalies.length;
+        if(activeColumns.length != numStreams || predictedColumns.length != numStreams ||
+            (inputValues != null && inputValues.length != numStreams) ||
+                (timestamps != null && timestamps.length != numStreams) ||
+                    rawScores.length != numStreams || scores.length != numStreams) {
+            throw new IllegalArgumentException("Every array must have one entry per stream (" + numStreams + ")");
+        }
+        if(inputValues == null && anomalies[0] instanceof AnomalyLikelihood) {
+            throw new IllegalArgumentException("inputValues cannot be null in the likelihood modes");
+        }
+        
+        IndexShards.Body body = new IndexShards.Body() {
+            @Override
+            public void apply(int from, int to) {
+                for(int i = from;i < to;i++) {
+                    double rawScore = Anomaly.computeRawAnomalyScore(activeColumns[i], predictedColumns[i]);
+                    rawScores[i] = rawScore;
+                    scores[i] = anomalies[i].compute(rawScore, 
+                        inputValues == null ? 0 : inputValues[i], timestamps == null ? 0 : timestamps[i]);
+                }
+            }
+        };
+        
+        if(parallelism > 1) {
+            IndexShards.run(getPool(), numStreams, body);
+        }else{
+            body.apply(0, numStreams);
+        }
+    }
+    
+    /**
+     * Shuts down the {@link ForkJoinPool} streams are scored on, if one
+     * was created. A later parallel {@code compute} creates a new one.
+     */
+    @Override
+    public synchronized void close() {
+        if(pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+    
+    /**
+     * Returns the {@link ForkJoinPool} streams are scored on, creating
+     * it on first use.
+     * @return
+     */
+    private synchronized ForkJoinPool getPool() {
+        if(pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+}
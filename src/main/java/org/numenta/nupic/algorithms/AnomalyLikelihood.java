@@ -24,7 +24,6 @@ package org.numenta.nupic.algorithms;
 
 import gnu.trove.iterator.TDoubleIterator;
 import gnu.trove.list.TDoubleList;
-import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.map.TObjectDoubleMap;
 
 import java.io.IOException;
@@ -34,7 +33,6 @@ import java.util.Arrays;
 import java.util.List;
 
 import org.joda.time.DateTime;
-import org.numenta.nupic.algorithms.MovingAverage.Calculation;
 import org.numenta.nupic.util.ArrayUtils;
 import org.numenta.nupic.util.NamedTuple;
 import org.slf4j.Logger;
@@ -111,6 +109,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 public class AnomalyLikelihood extends Anomaly {
     private static final Logger LOG = LoggerFactory.getLogger(AnomalyLikelihood.class);
     
+    /** Window of the moving average applied to the anomaly scores before estimation */
+    private static final int AVERAGING_WINDOW = 10;
+    
     private int claLearningPeriod = 300;
     private int estimationSamples = 300;
     private int probationaryPeriod;
@@ -119,7 +120,15 @@ public class AnomalyLikelihood extends Anomaly {
     
     private boolean isWeighted;
     
-    private List<Sample> historicalScores = new ArrayList<>();
+    /** The number of records seen by {@link #anomalyProbability(double, double, DateTime)} */
+    private int numRecords;
+    /** Moving average of every anomaly score seen */
+    private MovingAverage scoreAverage = new MovingAverage(null, AVERAGING_WINDOW);
+    /** Ring buffer of the last {@link #AVERAGING_WINDOW} averaged scores */
+    private double[] recentAverages = new double[AVERAGING_WINDOW];
+    /** Running statistics of the averaged scores and of the metric values past the learning period */
+    private RunningStatistic averagedScoreStatistic = new RunningStatistic();
+    private RunningStatistic metricValueStatistic = new RunningStatistic();
     private AnomalyParams distribution;
     
     public AnomalyLikelihood(boolean useMovingAvg, int windowSize, boolean isWeighted, int claLearningPeriod, int estimationSamples) {
@@ -156,6 +165,11 @@ public class AnomalyLikelihood extends Anomaly {
      *
      * Given the current metric value, plus the current anomaly score, output the
      * anomalyLikelihood for this record.
+     * <p>
+     * Rather than keeping every record and periodically handing them all to
+     * {@link #estimateAnomalyLikelihoods(List, int, int)}, the statistics that
+     * estimation needs are accumulated as records arrive, so memory use stays
+     * constant and re-estimation takes constant time however long the stream.
      * 
      * @param value             input value
      * @param anomalyScore      current anomaly score
@@ -170,23 +184,74 @@ public class AnomalyLikelihood extends Anomaly {
         
         Sample dataPoint = new Sample(timestamp, value, anomalyScore);
         double likelihoodRetval;
-        if(historicalScores.size() < probationaryPeriod) {
+        if(numRecords < probationaryPeriod) {
             likelihoodRetval = 0.5;
         }else{
             if(distribution == null || iteration % reestimationPeriod == 0) {
-                this.distribution = estimateAnomalyLikelihoods(
-                    historicalScores, 10, claLearningPeriod).getParams();
+                this.distribution = reestimate();
             }
             AnomalyLikelihoodMetrics metrics = updateAnomalyLikelihoods(Arrays.asList(dataPoint), this.distribution);
             this.distribution = metrics.getParams();
             likelihoodRetval = 1.0 - metrics.getLikelihoods()[0];
         }
-        historicalScores.add(dataPoint);
+        record(dataPoint);
         this.iteration += 1;
         
         return likelihoodRetval;
     }
     
+    /**
+     * Adds a record to the running statistics of the records seen so far.
+     * Records within the CLA learning period are averaged but otherwise
+     * skipped, as in {@link #estimateAnomalyLikelihoods(List, int, int)}.
+     * 
+     * @param record
+     */
+    private void record(Sample record) {
+        double average = scoreAverage.next(record.score);
+        recentAverages[numRecords % AVERAGING_WINDOW] = average;
+        if(numRecords >= claLearningPeriod) {
+            averagedScoreStatistic.add(average);
+            metricValueStatistic.add(record.value);
+        }
+        numRecords++;
+    }
+    
+    /**
+     * Returns the estimator parameters {@link #estimateAnomalyLikelihoods(List, int, int)}
+     * would return for all the records seen so far, computed from their
+     * running statistics.
+     * 
+     * @return
+     */
+    private AnomalyParams reestimate() {
+        Statistic distribution;
+        if(numRecords <= claLearningPeriod) {
+            distribution = nullDistribution();
+        }else{
+            distribution = estimateNormal(averagedScoreStatistic, true);
+            
+            // Flat metric values are reported as not anomalous, see estimateAnomalyLikelihoods()
+            Statistic metricDistribution = estimateNormal(metricValueStatistic, false);
+            if(metricDistribution.variance < 1.5e-5) {
+                distribution = nullDistribution();
+            }
+        }
+        
+        int len = Math.min(AVERAGING_WINDOW, numRecords);
+        double[] likelihoods = new double[len];
+        for(int i = 0;i < len;i++) {
+            double average = recentAverages[(numRecords - len + i) % AVERAGING_WINDOW];
+            likelihoods[i] = normalProbability(average, distribution);
+        }
+        
+        return new AnomalyParams(
+            new String[] { "distribution", "movingAverage", "historicalLikelihoods" },
+                distribution,
+                new MovingAverage(scoreAverage.getSlidingWindow(), scoreAverage.getTotal(), AVERAGING_WINDOW),
+                likelihoods);
+    }
+    
     /**
      * Given a series of anomaly scores, compute the likelihood for each score. This
      * function should be called once on a bunch of historical anomaly scores for an
@@ -212,7 +277,7 @@ public class AnomalyLikelihood extends Anomaly {
             distribution = nullDistribution();
         }else{
             TDoubleList samples = records.getMetrics();
-            distribution = estimateNormal(samples.toArray(skipRecords, samples.size()), true);
+            distribution = estimateNormal(samples.toArray(skipRecords, samples.size() - skipRecords), true);
             
             /*  Taken from the Python Documentation
                
@@ -224,7 +289,7 @@ public class AnomalyLikelihood extends Anomaly {
              
              */
             samples = records.getSamples();
-            Statistic metricDistribution = estimateNormal(samples.toArray(skipRecords, samples.size()), false);
+            Statistic metricDistribution = estimateNormal(samples.toArray(skipRecords, samples.size() - skipRecords), false);
             
             if(metricDistribution.variance < 1.5e-5) {
                 distribution = nullDistribution();
@@ -301,22 +366,20 @@ public class AnomalyLikelihood extends Anomaly {
         // Compute moving averages of these new scores using the previous values
         // as well as likelihood for these scores using the old estimator
         MovingAverage mvgAvg = (MovingAverage)params.get("movingAverage");
-        TDoubleList historicalValues = mvgAvg.getSlidingWindow();
-        double total = mvgAvg.getTotal();
         int windowSize = mvgAvg.getWindowSize();
+        MovingAverage movingAverage = new MovingAverage(mvgAvg.getSlidingWindow(), mvgAvg.getTotal(), windowSize);
         
         List<Sample> aggRecordList = new ArrayList<>(anomalySize);
         double[] likelihoods = new double[anomalySize];
         int i = 0;
         for(Sample sample : anomalyScores) {
-            Calculation calc = MovingAverage.compute(historicalValues, total, sample.score, windowSize);
+            double average = movingAverage.next(sample.score);
             aggRecordList.add(
                 new Sample(
                     sample.date,
                     sample.value,
-                    calc.getAverage()));
-            total = calc.getTotal();
-            likelihoods[i++] = normalProbability(calc.getAverage(), (Statistic)params.get("distribution"));
+                    average));
+            likelihoods[i++] = normalProbability(average, (Statistic)params.get("distribution"));
         }
         
         // Filter the likelihood values. First we prepend the historical likelihoods
@@ -331,12 +394,12 @@ public class AnomalyLikelihood extends Anomaly {
         AnomalyParams newParams = new AnomalyParams(
             new String[] { "distribution", "movingAverage", "historicalLikelihoods" },
                 params.get("distribution"),
-                new MovingAverage(historicalValues, total, windowSize),
+                movingAverage,
                 historicalLikelihoods);
         
         return new AnomalyLikelihoodMetrics(
             likelihoods, 
-            new AveragedAnomalyRecordList(aggRecordList, historicalValues, total), 
+            new AveragedAnomalyRecordList(aggRecordList, movingAverage.getSlidingWindow(), movingAverage.getTotal()), 
             newParams);  
     }
     
@@ -405,29 +468,25 @@ public class AnomalyLikelihood extends Anomaly {
      * @return Each record in the returned list contains [datetime field, value, averaged score]
      */
     public AveragedAnomalyRecordList anomalyScoreMovingAverage(List<Sample> anomalyScores, int windowSize) {
-        TDoubleList historicalValues = new TDoubleArrayList();
-        double total = 0.0;
+        MovingAverage movingAverage = new MovingAverage(null, windowSize);
         List<Sample> averagedRecordList = new ArrayList<Sample>();
         for(Sample record : anomalyScores) {
             ////////////////////////////////////////////////////////////////////////////////////////////
             // Python version has check for malformed records here, but can't happen in java version. //
             ////////////////////////////////////////////////////////////////////////////////////////////
             
-            Calculation calc = MovingAverage.compute(historicalValues, total, record.score, windowSize);
-            
             Sample avgRecord = new Sample(
                 record.date,
                 record.value,
-                calc.getAverage());
+                movingAverage.next(record.score));
             averagedRecordList.add(avgRecord);
-            total = calc.getTotal();
             
             if(LOG.isDebugEnabled()) {
                 LOG.debug("Aggregating input record: {}, Result: {}", record, averagedRecordList.get(averagedRecordList.size() - 1));
             }
         }
         
-        return new AveragedAnomalyRecordList(averagedRecordList, historicalValues, total);
+        return new AveragedAnomalyRecordList(averagedRecordList, movingAverage.getSlidingWindow(), movingAverage.getTotal());
     }
     
     /**
@@ -441,7 +500,32 @@ public class AnomalyLikelihood extends Anomaly {
     public Statistic estimateNormal(double[] sampleData, boolean performLowerBoundCheck) {
         double d = ArrayUtils.average(sampleData);
         double v = ArrayUtils.variance(sampleData, d);
-                
+        
+        return estimateNormal(d, v, performLowerBoundCheck);
+    }
+    
+    /**
+     * A Map containing the parameters of a normal distribution based on
+     * the running statistics of the sample data.
+     * 
+     * @param sampleStatistic
+     * @param performLowerBoundCheck
+     * @return
+     */
+    public Statistic estimateNormal(RunningStatistic sampleStatistic, boolean performLowerBoundCheck) {
+        return estimateNormal(sampleStatistic.getMean(), sampleStatistic.getVariance(), performLowerBoundCheck);
+    }
+    
+    /**
+     * Returns the normal distribution of the specified mean and variance,
+     * optionally raised to their lower bounds.
+     * 
+     * @param d     mean
+     * @param v     variance
+     * @param performLowerBoundCheck
+     * @return
+     */
+    private Statistic estimateNormal(double d, double v, boolean performLowerBoundCheck) {
         if(performLowerBoundCheck) {
             if(d < 0.03) {
                 d = 0.03;
@@ -515,14 +599,21 @@ public class AnomalyLikelihood extends Anomaly {
      */
     @Override
     public double compute(int[] activeColumns, int[] predictedColumns, double inputValue, long timestamp) {
+        return compute(computeRawAnomalyScore(activeColumns, predictedColumns), inputValue, timestamp);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double compute(double rawScore, double inputValue, long timestamp) {
         if(inputValue == 0) {
             throw new IllegalArgumentException("Selected anomlay mode Mode.LIKELIHOOD requires an \"inputValue\" to " +
                 "the compute() method.");
         }
         
         DateTime time = timestamp > 0 ? new DateTime(timestamp) : new DateTime();
-        // First compute raw anomaly score
-        double retVal = computeRawAnomalyScore(activeColumns, predictedColumns);
+        double retVal = rawScore;
         
         // low likelihood -> high anomaly
         double probability = anomalyProbability(inputValue, retVal, time);
@@ -0,0 +1,302 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Stores the activation pattern bit histories of a {@link CLAClassifier}.
+ * <p>
+ * A history is addressed by the index of its prediction step in the
+ * classifier's steps list (its "slot") and by the activation pattern bit
+ * it is for, and lives in a "row" handed out on first use. Each slot keeps
+ * a table from bit to row, and the bucket duty cycles of every row are
+ * stored contiguously in one array, so neither lookups nor updates create
+ * any objects.
+ * 
+ * @see CLAClassifier
+ */
+final class BitHistoryTable {
+	// This determines how large one of the duty cycles must get before each of the
+	// duty cycles are updated to the current iteration.
+	// This must be less than float32 size since storage is float32 size
+	private static final int DUTY_CYCLE_UPDATE_INTERVAL = Integer.MAX_VALUE;
+	
+	/** Per slot, the row of each bit plus one, 0 meaning "no history" */
+	private int[][] rowsByBit = new int[0][];
+	/** The number of rows handed out */
+	private int numRows;
+	/** The bit and slot each row is for */
+	private int[] rowBit = new int[16];
+	private int[] rowSlot = new int[16];
+	/** The number of buckets each row has a duty cycle for */
+	private int[] rowLength = new int[16];
+	/** The iteration number of the last time each row was updated. */
+	private int[] lastTotalUpdate = new int[16];
+	/** Bucket duty cycles, {@link #stride} entries per row */
+	private double[] dutyCycles = new double[16 * 4];
+	private int stride = 4;
+	
+	
+	/**
+	 * Returns the row holding the history of the specified bit, or -1
+	 * if there is none.
+	 * 
+	 * @param slot	index of the prediction step
+	 * @param bit	activation pattern bit
+	 * @return
+	 */
+	int find(int slot, int bit) {
+		if(slot >= rowsByBit.length) return -1;
+		
+		int[] rows = rowsByBit[slot];
+		return bit < rows.length ? rows[bit] - 1 : -1;
+	}
+	
+	/**
+	 * Returns the row holding the history of the specified bit, creating
+	 * an empty one if there is none.
+	 * 
+	 * @param slot	index of the prediction step
+	 * @param bit	activation pattern bit
+	 * @return
+	 */
+	int findOrCreate(int slot, int bit) {
+		int row = find(slot, bit);
+		if(row != -1) return row;
+		
+		if(slot >= rowsByBit.length) {
+			int numSlots = rowsByBit.length;
+			rowsByBit = Arrays.copyOf(rowsByBit, slot + 1);
+			for(int i = numSlots;i < rowsByBit.length;i++) rowsByBit[i] = new int[0];
+		}
+		int[] rows = rowsByBit[slot];
+		if(bit >= rows.length) {
+			rowsByBit[slot] = rows = Arrays.copyOf(rows, Math.max(bit + 1, rows.length * 2));
+		}
+		if(numRows == rowBit.length) {
+			int capacity = numRows * 2;
+			rowBit = Arrays.copyOf(rowBit, capacity);
+			rowSlot = Arrays.copyOf(rowSlot, capacity);
+			rowLength = Arrays.copyOf(rowLength, capacity);
+			lastTotalUpdate = Arrays.copyOf(lastTotalUpdate, capacity);
+			dutyCycles = Arrays.copyOf(dutyCycles, capacity * stride);
+		}
+		row = numRows++;
+		rowBit[row] = bit;
+		rowSlot[row] = slot;
+		rowLength[row] = 0;
+		lastTotalUpdate[row] = -1;
+		rows[bit] = row + 1;
+		return row;
+	}
+	
+	/**
+	 * Returns the number of rows handed out; rows are numbered
+	 * from 0 in the order they were created.
+	 * @return
+	 */
+	int size() {
+		return numRows;
+	}
+	
+	/**
+	 * Returns the activation pattern bit of the specified row
+	 * @param row
+	 * @return
+	 */
+	int getBit(int row) {
+		return rowBit[row];
+	}
+	
+	/**
+	 * Returns the prediction step slot of the specified row
+	 * @param row
+	 * @return
+	 */
+	int getSlot(int row) {
+		return rowSlot[row];
+	}
+	
+	/**
+	 * Returns the iteration number the duty cycles of the specified
+	 * row were last brought up to date, or -1 if never.
+	 * @param row
+	 * @return
+	 */
+	int getLastTotalUpdate(int row) {
+		return lastTotalUpdate[row];
+	}
+	
+	/**
+	 * Returns a copy of the bucket duty cycles of the specified row
+	 * @param row
+	 * @return
+	 */
+	double[] getDutyCycles(int row) {
+		int base = row * stride;
+		return Arrays.copyOfRange(dutyCycles, base, base + rowLength[row]);
+	}
+	
+	/**
+	 * Replaces the history of the specified row, used when restoring
+	 * a serialized classifier.
+	 * 
+	 * @param row				the row to set
+	 * @param stats				bucket duty cycles
+	 * @param lastTotalUpdate	iteration of the last update
+	 */
+	void set(int row, double[] stats, int lastTotalUpdate) {
+		ensureLength(row, stats.length);
+		System.arraycopy(stats, 0, dutyCycles, row * stride, stats.length);
+		this.lastTotalUpdate[row] = lastTotalUpdate;
+	}
+	
+	/**
+	 * Store a new item in the history of the specified row.
+	 * <p>
+	 * This gets called for a bit whenever it is active and learning is enabled
+	 * <p>
+	 * Save duty cycle by normalizing it to the same iteration as
+	 * the rest of the duty cycles which is lastTotalUpdate.
+	 * <p>
+	 * This is done to speed up computation in inference since all of the duty
+	 * cycles can now be scaled by a single number.
+	 * <p>
+	 * The duty cycle is brought up to the current iteration only at inference and
+	 * only when one of the duty cycles gets too large (to avoid overflow to
+	 * larger data type) since the ratios between the duty cycles are what is
+	 * important. As long as all of the duty cycles are at the same iteration
+	 * their ratio is the same as it would be for any other iteration, because the
+	 * update is simply a multiplication by a scalar that depends on the number of
+	 * steps between the last update of the duty cycle and the current iteration.
+	 * 
+	 * @param row			the row to store into
+	 * @param iteration		the learning iteration number, which is only incremented
+	 * 						when learning is enabled
+	 * @param bucketIdx		the bucket index to store
+	 * @param alpha			the classifier's duty cycle alpha
+	 * @return				the new duty cycle of the bucket
+	 */
+	double store(int row, int iteration, int bucketIdx, double alpha) {
+		// If lastTotalUpdate has not been set, set it to the current iteration.
+		if(lastTotalUpdate[row] == -1) {
+			lastTotalUpdate[row] = iteration;
+		}
+		
+		// Get the duty cycle stored for this bucket.
+		if(bucketIdx >= rowLength[row]) {
+			ensureLength(row, bucketIdx + 1);
+		}
+		int base = row * stride;
+		
+		// Update it now.
+		// duty cycle n steps ago is dc{-n}
+		// duty cycle for current iteration is (1-alpha)*dc{-n}*(1-alpha)**(n)+alpha
+		double dc = dutyCycles[base + bucketIdx];
+		
+		// To get the duty cycle from n iterations ago that when updated to the
+		// current iteration would equal the dc of the current iteration we simply
+		// divide the duty cycle by (1-alpha)**(n). This results in the formula
+		// dc'{-n} = dc{-n} + alpha/(1-alpha)**n where the apostrophe symbol is used
+		// to denote that this is the new duty cycle at that iteration. This is
+		// equivalent to the duty cycle dc{-n}
+		double denom = Math.pow((1.0 - alpha), (iteration - lastTotalUpdate[row]));
+		
+		double dcNew = 0;
+		if(denom > 0) dcNew = dc + (alpha / denom);
+		
+		// This is to prevent errors associated with infinite rescale if too large
+		if(denom == 0 || dcNew > DUTY_CYCLE_UPDATE_INTERVAL) {
+			double exp = Math.pow((1.0 - alpha), (iteration - lastTotalUpdate[row]));
+			double dcT = 0;
+			for(int i = 0;i < rowLength[row];i++) {
+				dcT *= exp;
+				dutyCycles[base + i] = dcT;
+			}
+			
+			// Reset time since last update
+			lastTotalUpdate[row] = iteration;
+			
+			// Add alpha since now exponent is 0
+			dc = dutyCycles[base + bucketIdx] + alpha;
+		} else {
+			dc = dcNew;
+		}
+		
+		dutyCycles[base + bucketIdx] = dc;
+		return dc;
+	}
+	
+	/**
+	 * Look up the votes for each bucketIdx of the specified row.
+	 * 
+	 * @param row			the row to look up
+	 * @param votes			array that is filled in with the votes for each bucket.
+	 * 						The vote for bucket index N goes into votes[N]. Only
+	 * 						entries with a positive duty cycle are overwritten
+	 * 						before the first {@code numBuckets} entries are normalized.
+	 * @param numBuckets	the number of entries of votes in use
+	 */
+	void infer(int row, double[] votes, int numBuckets) {
+		// Place the duty cycle into the votes and update the running total for
+		// normalization
+		int base = row * stride;
+		double total = 0;
+		for(int i = 0;i < rowLength[row];i++) {
+			double dc = dutyCycles[base + i];
+			if(dc > 0.0) {
+				votes[i] = dc;
+				total += dc;
+			}
+		}
+		
+		// Experiment... try normalizing the votes from each bit
+		if(total > 0) {
+			for(int i = 0;i < numBuckets;i++) votes[i] /= total;
+		}
+	}
+	
+	/**
+	 * Grows the specified row to hold at least the specified number of
+	 * bucket duty cycles, widening every row if needed.
+	 * 
+	 * @param row
+	 * @param length
+	 */
+	private void ensureLength(int row, int length) {
+		if(length > stride) {
+			int newStride = Math.max(length, stride * 2);
+			double[] widened = new double[rowBit.length * newStride];
+			for(int r = 0;r < numRows;r++) {
+				System.arraycopy(dutyCycles, r * stride, widened, r * newStride, rowLength[r]);
+			}
+			dutyCycles = widened;
+			stride = newStride;
+		}
+		if(length > rowLength[row]) {
+			rowLength[row] = length;
+		}
+	}
+}
@@ -27,12 +27,14 @@ import gnu.trove.list.array.TIntArrayList;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.numenta.nupic.util.ArrayUtils;
 import org.numenta.nupic.util.Deque;
+import org.numenta.nupic.util.SnapshotReader;
+import org.numenta.nupic.util.SnapshotWriter;
+import org.numenta.nupic.util.Snapshottable;
 import org.numenta.nupic.util.Tuple;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -65,11 +67,11 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
  * 
  * @author Numenta
  * @author David Ray
- * @see BitHistory
+ * @see BitHistoryTable
  */
 @JsonSerialize(using=CLAClassifierSerializer.class)
 @JsonDeserialize(using=CLAClassifierDeserializer.class)
-public class CLAClassifier {
+public class CLAClassifier implements Snapshottable {
 	int verbosity = 0;
 	/**
 	 * The alpha used to compute running averages of the bucket duty
@@ -103,12 +105,14 @@ public class CLAClassifier {
 	 */
 	Deque<Tuple> patternNZHistory;
 	/**
-	 * These are the bit histories. Each one is a BitHistory instance, stored in
-     * this dict, where the key is (bit, nSteps). The 'bit' is the index of the
-     * bit in the activation pattern and nSteps is the number of steps of
-     * prediction desired for that bit.
+	 * These are the bit histories, stored by (bit, nSteps). The 'bit' is the
+	 * index of the bit in the activation pattern and nSteps is the number of
+	 * steps of prediction desired for that bit, which the table addresses by
+	 * its index in {@link #steps}.
 	 */
-	Map<Tuple, BitHistory> activeBitHistory = new HashMap<Tuple, BitHistory>();
+	BitHistoryTable activeBitHistory;
+	/** Reusable buffer the votes of a single bit are placed into during inference */
+	double[] bitVotes = new double[1];
 	/**
 	 * This keeps track of the actual value to use for each bucket index. We
      * start with 1 bucket, no actual value so that the first infer has something
@@ -143,6 +147,7 @@ public class CLAClassifier {
 		this.verbosity = verbosity;
 		actualValues.add(null);
 		patternNZHistory = new Deque<Tuple>(steps.size() + 1);
+		activeBitHistory = new BitHistoryTable();
 	}
 	
 	/**
@@ -227,33 +232,41 @@ public class CLAClassifier {
 			retVal.setActualValues(actValues);
 			
 			// For each n-step prediction...
-			for(int nSteps : steps.toArray()) {
-				// Accumulate bucket index votes and actValues into these arrays
-				double[] sumVotes = new double[maxBucketIdx + 1];
-				double[] bitVotes = new double[maxBucketIdx + 1];
+			int numBuckets = maxBucketIdx + 1;
+			if(bitVotes.length < numBuckets) {
+				bitVotes = new double[Math.max(numBuckets, bitVotes.length * 2)];
+			}
+			for(int slot = 0;slot < steps.size();slot++) {
+				int nSteps = steps.get(slot);
+				// Accumulate bucket index votes into the returned array
+				double[] sumVotes = new double[numBuckets];
+				Arrays.fill(bitVotes, 0, numBuckets, 0);
 				
 				for(int bit : patternNZ) {
-					Tuple key = new Tuple(bit, nSteps);
-					BitHistory history = activeBitHistory.get(key);
-					if(history == null) continue;
+					int row = activeBitHistory.find(slot, bit);
+					if(row == -1) continue;
+					
+					activeBitHistory.infer(row, bitVotes, numBuckets);
 					
-					history.infer(learnIteration, bitVotes);
+					if(verbosity >= 2) {
+						System.out.println(String.format("bucket votes for %d[%d]: %s", bit, nSteps, 
+							Arrays.toString(Arrays.copyOf(bitVotes, numBuckets))));
+					}
 					
-					sumVotes = ArrayUtils.d_add(sumVotes, bitVotes);
+					for(int i = 0;i < numBuckets;i++) {
+						sumVotes[i] += bitVotes[i];
+					}
 				}
 				
 				// Return the votes for each bucket, normalized
 				double total = ArrayUtils.sum(sumVotes);
 				if(total > 0) {
-					sumVotes = ArrayUtils.divide(sumVotes, total);
+					for(int i = 0;i < numBuckets;i++) sumVotes[i] /= total;
 				}else{
 					// If all buckets have zero probability then simply make all of the
 			        // buckets equally likely. There is no actual prediction for this
 			        // timestep so any of the possible predictions are just as good.
-					if(sumVotes.length > 0) {
-						Arrays.fill(sumVotes, 1);
-						sumVotes = ArrayUtils.divide(sumVotes, sumVotes.length);
-					}
+					Arrays.fill(sumVotes, 1.0 / numBuckets);
 				}
 				
 				retVal.setStats(nSteps, sumVotes);
@@ -296,8 +309,8 @@ public class CLAClassifier {
 			int nSteps = -1;
 			int iteration = 0;
 			int[] learnPatternNZ = null;
-			for(int n : steps.toArray()) {
-				nSteps = n;
+			for(int slot = 0;slot < steps.size();slot++) {
+				nSteps = steps.get(slot);
 				// Do we have the pattern that should be assigned to this classification
 		        // in our pattern history? If not, skip it
 				boolean found = false;
@@ -316,12 +329,11 @@ public class CLAClassifier {
 		        // that we got nSteps time steps ago.
 				for(int bit : learnPatternNZ) {
 					// Get the history structure for this bit and step
-					Tuple key = new Tuple(bit, nSteps);
-					BitHistory history = activeBitHistory.get(key);
-					if(history == null) {
-						activeBitHistory.put(key, history = new BitHistory(this, bit, nSteps));
+					int row = activeBitHistory.findOrCreate(slot, bit);
+					double dc = activeBitHistory.store(row, learnIteration, bucketIdx, alpha);
+					if(verbosity >= 2) {
+						System.out.println(String.format("updated DC for %d[%d],  bucket %d to %f", bit, nSteps, bucketIdx, dc));
 					}
-					history.store(learnIteration, bucketIdx);
 				}
 			}
 		}
@@ -387,4 +399,95 @@ public class CLAClassifier {
 		
 		return c;
 	}
+	
+	/**
+	 * Writes the learned state of this classifier: the iteration counters,
+	 * the recent activation pattern history, the bit histories and the
+	 * actual value of each bucket. Actual values must be numbers or strings;
+	 * numbers are restored as {@link Double}s.
+	 * 
+	 * @param out	the snapshot being written
+	 */
+	@Override
+	public void writeSnapshot(SnapshotWriter out) {
+		out.writeIntArray(steps.toArray());
+		out.writeInt(learnIteration);
+		out.writeInt(recordNumMinusLearnIteration);
+		out.writeInt(maxBucketIdx);
+		
+		out.writeInt(patternNZHistory.size());
+		for(Tuple t : patternNZHistory) {
+			out.writeInt((int)t.get(0));
+			out.writeIntArray((int[])t.get(1));
+		}
+		
+		out.writeInt(activeBitHistory.size());
+		for(int row = 0;row < activeBitHistory.size();row++) {
+			out.writeInt(activeBitHistory.getBit(row));
+			out.writeInt(steps.get(activeBitHistory.getSlot(row)));
+			out.writeDoubleArray(activeBitHistory.getDutyCycles(row));
+			out.writeInt(activeBitHistory.getLastTotalUpdate(row));
+		}
+		
+		out.writeInt(actualValues.size());
+		for(Object value : actualValues) {
+			if(value == null) {
+				out.writeInt(0);
+			}else if(value instanceof Number) {
+				out.writeInt(1);
+				out.writeDouble(((Number)value).doubleValue());
+			}else if(value instanceof String) {
+				out.writeInt(2);
+				out.writeString((String)value);
+			}else{
+				throw new IllegalArgumentException("Can not snapshot actual value of type " + value.getClass());
+			}
+		}
+	}
+	
+	/**
+	 * Replaces the learned state of this classifier with the one read.
+	 * The classifier must have been constructed with the same steps.
+	 * 
+	 * @param in	the snapshot being read
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void readSnapshot(SnapshotReader in) {
+		int[] snapshotSteps = in.readIntArray();
+		if(!Arrays.equals(snapshotSteps, steps.toArray())) {
+			throw new IllegalArgumentException("Snapshot steps " + Arrays.toString(snapshotSteps) + 
+				" do not match the classifier's steps " + steps);
+		}
+		learnIteration = in.readInt();
+		recordNumMinusLearnIteration = in.readInt();
+		maxBucketIdx = in.readInt();
+		
+		patternNZHistory.clear();
+		int size = in.readInt();
+		for(int i = 0;i < size;i++) {
+			int iteration = in.readInt();
+			patternNZHistory.append(new Tuple(iteration, in.readIntArray()));
+		}
+		
+		activeBitHistory = new BitHistoryTable();
+		size = in.readInt();
+		for(int i = 0;i < size;i++) {
+			int bit = in.readInt();
+			int row = activeBitHistory.findOrCreate(steps.indexOf(in.readInt()), bit);
+			double[] stats = in.readDoubleArray();
+			activeBitHistory.set(row, stats, in.readInt());
+		}
+		
+		List<Object> values = (List<Object>)actualValues;
+		values.clear();
+		size = in.readInt();
+		for(int i = 0;i < size;i++) {
+			switch(in.readInt()) {
+				case 0: values.add(null); break;
+				case 1: values.add(in.readDouble()); break;
+				default: values.add(in.readString());
+			}
+		}
+	}
 }
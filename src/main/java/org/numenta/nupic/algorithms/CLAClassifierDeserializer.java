@@ -22,16 +22,12 @@
 
 package org.numenta.nupic.algorithms;
 
-import gnu.trove.list.TDoubleList;
 import gnu.trove.list.TIntList;
-import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.numenta.nupic.util.Deque;
 import org.numenta.nupic.util.Tuple;
@@ -82,30 +78,27 @@ public class CLAClassifierDeserializer extends JsonDeserializer<CLAClassifier> {
         }
         retVal.patternNZHistory = patterns;
         
-        Map<Tuple, BitHistory> bitHistoryMap = new HashMap<Tuple, BitHistory>();
+        BitHistoryTable bitHistories = new BitHistoryTable();
         String[] bithists = node.get("activeBitHistory").asText().split(";");
         for(String bh : bithists) {
         	String[] parts = bh.split("-");
         	
         	String[] left = parts[0].split(",");
-        	Tuple iteration = new Tuple(Integer.parseInt(left[0].trim()), Integer.parseInt(left[1].trim()));
+        	int bit = Integer.parseInt(left[0].trim());
+        	int row = bitHistories.findOrCreate(t.indexOf(Integer.parseInt(left[1].trim())), bit);
         	
-        	BitHistory bitHistory = new BitHistory();
+        	// right[0] is the history's id, which is derived from the key
         	String[] right = parts[1].split("=");
-        	bitHistory.id = right[0].trim();
         	
-        	TDoubleList dubs = new TDoubleArrayList();
         	String[] stats = right[1].substring(1, right[1].indexOf("}")).trim().split(",");
+        	double[] dubs = new double[stats.length];
         	for(int i = 0;i < stats.length;i++) {
-        		dubs.add(Double.parseDouble(stats[i].trim()));
+        		dubs[i] = Double.parseDouble(stats[i].trim());
         	}
-        	bitHistory.stats = dubs;
         	
-        	bitHistory.lastTotalUpdate = Integer.parseInt(right[2].trim());
-        	
-        	bitHistoryMap.put(iteration, bitHistory);
+        	bitHistories.set(row, dubs, Integer.parseInt(right[2].trim()));
         }
-        retVal.activeBitHistory = bitHistoryMap;
+        retVal.activeBitHistory = bitHistories;
         
         ArrayNode jn = (ArrayNode)node.get("actualValues");
         List<Object> l = new ArrayList<Object>();	
@@ -120,11 +113,6 @@ public class CLAClassifierDeserializer extends JsonDeserializer<CLAClassifier> {
         }
         retVal.actualValues = l;
         
-        //Go back and set the classifier on the BitHistory objects
-        for(Tuple tuple : bitHistoryMap.keySet()) {
-        	bitHistoryMap.get(tuple).classifier = retVal;
-        }
-        
         return retVal;
 	}
 }
@@ -22,6 +22,8 @@
 
 package org.numenta.nupic.algorithms;
 
+import gnu.trove.list.array.TDoubleArrayList;
+
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -60,11 +62,14 @@ public class CLAClassifierSerializer extends JsonSerializer<CLAClassifier> {
 		jgen.writeStringField("patternNZHistory", sb.toString());
 		
 		sb = new StringBuilder();
-		for(Tuple t : cla.activeBitHistory.keySet()) {
-			sb.append(t.get(0)).append(",").append(t.get(1)).append("-");
-			BitHistory bh = cla.activeBitHistory.get(t);
-			sb.append(bh.id).append("=").append(bh.stats).append("=").append(bh.lastTotalUpdate)
-			.append(";");
+		BitHistoryTable histories = cla.activeBitHistory;
+		for(int row = 0;row < histories.size();row++) {
+			int bit = histories.getBit(row);
+			int nSteps = cla.steps.get(histories.getSlot(row));
+			sb.append(bit).append(",").append(nSteps).append("-");
+			sb.append(bit).append("[").append(nSteps).append("]").append("=")
+			.append(new TDoubleArrayList(histories.getDutyCycles(row))).append("=")
+			.append(histories.getLastTotalUpdate(row)).append(";");
 		}
 		sb.setLength(sb.length() - 1);
 		jgen.writeStringField("activeBitHistory", sb.toString());
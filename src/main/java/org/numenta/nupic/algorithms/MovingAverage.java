@@ -27,14 +27,24 @@ import gnu.trove.list.array.TDoubleArrayList;
 
 /**
  * Helper class for computing moving average and sliding window
+ * <p>
+ * Instances keep their sliding window in a fixed size ring buffer, so
+ * {@link #next(double)} takes constant time and space however long
+ * the stream is.
  * 
  * @author Numenta
  * @author David Ray
  */
 public class MovingAverage {
-    private Calculation calc;
-    
     private int windowSize;
+    /** Ring buffer holding the last windowSize values */
+    private double[] window;
+    /** Index of the oldest value in the window */
+    private int head;
+    /** Number of values in the window */
+    private int size;
+    private double total;
+    private double average;
     
     /**
      * Constructs a new {@code MovingAverage}
@@ -57,12 +67,16 @@ public class MovingAverage {
             throw new IllegalArgumentException("Window size must be > 0");
         }
         this.windowSize = windowSize;
+        this.window = new double[windowSize];
         
-        calc = new Calculation();
-        calc.historicalValues = 
-            historicalValues == null || historicalValues.size() < 1 ?
-                new TDoubleArrayList(windowSize) : historicalValues;
-        calc.total = total != -1 ? total : calc.historicalValues.sum();
+        if(historicalValues != null) {
+            // Only the most recent windowSize values take part in the average
+            int start = Math.max(0, historicalValues.size() - windowSize);
+            for(int i = start;i < historicalValues.size();i++) {
+                window[size++] = historicalValues.get(i);
+            }
+        }
+        this.total = total != -1 ? total : getSlidingWindow().sum();
     }
     
     /**
@@ -77,24 +91,6 @@ public class MovingAverage {
      * @return
      */
     public static Calculation compute(TDoubleList slidingWindow, double total, double newVal, int windowSize) {
-        return compute(null, slidingWindow, total, newVal, windowSize);
-    }
-    
-    /**
-     * Internal method which does actual calculation
-     * 
-     * @param calc              Re-used calculation object
-     * @param slidingWindow     a list of previous values to use in the computation that
-     *                          will be modified and returned
-     * @param total             total the sum of the values in the  slidingWindow to be used in the
-     *                          calculation of the moving average
-     * @param newVal            newVal a new number to compute the new windowed average
-     * @param windowSize        windowSize how many values to use in the moving window
-     * @return
-     */
-    private static Calculation compute(
-        Calculation calc, TDoubleList slidingWindow, double total, double newVal, int windowSize) {
-        
         if(slidingWindow == null) {
             throw new IllegalArgumentException("slidingWindow cannot be null.");
         }
@@ -105,11 +101,7 @@ public class MovingAverage {
         slidingWindow.add(newVal);
         total += newVal;
         
-        if(calc == null) {
-            return new Calculation(slidingWindow, total / (double)slidingWindow.size(), total);
-        }
-        
-        return copyInto(calc, slidingWindow, total / (double)slidingWindow.size(), total);
+        return new Calculation(slidingWindow, total / (double)slidingWindow.size(), total);
     }
     
     /**
@@ -119,16 +111,29 @@ public class MovingAverage {
      * @return
      */
     public double next(double newValue) {
-        compute(calc, calc.historicalValues, calc.total, newValue, windowSize);
-        return calc.average;
+        if(size == windowSize) {
+            total -= window[head];
+            window[head] = newValue;
+            head = (head + 1) % windowSize;
+        }else{
+            window[(head + size++) % windowSize] = newValue;
+        }
+        total += newValue;
+        
+        return average = total / (double)size;
     }
     
     /**
-     * Returns the sliding window buffer used to calculate the moving average.
+     * Returns a copy of the values in the sliding window used to calculate
+     * the moving average, oldest first.
      * @return
      */
     public TDoubleList getSlidingWindow() {
-        return calc.historicalValues;
+        TDoubleList values = new TDoubleArrayList(windowSize);
+        for(int i = 0;i < size;i++) {
+            values.add(window[(head + i) % windowSize]);
+        }
+        return values;
     }
     
     /**
@@ -136,7 +141,7 @@ public class MovingAverage {
      * @return
      */
     public double getTotal() {
-        return calc.total;
+        return total;
     }
     
     /**
@@ -153,7 +158,11 @@ public class MovingAverage {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((calc == null) ? 0 : calc.hashCode());
+        long temp = Double.doubleToLongBits(average);
+        result = prime * result + (int)(temp ^ (temp >>> 32));
+        result = prime * result + getSlidingWindow().hashCode();
+        temp = Double.doubleToLongBits(total);
+        result = prime * result + (int)(temp ^ (temp >>> 32));
         result = prime * result + windowSize;
         return result;
     }
@@ -167,32 +176,17 @@ public class MovingAverage {
         if(getClass() != obj.getClass())
             return false;
         MovingAverage other = (MovingAverage)obj;
-        if(calc == null) {
-            if(other.calc != null)
-                return false;
-        } else if(!calc.equals(other.calc))
+        if(Double.doubleToLongBits(average) != Double.doubleToLongBits(other.average))
+            return false;
+        if(Double.doubleToLongBits(total) != Double.doubleToLongBits(other.total))
+            return false;
+        if(!getSlidingWindow().equals(other.getSlidingWindow()))
             return false;
         if(windowSize != other.windowSize)
             return false;
         return true;
     }
 
-    /**
-     * Internal method to update running totals.
-     * 
-     * @param c
-     * @param slidingWindow
-     * @param value
-     * @param total
-     * @return
-     */
-    private static Calculation copyInto(Calculation c, TDoubleList slidingWindow, double average, double total) {
-        c.historicalValues = slidingWindow;
-        c.average = average;
-        c.total = total;
-        return c;
-    }
-    
     /**
      * Container for calculated data
      */
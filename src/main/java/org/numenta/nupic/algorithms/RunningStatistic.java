@@ -0,0 +1,85 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.algorithms;
+
+/**
+ * Accumulates the mean and variance of a stream of values one value at a
+ * time using Welford's method, so that neither the values nor a second pass
+ * over them are needed.
+ * 
+ * @see Statistic
+ * @see AnomalyLikelihood
+ */
+public class RunningStatistic {
+    private long count;
+    private double mean;
+    /** Sum of squared differences from the current mean */
+    private double m2;
+    
+    
+    /**
+     * Adds a value to the accumulated statistics.
+     * @param value
+     */
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+    
+    /**
+     * Returns the number of values added.
+     * @return
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Returns the mean of the values added, or 0 if none were.
+     * @return
+     */
+    public double getMean() {
+        return mean;
+    }
+    
+    /**
+     * Returns the (population) variance of the values added,
+     * or 0 if none were.
+     * @return
+     */
+    public double getVariance() {
+        return count > 0 ? m2 / count : 0.0;
+    }
+    
+    /**
+     * Forgets all values added.
+     */
+    public void clear() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+    }
+}
@@ -132,6 +132,15 @@ public class AdaptiveScalarEncoder extends ScalarEncoder {
 		super.encodeIntoArray(input, output);
 	}
 
+	/**
+	 * Goes through {@link #encodeIntoArray(Double, int[])} so that the
+	 * range keeps adapting when this encoder is the child of another.
+	 */
+	@Override
+	public void encodeIntoArray(Double input, int[] output, int offset) {
+		encodeIntoSlice(input, output, offset);
+	}
+
 	private void setMinAndMax(Double input, boolean learn) {
 		if (slidingWindow.length >= windowSize) {
 			slidingWindow = deleteItem(slidingWindow, 0);
@@ -179,7 +179,12 @@ public class CategoryEncoder extends Encoder<String> {
 		}else{
 			value = categoryToIndex.get(input);
 			value = value == categoryToIndex.getNoEntryValue() ? 0 : value;
-			scalarEncoder.encodeIntoArray(value, output);
+			if(encodingCache == null || !encodingCache.copyTo((long)value, output)) {
+				scalarEncoder.encodeIntoArray(value, output);
+				if(encodingCache != null) {
+					encodingCache.put((long)value, output);
+				}
+			}
 		}
 
 		LOG.trace("input: {}, val: {}, value: {}, output: {}",
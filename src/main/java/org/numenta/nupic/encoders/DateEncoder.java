@@ -385,9 +385,17 @@ public class DateEncoder extends Encoder<Date> {
      * {@inheritDoc}
      */
     // Adapted from MultiEncoder
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     @Override
     public void encodeIntoArray(Date inputData, int[] output) {
+        encodeIntoArray(inputData, output, 0);
+    }
+
+    /**
+     * Has each sub-field encoder write straight into its slice of the output.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public void encodeIntoArray(Date inputData, int[] output, int offset) {
 
         if(inputData == null) {
             throw new IllegalArgumentException("DateEncoder requires a valid Date object but got null");
@@ -396,18 +404,45 @@ public class DateEncoder extends Encoder<Date> {
         // Get the scalar values for each sub-field
         TDoubleList scalars = getScalars(inputData);
 
+        long key = encodingCache == null ? -1 : getCacheKey(scalars);
+        if(key != -1 && encodingCache.copyTo(key, output, offset, getWidth())) {
+            return;
+        }
+
         int fieldCounter = 0;
         for (EncoderTuple t : getEncoders(this)) {
             Encoder encoder = t.getEncoder();
-            int offset = t.getOffset();
+            encoder.encodeIntoArray(scalars.get(fieldCounter), output, offset + t.getOffset());
 
-            int[] tempArray = new int[encoder.getWidth()];
-            encoder.encodeIntoArray(scalars.get(fieldCounter), tempArray);
+            ++fieldCounter;
+        }
 
-            System.arraycopy(tempArray, 0, output, offset, tempArray.length);
+        if(key != -1) {
+            encodingCache.put(key, output, offset, getWidth());
+        }
+    }
 
-            ++fieldCounter;
+    /**
+     * Combines the bucket indices of the sub-fields into one cache key,
+     * each sub-field being a digit whose base is the sub-encoder's width.
+     *
+     * @param scalars   the scalar value of each sub-field
+     * @return  the key, or -1 if the sub-fields have too many buckets to combine
+     */
+    @SuppressWarnings("rawtypes")
+    private long getCacheKey(TDoubleList scalars) {
+        long key = 0;
+        int fieldCounter = 0;
+        try {
+            for (EncoderTuple t : getEncoders(this)) {
+                Encoder encoder = t.getEncoder();
+                int bucket = encoder.getBucketIndices(scalars.get(fieldCounter++))[0];
+                key = Math.addExact(Math.multiplyExact(key, encoder.getWidth()), bucket);
+            }
+        } catch (ArithmeticException e) {
+            return -1;
         }
+        return key;
     }
 
     /**
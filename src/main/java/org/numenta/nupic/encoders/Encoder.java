@@ -28,6 +28,7 @@ import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -36,6 +37,7 @@ import java.util.Map;
 import org.numenta.nupic.FieldMetaType;
 import org.numenta.nupic.util.ArrayUtils;
 import org.numenta.nupic.util.MinMax;
+import org.numenta.nupic.util.SDR;
 import org.numenta.nupic.util.SparseObjectMatrix;
 import org.numenta.nupic.util.Tuple;
 import org.slf4j.Logger;
@@ -136,6 +138,10 @@ public abstract class Encoder<T> {
     protected List<?> bucketValues;
     protected LinkedHashMap<EncoderTuple, List<EncoderTuple>> encoders;
     protected List<String> scalarNames;
+    /** Optional cache of encodings by bucket index, see {@link #setCacheSize(int)} */
+    protected EncoderCache encodingCache;
+    /** Reused by the default {@link #encodeIntoArray(Object, int[], int)} */
+    private int[] sliceBuffer;
 
 
     protected Encoder() {}
@@ -510,6 +516,27 @@ public abstract class Encoder<T> {
     	return encLearningEnabled;
     }
 
+    /**
+     * Enables caching of the encodings produced by {@link #encodeIntoArray(Object, int[])},
+     * holding at most the specified number of them and evicting the least recently 
+     * used. Encoders whose output is determined by a bucket index (or another 
+     * quantization of the input) then turn repeated inputs into a copy of the 
+     * cached bits; other encoders ignore the cache. A size of 0 disables caching.
+     *
+     * @param	maxEntries	the maximum number of cached encodings
+     */
+    public void setCacheSize(int maxEntries) {
+    	encodingCache = maxEntries > 0 ? new EncoderCache(maxEntries) : null;
+    }
+
+    /**
+     * Returns the cache of encodings, with its hit and miss counts, or
+     * null if caching is disabled.
+     */
+    public EncoderCache getEncodingCache() {
+    	return encodingCache;
+    }
+
     /**
      * Returns the list of all field types of the specified {@link Encoder}.
      *
@@ -590,6 +617,46 @@ public abstract class Encoder<T> {
 	 */
 	public abstract void encodeIntoArray(T inputData, int[] output);
 
+	/**
+	 * Encodes inputData into the {@link #getWidth()} elements of the output
+	 * starting at the specified offset, leaving the rest of the output untouched.
+	 * This lets a parent such as {@link MultiEncoder} have each child write
+	 * straight into its slice of the parent's output. By default the encoding
+	 * is made in a reused buffer and copied into place; encoders which can
+	 * write at an offset override this.
+	 *
+	 * @param inputData		the data to encode
+	 * @param output		the array holding the encoding
+	 * @param offset		the index of the first element to write
+	 */
+	public void encodeIntoArray(T inputData, int[] output, int offset) {
+		encodeIntoSlice(inputData, output, offset);
+	}
+
+	/**
+	 * The default {@link #encodeIntoArray(Object, int[], int)}, for subclasses
+	 * which must route the encoding through their {@link #encodeIntoArray(Object, int[])}
+	 * even though a superclass writes at an offset directly.
+	 *
+	 * @param inputData		the data to encode
+	 * @param output		the array holding the encoding
+	 * @param offset		the index of the first element to write
+	 */
+	protected final void encodeIntoSlice(T inputData, int[] output, int offset) {
+		int width = getWidth();
+		if(offset == 0 && output.length == width) {
+			encodeIntoArray(inputData, output);
+			return;
+		}
+		if(sliceBuffer == null || sliceBuffer.length != width) {
+			sliceBuffer = new int[width];
+		}else{
+			Arrays.fill(sliceBuffer, 0);
+		}
+		encodeIntoArray(inputData, sliceBuffer);
+		System.arraycopy(sliceBuffer, 0, output, offset, width);
+	}
+
 	/**
 	 * Set whether learning is enabled.
 	 * @param 	learningEnabled		flag indicating whether learning is enabled
@@ -621,6 +688,32 @@ public abstract class Encoder<T> {
 		return output;
 	}
 
+	/**
+	 * Encodes inputData into the specified {@link SDR}, replacing its on bits.
+	 * By default the output of {@link #encodeIntoArray(Object, int[])} is
+	 * converted; encoders which can set their bits directly override this.
+	 *
+	 * @param inputData		the data to encode
+	 * @param output		the {@code SDR} to fill, of {@link #getWidth()} bits
+	 */
+	public void encodeIntoSDR(T inputData, SDR output) {
+		int[] dense = new int[output.getSize()];
+		encodeIntoArray(inputData, dense);
+		output.setDense(dense);
+	}
+
+	/**
+	 * Convenience wrapper for {@link #encodeIntoSDR(Object, SDR)}
+	 * @param inputData		the data to encode
+	 *
+	 * @return	a new {@link SDR} of {@link #getWidth()} bits holding the encoding
+	 */
+	public SDR encodeToSDR(T inputData) {
+		SDR output = new SDR(getWidth());
+		encodeIntoSDR(inputData, output);
+		return output;
+	}
+
 	/**
 	 * Return the field names for each of the scalar values returned by
      * .
@@ -1266,6 +1359,7 @@ public abstract class Encoder<T> {
 		protected boolean clipInput;
 		protected boolean forced;
 		protected String name;
+		protected int cacheSize;
 
 		protected Encoder<?> encoder;
 
@@ -1284,6 +1378,7 @@ public abstract class Encoder<T> {
 			encoder.setClipInput(clipInput);
 			encoder.setForced(forced);
 			encoder.setName(name);
+			encoder.setCacheSize(cacheSize);
 
 			return (E)encoder;
 		}
@@ -1328,5 +1423,9 @@ public abstract class Encoder<T> {
 			this.name = name;
 			return (K)this;
 		}
+		public K cacheSize(int cacheSize) {
+			this.cacheSize = cacheSize;
+			return (K)this;
+		}
 	}
 }
@@ -0,0 +1,205 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.encoders;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least recently used cache of the encodings produced by an 
+ * {@link Encoder}, keyed by the bucket index (or another quantization) of 
+ * the input. Encodings are held as the indexes of their on bits, so a hit 
+ * costs clearing the output and setting those bits.
+ * <p>
+ * Like the encoders using it, a cache is not thread safe.
+ *
+ * @see Encoder#setCacheSize(int)
+ */
+public class EncoderCache {
+    private final int capacity;
+    private final LinkedHashMap<Long, int[]> entries;
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    
+    /**
+     * Constructs a new {@code EncoderCache}
+     * 
+     * @param capacity  the maximum number of encodings held
+     */
+    public EncoderCache(int capacity) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+                if(size() > EncoderCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Writes the encoding cached under the specified key into the output,
+     * if there is one.
+     * 
+     * @param key       the bucket index or quantized input
+     * @param output    the encoder output array
+     * @return  true on a hit, false on a miss, in which case the output is untouched
+     */
+    public boolean copyTo(long key, int[] output) {
+        return copyTo(key, output, 0, output.length);
+    }
+    
+    /**
+     * Writes the encoding cached under the specified key into the slice of
+     * the output holding an encoder's bits, if there is one.
+     * 
+     * @param key       the bucket index or quantized input
+     * @param output    the array holding the encoder output
+     * @param offset    the index of the first element of the slice
+     * @param width     the length of the slice
+     * @return  true on a hit, false on a miss, in which case the output is untouched
+     */
+    public boolean copyTo(long key, int[] output, int offset, int width) {
+        int[] onBits = entries.get(key);
+        if(onBits == null) {
+            misses++;
+            return false;
+        }
+        
+        hits++;
+        Arrays.fill(output, offset, offset + width, 0);
+        for(int bit : onBits) {
+            output[offset + bit] = 1;
+        }
+        return true;
+    }
+    
+    /**
+     * Caches the specified encoding under the specified key, evicting the
+     * least recently used encoding if the cache is full.
+     * 
+     * @param key       the bucket index or quantized input
+     * @param encoding  the encoder output array
+     */
+    public void put(long key, int[] encoding) {
+        put(key, encoding, 0, encoding.length);
+    }
+    
+    /**
+     * Caches the encoding held in the specified slice of an array under 
+     * the specified key, evicting the least recently used encoding if the 
+     * cache is full.
+     * 
+     * @param key       the bucket index or quantized input
+     * @param encoding  the array holding the encoder output
+     * @param offset    the index of the first element of the slice
+     * @param width     the length of the slice
+     */
+    public void put(long key, int[] encoding, int offset, int width) {
+        int count = 0;
+        for(int i = offset;i < offset + width;i++) {
+            if(encoding[i] != 0) count++;
+        }
+        int[] onBits = new int[count];
+        for(int i = 0, k = 0;k < count;i++) {
+            if(encoding[offset + i] != 0) onBits[k++] = i;
+        }
+        entries.put(key, onBits);
+    }
+    
+    /**
+     * Returns the maximum number of encodings held
+     * @return
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Returns the number of encodings held
+     * @return
+     */
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Returns the number of lookups which found an encoding
+     * @return
+     */
+    public long getHits() {
+        return hits;
+    }
+    
+    /**
+     * Returns the number of lookups which found no encoding
+     * @return
+     */
+    public long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * Returns the number of encodings evicted to make room for newer ones
+     * @return
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+    
+    /**
+     * Returns the fraction of lookups which found an encoding,
+     * or 0 if there were none.
+     * @return
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : hits / (double)lookups;
+    }
+    
+    /**
+     * Removes all encodings, which must be done whenever a change
+     * to the encoder alters the encoding of a key. The counters are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+    
+    @Override
+    public String toString() {
+        return "EncoderCache[size=" + size() + ", capacity=" + capacity + ", hits=" + hits + 
+            ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
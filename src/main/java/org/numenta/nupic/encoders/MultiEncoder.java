@@ -25,8 +25,16 @@ package org.numenta.nupic.encoders;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +45,13 @@ import org.numenta.nupic.util.Tuple;
  * A MultiEncoder encodes a dictionary or object with
  * multiple components. A MultiEncode contains a number
  * of sub-encoders, each of which encodes a separate component.
+ * <p>
+ * Components are read from {@link Map} inputs by key, and from other
+ * objects through a public getter ({@code getX()} or {@code isX()}), a public
+ * no argument method or a public field of the same name; a {@link FieldAccessor}
+ * may also be given when a sub-encoder is added. The way to read each field is
+ * resolved once per input class, and every sub-encoder then writes straight into
+ * its slice of the output, so encoding a record neither reflects nor allocates.
  *
  * @see Encoder
  * @see EncoderResult
@@ -51,6 +66,44 @@ public class MultiEncoder extends Encoder<Object> {
 
 	protected int width;
 
+	/** The sub-encoders in output order, see {@link #addEncoder(String, Encoder, FieldAccessor)} */
+	private Slot[] slots = new Slot[0];
+	/** Field accessors resolved by input class */
+	private Map<Class<?>, FieldAccessor[]> accessorsByClass = new HashMap<Class<?>, FieldAccessor[]>();
+	/** The input class last resolved and its accessors */
+	private Class<?> lastInputClass;
+	private FieldAccessor[] lastAccessors;
+
+	/**
+	 * Reads the value of one field from an input record.
+	 */
+	public interface FieldAccessor {
+		/**
+		 * Returns the value of the field in the specified input
+		 * @param input		the input record
+		 * @return
+		 */
+		public Object get(Object input);
+	}
+
+	/**
+	 * A sub-encoder with the field it encodes and its offset in the output.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static class Slot {
+		private final String name;
+		private final Encoder encoder;
+		private final int offset;
+		private final FieldAccessor accessor;
+
+		private Slot(String name, Encoder encoder, int offset, FieldAccessor accessor) {
+			this.name = name;
+			this.encoder = encoder;
+			this.offset = offset;
+			this.accessor = accessor;
+		}
+	}
+
 	/**
 	 * Constructs a new {@code MultiEncoder}
 	 */
@@ -82,18 +135,22 @@ public class MultiEncoder extends Encoder<Object> {
 	/**
 	 * {@inheritDoc}
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public void encodeIntoArray(Object input, int[] output) {
-		for (EncoderTuple t : getEncoders(this)) {
-			String name = t.getName();
-			Encoder encoder = t.getEncoder();
-			int offset = t.getOffset();
-
-			int[] tempArray = new int[encoder.getWidth()];
-			encoder.encodeIntoArray(getInputValue(input, name), tempArray);
+		encodeIntoArray(input, output, 0);
+	}
 
-			System.arraycopy(tempArray, 0, output, offset, tempArray.length);
+	/**
+	 * Has each sub-encoder write the value of its field straight into
+	 * its slice of the output.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void encodeIntoArray(Object input, int[] output, int offset) {
+		FieldAccessor[] accessors = getAccessors(input);
+		for(int i = 0;i < slots.length;i++) {
+			Slot slot = slots[i];
+			slot.encoder.encodeIntoArray(accessors[i].get(input), output, offset + slot.offset);
 		}
 	}
 
@@ -110,24 +167,48 @@ public class MultiEncoder extends Encoder<Object> {
 		return new int[]{};
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@SuppressWarnings("unchecked")
 	public List<int[]> encodeEachField(Object input) {
 		List<int[]> encodings = new ArrayList<int[]>();
 
-		for (EncoderTuple t : getEncoders(this)) {
-			String name = t.getName();
-			Encoder encoder = t.getEncoder();
-
-			encodings.add(encoder.encode(getInputValue(input, name)));
+		FieldAccessor[] accessors = getAccessors(input);
+		for(int i = 0;i < slots.length;i++) {
+			encodings.add(slots[i].encoder.encode(accessors[i].get(input)));
 		}
 
 		return encodings;
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
+	/**
+	 * Adds a sub-encoder for the named field of the input
+	 *
+	 * @param name		the field name
+	 * @param child		the sub-encoder
+	 */
+	@SuppressWarnings("rawtypes")
 	public void addEncoder(String name, Encoder child) {
+		addEncoder(name, child, null);
+	}
+
+	/**
+	 * Adds a sub-encoder for the named field of the input, which
+	 * is read with the specified {@link FieldAccessor}.
+	 *
+	 * @param name		the field name
+	 * @param child		the sub-encoder
+	 * @param accessor	reads the field from input records, or null to
+	 * 					read it by key or by name
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void addEncoder(String name, Encoder child, FieldAccessor accessor) {
 		super.addEncoder(this, name, child, width);
 
+		slots = Arrays.copyOf(slots, slots.length + 1);
+		slots[slots.length - 1] = new Slot(name, child, width, accessor);
+		accessorsByClass.clear();
+		lastInputClass = null;
+		lastAccessors = null;
+
 		for (Object d : child.getDescription()) {
 			Tuple dT = (Tuple) d;
 			description.add(new Tuple(dT.get(0), (int)dT.get(1) + getWidth()));
@@ -135,6 +216,120 @@ public class MultiEncoder extends Encoder<Object> {
 		width += child.getWidth();
 	}
 
+	/**
+	 * Returns the accessors reading each sub-encoder's field from
+	 * inputs of the specified input's class, resolving them the first
+	 * time the class is seen.
+	 *
+	 * @param input		the input record
+	 * @return
+	 */
+	private FieldAccessor[] getAccessors(Object input) {
+		if(input == null) {
+			throw new IllegalArgumentException("MultiEncoder requires an input record but got null");
+		}
+
+		Class<?> inputClass = input.getClass();
+		if(inputClass == lastInputClass) {
+			return lastAccessors;
+		}
+
+		FieldAccessor[] accessors = accessorsByClass.get(inputClass);
+		if(accessors == null) {
+			accessors = new FieldAccessor[slots.length];
+			for(int i = 0;i < slots.length;i++) {
+				accessors[i] = slots[i].accessor != null ?
+					slots[i].accessor : resolveAccessor(inputClass, slots[i].name);
+			}
+			accessorsByClass.put(inputClass, accessors);
+		}
+		lastInputClass = inputClass;
+		lastAccessors = accessors;
+		return accessors;
+	}
+
+	/**
+	 * Returns an accessor reading the named field from inputs of the
+	 * specified class: by key for {@link Map}s, otherwise through a 
+	 * {@link MethodHandle} on a getter, method or field of that name.
+	 *
+	 * @param inputClass	the class of the input records
+	 * @param fieldName		the field name
+	 * @return
+	 */
+	private static FieldAccessor resolveAccessor(Class<?> inputClass, final String fieldName) {
+		if(Map.class.isAssignableFrom(inputClass)) {
+			return new FieldAccessor() {
+				@SuppressWarnings("rawtypes")
+				@Override public Object get(Object input) {
+					Map map = (Map)input;
+					Object value = map.get(fieldName);
+					if(value == null && !map.containsKey(fieldName)) {
+						throw new IllegalArgumentException("Unknown field name " + fieldName +
+							" known fields are: " + map.keySet() + ". ");
+					}
+					return value;
+				}
+			};
+		}
+
+		String suffix = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+		MethodHandle handle = null;
+		try {
+			for(String methodName : new String[] { "get" + suffix, "is" + suffix, fieldName }) {
+				Method method = findMethod(inputClass, methodName);
+				if(method != null) {
+					method.setAccessible(true);
+					handle = MethodHandles.lookup().unreflect(method);
+					break;
+				}
+			}
+			if(handle == null) {
+				Field field = inputClass.getField(fieldName);
+				if(Modifier.isStatic(field.getModifiers())) {
+					throw new NoSuchFieldException(fieldName);
+				}
+				field.setAccessible(true);
+				handle = MethodHandles.lookup().unreflectGetter(field);
+			}
+		}catch(NoSuchFieldException e) {
+			throw new IllegalArgumentException("Unknown field name " + fieldName + 
+				" for input class " + inputClass.getName() + ". ");
+		}catch(IllegalAccessException | SecurityException e) {
+			throw new IllegalArgumentException("Cannot read field " + fieldName + 
+				" of input class " + inputClass.getName(), e);
+		}
+
+		final MethodHandle getter = handle.asType(MethodType.methodType(Object.class, Object.class));
+		return new FieldAccessor() {
+			@Override public Object get(Object input) {
+				try {
+					return (Object)getter.invokeExact(input);
+				}catch(RuntimeException | Error e) {
+					throw e;
+				}catch(Throwable t) {
+					throw new IllegalStateException("Error reading field " + fieldName, t);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the public, non static, no argument method of the specified
+	 * name, or null if there is none.
+	 */
+	private static Method findMethod(Class<?> inputClass, String methodName) {
+		try {
+			Method method = inputClass.getMethod(methodName);
+			if(Modifier.isStatic(method.getModifiers()) || method.getReturnType() == void.class) {
+				return null;
+			}
+			return method;
+		}catch(NoSuchMethodException e) {
+			return null;
+		}
+	}
+
 	@SuppressWarnings("rawtypes")
 	public void addMultipleEncoders(Map<String, Map<String, Object>> fieldEncodings) {
 		// Sort the encoders so that they end up in a controlled order
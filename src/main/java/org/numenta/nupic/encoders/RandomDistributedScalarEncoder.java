@@ -22,14 +22,19 @@
 
 package org.numenta.nupic.encoders;
 
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 
 import org.numenta.nupic.FieldMetaType;
 import org.numenta.nupic.util.MersenneTwister;
+import org.numenta.nupic.util.SnapshotReader;
+import org.numenta.nupic.util.SnapshotWriter;
+import org.numenta.nupic.util.Snapshottable;
 import org.numenta.nupic.util.Tuple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,7 +88,7 @@ import org.slf4j.LoggerFactory;
  * @author Anubhav Chaturvedi
  */
 
-public class RandomDistributedScalarEncoder extends Encoder<Double> {
+public class RandomDistributedScalarEncoder extends Encoder<Double> implements Snapshottable {
 
 	private static final Logger LOG = LoggerFactory.getLogger(RandomDistributedScalarEncoder.class);
 
@@ -100,7 +105,16 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 	int maxIndex;
 	int numRetry;
 
-	HashMap<Integer, List<Integer>> bucketMap;
+	/** The representation of each created bucket, indexed by bucket index */
+	int[][] buckets;
+	/** For each bit, the indexes of the buckets whose representation contains it */
+	TIntArrayList[] bitBuckets;
+	/** Number of buckets to create beyond a newly requested index */
+	int bucketLookahead;
+
+	/** Scratch overlap counts, indexed by bucket index, used while creating a bucket */
+	private int[] overlapScratch;
+	private TIntArrayList touchedScratch = new TIntArrayList();
 
 	RandomDistributedScalarEncoder() {
 	}
@@ -189,70 +203,119 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 		setOffset(offset);
 
 		/*
-		 * This HashMap maps a bucket index into its bit representation We
-		 * initialize the HashMap with a single bucket with index 0
+		 * buckets maps a bucket index into its bit representation and
+		 * bitBuckets maps each bit back to the buckets containing it. We
+		 * initialize them with a single bucket at the middle index
 		 */
-		bucketMap = new HashMap<Integer, List<Integer>>();
+		buckets = new int[maxBuckets][];
+		bitBuckets = new TIntArrayList[getN()];
+		for (int i = 0; i < getN(); i++)
+			bitBuckets[i] = new TIntArrayList(4);
+		overlapScratch = new int[maxBuckets];
+
 		// generate the random permutation
 		ArrayList<Integer> temp = new ArrayList<Integer>(getN());
 		for (int i = 0; i < getN(); i++)
 			temp.add(i, i);
 		java.util.Collections.shuffle(temp, rng);
-		bucketMap.put(getMinIndex(), temp.subList(0, getW()));
+		int[] representation = new int[getW()];
+		for (int i = 0; i < representation.length; i++)
+			representation[i] = temp.get(i);
+		putBucket(getMinIndex(), representation);
 
 		// How often we need to retry when generating valid encodings
 		setNumRetry(0);
 	}
 
 	/**
-	 * Create the given bucket index. Recursively create as many in-between
-	 * bucket indices as necessary.
+	 * Stores the representation of the given bucket index and adds
+	 * the bucket to the inverted index of each of its bits.
+	 *
+	 * @param index				the bucket index
+	 * @param representation	the indices of the bucket's 'on' bits
+	 */
+	void putBucket(int index, int[] representation) {
+		if (buckets[index] != null) {
+			for (int bit : buckets[index])
+				bitBuckets[bit].remove(index);
+		}
+		buckets[index] = representation;
+		for (int bit : representation)
+			bitBuckets[bit].add(index);
+	}
+
+	/**
+	 * Returns {@code true} if the bucket at the given index has been created.
+	 *
+	 * @param index	the bucket index
+	 * @return
+	 */
+	boolean hasBucket(int index) {
+		return index >= 0 && index < buckets.length && buckets[index] != null;
+	}
+
+	/**
+	 * Returns the number of buckets created so far.
+	 * @return
+	 */
+	public int getNumBuckets() {
+		int count = 0;
+		for (int[] bucket : buckets)
+			if (bucket != null)
+				count++;
+		return count;
+	}
+
+	/**
+	 * Create the given bucket index, along with as many in-between bucket
+	 * indices as necessary. Buckets are created one at a time outwards from
+	 * the current range, so any distance can be covered without recursion.
 	 *
 	 * @param index the index at which bucket needs to be created
 	 * @throws IllegalStateException
 	 */
 	public void createBucket(int index) throws IllegalStateException {
-		if (index < getMinIndex()) {
-			if (index == getMinIndex() - 1) {
-				/*
-				 * Create a new representation that has exactly w-1 overlapping
-				 * bits as the min representation
-				 */
-				bucketMap.put(index, newRepresentation(getMinIndex(), index));
-				setMinIndex(index);
-			} else {
-				// Recursively create all the indices above and then this index
-				createBucket(index + 1);
-				createBucket(index);
-			}
-		} else {
-			if (index == getMaxIndex() + 1) {
-				/*
-				 * Create a new representation that has exactly w-1 overlapping
-				 * bits as the max representation
-				 */
-				bucketMap.put(index, newRepresentation(getMaxIndex(), index));
-				setMaxIndex(index);
-			} else {
-				// Recursively create all the indices below and then this index
-				createBucket(index - 1);
-				createBucket(index);
-			}
+		while (index < getMinIndex()) {
+			/*
+			 * Create a new representation that has exactly w-1 overlapping
+			 * bits as the min representation
+			 */
+			int newIndex = getMinIndex() - 1;
+			putBucket(newIndex, newRepresentation(getMinIndex(), newIndex));
+			setMinIndex(newIndex);
+		}
+		while (index > getMaxIndex()) {
+			/*
+			 * Create a new representation that has exactly w-1 overlapping
+			 * bits as the max representation
+			 */
+			int newIndex = getMaxIndex() + 1;
+			putBucket(newIndex, newRepresentation(getMaxIndex(), newIndex));
+			setMaxIndex(newIndex);
 		}
 	}
 
 	/**
 	 * Get a new representation for newIndex that overlaps with the
-	 * representation at index by exactly w-1 bits
+	 * representation at index by exactly w-1 bits.
+	 * <p>
+	 * The overlap of the candidate with every existing bucket, less the bit
+	 * being replaced, is counted once through the inverted bit index. Each
+	 * randomly drawn bit is then checked against only the buckets containing
+	 * it, which accepts exactly the bits {@link #newRepresentationOK(int[], int)}
+	 * would.
 	 *
 	 * @param index
 	 * @param newIndex
 	 * @throws IllegalStateException
 	 */
-	public List<Integer> newRepresentation(int index, int newIndex)
+	public int[] newRepresentation(int index, int newIndex)
 			throws IllegalStateException {
-		List<Integer> newRepresentation = new ArrayList<Integer>(
-				bucketMap.get(index));
+		if (newIndex < getMinIndex() - 1 || newIndex > getMaxIndex() + 1)
+			throw new IllegalStateException(
+					"newIndex must be within one of existing indices");
+
+		int[] base = buckets[index];
 
 		/*
 		 * Choose the bit we will replace in this representation. We need to
@@ -260,106 +323,118 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 		 * then there is a 1 in w chance of the same bit being replaced in
 		 * neighboring representations, which is fairly high
 		 */
-
 		int ri = newIndex % getW();
 
+		// Overlap of each bucket with the bits which are kept
+		int[] overlaps = overlapScratch;
+		TIntArrayList touched = touchedScratch;
+		for (int i = 0; i < base.length; i++) {
+			if (i == ri)
+				continue;
+			TIntArrayList holders = bitBuckets[base[i]];
+			for (int k = 0; k < holders.size(); k++) {
+				int j = holders.get(k);
+				if (overlaps[j]++ == 0)
+					touched.add(j);
+			}
+		}
+
+		/*
+		 * Count the buckets whose overlap is only acceptable if they also
+		 * contain the new bit. Far buckets qualify only if they already
+		 * share more than maxOverlap bits, so they are among those touched.
+		 */
+		int required = 0;
+		int nearFrom = Math.max(getMinIndex(), newIndex - getW() + 1);
+		int nearTo = Math.min(getMaxIndex(), newIndex + getW() - 1);
+		for (int j = nearFrom; j <= nearTo; j++) {
+			if (!overlapOK(j, newIndex, overlaps[j]))
+				required++;
+		}
+		for (int k = 0; k < touched.size(); k++) {
+			int j = touched.get(k);
+			if (Math.abs(j - newIndex) >= getW() && !overlapOK(j, newIndex, overlaps[j]))
+				required++;
+		}
+
 		// Now we choose a bit such that the overlap rules are satisfied.
 		int newBit = rng.nextInt(getN());
-		newRepresentation.set(ri, newBit);
-		while (bucketMap.get(index).contains(newBit)
-				|| !newRepresentationOK(newRepresentation, newIndex)) {
+		while (!newBitOK(index, newIndex, newBit, required)) {
 			setNumRetry(getNumRetry() + 1);
 			newBit = rng.nextInt(getN());
-			newRepresentation.set(ri, newBit);
 		}
 
+		for (int k = 0; k < touched.size(); k++)
+			overlaps[touched.get(k)] = 0;
+		touched.resetQuick();
+
+		int[] newRepresentation = base.clone();
+		newRepresentation[ri] = newBit;
 		return newRepresentation;
 	}
 
+	/**
+	 * Checks a candidate bit for the representation being created by
+	 * {@link #newRepresentation(int, int)}, using the overlaps it counted.
+	 *
+	 * @param index		the index of the bucket the new one is derived from
+	 * @param newIndex	the index of the new bucket
+	 * @param newBit	the candidate bit
+	 * @param required	the number of buckets which must contain the new bit
+	 * @return {@code true} if the candidate satisfies all our overlap rules
+	 */
+	private boolean newBitOK(int index, int newIndex, int newBit, int required) {
+		TIntArrayList holders = bitBuckets[newBit];
+		int found = 0;
+		for (int k = 0; k < holders.size(); k++) {
+			int j = holders.get(k);
+			if (j == index || !overlapOK(j, newIndex, overlapScratch[j] + 1))
+				return false;
+			if (!overlapOK(j, newIndex, overlapScratch[j]))
+				found++;
+		}
+		return found == required;
+	}
+
 	/**
 	 * Check if this new candidate representation satisfies all our
-	 * overlap rules. Since we know that neighboring representations differ by
-	 * at most one bit, we compute running overlaps.
+	 * overlap rules. The overlaps are counted through the inverted bit
+	 * index, so only buckets sharing a bit with newRep are visited beyond
+	 * the w-1 neighbors on each side.
 	 *
 	 * @param newRep Encoded SDR to be considered
 	 * @param newIndex The index being considered
 	 * @return {@code true} if newRep satisfies all our overlap rules
 	 * @throws IllegalStateException
 	 */
-	public boolean newRepresentationOK(List<Integer> newRep, int newIndex) {
-		if (newRep.size() != getW())
+	public boolean newRepresentationOK(int[] newRep, int newIndex) {
+		if (newRep.length != getW())
 			return false;
 		if (newIndex < getMinIndex() - 1 || newIndex > getMaxIndex() + 1)
 			throw new IllegalStateException(
 					"newIndex must be within one of existing indices");
 
-		// A binary representation of newRep. We will use this to test
-		// containment
-		boolean[] newRepBinary = new boolean[getN()];
-		Arrays.fill(newRepBinary, false);
-		for (int index : newRep)
-			newRepBinary[index] = true;
-
-		// Midpoint
-		int midIdx = getMaxBuckets() / 2;
-
-		// Start by checking the overlap at minIndex
-		int runningOverlap = countOverlap(bucketMap.get(getMinIndex()), newRep);
-		if (!overlapOK(getMinIndex(), newIndex, runningOverlap))
-			return false;
-
-		// Compute running overlaps all the way to the midpoint
-		for (int i = getMinIndex() + 1; i < midIdx + 1; i++) {
-			// This is the bit that is going to change
-			int newBit = (i - 1) % getW();
-
-			// Update our running overlap
-			if (newRepBinary[bucketMap.get(i - 1).get(newBit)])
-				runningOverlap--;
-			if (newRepBinary[bucketMap.get(i).get(newBit)])
-				runningOverlap++;
+		TIntIntHashMap overlaps = new TIntIntHashMap();
+		for (int bit : newRep) {
+			TIntArrayList holders = bitBuckets[bit];
+			for (int k = 0; k < holders.size(); k++)
+				overlaps.adjustOrPutValue(holders.get(k), 1, 1);
+		}
 
-			// Verify our rules
-			if (!overlapOK(i, newIndex, runningOverlap))
+		int nearFrom = Math.max(getMinIndex(), newIndex - getW() + 1);
+		int nearTo = Math.min(getMaxIndex(), newIndex + getW() - 1);
+		for (int j = nearFrom; j <= nearTo; j++) {
+			if (!overlapOK(j, newIndex, overlaps.get(j)))
 				return false;
 		}
-
-		// At this point, runningOverlap contains the overlap for midIdx
-		// Compute running overlaps all the way to maxIndex
-		for (int i = midIdx + 1; i <= getMaxIndex(); i++) {
-			int newBit = i % getW();
-
-			// Update our running overlap
-			if (newRepBinary[bucketMap.get(i - 1).get(newBit)])
-				runningOverlap--;
-			if (newRepBinary[bucketMap.get(i).get(newBit)])
-				runningOverlap++;
-
-			// Verify our rules
-			if (!overlapOK(i, newIndex, runningOverlap))
+		for (TIntIntIterator it = overlaps.iterator(); it.hasNext();) {
+			it.advance();
+			if (!overlapOK(it.key(), newIndex, it.value()))
 				return false;
 		}
 		return true;
 	}
 
-	/**
-	 * Get the overlap between two representations. rep1 and rep2 are
-	 * {@link List} of non-zero indices.
-	 *
-	 * @param rep1 The first representation for overlap calculation
-	 * @param rep2 The second representation for overlap calculation
-	 * @return The number of 'on' bits that overlap
-	 */
-	public int countOverlap(List<Integer> rep1, List<Integer> rep2) {
-		int overlap = 0;
-		for (int index : rep1) {
-			for (int index2 : rep2)
-				if (index == index2)
-					overlap++;
-		}
-		return overlap;
-	}
-
 	/**
 	 * Get the overlap between two representations. rep1 and rep2 are arrays
 	 * of non-zero indices.
@@ -397,7 +472,7 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 
 	/**
 	 * Check if the overlap between the buckets at indices i and j are
-	 * acceptable. The overlap is calculate from the bucketMap.
+	 * acceptable. The overlap is calculated from the created buckets.
 	 *
 	 * @param i The index of the bucket to be compared
 	 * @param j The index of the bucket to be compared
@@ -417,12 +492,10 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 	 * @throws IllegalStateException
 	 */
 	public int countOverlapIndices(int i, int j) throws IllegalStateException {
-		boolean containsI = bucketMap.containsKey(i);
-		boolean containsJ = bucketMap.containsKey(j);
+		boolean containsI = hasBucket(i);
+		boolean containsJ = hasBucket(j);
 		if (containsI && containsJ) {
-			List<Integer> rep1 = bucketMap.get(i);
-			List<Integer> rep2 = bucketMap.get(j);
-			return countOverlap(rep1, rep2);
+			return countOverlap(buckets[i], buckets[j]);
 		} else if (!containsI && !containsJ)
 			throw new IllegalStateException("index " + i + " and " + j + " don't exist");
 		else if(!containsI)
@@ -433,14 +506,15 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 
 	/**
 	 * Given a bucket index, return the list of indices of the 'on' bits. If the
-	 * bucket index does not exist, it is created. If the index falls outside
-	 * our range we clip it.
+	 * bucket index does not exist, it is created, together with the next
+	 * {@link #getBucketLookahead()} buckets beyond it. If the index falls
+	 * outside our range we clip it.
 	 *
 	 * @param index The bucket index
-	 * @return The list of active bits in the representation
+	 * @return The active bits in the representation, which must not be modified
 	 * @throws IllegalStateException
 	 */
-	public List<Integer> mapBucketIndexToNonZeroBits(int index)
+	public int[] mapBucketIndexToNonZeroBits(int index)
 			throws IllegalStateException {
 		if (index < 0)
 			index = 0;
@@ -448,11 +522,14 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 		if (index >= getMaxBuckets())
 			index = getMaxBuckets() - 1;
 
-		if (!bucketMap.containsKey(index)) {
+		if (buckets[index] == null) {
 			LOG.trace("Adding additional buckets to handle index={}", index);
-			createBucket(index);
+			if (index < getMinIndex())
+				createBucket(Math.max(0, index - bucketLookahead));
+			else
+				createBucket(Math.min(getMaxBuckets() - 1, index + bucketLookahead));
 		}
-		return bucketMap.get(index);
+		return buckets[index];
 	}
 
 	/**
@@ -568,6 +645,13 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 		return maxIndex;
 	}
 
+	/**
+	 * @return the number of buckets created beyond a newly requested index
+	 */
+	public int getBucketLookahead() {
+		return bucketLookahead;
+	}
+
 	/**
 	 * @return the number of retry to create new bucket
 	 */
@@ -611,6 +695,20 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 		this.maxIndex = maxIndex;
 	}
 
+	/**
+	 * Sets the number of buckets to create beyond an index outside the
+	 * current range when it is first encoded, so that steadily drifting
+	 * values find their buckets already made. Changes the buckets made for
+	 * a given sequence of inputs, so it defaults to 0.
+	 *
+	 * @param bucketLookahead	the number of extra buckets, 0 or more
+	 */
+	public void setBucketLookahead(int bucketLookahead) {
+		if (bucketLookahead < 0)
+			throw new IllegalArgumentException("bucketLookahead must not be negative: " + bucketLookahead);
+		this.bucketLookahead = bucketLookahead;
+	}
+
 	/**
 	 * @param numRetry New number of retries for new representation
 	 */
@@ -618,6 +716,52 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 		this.numRetry = numRetry;
 	}
 
+	/**
+	 * Writes the buckets created so far, along with the offset, the index
+	 * range and the state of the random number generator used to create
+	 * further buckets.
+	 *
+	 * @param out	the snapshot being written
+	 */
+	@Override
+	public void writeSnapshot(SnapshotWriter out) {
+		out.writeBoolean(offset != null);
+		out.writeDouble(offset == null ? 0 : offset);
+		out.writeInt(minIndex);
+		out.writeInt(maxIndex);
+		out.writeInt(numRetry);
+		out.writeRandom(rng);
+		for (int index = minIndex; index <= maxIndex; index++)
+			out.writeIntArray(buckets[index]);
+	}
+
+	/**
+	 * Replaces the buckets of this encoder, which must have been built with
+	 * the same n, w and maxBuckets, with the ones read.
+	 *
+	 * @param in	the snapshot being read
+	 */
+	@Override
+	public void readSnapshot(SnapshotReader in) {
+		boolean hasOffset = in.readBoolean();
+		double snapshotOffset = in.readDouble();
+		setOffset(hasOffset ? Double.valueOf(snapshotOffset) : null);
+		setMinIndex(in.readInt());
+		setMaxIndex(in.readInt());
+		setNumRetry(in.readInt());
+		in.readRandom(rng);
+		buckets = new int[getMaxBuckets()][];
+		for (int i = 0; i < bitBuckets.length; i++)
+			bitBuckets[i].resetQuick();
+		for (int index = minIndex; index <= maxIndex; index++) {
+			int[] representation = in.readIntArray();
+			if (representation.length != getW())
+				throw new IllegalArgumentException("Snapshot bucket width "
+						+ representation.length + " does not match w=" + getW());
+			putBucket(index, representation);
+		}
+	}
+
 	@Override
 	public String toString() {
 		// TODO don't mix StringBuilder appending with String concatenation
@@ -632,9 +776,9 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 		dumpString.append("  numTries: " + getNumRetry() + "\n");
 		dumpString.append("  name: " + getName() + "\n");
 		dumpString.append("  buckets : \n");
-		for (int index : bucketMap.keySet()) {
+		for (int index = getMinIndex(); index <= getMaxIndex(); index++) {
 			dumpString.append("  [ " + index + " ]: "
-					+ Arrays.deepToString(bucketMap.get(index).toArray())
+					+ Arrays.toString(buckets[index])
 					+ "\n");
 		}
 		return dumpString.toString();
@@ -662,6 +806,7 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 		private int maxBuckets;
 		private Double offset;
 		private long seed;
+		private int bucketLookahead;
 		int minIndex;
 		int maxIndex;
 
@@ -698,6 +843,7 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 			partialBuild.setMaxBuckets(maxBuckets);
 			partialBuild.setOffset(offset);
 			partialBuild.setNumRetry(0);
+			partialBuild.setBucketLookahead(bucketLookahead);
 
 			partialBuild.init();
 
@@ -725,6 +871,12 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 			this.seed = seed;
 			return this;
 		}
+
+		public RandomDistributedScalarEncoder.Builder setBucketLookahead(
+				int bucketLookahead) {
+			this.bucketLookahead = bucketLookahead;
+			return this;
+		}
 	}
 
 	/**
@@ -732,18 +884,29 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 	 */
 	@Override
 	public void encodeIntoArray(Double inputData, int[] output) {
+		encodeIntoArray(inputData, output, 0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void encodeIntoArray(Double inputData, int[] output, int offset) {
 		int[] bucketIdx = getBucketIndices(inputData);
-		Arrays.fill(output, 0);
+		Arrays.fill(output, offset, offset + getN(), 0);
 
 		if (bucketIdx.length == 0)
 			return;
 
 		if (bucketIdx[0] != Integer.MIN_VALUE) {
-			List<Integer> indices;
+			if (encodingCache != null && encodingCache.copyTo(bucketIdx[0], output, offset, getN()))
+				return;
+
 			try {
-				indices = mapBucketIndexToNonZeroBits(bucketIdx[0]);
-				for (int index : indices)
-					output[index] = 1;
+				for (int index : mapBucketIndexToNonZeroBits(bucketIdx[0]))
+					output[offset + index] = 1;
+				if (encodingCache != null)
+					encodingCache.put(bucketIdx[0], output, offset, getN());
 			} catch (IllegalStateException e) {
 				e.printStackTrace();
 			}
@@ -756,7 +919,10 @@ public class RandomDistributedScalarEncoder extends Encoder<Double> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public <S> List<S> getBucketValues(Class<S> returnType) {
-		return new ArrayList<>((Collection<S>)this.bucketMap.keySet());
+		List<S> indices = new ArrayList<S>();
+		for (int index = getMinIndex(); index <= getMaxIndex(); index++)
+			indices.add((S)Integer.valueOf(index));
+		return indices;
 	}
 
 	/**
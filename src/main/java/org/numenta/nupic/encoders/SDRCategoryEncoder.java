@@ -23,12 +23,15 @@ package org.numenta.nupic.encoders;
 
 import gnu.trove.list.TDoubleList;
 import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 
 import org.numenta.nupic.util.ArrayUtils;
 import org.numenta.nupic.util.Condition;
 import org.numenta.nupic.util.MinMax;
+import org.numenta.nupic.util.SDR;
 import org.numenta.nupic.util.SparseObjectMatrix;
 import org.numenta.nupic.util.Tuple;
 import org.slf4j.Logger;
@@ -39,11 +42,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 
 /**
  * Encodes a list of discrete categories (described by strings), that aren't
@@ -61,52 +62,18 @@ public class SDRCategoryEncoder extends Encoder<String> {
 
     private Random random;
     private int thresholdOverlap;
-    private final SDRByCategoryMap sdrByCategory = new SDRByCategoryMap();
-
-    /**
-     * Inner class for keeping Categories and SDRs in ordered way
-     */
-    @SuppressWarnings("serial")
-	private static final class SDRByCategoryMap extends LinkedHashMap<String, int[]> {
-
-        public int[] getSdr(int index) {
-            Map.Entry<String, int[]> entry = this.getEntry(index);
-            if (entry == null) return null;
-            return entry.getValue();
-        }
-
-        public String getCategory(int index) {
-            Map.Entry<String, int[]> entry = this.getEntry(index);
-            if (entry == null) return null;
-            return entry.getKey();
-        }
-
-        public int getIndexByCategory(String category) {
-            Set<String> categories = this.keySet();
-            int inx = 0;
-            for (String s : categories) {
-                if (s.equals(category)) {
-                    return inx;
-                }
-                inx++;
-            }
-            return 0;
-        }
-
-        private Map.Entry<String, int[]> getEntry(int i) {
-            Set<Map.Entry<String, int[]>> entries = entrySet();
-            if (i < 0 || i > entries.size()) {
-                throw new IllegalArgumentException("Index should be in following range:[0," + entries.size() + "]");
-            }
-            int j = 0;
-            for (Map.Entry<String, int[]> entry : entries)
-                if (j++ == i) return entry;
-
-            return null;
-
-        }
-
-    }
+    /** The categories, in the order they were added, which is their index */
+    private final List<String> categories = new ArrayList<>();
+    private final TObjectIntHashMap<String> indexByCategory = new TObjectIntHashMap<>();
+    /** The sorted on bits of each category's SDR */
+    private final List<int[]> bitsByCategory = new ArrayList<>();
+    /** For each bit, the indexes of the categories whose SDR contains it */
+    private TIntArrayList[] categoriesByBit;
+
+    /** Scratch overlap counts, indexed by category, used while decoding */
+    private int[] overlapScratch = new int[0];
+    private boolean[] touchedMarks = new boolean[0];
+    private final TIntArrayList touchedScratch = new TIntArrayList();
 
     /**
      * Returns a builder for building {@code SDRCategoryEncoder}s.
@@ -135,6 +102,10 @@ public class SDRCategoryEncoder extends Encoder<String> {
         forced (default False) : if True, skip checks for parameters' settings; see encoders/scalar.py for details*/
         this.n = n;
         this.w = w;
+        this.categoriesByBit = new TIntArrayList[n];
+        for (int i = 0; i < n; i++) {
+            categoriesByBit[i] = new TIntArrayList(4);
+        }
         this.encLearningEnabled = true;
         this.random = new Random();
         if (encoderSeed != -1) {
@@ -216,11 +187,15 @@ public class SDRCategoryEncoder extends Encoder<String> {
             index = 0;
         } else {
             index = getBucketIndices(input)[0];
-            int[] categoryEncoding = sdrByCategory.getSdr(index);
-            System.arraycopy(categoryEncoding, 0, output, 0, categoryEncoding.length);
+            Arrays.fill(output, 0, n, 0);
+            for (int bit : bitsByCategory.get(index)) {
+                output[bit] = 1;
+            }
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("input:" + input + ", index:" + index + ", output:" + ArrayUtils.intArrayToString(output));
+            LOG.trace("decoded:" + decodedToStr(decode(output, "")));
         }
-        LOG.trace("input:" + input + ", index:" + index + ", output:" + ArrayUtils.intArrayToString(output));
-        LOG.trace("decoded:" + decodedToStr(decode(output, "")));
     }
 
     /**
@@ -243,13 +218,13 @@ public class SDRCategoryEncoder extends Encoder<String> {
             result.add(0);
             return result;
         }
-        if (!sdrByCategory.containsKey(input)) {
+        if (!indexByCategory.containsKey(inputCasted)) {
             if (isEncoderLearningEnabled()) {
-                index = sdrByCategory.size();
+                index = categories.size();
                 addCategory(inputCasted);
             }
         } else {
-            index = sdrByCategory.getIndexByCategory(inputCasted);
+            index = indexByCategory.get(inputCasted);
         }
         result.add(index);
         return result;
@@ -278,39 +253,50 @@ public class SDRCategoryEncoder extends Encoder<String> {
                 return i <= 1;
             }
         });
+        return decode(SDR.fromDense(encoded.length == n ? encoded : Arrays.copyOf(encoded, n)), parentFieldName);
+    }
+
+    /**
+     * Same as {@link #decode(int[], String)} for an encoding held in an
+     * {@link SDR}. The overlaps are counted through the index of categories
+     * by bit, so only the categories sharing an on bit are visited.
+     *
+     * @param encoded           the encoding, of {@link #getWidth()} bits
+     * @param parentFieldName   the name of the parent encoder, or null
+     * @return
+     */
+    public DecodeResult decode(SDR encoded, String parentFieldName) {
         //overlaps =  (self.sdrs * encoded[0:self.n]).sum(axis=1)
-        int[] overlap = new int[sdrByCategory.size()];
-        for (int i = 0; i < sdrByCategory.size(); i++) {
-            int[] sdr = sdrByCategory.getSdr(i);
-            for (int j = 0; j < sdr.length; j++) {
-                if (sdr[j] == encoded[j] && encoded[j] == 1) {
-                    overlap[i]++;
-                }
-            }
-        }
-        LOG.trace("Overlaps for decoding:");
-        if (LOG.isTraceEnabled()){
-            int inx = 0;
-            for (String category : sdrByCategory.keySet()) {
-                LOG.trace(overlap[inx] + " " + category);
-                inx++;
+        int[] onBits = encoded.getSparse();
+        int[] overlap = countOverlaps(onBits, null);
+        TIntArrayList touched = touchedScratch;
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Overlaps for decoding:");
+            for (int i = 0; i < categories.size(); i++) {
+                LOG.trace(overlap[i] + " " + categories.get(i));
             }
         }
         //matchingCategories =  (overlaps > self.thresholdOverlap).nonzero()[0]
-        int[] matchingCategories = ArrayUtils.where(overlap, new Condition.Adapter<Integer>() {
-            @Override
-            public boolean eval(int overlaps) {
-                return overlaps > thresholdOverlap;
+        int numMatching = 0;
+        int[] matchingCategories = new int[touched.size()];
+        for (int k = 0; k < touched.size(); k++) {
+            int index = touched.get(k);
+            if (overlap[index] > thresholdOverlap) {
+                matchingCategories[numMatching++] = index;
             }
-        });
+        }
+        resetOverlaps();
+        Arrays.sort(matchingCategories, 0, numMatching);
+
         StringBuilder resultString = new StringBuilder();
         List<MinMax> resultRanges = new ArrayList<>();
         String fieldName;
-        for (int index : matchingCategories) {
+        for (int i = 0; i < numMatching; i++) {
+            int index = matchingCategories[i];
             if (resultString.length() != 0) {
                 resultString.append(" ");
             }
-            resultString.append(sdrByCategory.getCategory(index));
+            resultString.append(categories.get(index));
             resultRanges.add(new MinMax(index, index));
         }
         if (parentFieldName == null || parentFieldName.isEmpty()) {
@@ -324,18 +310,104 @@ public class SDRCategoryEncoder extends Encoder<String> {
         return new DecodeResult(fieldsDict, Arrays.asList(fieldName));
     }
 
+    /**
+     * Adds the value of each of the specified bits to the overlap of every
+     * category containing it. The overlaps are left in the returned scratch
+     * array, and the categories counted in {@code touchedScratch}, until
+     * {@link #resetOverlaps()} is called.
+     *
+     * @param bits      the indexes of the bits to count
+     * @param values    the value of each bit, or null if all are 1
+     * @return  the overlap of each category
+     */
+    private int[] countOverlaps(int[] bits, int[] values) {
+        int[] overlap = overlapScratch;
+        TIntArrayList touched = touchedScratch;
+        for (int i = 0; i < bits.length; i++) {
+            int value = values == null ? 1 : values[i];
+            TIntArrayList postings = categoriesByBit[bits[i]];
+            for (int k = 0; k < postings.size(); k++) {
+                int index = postings.get(k);
+                if (!touchedMarks[index]) {
+                    touchedMarks[index] = true;
+                    touched.add(index);
+                }
+                overlap[index] += value;
+            }
+        }
+        return overlap;
+    }
+
+    /**
+     * Clears the overlaps left by {@link #countOverlaps(int[], int[])}.
+     */
+    private void resetOverlaps() {
+        for (int k = 0; k < touchedScratch.size(); k++) {
+            overlapScratch[touchedScratch.get(k)] = 0;
+            touchedMarks[touchedScratch.get(k)] = false;
+        }
+        touchedScratch.resetQuick();
+    }
+
 
     /**
      * {@inheritDoc}
      */
     @Override
     public List<EncoderResult> topDownCompute(int[] encoded) {
-        if (sdrByCategory.size() == 0) {
+        if (categories.size() == 0) {
             return new ArrayList<>();
         }
-        //TODO the rightVecProd method belongs to SparseBinaryMatrix in Nupic Core, In python this method call stack: topDownCompute [sdrcategory.py:317]/rightVecProd [math.py:4474] -->return _math._SparseMatrix32_rightVecProd(self, *args)
-        int categoryIndex = ArrayUtils.argmax(rightVecProd(getTopDownMapping(), encoded));
-        return getEncoderResultsByIndex(getTopDownMapping(), categoryIndex);
+        int categoryIndex = bestCategory(encoded);
+        return getEncoderResultsByIndex(categoryIndex);
+    }
+
+    /**
+     * Returns the index of the category whose SDR has the largest dot product
+     * with the encoding, the first one on ties, as the argmax of the product
+     * of the top down mapping with the encoding would. Categories without a
+     * common bit have a product of 0, so only those found through the index
+     * of categories by bit need be compared.
+     *
+     * @param encoded   the encoding
+     * @return  the category index
+     */
+    private int bestCategory(int[] encoded) {
+        int limit = Math.min(encoded.length, n);
+        int numOn = 0;
+        for (int i = 0; i < limit; i++) {
+            if (encoded[i] != 0) numOn++;
+        }
+        int[] bits = new int[numOn];
+        int[] values = new int[numOn];
+        for (int i = 0, j = 0; i < limit; i++) {
+            if (encoded[i] != 0) {
+                bits[j] = i;
+                values[j++] = encoded[i];
+            }
+        }
+
+        int[] overlap = countOverlaps(bits, values);
+        TIntArrayList touched = touchedScratch;
+        int max = touched.size() < categories.size() ? 0 : Integer.MIN_VALUE;
+        for (int k = 0; k < touched.size(); k++) {
+            max = Math.max(max, overlap[touched.get(k)]);
+        }
+        int best = -1;
+        if (max > 0) {
+            for (int k = 0; k < touched.size(); k++) {
+                int index = touched.get(k);
+                if (overlap[index] == max && (best == -1 || index < best)) {
+                    best = index;
+                }
+            }
+        } else {
+            // Untouched categories have an overlap of 0
+            best = 0;
+            while (overlap[best] != max) best++;
+        }
+        resetOverlaps();
+        return best;
     }
 
     /**
@@ -343,11 +415,11 @@ public class SDRCategoryEncoder extends Encoder<String> {
      */
     @Override
     public List<EncoderResult> getBucketInfo(int[] buckets) {
-        if (sdrByCategory.size() == 0) {
+        if (categories.size() == 0) {
             return new ArrayList<>();
         }
         int categoryIndex = buckets[0];
-        return getEncoderResultsByIndex(getTopDownMapping(), categoryIndex);
+        return getEncoderResultsByIndex(categoryIndex);
     }
 
     /**
@@ -361,14 +433,9 @@ public class SDRCategoryEncoder extends Encoder<String> {
     public SparseObjectMatrix<int[]> getTopDownMapping() {
         if (topDownMapping == null) {
             topDownMapping = new SparseObjectMatrix<>(
-                    new int[]{sdrByCategory.size()});
-            int[] outputSpace = new int[getN()];
-            Set<String> categories = sdrByCategory.keySet();
-            int inx = 0;
-            for (String category : categories) {
-                encodeIntoArray(category, outputSpace);
-                topDownMapping.set(inx, Arrays.copyOf(outputSpace, outputSpace.length));
-                inx++;
+                    new int[]{categories.size()});
+            for (int i = 0; i < categories.size(); i++) {
+                topDownMapping.set(i, getDenseSdr(i));
             }
         }
         return topDownMapping;
@@ -380,33 +447,61 @@ public class SDRCategoryEncoder extends Encoder<String> {
     @SuppressWarnings("unchecked")
 	@Override
     public <S> List<S> getBucketValues(Class<S> returnType) {
-        return new ArrayList<>((Collection<S>)this.sdrByCategory.keySet());
+        return new ArrayList<>((Collection<S>)this.categories);
     }
 
     /**
-     * Returns list of registered SDRs for this encoder
+     * Returns list of registered SDRs for this encoder, as dense arrays
      *
      * @return {@link Collection}
      */
     public Collection<int[]> getSDRs() {
-        return Collections.unmodifiableCollection(sdrByCategory.values());
+        List<int[]> sdrs = new ArrayList<>(categories.size());
+        for (int i = 0; i < categories.size(); i++) {
+            sdrs.add(getDenseSdr(i));
+        }
+        return Collections.unmodifiableCollection(sdrs);
     }
 
+    /**
+     * Returns the SDR of the category at the specified index as a dense array
+     *
+     * @param categoryIndex the category index
+     * @return
+     */
+    private int[] getDenseSdr(int categoryIndex) {
+        int[] sdr = new int[n];
+        for (int bit : bitsByCategory.get(categoryIndex)) {
+            sdr[bit] = 1;
+        }
+        return sdr;
+    }
 
-    private List<EncoderResult> getEncoderResultsByIndex(SparseObjectMatrix<int[]> topDownMapping, int categoryIndex) {
+    private List<EncoderResult> getEncoderResultsByIndex(int categoryIndex) {
         List<EncoderResult> result = new ArrayList<>();
-        String category = sdrByCategory.getCategory(categoryIndex);
-        int[] encoding = topDownMapping.getObject(categoryIndex);
+        String category = categories.get(categoryIndex);
+        int[] encoding = topDownMapping == null ? getDenseSdr(categoryIndex) : topDownMapping.getObject(categoryIndex);
         result.add(new EncoderResult(category, categoryIndex, encoding));
         return result;
     }
 
     private void addCategory(String category) {
-        if (this.sdrByCategory.containsKey(category)) {
+        if (this.indexByCategory.containsKey(category)) {
             throw new IllegalArgumentException(String.format("Attempt to add encoder category '%s' that already exists",
                                                              category));
         }
-        sdrByCategory.put(category, newRep());
+        int index = categories.size();
+        int[] bits = newRep();
+        categories.add(category);
+        indexByCategory.put(category, index);
+        bitsByCategory.add(bits);
+        for (int bit : bits) {
+            categoriesByBit[bit].add(index);
+        }
+        if (overlapScratch.length <= index) {
+            overlapScratch = Arrays.copyOf(overlapScratch, Math.max(index + 1, overlapScratch.length * 2));
+            touchedMarks = Arrays.copyOf(touchedMarks, overlapScratch.length);
+        }
         //reset topDown mapping
         topDownMapping = null;
     }
@@ -423,21 +518,23 @@ public class SDRCategoryEncoder extends Encoder<String> {
     }
 
 
+    /**
+     * Returns the sorted on bits of a new SDR, which differs from those of
+     * all existing categories. An existing category can only be equal if it
+     * contains the first on bit, so only those are compared.
+     *
+     * @return
+     */
     private int[] newRep() {
         int maxAttempts = 1000;
         boolean foundUnique = true;
-        int[] oneBits;
-        int sdr[] = new int[n];
+        int[] oneBits = null;
         for (int index = 0; index < maxAttempts; index++) {
             foundUnique = true;
             oneBits = getSortedSample(n, w);
-            sdr = new int[n];
-            for (int i = 0; i < oneBits.length; i++) {
-                int oneBitInx = oneBits[i];
-                sdr[oneBitInx] = 1;
-            }
-            for (int[] existingSdr : this.sdrByCategory.values()) {
-                if (Arrays.equals(sdr, existingSdr)) {
+            TIntArrayList postings = categoriesByBit[oneBits[0]];
+            for (int k = 0; k < postings.size(); k++) {
+                if (Arrays.equals(oneBits, bitsByCategory.get(postings.get(k)))) {
                     foundUnique = false;
                     break;
                 }
@@ -448,9 +545,9 @@ public class SDRCategoryEncoder extends Encoder<String> {
         }
         if (!foundUnique) {
             throw new RuntimeException(String.format("Error, could not find unique pattern %d after %d attempts",
-                                                     sdrByCategory.size(), maxAttempts));
+                                                     categories.size(), maxAttempts));
         }
-        return sdr;
+        return oneBits;
     }
 
     /**
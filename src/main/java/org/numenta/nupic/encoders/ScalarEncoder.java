@@ -29,6 +29,7 @@ import org.numenta.nupic.FieldMetaType;
 import org.numenta.nupic.util.ArrayUtils;
 import org.numenta.nupic.util.Condition;
 import org.numenta.nupic.util.MinMax;
+import org.numenta.nupic.util.SDR;
 import org.numenta.nupic.util.SparseObjectMatrix;
 import org.numenta.nupic.util.Tuple;
 import org.slf4j.Logger;
@@ -413,42 +414,85 @@ public class ScalarEncoder extends Encoder<Double> {
      */
 	@Override
 	public void encodeIntoArray(Double input, int[] output) {
+		encodeAt(input, output, 0);
+
+		if(LOGGER.isTraceEnabled()) {
+			LOGGER.trace("");
+			LOGGER.trace("input: " + input);
+			LOGGER.trace("range: " + getMinVal() + " - " + getMaxVal());
+			LOGGER.trace("n:" + getN() + "w:" + getW() + "resolution:" + getResolution() +
+					"radius:" + getRadius() + "periodic:" + isPeriodic());
+			LOGGER.trace("output: " + Arrays.toString(output));
+			LOGGER.trace("input desc: " + decode(output, ""));
+		}
+	}
+
+	/**
+	 * Sets the on bits of the encoding directly within the {@link #getN()}
+	 * elements of the output starting at the specified offset.
+	 */
+	@Override
+	public void encodeIntoArray(Double input, int[] output, int offset) {
+		encodeAt(input, output, offset);
+	}
+
+	/**
+	 * Writes the encoding of the input at the specified offset.
+	 *
+	 * @param input		the input scalar
+	 * @param output	the array holding the encoding
+	 * @param offset	the index of the first of the {@link #getN()} elements written
+	 */
+	private void encodeAt(Double input, int[] output, int offset) {
+		int n = getN();
 		if(Double.isNaN(input)) {
-			Arrays.fill(output, 0);
+			Arrays.fill(output, offset, offset + n, 0);
+			return;
+		}
+
+		Integer bucketVal = getFirstOnBit(input);
+		if(bucketVal == null) {
+			return;
+		}
+		if(encodingCache != null && encodingCache.copyTo(bucketVal, output, offset, n)) {
 			return;
 		}
+		Arrays.fill(output, offset, offset + n, 0);
+		int minbin = bucketVal;
+		int maxbin = minbin + 2*getHalfWidth();
+		for(int i = minbin;i <= maxbin;i++) {
+			output[offset + (isPeriodic() ? (i % n + n) % n : i)] = 1;
+		}
+
+		if(encodingCache != null) {
+			encodingCache.put(bucketVal, output, offset, n);
+		}
+	}
+
+	/**
+	 * Sets the bits of the encoding directly, wrapping them around 
+	 * if this encoder is periodic, as {@link #encodeIntoArray(Double, int[])} does.
+	 *
+	 * @param input		the input scalar
+	 * @param output	the {@link SDR} to fill, of {@link #getN()} bits
+	 */
+	@Override
+	public void encodeIntoSDR(Double input, SDR output) {
+		if(output.getSize() != getN()) {
+			throw new IllegalArgumentException("Output SDR must have " + getN() + " bits");
+		}
+		output.clear();
+		if(Double.isNaN(input)) return;
 
 		Integer bucketVal = getFirstOnBit(input);
 		if(bucketVal != null) {
-			int bucketIdx = bucketVal;
-			Arrays.fill(output, 0);
-			int minbin = bucketIdx;
+			int n = getN();
+			int minbin = bucketVal;
 			int maxbin = minbin + 2*getHalfWidth();
-			if(isPeriodic()) {
-				if(maxbin >= getN()) {
-					int bottombins = maxbin - getN() + 1;
-					int[] range = ArrayUtils.range(0, bottombins);
-					ArrayUtils.setIndexesTo(output, range, 1);
-					maxbin = getN() - 1;
-				}
-				if(minbin < 0) {
-					int topbins = -minbin;
-					ArrayUtils.setIndexesTo(
-						output, ArrayUtils.range(getN() - topbins, getN()), 1);
-					minbin = 0;
-				}
+			for(int i = minbin;i <= maxbin;i++) {
+				output.set(isPeriodic() ? (i % n + n) % n : i);
 			}
-
-			ArrayUtils.setIndexesTo(output, ArrayUtils.range(minbin, maxbin + 1), 1);
 		}
-
-		LOGGER.trace("");
-		LOGGER.trace("input: " + input);
-		LOGGER.trace("range: " + getMinVal() + " - " + getMaxVal());
-		LOGGER.trace("n:" + getN() + "w:" + getW() + "resolution:" + getResolution() +
-				"radius:" + getRadius() + "periodic:" + isPeriodic());
-		LOGGER.trace("output: " + Arrays.toString(output));
-		LOGGER.trace("input desc: " + decode(output, ""));
 	}
 
 	/**
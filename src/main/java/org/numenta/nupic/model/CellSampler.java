@@ -0,0 +1,82 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.model;
+
+import java.util.Arrays;
+
+import org.numenta.nupic.util.IndexSampler;
+
+/**
+ * Reusable working memory of {@link DistalDendrite#pickCellsToLearnOn}, so that 
+ * growing synapses on object storage doesn't allocate per segment. Holds the 
+ * candidate and picked cell buffers and per cell marks of the presynaptic cells 
+ * of the segment being grown. 
+ * <p>
+ * Like {@link org.numenta.nupic.research.ComputeScratch}, marks are "stamped":
+ * a cell is marked if its entry equals the current stamp.
+ */
+public class CellSampler {
+    /** Per cell marks */
+    int[] presynapticMarks = new int[0];
+    int stamp;
+    
+    /** Growable buffers of candidate and picked cells */
+    Cell[] candidates = new Cell[64];
+    Cell[] picks = new Cell[64];
+    
+    final IndexSampler sampler = new IndexSampler();
+    
+    
+    /**
+     * Returns the cells picked by the last call to {@link DistalDendrite#pickCellsToLearnOn(
+     * org.numenta.nupic.Connections, int, java.util.Set, java.util.Random, CellSampler)},
+     * in the order they were picked. Only the number of entries returned by 
+     * that call are valid.
+     * @return
+     */
+    public Cell[] getPicks() {
+        return picks;
+    }
+    
+    /**
+     * Ensures the presynaptic marks can be indexed by the specified cell index
+     * @param cellIndex
+     */
+    void ensureCellCapacity(int cellIndex) {
+        if(presynapticMarks.length <= cellIndex) {
+            presynapticMarks = Arrays.copyOf(presynapticMarks, Math.max(cellIndex + 1, presynapticMarks.length * 2));
+        }
+    }
+    
+    /**
+     * Ensures the candidate buffers can hold the specified number of cells
+     * @param size
+     */
+    void ensureCandidateCapacity(int size) {
+        if(candidates.length < size) {
+            int capacity = Math.max(size, candidates.length * 2);
+            candidates = new Cell[capacity];
+            picks = new Cell[capacity];
+        }
+    }
+}
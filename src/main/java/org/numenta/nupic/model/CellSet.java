@@ -0,0 +1,58 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.model;
+
+import org.numenta.nupic.util.IndexedBitSet;
+
+/**
+ * A set of {@link Cell}s stored as a bitset over the global cell index space
+ * (columns * cellsPerColumn), iterated in ascending cell index order.
+ * 
+ * @see IndexedBitSet
+ */
+public class CellSet extends IndexedBitSet<Cell> {
+    private final Cell[] cells;
+    
+    
+    /**
+     * Constructs a new, empty {@code CellSet}
+     * 
+     * @param cells     all cells, by index
+     */
+    public CellSet(Cell[] cells) {
+        super(cells.length);
+        this.cells = cells;
+    }
+    
+    @Override
+    protected int indexOf(Object o) {
+        if(!(o instanceof Cell)) return -1;
+        int index = ((Cell)o).getIndex();
+        return index < cells.length && cells[index] == o ? index : -1;
+    }
+    
+    @Override
+    protected Cell get(int index) {
+        return cells[index];
+    }
+}
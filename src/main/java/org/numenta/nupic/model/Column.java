@@ -22,9 +22,7 @@
 
 package org.numenta.nupic.model;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -49,6 +47,7 @@ public class Column {
     /** Connects {@link SpatialPooler} input pools */
     private ProximalDendrite proximalDendrite;
     
+    /** Created on first access, as only the {@link TemporalMemory} uses them */
     private Cell[] cells;
     
     /**
@@ -60,10 +59,6 @@ public class Column {
     public Column(int numCells, int index) {
         this.numCells = numCells;
         this.index = index;
-        cells = new Cell[numCells];
-        for(int i = 0;i < numCells;i++) {
-            cells[i] = new Cell(this, i);
-        }
         proximalDendrite = new ProximalDendrite(index);
     }
     
@@ -74,7 +69,7 @@ public class Column {
      * @return          the {@link Cell} residing at the specified index.
      */
     public Cell getCell(int index) {
-        return cells[index];
+        return getCellArray()[index];
     }
     
     /**
@@ -82,7 +77,22 @@ public class Column {
      * @return
      */
     public List<Cell> getCells() {
-        return Arrays.asList(cells);
+        return Arrays.asList(getCellArray());
+    }
+    
+    /**
+     * Returns this {@code Column}'s {@link Cell}s, creating them if needed
+     * @return
+     */
+    private Cell[] getCellArray() {
+        if(cells == null) {
+            Cell[] created = new Cell[numCells];
+            for(int i = 0;i < numCells;i++) {
+                created[i] = new Cell(this, i);
+            }
+            cells = created;
+        }
+        return cells;
     }
     
     /**
@@ -110,25 +120,31 @@ public class Column {
      * @return
      */
     public Cell getLeastUsedCell(Connections c, Random random) {
-        List<Cell> cells = getCells();
-        List<Cell> leastUsedCells = new ArrayList<Cell>();
+        //The cells of a column are held in ascending index order, so the least 
+        //used cells are counted in one pass and the chosen one found in a second
+        Cell[] cells = getCellArray();
         int minNumSegments = Integer.MAX_VALUE;
-        
-        for(Cell cell : cells) {
-            int numSegments = cell.getSegments(c).size();
+        int numLeastUsed = 0;
+        for(int i = 0;i < numCells;i++) {
+            int numSegments = cells[i].getSegments(c).size();
             
             if(numSegments < minNumSegments) {
                 minNumSegments = numSegments;
-                leastUsedCells.clear();
+                numLeastUsed = 0;
             }
             
             if(numSegments == minNumSegments) {
-                leastUsedCells.add(cell);
+                numLeastUsed++;
+            }
+        }
+        
+        int index = random.nextInt(numLeastUsed);
+        for(int i = 0;i < numCells;i++) {
+            if(cells[i].getSegments(c).size() == minNumSegments && index-- == 0) {
+                return cells[i];
             }
         }
-        int index = random.nextInt(leastUsedCells.size());
-        Collections.sort(leastUsedCells);
-        return leastUsedCells.get(index); 
+        throw new IllegalStateException("Least used cell not found");
     }
     
     /**
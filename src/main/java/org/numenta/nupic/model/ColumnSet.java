@@ -0,0 +1,59 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.model;
+
+import org.numenta.nupic.util.IndexedBitSet;
+import org.numenta.nupic.util.SparseObjectMatrix;
+
+/**
+ * A set of {@link Column}s stored as a bitset over the column index space,
+ * iterated in ascending column index order.
+ * 
+ * @see IndexedBitSet
+ */
+public class ColumnSet extends IndexedBitSet<Column> {
+    private final SparseObjectMatrix<Column> columns;
+    
+    
+    /**
+     * Constructs a new, empty {@code ColumnSet}
+     * 
+     * @param columns   the matrix holding all columns
+     */
+    public ColumnSet(SparseObjectMatrix<Column> columns) {
+        super(columns.getMaxIndex() + 1);
+        this.columns = columns;
+    }
+    
+    @Override
+    protected int indexOf(Object o) {
+        if(!(o instanceof Column)) return -1;
+        int index = ((Column)o).getIndex();
+        return index <= columns.getMaxIndex() && columns.getObject(index) == o ? index : -1;
+    }
+    
+    @Override
+    protected Column get(int index) {
+        return columns.getObject(index);
+    }
+}
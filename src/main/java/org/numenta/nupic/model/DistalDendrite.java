@@ -22,7 +22,7 @@
 
 package org.numenta.nupic.model;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -31,6 +31,7 @@ import java.util.Random;
 import java.util.Set;
 
 import org.numenta.nupic.Connections;
+import org.numenta.nupic.util.IndexSampler;
 
 /**
  * Represents a proximal or distal dendritic segment.
@@ -47,6 +48,8 @@ import org.numenta.nupic.Connections;
 public class DistalDendrite extends Segment {
     private Cell cell;
     private int index;
+    /** The temporal memory iteration during which this segment was last used */
+    private int lastUsedIteration;
     
     private static final Set<Synapse> EMPTY_SYNAPSE_SET = Collections.emptySet();
     
@@ -70,6 +73,32 @@ public class DistalDendrite extends Segment {
         return cell;
     }
     
+    /**
+     * Returns this {@code DistalDendrite}'s index.
+     * @return
+     */
+    public int getIndex() {
+        return index;
+    }
+    
+    /**
+     * Returns the temporal memory iteration during which 
+     * this segment was last used.
+     * @return
+     */
+    public int getLastUsedIteration() {
+        return lastUsedIteration;
+    }
+    
+    /**
+     * Sets the temporal memory iteration during which 
+     * this segment was last used.
+     * @param iteration
+     */
+    public void setLastUsedIteration(int iteration) {
+        this.lastUsedIteration = iteration;
+    }
+    
     /**
      * Creates and returns a newly created {@link Synapse} with the specified
      * source cell, permanence, and index.
@@ -173,27 +202,68 @@ public class DistalDendrite extends Segment {
      *                          <br>ǰһwinner cells setûбsegmentκεͻ attachedcells set
      */
     public Set<Cell> pickCellsToLearnOn(Connections c, int numPickCells, Set<Cell> prevWinners, Random random) {
-        //Create a list of cells that aren't already synapsed to this segment
-        Set<Cell> candidates = new LinkedHashSet<Cell>(prevWinners);
-        for(Synapse synapse : c.getSynapses(this)) {
-            Cell sourceCell = synapse.getSourceCell();
-            if(candidates.contains(sourceCell)) {
-                candidates.remove(sourceCell);
-            }
+        CellSampler scratch = c.getCellSampler();
+        int numPicked = pickCellsToLearnOn(c, numPickCells, prevWinners, random, scratch);
+        
+        Set<Cell> cells = new LinkedHashSet<Cell>();
+        for(int i = 0;i < numPicked;i++) {
+            cells.add(scratch.picks[i]);
         }
         
-        numPickCells = Math.min(numPickCells, candidates.size());
-        List<Cell> cands = new ArrayList<Cell>(candidates);
-        Collections.sort(cands);
+        return cells;
+    }
+    
+    /**
+     * Same as {@link #pickCellsToLearnOn(Connections, int, Set, Random)}, but leaves 
+     * the picked cells in the buffer returned by {@link CellSampler#getPicks()}
+     * instead of allocating a {@link Set} for them.
+     * 
+     * @param c                 the connections state of the temporal memory
+     * @param numPickCells      the number of possible cells this segment may designate
+     * @param prevWinners       the set of previous winner cells
+     * @param random            the random number generator
+     * @param scratch           the reusable working memory
+     * @return  the number of cells picked
+     */
+    public int pickCellsToLearnOn(Connections c, int numPickCells, Set<Cell> prevWinners, Random random, CellSampler scratch) {
+        //Mark the cells already synapsed to this segment
+        int stamp = ++scratch.stamp;
+        List<Synapse> synapses = c.getSynapses(this);
+        for(int i = 0;i < synapses.size();i++) {
+            int index = synapses.get(i).getSourceCell().getIndex();
+            scratch.ensureCellCapacity(index);
+            scratch.presynapticMarks[index] = stamp;
+        }
         
-        Set<Cell> cells = new LinkedHashSet<Cell>();
+        //Collect the unmarked previous winners in ascending index order
+        scratch.ensureCandidateCapacity(prevWinners.size());
+        Cell[] candidates = scratch.candidates;
+        int numCandidates = 0;
+        if(prevWinners instanceof CellSet) {
+            CellSet winners = (CellSet)prevWinners;
+            for(int index : winners.getIndexes()) {
+                if(index >= scratch.presynapticMarks.length || scratch.presynapticMarks[index] != stamp) {
+                    candidates[numCandidates++] = winners.get(index);
+                }
+            }
+        }else{
+            for(Cell cell : prevWinners) {
+                int index = cell.getIndex();
+                if(index >= scratch.presynapticMarks.length || scratch.presynapticMarks[index] != stamp) {
+                    candidates[numCandidates++] = cell;
+                }
+            }
+            Arrays.sort(candidates, 0, numCandidates);
+        }
+        
+        numPickCells = Math.min(numPickCells, numCandidates);
+        IndexSampler sampler = scratch.sampler;
+        sampler.reset(numCandidates);
         for(int x = 0;x < numPickCells;x++) {
-            int i = random.nextInt(cands.size());
-            cells.add(cands.get(i));
-            cands.remove(i);
+            scratch.picks[x] = candidates[sampler.next(random)];
         }
         
-        return cells;
+        return numPickCells;
     }
     
     /**
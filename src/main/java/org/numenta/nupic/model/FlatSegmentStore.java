@@ -0,0 +1,689 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.model;
+
+import java.util.Arrays;
+
+import org.numenta.nupic.Connections;
+import org.numenta.nupic.research.TemporalMemory;
+import org.numenta.nupic.util.SnapshotReader;
+import org.numenta.nupic.util.SnapshotWriter;
+import org.numenta.nupic.util.Snapshottable;
+
+/**
+ * Primitive array storage for the distal topology of the {@link TemporalMemory}.
+ * <p>
+ * Instead of one {@link DistalDendrite}, {@link Synapse} and {@link Pool} object
+ * per structural element, segments and synapses are identified by integer handles
+ * which index parallel ("struct of arrays") columns. The per-cell segment lists,
+ * the per-segment synapse lists and the per-cell receptor (presynaptic) lists are
+ * doubly linked lists threaded through those same arrays, so that iteration is
+ * allocation free and preserves creation order:
+ * <pre>
+ *  for(int s = store.firstSegment(cell);s != FlatSegmentStore.NONE;s = store.nextSegment(s)) {
+ *      for(int syn = store.firstSynapse(s);syn != FlatSegmentStore.NONE;syn = store.nextSynapse(syn)) {
+ *          ...
+ *      }
+ *  }
+ * </pre>
+ * Destroyed segments and synapses are threaded onto free lists and their handles
+ * are reused by subsequent creations; the arrays only grow when no free handle
+ * is available.
+ * <p>
+ * Each synapse also records the store iteration ({@link #getIteration()}) during
+ * which it was created, which lets the temporal memory distinguish synapses which
+ * existed during the previous compute cycle from those grown in the current one.
+ * Segments likewise record the iteration of their creation, and the iteration 
+ * during which they were last used, which orders them for recycling.
+ *
+ * @see Connections#getSegmentStore()
+ * @see TemporalMemory
+ */
+public class FlatSegmentStore implements Snapshottable {
+    /** Handle value signifying "no segment" or "no synapse" */
+    public static final int NONE = -1;
+
+    private static final int INITIAL_SEGMENT_CAPACITY = 1024;
+    private static final int INITIAL_SYNAPSE_CAPACITY = 4096;
+
+    private final int numCells;
+
+    /** Incremented by the owner once per compute cycle */
+    private int iteration;
+
+    ////////////////////// Per cell columns ///////////////////////
+    private final int[] cellFirstSegment;
+    private final int[] cellLastSegment;
+    private final int[] cellSegmentCount;
+    private final int[] cellFirstReceptor;
+    private final int[] cellLastReceptor;
+    private final int[] cellReceptorCount;
+
+    ////////////////////// Per segment columns ////////////////////
+    private int[] segmentCell;
+    private int[] segmentNext;
+    private int[] segmentPrev;
+    private int[] segmentFirstSynapse;
+    private int[] segmentLastSynapse;
+    private int[] segmentSynapseCount;
+    private int[] segmentBirth;
+    private int[] segmentLastUsed;
+    /** Number of segment handles ever issued */
+    private int segmentHighWater;
+    private int numSegments;
+    private int freeSegment = NONE;
+
+    ////////////////////// Per synapse columns ////////////////////
+    private int[] synapseSegment;
+    private int[] synapsePresynapticCell;
+    private double[] synapsePermanence;
+    private int[] synapseBirth;
+    private int[] synapseNext;
+    private int[] synapsePrev;
+    private int[] receptorNext;
+    private int[] receptorPrev;
+    /** Number of synapse handles ever issued */
+    private int synapseHighWater;
+    private int numSynapses;
+    private int freeSynapse = NONE;
+
+
+    /**
+     * Constructs a new {@code FlatSegmentStore} for the specified
+     * number of cells.
+     *
+     * @param numCells  the total number of cells (columns * cellsPerColumn)
+     */
+    public FlatSegmentStore(int numCells) {
+        this.numCells = numCells;
+
+        cellFirstSegment = filled(numCells, NONE);
+        cellLastSegment = filled(numCells, NONE);
+        cellSegmentCount = new int[numCells];
+        cellFirstReceptor = filled(numCells, NONE);
+        cellLastReceptor = filled(numCells, NONE);
+        cellReceptorCount = new int[numCells];
+
+        int segCap = INITIAL_SEGMENT_CAPACITY;
+        segmentCell = new int[segCap];
+        segmentNext = new int[segCap];
+        segmentPrev = new int[segCap];
+        segmentFirstSynapse = new int[segCap];
+        segmentLastSynapse = new int[segCap];
+        segmentSynapseCount = new int[segCap];
+        segmentBirth = new int[segCap];
+        segmentLastUsed = new int[segCap];
+
+        int synCap = INITIAL_SYNAPSE_CAPACITY;
+        synapseSegment = new int[synCap];
+        synapsePresynapticCell = new int[synCap];
+        synapsePermanence = new double[synCap];
+        synapseBirth = new int[synCap];
+        synapseNext = new int[synCap];
+        synapsePrev = new int[synCap];
+        receptorNext = new int[synCap];
+        receptorPrev = new int[synCap];
+    }
+
+    /**
+     * Returns the number of cells this store was configured for.
+     * @return
+     */
+    public int getNumCells() {
+        return numCells;
+    }
+
+    /**
+     * Returns the current iteration, used to stamp newly created synapses.
+     * @return
+     */
+    public int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * Advances the iteration stamp. Called once at the start of
+     * every compute cycle.
+     */
+    public void nextIteration() {
+        iteration++;
+    }
+
+    /////////////////////////////// Segments ///////////////////////////////
+
+    /**
+     * Creates a new segment on the specified cell and returns its handle.
+     * The segment is appended to the end of the cell's segment list.
+     *
+     * @param cell  the index of the owning cell
+     * @return      the new segment's handle
+     */
+    public int createSegment(int cell) {
+        int segment;
+        if(freeSegment != NONE) {
+            segment = freeSegment;
+            freeSegment = segmentNext[segment];
+        }else{
+            if(segmentHighWater == segmentCell.length) {
+                growSegments(segmentCell.length * 2);
+            }
+            segment = segmentHighWater++;
+        }
+
+        segmentCell[segment] = cell;
+        segmentFirstSynapse[segment] = NONE;
+        segmentLastSynapse[segment] = NONE;
+        segmentSynapseCount[segment] = 0;
+        segmentBirth[segment] = iteration;
+        segmentLastUsed[segment] = iteration;
+
+        segmentNext[segment] = NONE;
+        segmentPrev[segment] = cellLastSegment[cell];
+        if(cellLastSegment[cell] == NONE) {
+            cellFirstSegment[cell] = segment;
+        }else{
+            segmentNext[cellLastSegment[cell]] = segment;
+        }
+        cellLastSegment[cell] = segment;
+        cellSegmentCount[cell]++;
+        numSegments++;
+
+        return segment;
+    }
+
+    /**
+     * Destroys the specified segment together with all of its synapses,
+     * and returns its handle to the free list.
+     *
+     * @param segment   the handle of the segment to destroy
+     */
+    public void destroySegment(int segment) {
+        checkSegment(segment);
+
+        while(segmentFirstSynapse[segment] != NONE) {
+            destroySynapse(segmentFirstSynapse[segment]);
+        }
+
+        int cell = segmentCell[segment];
+        int prev = segmentPrev[segment];
+        int next = segmentNext[segment];
+        if(prev == NONE) cellFirstSegment[cell] = next; else segmentNext[prev] = next;
+        if(next == NONE) cellLastSegment[cell] = prev; else segmentPrev[next] = prev;
+        cellSegmentCount[cell]--;
+        numSegments--;
+
+        segmentCell[segment] = NONE;
+        segmentNext[segment] = freeSegment;
+        freeSegment = segment;
+    }
+
+    /**
+     * Returns true if the specified handle refers to a live segment.
+     * @param segment
+     * @return
+     */
+    public boolean isSegment(int segment) {
+        return segment >= 0 && segment < segmentHighWater && segmentCell[segment] != NONE;
+    }
+
+    /**
+     * Returns the index of the cell owning the specified segment.
+     * @param segment
+     * @return
+     */
+    public int getSegmentCell(int segment) {
+        return segmentCell[segment];
+    }
+
+    /**
+     * Returns the first segment of the specified cell, or {@link #NONE}
+     * @param cell
+     * @return
+     */
+    public int firstSegment(int cell) {
+        return cellFirstSegment[cell];
+    }
+
+    /**
+     * Returns the segment following the specified one on the same cell,
+     * or {@link #NONE}
+     *
+     * @param segment
+     * @return
+     */
+    public int nextSegment(int segment) {
+        return segmentNext[segment];
+    }
+
+    /**
+     * Returns the number of segments on the specified cell.
+     * @param cell
+     * @return
+     */
+    public int getSegmentCount(int cell) {
+        return cellSegmentCount[cell];
+    }
+
+    /**
+     * Returns the number of live segments.
+     * @return
+     */
+    public int numSegments() {
+        return numSegments;
+    }
+
+    /**
+     * Returns one more than the largest segment handle ever issued. Arrays
+     * indexed by segment handle must be at least this long.
+     *
+     * @return
+     */
+    public int getSegmentCapacity() {
+        return segmentHighWater;
+    }
+
+    /**
+     * Returns the iteration during which the specified segment was created.
+     * @param segment
+     * @return
+     */
+    public int getSegmentBirth(int segment) {
+        return segmentBirth[segment];
+    }
+
+    /**
+     * Returns the iteration during which the specified segment was last used.
+     * @param segment
+     * @return
+     */
+    public int getSegmentLastUsed(int segment) {
+        return segmentLastUsed[segment];
+    }
+
+    /**
+     * Marks the specified segment as used during the current iteration.
+     * @param segment
+     */
+    public void touchSegment(int segment) {
+        segmentLastUsed[segment] = iteration;
+    }
+
+    /**
+     * Returns the segment of the specified cell which was used the longest 
+     * time ago, the earliest created one among equals, or {@link #NONE} if 
+     * the cell has no segments.
+     *
+     * @param cell  the index of the cell
+     * @return
+     */
+    public int leastRecentlyUsedSegment(int cell) {
+        int lru = NONE;
+        for(int s = cellFirstSegment[cell];s != NONE;s = segmentNext[s]) {
+            if(lru == NONE || segmentLastUsed[s] < segmentLastUsed[lru]) {
+                lru = s;
+            }
+        }
+        return lru;
+    }
+
+    /////////////////////////////// Synapses ///////////////////////////////
+
+    /**
+     * Creates a new synapse on the specified segment, sourced from the specified
+     * presynaptic cell, and returns its handle. The synapse is appended to the end
+     * of both the segment's synapse list and the presynaptic cell's receptor list.
+     *
+     * @param segment           the handle of the owning segment
+     * @param presynapticCell   the index of the cell which activates the synapse
+     * @param permanence        the initial permanence
+     * @return                  the new synapse's handle
+     */
+    public int createSynapse(int segment, int presynapticCell, double permanence) {
+        checkSegment(segment);
+
+        int synapse;
+        if(freeSynapse != NONE) {
+            synapse = freeSynapse;
+            freeSynapse = synapseNext[synapse];
+        }else{
+            if(synapseHighWater == synapseSegment.length) {
+                growSynapses(synapseSegment.length * 2);
+            }
+            synapse = synapseHighWater++;
+        }
+
+        synapseSegment[synapse] = segment;
+        synapsePresynapticCell[synapse] = presynapticCell;
+        synapsePermanence[synapse] = permanence;
+        synapseBirth[synapse] = iteration;
+
+        synapseNext[synapse] = NONE;
+        synapsePrev[synapse] = segmentLastSynapse[segment];
+        if(segmentLastSynapse[segment] == NONE) {
+            segmentFirstSynapse[segment] = synapse;
+        }else{
+            synapseNext[segmentLastSynapse[segment]] = synapse;
+        }
+        segmentLastSynapse[segment] = synapse;
+        segmentSynapseCount[segment]++;
+
+        receptorNext[synapse] = NONE;
+        receptorPrev[synapse] = cellLastReceptor[presynapticCell];
+        if(cellLastReceptor[presynapticCell] == NONE) {
+            cellFirstReceptor[presynapticCell] = synapse;
+        }else{
+            receptorNext[cellLastReceptor[presynapticCell]] = synapse;
+        }
+        cellLastReceptor[presynapticCell] = synapse;
+        cellReceptorCount[presynapticCell]++;
+        numSynapses++;
+
+        return synapse;
+    }
+
+    /**
+     * Destroys the specified synapse, unlinking it from its segment and
+     * its presynaptic cell, and returns its handle to the free list.
+     *
+     * @param synapse   the handle of the synapse to destroy
+     */
+    public void destroySynapse(int synapse) {
+        if(!isSynapse(synapse)) {
+            throw new IllegalArgumentException("Not a live synapse: " + synapse);
+        }
+
+        int segment = synapseSegment[synapse];
+        int prev = synapsePrev[synapse];
+        int next = synapseNext[synapse];
+        if(prev == NONE) segmentFirstSynapse[segment] = next; else synapseNext[prev] = next;
+        if(next == NONE) segmentLastSynapse[segment] = prev; else synapsePrev[next] = prev;
+        segmentSynapseCount[segment]--;
+
+        int cell = synapsePresynapticCell[synapse];
+        prev = receptorPrev[synapse];
+        next = receptorNext[synapse];
+        if(prev == NONE) cellFirstReceptor[cell] = next; else receptorNext[prev] = next;
+        if(next == NONE) cellLastReceptor[cell] = prev; else receptorPrev[next] = prev;
+        cellReceptorCount[cell]--;
+        numSynapses--;
+
+        synapseSegment[synapse] = NONE;
+        synapseNext[synapse] = freeSynapse;
+        freeSynapse = synapse;
+    }
+
+    /**
+     * Returns true if the specified handle refers to a live synapse.
+     * @param synapse
+     * @return
+     */
+    public boolean isSynapse(int synapse) {
+        return synapse >= 0 && synapse < synapseHighWater && synapseSegment[synapse] != NONE;
+    }
+
+    /**
+     * Returns the first synapse of the specified segment, or {@link #NONE}
+     * @param segment
+     * @return
+     */
+    public int firstSynapse(int segment) {
+        return segmentFirstSynapse[segment];
+    }
+
+    /**
+     * Returns the synapse following the specified one on the same segment,
+     * or {@link #NONE}
+     *
+     * @param synapse
+     * @return
+     */
+    public int nextSynapse(int synapse) {
+        return synapseNext[synapse];
+    }
+
+    /**
+     * Returns the first synapse sourced from the specified cell, or {@link #NONE}
+     * @param cell
+     * @return
+     */
+    public int firstReceptor(int cell) {
+        return cellFirstReceptor[cell];
+    }
+
+    /**
+     * Returns the synapse following the specified one which is sourced from
+     * the same presynaptic cell, or {@link #NONE}
+     *
+     * @param synapse
+     * @return
+     */
+    public int nextReceptor(int synapse) {
+        return receptorNext[synapse];
+    }
+
+    /**
+     * Returns the number of synapses on the specified segment.
+     * @param segment
+     * @return
+     */
+    public int getSynapseCount(int segment) {
+        return segmentSynapseCount[segment];
+    }
+
+    /**
+     * Returns the number of synapses sourced from the specified cell.
+     * @param cell
+     * @return
+     */
+    public int getReceptorCount(int cell) {
+        return cellReceptorCount[cell];
+    }
+
+    /**
+     * Returns the handle of the segment owning the specified synapse.
+     * @param synapse
+     * @return
+     */
+    public int getSynapseSegment(int synapse) {
+        return synapseSegment[synapse];
+    }
+
+    /**
+     * Returns the index of the cell which activates the specified synapse.
+     * @param synapse
+     * @return
+     */
+    public int getPresynapticCell(int synapse) {
+        return synapsePresynapticCell[synapse];
+    }
+
+    /**
+     * Returns the permanence of the specified synapse.
+     * @param synapse
+     * @return
+     */
+    public double getPermanence(int synapse) {
+        return synapsePermanence[synapse];
+    }
+
+    /**
+     * Sets the permanence of the specified synapse.
+     * @param synapse
+     * @param permanence
+     */
+    public void setPermanence(int synapse, double permanence) {
+        synapsePermanence[synapse] = permanence;
+    }
+
+    /**
+     * Returns the iteration during which the specified synapse was created.
+     * @param synapse
+     * @return
+     */
+    public int getSynapseBirth(int synapse) {
+        return synapseBirth[synapse];
+    }
+
+    /**
+     * Returns the number of live synapses.
+     * @return
+     */
+    public int numSynapses() {
+        return numSynapses;
+    }
+
+    /**
+     * Returns one more than the largest synapse handle ever issued. Arrays
+     * indexed by synapse handle must be at least this long.
+     *
+     * @return
+     */
+    public int getSynapseCapacity() {
+        return synapseHighWater;
+    }
+
+    ////////////////////////////// Snapshots //////////////////////////////
+
+    /**
+     * Writes the complete store, including destroyed handles and the
+     * free lists, so that a restored store issues the same handles.
+     *
+     * @param out   the snapshot being written
+     */
+    @Override
+    public void writeSnapshot(SnapshotWriter out) {
+        out.writeInt(numCells);
+        out.writeInt(iteration);
+        out.writeIntArray(cellFirstSegment);
+        out.writeIntArray(cellLastSegment);
+        out.writeIntArray(cellSegmentCount);
+        out.writeIntArray(cellFirstReceptor);
+        out.writeIntArray(cellLastReceptor);
+        out.writeIntArray(cellReceptorCount);
+
+        out.writeInt(numSegments);
+        out.writeInt(freeSegment);
+        out.writeIntArray(segmentCell, 0, segmentHighWater);
+        out.writeIntArray(segmentNext, 0, segmentHighWater);
+        out.writeIntArray(segmentPrev, 0, segmentHighWater);
+        out.writeIntArray(segmentFirstSynapse, 0, segmentHighWater);
+        out.writeIntArray(segmentLastSynapse, 0, segmentHighWater);
+        out.writeIntArray(segmentSynapseCount, 0, segmentHighWater);
+        out.writeIntArray(segmentBirth, 0, segmentHighWater);
+        out.writeIntArray(segmentLastUsed, 0, segmentHighWater);
+
+        out.writeInt(numSynapses);
+        out.writeInt(freeSynapse);
+        out.writeIntArray(synapseSegment, 0, synapseHighWater);
+        out.writeIntArray(synapsePresynapticCell, 0, synapseHighWater);
+        out.writeDoubleArray(synapsePermanence, 0, synapseHighWater);
+        out.writeIntArray(synapseBirth, 0, synapseHighWater);
+        out.writeIntArray(synapseNext, 0, synapseHighWater);
+        out.writeIntArray(synapsePrev, 0, synapseHighWater);
+        out.writeIntArray(receptorNext, 0, synapseHighWater);
+        out.writeIntArray(receptorPrev, 0, synapseHighWater);
+    }
+
+    /**
+     * Replaces the contents of this store with those read from a snapshot
+     * written by a store for the same number of cells.
+     *
+     * @param in    the snapshot being read
+     */
+    @Override
+    public void readSnapshot(SnapshotReader in) {
+        int cells = in.readInt();
+        if(cells != numCells) {
+            throw new IllegalArgumentException("Snapshot holds " + cells + " cells, store has " + numCells);
+        }
+        iteration = in.readInt();
+        in.readIntArray(cellFirstSegment);
+        in.readIntArray(cellLastSegment);
+        in.readIntArray(cellSegmentCount);
+        in.readIntArray(cellFirstReceptor);
+        in.readIntArray(cellLastReceptor);
+        in.readIntArray(cellReceptorCount);
+
+        numSegments = in.readInt();
+        freeSegment = in.readInt();
+        segmentCell = in.readIntArray();
+        segmentHighWater = segmentCell.length;
+        segmentNext = in.readIntArray();
+        segmentPrev = in.readIntArray();
+        segmentFirstSynapse = in.readIntArray();
+        segmentLastSynapse = in.readIntArray();
+        segmentSynapseCount = in.readIntArray();
+        segmentBirth = in.readIntArray();
+        segmentLastUsed = in.readIntArray();
+        growSegments(Math.max(INITIAL_SEGMENT_CAPACITY, segmentHighWater));
+
+        numSynapses = in.readInt();
+        freeSynapse = in.readInt();
+        synapseSegment = in.readIntArray();
+        synapseHighWater = synapseSegment.length;
+        synapsePresynapticCell = in.readIntArray();
+        synapsePermanence = in.readDoubleArray();
+        synapseBirth = in.readIntArray();
+        synapseNext = in.readIntArray();
+        synapsePrev = in.readIntArray();
+        receptorNext = in.readIntArray();
+        receptorPrev = in.readIntArray();
+        growSynapses(Math.max(INITIAL_SYNAPSE_CAPACITY, synapseHighWater));
+    }
+
+    /////////////////////////////// Internal ///////////////////////////////
+
+    private void checkSegment(int segment) {
+        if(!isSegment(segment)) {
+            throw new IllegalArgumentException("Not a live segment: " + segment);
+        }
+    }
+
+    private void growSegments(int capacity) {
+        segmentCell = Arrays.copyOf(segmentCell, capacity);
+        segmentNext = Arrays.copyOf(segmentNext, capacity);
+        segmentPrev = Arrays.copyOf(segmentPrev, capacity);
+        segmentFirstSynapse = Arrays.copyOf(segmentFirstSynapse, capacity);
+        segmentLastSynapse = Arrays.copyOf(segmentLastSynapse, capacity);
+        segmentSynapseCount = Arrays.copyOf(segmentSynapseCount, capacity);
+        segmentBirth = Arrays.copyOf(segmentBirth, capacity);
+        segmentLastUsed = Arrays.copyOf(segmentLastUsed, capacity);
+    }
+
+    private void growSynapses(int capacity) {
+        synapseSegment = Arrays.copyOf(synapseSegment, capacity);
+        synapsePresynapticCell = Arrays.copyOf(synapsePresynapticCell, capacity);
+        synapsePermanence = Arrays.copyOf(synapsePermanence, capacity);
+        synapseBirth = Arrays.copyOf(synapseBirth, capacity);
+        synapseNext = Arrays.copyOf(synapseNext, capacity);
+        synapsePrev = Arrays.copyOf(synapsePrev, capacity);
+        receptorNext = Arrays.copyOf(receptorNext, capacity);
+        receptorPrev = Arrays.copyOf(receptorPrev, capacity);
+    }
+
+    private static int[] filled(int size, int value) {
+        int[] retVal = new int[size];
+        Arrays.fill(retVal, value);
+        return retVal;
+    }
+}
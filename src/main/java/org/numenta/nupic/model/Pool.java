@@ -22,12 +22,9 @@
 
 package org.numenta.nupic.model;
 
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.set.hash.TIntHashSet;
+import java.util.Arrays;
 
 import org.numenta.nupic.Connections;
-import org.numenta.nupic.util.ArrayUtils;
 
 /**
  * Convenience container for "bound" {@link Synapse} values
@@ -39,6 +36,13 @@ import org.numenta.nupic.util.ArrayUtils;
  * <br>Pool,boundͻֵcontainerԴͻconnectionsõ
  * еͻpoolһµõصvalues.
  * ⣬ͬһpoolԱⲿŵobjectõⲿŵobjectڲͻ
+ * <p>
+ * The pool is held in primitive arrays: the source indexes in ascending
+ * order, the permanences aligned with them and a bitset of the connected
+ * positions. The proximal pools of the {@link org.numenta.nupic.research.SpatialPooler}
+ * have no {@link Synapse} objects at all; their permanences are updated as
+ * whole arrays through {@link #setPermanences(Connections, int, double[])}.
+ * 
  * @author David Ray
  * @see Synapse
  * @see Connections
@@ -46,16 +50,51 @@ import org.numenta.nupic.util.ArrayUtils;
 public class Pool {
 	int size;
 	
-	/** Allows fast removal of connected synapse indexes. */
-	private TIntHashSet synapseConnections = new TIntHashSet();
 	/** 
-	 * Indexed according to the source Input Vector Bit (for ProximalDendrites),
-	 * and source cell (for DistalDendrites).
+	 * Indexes of the sources, ascending: input vector bits for ProximalDendrites
+	 * and source cells for DistalDendrites.
 	 */
-	private TIntObjectMap<Synapse> synapsesBySourceIndex = new TIntObjectHashMap<>();
+	private int[] sourceIndexes;
+	/** Permanences aligned with {@link #sourceIndexes} */
+	private double[] permanences;
+	/** Positions whose permanence is above the connected threshold */
+	private long[] connected;
 	
 	public Pool(int size) {
-		this.size = size;
+		this.size = 0;
+		this.sourceIndexes = new int[size];
+		this.permanences = new double[size];
+		this.connected = new long[(size + 63) >>> 6];
+	}
+	
+	/**
+	 * Creates a pool of the specified sources, with all permanences 0
+	 * @param sourceIndexes		the source indexes, which are copied and sorted
+	 */
+	public Pool(int[] sourceIndexes) {
+		this.size = sourceIndexes.length;
+		this.sourceIndexes = sourceIndexes.clone();
+		Arrays.sort(this.sourceIndexes);
+		this.permanences = new double[size];
+		this.connected = new long[(size + 63) >>> 6];
+	}
+	
+	/**
+	 * Returns the number of sources in this pool
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the position of the specified source within the
+	 * pool's arrays, or a negative value if it is not in the pool.
+	 * @param sourceIndex
+	 * @return
+	 */
+	public int indexOf(int sourceIndex) {
+		return Arrays.binarySearch(sourceIndexes, 0, size, sourceIndex);
 	}
 	
 	/**
@@ -65,7 +104,7 @@ public class Pool {
 	 * @return	the permanence
 	 */
 	public double getPermanence(Synapse s) {
-		return synapsesBySourceIndex.get(s.getInputIndex()).getPermanence();
+		return permanences[indexOf(s.getInputIndex())];
 	}
 	
 	/**
@@ -85,14 +124,92 @@ public class Pool {
 	 * @param permanence	the permanence value to record
 	 */
 	public void updatePool(Connections c, Synapse s, double permanence) {
-		int inputIndex = s.getInputIndex();
-		if(synapsesBySourceIndex.get(inputIndex) == null) {
-			synapsesBySourceIndex.put(inputIndex, s);
+		int pos = indexOf(s.getInputIndex());
+		if(pos < 0) {
+			pos = insert(-pos - 1, s.getInputIndex());
 		}
-		if(permanence > c.getSynPermConnected()) {
-			synapseConnections.add(inputIndex);
-		}else {
-			synapseConnections.remove(inputIndex);
+		permanences[pos] = permanence;
+		setConnected(pos, permanence > c.getSynPermConnected());
+	}
+	
+	/**
+	 * Inserts a source at the specified position, growing the arrays if needed
+	 * @return	the position
+	 */
+	private int insert(int pos, int sourceIndex) {
+		if(size == sourceIndexes.length) {
+			int capacity = Math.max(1, size * 2);
+			sourceIndexes = Arrays.copyOf(sourceIndexes, capacity);
+			permanences = Arrays.copyOf(permanences, capacity);
+			connected = Arrays.copyOf(connected, (capacity + 63) >>> 6);
+		}
+		boolean[] moved = new boolean[size - pos];
+		for(int i = pos;i < size;i++) {
+			moved[i - pos] = isConnected(i);
+		}
+		System.arraycopy(sourceIndexes, pos, sourceIndexes, pos + 1, size - pos);
+		System.arraycopy(permanences, pos, permanences, pos + 1, size - pos);
+		for(int i = pos;i < size;i++) {
+			setConnected(i + 1, moved[i - pos]);
+		}
+		sourceIndexes[pos] = sourceIndex;
+		permanences[pos] = 0;
+		setConnected(pos, false);
+		size++;
+		return pos;
+	}
+	
+	/**
+	 * Sets all permanences of this pool, aligned with {@link #getSourceIndexes()},
+	 * and records the connected ones (at or above the connected threshold) in the
+	 * row of the connected counts matrix of the specified column.
+	 * 
+	 * @param c				the connections memory
+	 * @param column		the index of the column owning this pool
+	 * @param perms			the permanences, aligned with the source indexes
+	 */
+	public void setPermanences(Connections c, int column, double[] perms) {
+		double synPermConnected = c.getSynPermConnected();
+		c.getConnectedCounts().clearStatistics(column);
+		Arrays.fill(connected, 0);
+		for(int i = 0;i < size;i++) {
+			double p = perms[i];
+			permanences[i] = p;
+			if(p > synPermConnected) {
+				connected[i >>> 6] |= 1L << i;
+			}
+			if(p >= synPermConnected) {
+				c.getConnectedCounts().set(1, column, sourceIndexes[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Same as {@link #setPermanences(Connections, int, double[])} for
+	 * permanences given for all inputs, of which those of the pool's
+	 * sources are read.
+	 * 
+	 * @param c				the connections memory
+	 * @param column		the index of the column owning this pool
+	 * @param densePerms	the permanences indexed by input bit
+	 */
+	public void setDensePermanences(Connections c, int column, double[] densePerms) {
+		double[] perms = new double[size];
+		for(int i = 0;i < size;i++) {
+			perms[i] = densePerms[sourceIndexes[i]];
+		}
+		setPermanences(c, column, perms);
+	}
+	
+	private boolean isConnected(int pos) {
+		return (connected[pos >>> 6] & (1L << pos)) != 0;
+	}
+	
+	private void setConnected(int pos, boolean isConnected) {
+		if(isConnected) {
+			connected[pos >>> 6] |= 1L << pos;
+		}else{
+			connected[pos >>> 6] &= ~(1L << pos);
 		}
 	}
 	
@@ -101,33 +218,46 @@ public class Pool {
 	 * adjustments.
 	 */
 	public void resetConnections() {
-		synapseConnections.clear();
+		Arrays.fill(connected, 0);
 	}
 	
 	/**
-	 * Returns the {@link Synapse} connected to the specified input bit
-	 * index.
-	 * 
-	 * @param inputIndex	the input vector connection's index.
+	 * Returns the source indexes in ascending order. The returned array is
+	 * the internal storage, of which the first {@link #size()} entries are
+	 * used, and must not be modified.
 	 * @return
 	 */
-	public Synapse getSynapseWithInput(int inputIndex) {
-		return synapsesBySourceIndex.get(inputIndex);
+	public int[] getSourceIndexes() {
+		return sourceIndexes;
 	}
 	
 	/**
-	 * Returns an array of permanence values
-	 * <br>ϡֵarrayġ
+	 * Returns the permanences aligned with {@link #getSourceIndexes()}. The 
+	 * returned array is the internal storage, of which the first {@link #size()}
+	 * entries are used, and must not be modified.
 	 * @return
 	 */
+	public double[] getPermanences() {
+		return permanences;
+	}
+	
+	/**
+	 * Returns the bitset of the positions, aligned with {@link #getSourceIndexes()},
+	 * whose permanence is above the connected threshold. The returned array is
+	 * the internal storage and must not be modified.
+	 * @return
+	 */
+	public long[] getConnectedBits() {
+		return connected;
+	}
+	
+	/**
+	 * Returns an array of permanence values
+	 * <br>ϡֵarray
+	 * @return	a copy of the permanences, aligned with {@link #getSparseConnections()}
+	 */
 	public double[] getSparsePermanences() {
-		double[] retVal = new double[size];
-		int[] keys = synapsesBySourceIndex.keys();
-		for(int x = 0, j = size - 1;x < size;x++, j--) {
-		    retVal[j] = synapsesBySourceIndex.get(keys[x]).getPermanence();
-		}
-		
-		return retVal;
+		return Arrays.copyOf(permanences, size);
 	}
 	
 	/**
@@ -140,9 +270,8 @@ public class Pool {
 	 */
 	public double[] getDensePermanences(Connections c) {
 		double[] retVal = new double[c.getNumInputs()];
-		int[] keys = synapsesBySourceIndex.keys();
-		for(int inputIndex : keys) {
-			retVal[inputIndex] = synapsesBySourceIndex.get(inputIndex).getPermanence();
+		for(int i = 0;i < size;i++) {
+			retVal[sourceIndexes[i]] = permanences[i];
 		}
 		return retVal;
 	}
@@ -150,11 +279,10 @@ public class Pool {
 	/**
 	 * Returns an array of input bit indexes indicating the index of the source. 
 	 * (input vector bit or lateral cell)
-	 * @return the sparse array
+	 * @return the sparse array, ascending
 	 */
 	public int[] getSparseConnections() {
-		int[] keys = ArrayUtils.reverse(synapsesBySourceIndex.keys());
-		return keys;
+		return Arrays.copyOf(sourceIndexes, size);
 	}
 	
 	/**
@@ -167,8 +295,8 @@ public class Pool {
 	 */
 	public int[] getDenseConnections(Connections c) {
 		int[] retVal = new int[c.getNumInputs()];
-		for(int inputIndex : synapseConnections.toArray()) {
-			retVal[inputIndex] = 1;
+		for(int i = 0;i < size;i++) {
+			if(isConnected(i)) retVal[sourceIndexes[i]] = 1;
 		}
 		return retVal;
 	}
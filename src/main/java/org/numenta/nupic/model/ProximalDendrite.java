@@ -22,8 +22,6 @@
 
 package org.numenta.nupic.model;
 
-import java.util.List;
-
 import org.numenta.nupic.Connections;
 
 /****
@@ -44,19 +42,19 @@ public class ProximalDendrite extends Segment {
 	}
 	
 	/**
-	 * Creates the pool of {@link Synapse}s representing the connection
-	 * to the input vector.
+	 * Creates the pool representing the connection to the input vector. 
+	 * Its synapses are held as arrays in the {@link Pool} rather than as 
+	 * {@link Synapse} objects, but are still counted as proximal synapses 
+	 * (see {@link Connections#getProxSynCount()}). They don't touch the 
+	 * distal synapse count, which the temporal memory may be updating on
+	 * another thread.
 	 * 
 	 * @param c					the {@link Connections} memory
 	 * @param inputIndexes		indexes specifying the input vector bit
 	 */
 	public Pool createPool(Connections c, int[] inputIndexes) {
-		pool = new Pool(inputIndexes.length);
-		for(int i = 0;i < inputIndexes.length;i++) {
-			int synCount = c.getSynapseCount();
-			pool.setPermanence(c, createSynapse(c, c.getSynapses(this), null, pool, synCount, inputIndexes[i]), 0);
-			c.setSynapseCount(synCount + 1);
-		}
+		pool = new Pool(inputIndexes);
+		c.setProxSynCount(c.getProxSynCount() + inputIndexes.length);
 		return pool;
 	}
 	
@@ -82,15 +80,7 @@ public class ProximalDendrite extends Segment {
 	 * @param perms		the floating point degree of connectedness
 	 */
 	public void setPermanences(Connections c, double[] perms) {
-		pool.resetConnections();
-		c.getConnectedCounts().clearStatistics(index);
-		List<Synapse> synapses = c.getSynapses(this);
-		for(Synapse s : synapses) {
-			s.setPermanence(c, perms[s.getInputIndex()]);
-			if(perms[s.getInputIndex()] >= c.getSynPermConnected()) {
-				c.getConnectedCounts().set(1, index, s.getInputIndex());
-			}
-		}
+		pool.setDensePermanences(c, index, perms);
 	}
 	
 	/**
@@ -102,18 +92,16 @@ public class ProximalDendrite extends Segment {
 	 * 
 	 * Note: This is the "sparse" version of this method.
 	 * 
-	 * @param c			the {@link Connections} memory
-	 * @param perms		the floating point degree of connectedness
+	 * @param c				the {@link Connections} memory
+	 * @param perms			the floating point degree of connectedness
+	 * @param inputIndexes	the pool's input indexes, as returned by {@link Pool#getSparseConnections()}
 	 */
 	public void setPermanences(Connections c, double[] perms, int[] inputIndexes) {
-		pool.resetConnections();
-		c.getConnectedCounts().clearStatistics(index);
-		for(int i = 0;i < inputIndexes.length;i++) {
-			pool.setPermanence(c, pool.getSynapseWithInput(inputIndexes[i]), perms[i]);
-			if(perms[i] >= c.getSynPermConnected()) {
-				c.getConnectedCounts().set(1, index, i);
-			}
+		if(inputIndexes.length != pool.size()) {
+			throw new IllegalArgumentException("Permanences must be given for the whole pool: " + 
+				inputIndexes.length + " != " + pool.size());
 		}
+		pool.setPermanences(c, index, perms);
 	}
 	
 	/**
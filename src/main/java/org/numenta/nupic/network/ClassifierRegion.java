@@ -0,0 +1,81 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.network;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.numenta.nupic.algorithms.CLAClassifier;
+
+/**
+ * {@link Region} feeding the active cells to a {@link CLAClassifier}, which
+ * learns to predict the bucket of the input (see {@link EncoderRegion}) 
+ * from them. Records without a bucket index are only inferred on.
+ */
+public class ClassifierRegion implements Region {
+    private CLAClassifier classifier;
+    private volatile boolean learn = true;
+    private Map<String, Object> classification = new LinkedHashMap<String, Object>();
+    
+    
+    /**
+     * Constructs a new {@code ClassifierRegion}
+     * 
+     * @param classifier    the classifier
+     */
+    public ClassifierRegion(CLAClassifier classifier) {
+        this.classifier = classifier;
+    }
+    
+    /**
+     * Sets the learning mode flag, which takes effect from 
+     * the next record computed.
+     * 
+     * @param learn
+     */
+    public void setLearn(boolean learn) {
+        this.learn = learn;
+    }
+    
+    /**
+     * Returns the learning mode flag
+     * @return
+     */
+    public boolean isLearn() {
+        return learn;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void compute(Inference<?> inference) {
+        classification.put("bucketIdx", inference.bucketIdx);
+        classification.put("actValue", inference.input);
+        
+        // The classifier keeps the pattern in its history, so it gets a copy
+        inference.classification = classifier.compute(inference.recordNum, classification, 
+            inference.activeCells.toArray(), learn && inference.bucketIdx != -1, true);
+    }
+}
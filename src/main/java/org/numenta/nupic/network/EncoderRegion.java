@@ -0,0 +1,82 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.network;
+
+import java.util.Arrays;
+
+import org.numenta.nupic.encoders.Encoder;
+
+/**
+ * {@link Region} encoding the input record with an {@link Encoder}. For 
+ * numeric and {@link String} input it also records the bucket index of the
+ * input, which a {@link ClassifierRegion} later in the network learns from.
+ *
+ * @param <T>   the type of the input records
+ */
+public class EncoderRegion<T> implements Region {
+    private Encoder<T> encoder;
+    
+    
+    /**
+     * Constructs a new {@code EncoderRegion}
+     * 
+     * @param encoder   the encoder of the input records
+     */
+    public EncoderRegion(Encoder<T> encoder) {
+        this.encoder = encoder;
+    }
+    
+    /**
+     * Returns the {@link Encoder} of this region
+     * @return
+     */
+    public Encoder<T> getEncoder() {
+        return encoder;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public void compute(Inference<?> inference) {
+        T input = (T)inference.input;
+        
+        int[] encoding = inference.encoding;
+        if(encoding == null || encoding.length != encoder.getWidth()) {
+            encoding = inference.encoding = new int[encoder.getWidth()];
+        }else{
+            Arrays.fill(encoding, 0);
+        }
+        encoder.encodeIntoArray(input, encoding);
+        
+        int[] buckets = null;
+        if(input instanceof Number) {
+            buckets = encoder.getBucketIndices(((Number)input).doubleValue());
+        }else if(input instanceof String) {
+            buckets = encoder.getBucketIndices((String)input);
+        }
+        inference.bucketIdx = buckets == null || buckets.length == 0 ? -1 : buckets[0];
+    }
+}
@@ -0,0 +1,184 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.network;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import org.numenta.nupic.algorithms.ClassifierResult;
+
+/**
+ * Carries one input record through the {@link Region}s of a {@link Network},
+ * and holds the output of each of them. Every stage writes its output into
+ * buffers owned by the {@code Inference}, which are allocated on first use 
+ * and then reused for the records that follow, so that a running network 
+ * does not allocate its intermediate SDRs per record.
+ * <p>
+ * An {@code Inference} handed out by a {@link Network} is only valid until
+ * it is returned (see {@link Network#compute(Object)} and {@link Subscriber}):
+ * values which need to outlive it must be copied.
+ *
+ * @param <T>   the type of the input records
+ */
+public class Inference<T> {
+    int recordNum;
+    T input;
+    boolean reset;
+    
+    /** Bucket index of the input, or -1 if it has none */
+    int bucketIdx = -1;
+    /** Encoder output */
+    int[] encoding;
+    /** Dense {@link org.numenta.nupic.research.SpatialPooler} output */
+    int[] activeArray;
+    /** Indexes of the active columns, in ascending order */
+    TIntArrayList activeColumns = new TIntArrayList();
+    /** Indexes of the active cells */
+    TIntArrayList activeCells = new TIntArrayList();
+    /** Indexes of the columns predicted for the next record, in ascending order */
+    TIntArrayList predictiveColumns = new TIntArrayList();
+    double anomalyScore;
+    ClassifierResult<Object> classification;
+    /** The failure of a region computing this or an earlier record while streaming */
+    Throwable failure;
+    
+    
+    /**
+     * Constructs a new {@code Inference}
+     */
+    Inference() {}
+    
+    /**
+     * Prepares this {@code Inference} to carry a new input record,
+     * clearing the results of the last one.
+     * 
+     * @param recordNum     the sequence number of the record
+     * @param input         the input record
+     * @param reset         whether sequence state is to be reset before this record
+     */
+    void prepare(int recordNum, T input, boolean reset) {
+        this.recordNum = recordNum;
+        this.input = input;
+        this.reset = reset;
+        this.bucketIdx = -1;
+        this.activeColumns.resetQuick();
+        this.activeCells.resetQuick();
+        this.predictiveColumns.resetQuick();
+        this.anomalyScore = 0;
+        this.classification = null;
+        this.failure = null;
+    }
+    
+    /**
+     * Returns the sequence number of the input record
+     * @return
+     */
+    public int getRecordNum() {
+        return recordNum;
+    }
+    
+    /**
+     * Returns the input record
+     * @return
+     */
+    public T getInput() {
+        return input;
+    }
+    
+    /**
+     * Returns a flag indicating whether sequence state was 
+     * reset before this record was computed.
+     * @return
+     */
+    public boolean isReset() {
+        return reset;
+    }
+    
+    /**
+     * Returns the bucket index of the input, or -1 if the encoder
+     * could not assign one.
+     * @return
+     */
+    public int getBucketIndex() {
+        return bucketIdx;
+    }
+    
+    /**
+     * Returns the encoder output
+     * @return
+     */
+    public int[] getEncoding() {
+        return encoding;
+    }
+    
+    /**
+     * Returns the dense spatial pooler output, with 1's at the 
+     * indices of the active columns and 0's everywhere else.
+     * @return
+     */
+    public int[] getActiveArray() {
+        return activeArray;
+    }
+    
+    /**
+     * Returns the indexes of the active columns, in ascending order
+     * @return
+     */
+    public TIntArrayList getActiveColumns() {
+        return activeColumns;
+    }
+    
+    /**
+     * Returns the indexes of the active cells
+     * @return
+     */
+    public TIntArrayList getActiveCells() {
+        return activeCells;
+    }
+    
+    /**
+     * Returns the indexes of the columns predicted for the
+     * next record, in ascending order.
+     * @return
+     */
+    public TIntArrayList getPredictiveColumns() {
+        return predictiveColumns;
+    }
+    
+    /**
+     * Returns the raw anomaly score of the active columns, given 
+     * the columns predicted by the previous record.
+     * @return
+     */
+    public double getAnomalyScore() {
+        return anomalyScore;
+    }
+    
+    /**
+     * Returns the classifier output, or null if no classifier ran
+     * @return
+     */
+    public ClassifierResult<Object> getClassification() {
+        return classification;
+    }
+}
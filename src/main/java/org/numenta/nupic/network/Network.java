@@ -0,0 +1,352 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An ordered chain of {@link Region}s which input records are pushed
+ * through, e.g. encoder, spatial pooler, temporal memory and classifier:
+ * <pre>
+ * Network&lt;Double&gt; network = new Network&lt;Double&gt;()
+ *     .add(new EncoderRegion&lt;Double&gt;(encoder))
+ *     .add(new SpatialPoolerRegion(connections, sp))
+ *     .add(new TemporalMemoryRegion(connections, tm))
+ *     .add(new ClassifierRegion(classifier));
+ * </pre>
+ * A network runs in one of two modes:
+ * <ul>
+ *  <li>Synchronously, where {@link #compute(Object)} runs all regions on the
+ *  calling thread and returns the output of one record.</li>
+ *  <li>Streaming, where {@link #start(Subscriber)} gives every region a
+ *  thread of its own, connected to its neighbours by bounded queues. Records
+ *  pushed with {@link #push(Object)} then flow through the regions pipelined, 
+ *  so that e.g. record t+1 is encoded while record t is in the temporal 
+ *  memory, and their outputs are delivered to the {@link Subscriber} in 
+ *  order. At most {@link #getDepth()} records are in flight at a time: 
+ *  {@link #push(Object)} blocks until the slowest region has caught up.</li>
+ * </ul>
+ * In both modes, the {@link Inference} buffers are recycled rather than 
+ * allocated per record. Each region's results are identical in both modes.
+ *
+ * @param <T>   the type of the input records
+ */
+public class Network<T> {
+    private List<Region> regions = new ArrayList<Region>();
+    
+    /** Sequence number of the next record */
+    private int recordNum;
+    /** Whether sequence state is to be reset before the next record */
+    private boolean resetPending;
+    
+    /** Reused by synchronous computation */
+    private Inference<T> inference = new Inference<T>();
+    
+    /** Maximum number of records in flight while streaming, 0 meaning one per region */
+    private int depth;
+    /** Non null while streaming */
+    private Stream stream;
+    
+    
+    /**
+     * Constructs a new, empty {@code Network}
+     */
+    public Network() {}
+    
+    /**
+     * Appends the specified {@link Region} to this network
+     * 
+     * @param region    the region to add
+     * @return  this {@code Network}
+     */
+    public Network<T> add(Region region) {
+        checkNotStreaming();
+        regions.add(region);
+        return this;
+    }
+    
+    /**
+     * Returns the regions of this network, in order
+     * @return
+     */
+    public List<Region> getRegions() {
+        return regions;
+    }
+    
+    /**
+     * Sets the maximum number of records in flight while streaming.
+     * Defaults to one more than the number of regions, which lets 
+     * each region work on a record while one is being delivered.
+     * 
+     * @param depth     the number of {@link Inference} buffers to stream with
+     */
+    public void setDepth(int depth) {
+        if(depth < 1) {
+            throw new IllegalArgumentException("Depth must be positive: " + depth);
+        }
+        this.depth = depth;
+    }
+    
+    /**
+     * Returns the maximum number of records in flight while streaming
+     * @return
+     */
+    public int getDepth() {
+        return depth > 0 ? depth : regions.size() + 1;
+    }
+    
+    /**
+     * Requests that sequence state be reset before the next 
+     * record is computed (see {@link TemporalMemoryRegion}).
+     */
+    public void reset() {
+        resetPending = true;
+    }
+    
+    /**
+     * Runs the specified record through all regions on the calling thread.
+     * The returned {@link Inference} is reused by the next call.
+     * 
+     * @param input     the input record
+     * @return  the output of the network for the record
+     */
+    public Inference<T> compute(T input) {
+        checkNotStreaming();
+        
+        inference.prepare(recordNum++, input, resetPending);
+        resetPending = false;
+        for(Region region : regions) {
+            region.compute(inference);
+        }
+        
+        return inference;
+    }
+    
+    /**
+     * Starts streaming to the specified {@link Subscriber}, 
+     * each region running on a thread of its own.
+     * 
+     * @param subscriber    the receiver of the network's output
+     */
+    public void start(Subscriber<T> subscriber) {
+        checkNotStreaming();
+        if(regions.isEmpty()) {
+            throw new IllegalStateException("Network has no regions");
+        }
+        stream = new Stream(subscriber);
+    }
+    
+    /**
+     * Pushes the next record into the network while streaming, blocking
+     * while {@link #getDepth()} records are in flight. Records pushed after
+     * a failure was reported to the {@link Subscriber} are dropped.
+     * 
+     * @param input     the input record
+     * @throws InterruptedException     if interrupted while waiting
+     * @throws IllegalStateException    if the network isn't streaming, or a 
+     *                                  stage thread terminated abnormally
+     */
+    public void push(T input) throws InterruptedException {
+        if(stream == null) {
+            throw new IllegalStateException("Network is not streaming");
+        }
+        
+        if(stream.reported) {
+            return;
+        }
+        
+        Inference<T> next = stream.free.take();
+        if(next == stream.endOfStream) {
+            // Hand the marker on to any other blocked producer
+            stream.free.offer(next);
+            throw new IllegalStateException("Network stream terminated abnormally");
+        }
+        next.prepare(recordNum++, input, resetPending);
+        resetPending = false;
+        stream.queues.get(0).put(next);
+    }
+    
+    /**
+     * Ends streaming, waiting for all records pushed so far to 
+     * be delivered and the stage threads to terminate.
+     * 
+     * @throws InterruptedException     if interrupted while waiting
+     */
+    public void close() throws InterruptedException {
+        if(stream == null) {
+            throw new IllegalStateException("Network is not streaming");
+        }
+        
+        try {
+            stream.queues.get(0).put(stream.endOfStream);
+            for(Thread thread : stream.threads) {
+                thread.join();
+            }
+        }finally{
+            stream = null;
+        }
+    }
+    
+    /**
+     * Returns a flag indicating whether this network is streaming
+     * @return
+     */
+    public boolean isStreaming() {
+        return stream != null;
+    }
+    
+    private void checkNotStreaming() {
+        if(stream != null) {
+            throw new IllegalStateException("Network is streaming");
+        }
+    }
+    
+    /**
+     * The stage threads and queues of a streaming network. Stage i takes
+     * records from queue i, and hands them to queue i + 1 or, for the 
+     * last stage, to the subscriber, after which they return to the free
+     * queue. A shared end of stream marker is passed down to stop them.
+     * <p>
+     * A region failure travels with the record it failed on, and with every 
+     * record after it, so that the records before it are still computed and
+     * delivered before the subscriber is told of the failure. A stage thread
+     * which dies puts the end of stream marker into the free queue, which 
+     * releases blocked producers.
+     */
+    private class Stream {
+        private final Subscriber<T> subscriber;
+        private final BlockingQueue<Inference<T>> free;
+        private final List<BlockingQueue<Inference<T>>> queues = new ArrayList<BlockingQueue<Inference<T>>>();
+        private final List<Thread> threads = new ArrayList<Thread>();
+        private final Inference<T> endOfStream = new Inference<T>();
+        
+        /** Whether a failure has been reported, after which records are dropped */
+        private volatile boolean reported;
+        
+        private Stream(Subscriber<T> subscriber) {
+            this.subscriber = subscriber;
+            
+            int depth = getDepth();
+            free = new ArrayBlockingQueue<Inference<T>>(depth);
+            for(int i = 0;i < depth;i++) {
+                free.add(new Inference<T>());
+            }
+            
+            // Every queue can hold all buffers, so a stage never blocks handing on
+            for(int i = 0;i < regions.size();i++) {
+                queues.add(new ArrayBlockingQueue<Inference<T>>(depth + 1));
+            }
+            for(int i = 0;i < regions.size();i++) {
+                Thread thread = new Thread(new Stage(i), "network-stage-" + i);
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+        
+        /**
+         * Runs one region on its own thread
+         */
+        private class Stage implements Runnable {
+            private final int index;
+            private final Region region;
+            private final boolean last;
+            /** The failure of this stage's region, which the records after it inherit */
+            private Throwable failure;
+            
+            private Stage(int index) {
+                this.index = index;
+                this.region = regions.get(index);
+                this.last = index == regions.size() - 1;
+            }
+            
+            @Override public void run() {
+                boolean ended = false;
+                try {
+                    BlockingQueue<Inference<T>> in = queues.get(index);
+                    while(true) {
+                        Inference<T> next = in.take();
+                        if(next == endOfStream) {
+                            ended = true;
+                            if(last) {
+                                if(!reported) subscriber.onComplete();
+                            }else{
+                                queues.get(index + 1).put(next);
+                            }
+                            return;
+                        }
+                        
+                        if(next.failure == null) {
+                            next.failure = failure;
+                        }
+                        if(next.failure == null) {
+                            try {
+                                region.compute(next);
+                            }catch(Throwable t) {
+                                next.failure = failure = t;
+                            }
+                        }
+                        
+                        if(!last) {
+                            queues.get(index + 1).put(next);
+                        }else{
+                            deliver(next);
+                        }
+                    }
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }finally{
+                    if(!ended) {
+                        free.offer(endOfStream);
+                    }
+                }
+            }
+            
+            /**
+             * Hands a record to the subscriber and recycles it. The first 
+             * record carrying a failure reports it, and all records after
+             * that are dropped.
+             */
+            private void deliver(Inference<T> next) {
+                if(!reported) {
+                    if(next.failure == null) {
+                        try {
+                            subscriber.onNext(next);
+                        }catch(Throwable t) {
+                            next.failure = t;
+                        }
+                    }
+                    if(next.failure != null) {
+                        reported = true;
+                        subscriber.onError(next.failure);
+                    }
+                }
+                free.add(next);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.network;
+
+/**
+ * One processing stage of a {@link Network}, such as an encoder, a spatial 
+ * pooler or a temporal memory. A {@code Region} reads the outputs of the 
+ * stages before it from an {@link Inference}, and writes its own output 
+ * into the buffers of that same {@code Inference}.
+ * <p>
+ * A network running pipelined calls each of its regions from a thread of 
+ * its own, one record at a time and in record order, so a region's state 
+ * need not be thread safe, but must not be shared with another region.
+ */
+public interface Region {
+    /**
+     * Processes the record carried by the specified {@link Inference}
+     * 
+     * @param inference     the record, and the outputs of the preceding regions
+     */
+    public void compute(Inference<?> inference);
+}
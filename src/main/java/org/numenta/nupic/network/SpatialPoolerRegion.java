@@ -0,0 +1,85 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.network;
+
+import org.numenta.nupic.Connections;
+import org.numenta.nupic.research.SpatialPooler;
+
+/**
+ * {@link Region} running a {@link SpatialPooler} on the encoder output.
+ * Produces both the dense active array and the sorted active column indexes.
+ */
+public class SpatialPoolerRegion implements Region {
+    private Connections connections;
+    private SpatialPooler spatialPooler;
+    private volatile boolean learn = true;
+    
+    
+    /**
+     * Constructs a new {@code SpatialPoolerRegion}
+     * 
+     * @param c     the connection memory, already initialized by the spatial pooler
+     * @param sp    the spatial pooler
+     */
+    public SpatialPoolerRegion(Connections c, SpatialPooler sp) {
+        this.connections = c;
+        this.spatialPooler = sp;
+    }
+    
+    /**
+     * Sets the learning mode flag, which takes effect from 
+     * the next record computed.
+     * 
+     * @param learn
+     */
+    public void setLearn(boolean learn) {
+        this.learn = learn;
+    }
+    
+    /**
+     * Returns the learning mode flag
+     * @return
+     */
+    public boolean isLearn() {
+        return learn;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void compute(Inference<?> inference) {
+        int[] activeArray = inference.activeArray;
+        if(activeArray == null || activeArray.length != connections.getNumColumns()) {
+            activeArray = inference.activeArray = new int[connections.getNumColumns()];
+        }
+        
+        spatialPooler.compute(connections, inference.encoding, activeArray, learn, true);
+        
+        inference.activeColumns.resetQuick();
+        for(int i = 0;i < activeArray.length;i++) {
+            if(activeArray[i] > 0) inference.activeColumns.add(i);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.network;
+
+/**
+ * Receives the output of a {@link Network} streaming records (see 
+ * {@link Network#start(Subscriber)}). The methods of a {@code Subscriber} 
+ * are called one at a time, in record order, from the thread of the 
+ * network's last stage.
+ *
+ * @param <T>   the type of the input records
+ */
+public interface Subscriber<T> {
+    /**
+     * Called with the fully computed output of the next record. The 
+     * {@link Inference} is recycled once this method returns, so any
+     * values to be kept must be copied.
+     * 
+     * @param inference     the output of the network for one record
+     */
+    public void onNext(Inference<T> inference);
+    
+    /**
+     * Called once if a {@link Region} fails, after all records before
+     * the one it failed on were delivered; no further records are
+     * delivered after this. A failure of {@link #onNext(Inference)} 
+     * is reported the same way.
+     * 
+     * @param t     the failure
+     */
+    public void onError(Throwable t);
+    
+    /**
+     * Called once after the last record has been delivered, 
+     * when the stream is closed without failure.
+     */
+    public void onComplete();
+}
@@ -0,0 +1,158 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.network;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import org.numenta.nupic.Connections;
+import org.numenta.nupic.algorithms.Anomaly;
+import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.model.CellSet;
+import org.numenta.nupic.research.ComputeCycle;
+import org.numenta.nupic.research.TemporalMemory;
+import org.numenta.nupic.util.ArrayUtils;
+
+/**
+ * {@link Region} running a {@link TemporalMemory} on the active columns.
+ * Produces the active cells, the columns predicted for the next record, and
+ * the raw anomaly score of the active columns given the last prediction.
+ */
+public class TemporalMemoryRegion implements Region {
+    private Connections connections;
+    private TemporalMemory temporalMemory;
+    private volatile boolean learn = true;
+    
+    /** Input of the temporal memory, reused while the number of active columns stays the same */
+    private int[] activeColumns = new int[0];
+    /** Columns predicted by the last record, in ascending order, in a growable buffer */
+    private int[] prevPredictiveColumns = new int[0];
+    private int numPrevPredictiveColumns;
+    
+    
+    /**
+     * Constructs a new {@code TemporalMemoryRegion}
+     * 
+     * @param c     the connection memory, already initialized by the temporal memory
+     * @param tm    the temporal memory
+     */
+    public TemporalMemoryRegion(Connections c, TemporalMemory tm) {
+        this.connections = c;
+        this.temporalMemory = tm;
+    }
+    
+    /**
+     * Sets the learning mode flag, which takes effect from 
+     * the next record computed.
+     * 
+     * @param learn
+     */
+    public void setLearn(boolean learn) {
+        this.learn = learn;
+    }
+    
+    /**
+     * Returns the learning mode flag
+     * @return
+     */
+    public boolean isLearn() {
+        return learn;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void compute(Inference<?> inference) {
+        if(inference.reset) {
+            temporalMemory.reset(connections);
+            numPrevPredictiveColumns = 0;
+        }
+        
+        int numActiveColumns = inference.activeColumns.size();
+        if(activeColumns.length != numActiveColumns) {
+            activeColumns = new int[numActiveColumns];
+        }
+        inference.activeColumns.toArray(activeColumns, 0, numActiveColumns);
+        ComputeCycle cycle = temporalMemory.compute(connections, activeColumns, learn);
+        
+        inference.activeCells.resetQuick();
+        inference.predictiveColumns.resetQuick();
+        int cellsPerColumn = connections.getCellsPerColumn();
+        if(connections.getSegmentStore() != null) {
+            inference.activeCells.addAll(cycle.activeCellIndexes());
+            TIntArrayList predictiveCells = cycle.predictiveCellIndexes();
+            for(int i = 0;i < predictiveCells.size();i++) {
+                inference.predictiveColumns.add(predictiveCells.get(i) / cellsPerColumn);
+            }
+        }else{
+            //Object storage cycles hold their cells as bitsets, already sorted by index
+            inference.activeCells.addAll(((CellSet)cycle.activeCells()).getIndexes());
+            for(Cell cell : cycle.predictiveCells()) {
+                inference.predictiveColumns.add(cell.getIndex() / cellsPerColumn);
+            }
+        }
+        sortUnique(inference.predictiveColumns);
+        
+        inference.anomalyScore = rawAnomalyScore();
+        
+        int numPredictiveColumns = inference.predictiveColumns.size();
+        if(prevPredictiveColumns.length < numPredictiveColumns) {
+            prevPredictiveColumns = new int[Math.max(numPredictiveColumns, prevPredictiveColumns.length * 2)];
+        }
+        inference.predictiveColumns.toArray(prevPredictiveColumns, 0, numPredictiveColumns);
+        numPrevPredictiveColumns = numPredictiveColumns;
+    }
+    
+    /**
+     * Returns the raw anomaly score of the active columns given the columns
+     * predicted by the last record, as {@link Anomaly#computeRawAnomalyScore(int[], int[])}
+     * does for the sorted columns, without copying the prediction buffer.
+     * @return
+     */
+    private double rawAnomalyScore() {
+        int numActiveColumns = activeColumns.length;
+        if(numActiveColumns == 0) {
+            return numPrevPredictiveColumns > 0 ? 1.0d : 0;
+        }
+        int predicted = ArrayUtils.intersectionCount(
+            activeColumns, numActiveColumns, prevPredictiveColumns, numPrevPredictiveColumns);
+        return (numActiveColumns - predicted) / (double)numActiveColumns;
+    }
+    
+    /**
+     * Sorts the specified list and removes duplicate entries, in place
+     * @param list
+     */
+    private void sortUnique(TIntArrayList list) {
+        list.sort();
+        int size = 0;
+        for(int i = 0;i < list.size();i++) {
+            int value = list.getQuick(i);
+            if(size == 0 || list.getQuick(size - 1) != value) {
+                list.setQuick(size++, value);
+            }
+        }
+        list.remove(size, list.size() - size);
+    }
+}
@@ -0,0 +1,197 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.research;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import org.numenta.nupic.Connections;
+
+/**
+ * Precomputed neighborhoods of every column for a given inhibition radius,
+ * stored in compressed row form: the neighbors of column {@code i} are
+ * {@code getNeighbors()[getStart(i)]} up to (exclusive) 
+ * {@code getNeighbors()[getEnd(i)]}.
+ * <p>
+ * Building the index costs one {@link SpatialPooler#getNeighborsND} call per
+ * column; afterwards local inhibition and the local duty cycle update only
+ * scan flat int arrays. The index stays valid until the inhibition radius
+ * (or the column count) changes, see {@link #isValidFor(Connections)}.
+ * <p>
+ * The table holds about one int per column per neighbor, which for wide
+ * topologies with large radii is more than is worth keeping. When it would
+ * exceed {@link #MAX_STORED_NEIGHBORS} entries, nothing is stored: 
+ * {@link #isStored()} returns false and callers compute each neighborhood 
+ * on the fly with {@link SpatialPooler#getNeighborsND} instead.
+ */
+public class ColumnNeighborhoods {
+    /** The largest number of neighbor entries stored, 16M ints or 64MB */
+    public static final long MAX_STORED_NEIGHBORS = 1 << 24;
+    
+    private final int radius;
+    private final boolean wrapAround;
+    private final int numColumns;
+    private final int[] offsets;
+    private final int[] neighbors;
+    
+    
+    /**
+     * Builds the neighborhoods of all columns of the specified {@link Connections}
+     * using its current inhibition radius.
+     * 
+     * @param sp            the {@link SpatialPooler} used to compute each neighborhood
+     * @param c             the {@link Connections} memory
+     * @param wrapAround    whether neighborhoods wrap around the column dimensions
+     */
+    public ColumnNeighborhoods(SpatialPooler sp, Connections c, boolean wrapAround) {
+        this(sp, c, wrapAround, MAX_STORED_NEIGHBORS);
+    }
+    
+    /**
+     * Builds the neighborhoods of all columns of the specified {@link Connections}
+     * using its current inhibition radius, unless their estimated total size 
+     * exceeds the specified limit.
+     * 
+     * @param sp            the {@link SpatialPooler} used to compute each neighborhood
+     * @param c             the {@link Connections} memory
+     * @param wrapAround    whether neighborhoods wrap around the column dimensions
+     * @param maxStored     the largest number of neighbor entries to store
+     */
+    ColumnNeighborhoods(SpatialPooler sp, Connections c, boolean wrapAround, long maxStored) {
+        this.radius = c.getInhibitionRadius();
+        this.wrapAround = wrapAround;
+        this.numColumns = c.getNumColumns();
+        
+        long size = estimateSize(c.getColumnDimensions(), radius);
+        if(size > maxStored) {
+            offsets = null;
+            neighbors = null;
+            return;
+        }
+        
+        offsets = new int[numColumns + 1];
+        TIntArrayList all = new TIntArrayList((int)size);
+        for(int i = 0;i < numColumns;i++) {
+            all.addAll(sp.getNeighborsND(c, i, c.getMemory(), radius, wrapAround));
+            offsets[i + 1] = all.size();
+        }
+        neighbors = all.toArray();
+    }
+    
+    /**
+     * Returns an upper bound of the total number of neighbor entries
+     * of all columns of a topology having the specified dimensions.
+     * 
+     * @param dimensions    the column dimensions
+     * @param radius        the inhibition radius
+     * @return
+     */
+    static long estimateSize(int[] dimensions, int radius) {
+        long numColumns = 1;
+        long hoodSize = 1;
+        for(int dimension : dimensions) {
+            numColumns *= dimension;
+            hoodSize *= Math.min(2L * radius + 1, dimension);
+        }
+        return numColumns * (hoodSize - 1);
+    }
+    
+    /**
+     * Returns a flag indicating whether this index describes the current
+     * column topology and inhibition radius of the specified {@link Connections}
+     * 
+     * @param c     the {@link Connections} memory
+     * @return
+     */
+    public boolean isValidFor(Connections c) {
+        return radius == c.getInhibitionRadius() && numColumns == c.getNumColumns();
+    }
+    
+    /**
+     * Returns a flag indicating whether the neighborhoods are stored. If not, 
+     * {@link #getNeighbors()} returns null and the neighborhoods have to be
+     * computed when needed.
+     * @return
+     */
+    public boolean isStored() {
+        return neighbors != null;
+    }
+    
+    /**
+     * Returns the inhibition radius this index was built for
+     * @return
+     */
+    public int getRadius() {
+        return radius;
+    }
+    
+    /**
+     * Returns whether the neighborhoods wrap around the column dimensions
+     * @return
+     */
+    public boolean getWrapAround() {
+        return wrapAround;
+    }
+    
+    /**
+     * Returns the position of the first neighbor of the specified column
+     * within {@link #getNeighbors()}
+     * 
+     * @param column    the column index
+     * @return
+     */
+    public int getStart(int column) {
+        return offsets[column];
+    }
+    
+    /**
+     * Returns the position following the last neighbor of the specified column
+     * within {@link #getNeighbors()}
+     * 
+     * @param column    the column index
+     * @return
+     */
+    public int getEnd(int column) {
+        return offsets[column + 1];
+    }
+    
+    /**
+     * Returns the number of neighbors of the specified column
+     * 
+     * @param column    the column index
+     * @return
+     */
+    public int size(int column) {
+        return offsets[column + 1] - offsets[column];
+    }
+    
+    /**
+     * Returns the concatenated neighbor lists of all columns, or null if they
+     * aren't stored (see {@link #isStored()}). The returned array is the 
+     * internal storage and must not be modified.
+     * @return
+     */
+    public int[] getNeighbors() {
+        return neighbors;
+    }
+}
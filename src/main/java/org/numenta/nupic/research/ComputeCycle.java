@@ -22,6 +22,8 @@
 
 package org.numenta.nupic.research;
 
+import gnu.trove.list.array.TIntArrayList;
+
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -29,9 +31,13 @@ import java.util.Set;
 
 import org.numenta.nupic.Connections;
 import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.model.CellSet;
 import org.numenta.nupic.model.Column;
+import org.numenta.nupic.model.ColumnSet;
 import org.numenta.nupic.model.DistalDendrite;
+import org.numenta.nupic.model.FlatSegmentStore;
 import org.numenta.nupic.model.Synapse;
+import org.numenta.nupic.util.SparseObjectMatrix;
 
 /**
  * Contains a snapshot of the state attained during one computational
@@ -51,12 +57,75 @@ public class ComputeCycle {
     Set<DistalDendrite> learningSegments = new LinkedHashSet<DistalDendrite>();
     Map<DistalDendrite, Set<Synapse>> activeSynapsesForSegment = new LinkedHashMap<DistalDendrite, Set<Synapse>>();
     
+    /////////////// Index based state used with a FlatSegmentStore, kept sorted ///////////////
+    TIntArrayList activeCellIndexes = new TIntArrayList();
+    TIntArrayList winnerCellIndexes = new TIntArrayList();
+    TIntArrayList predictiveCellIndexes = new TIntArrayList();
+    TIntArrayList predictedColumnIndexes = new TIntArrayList();
+    TIntArrayList activeSegmentHandles = new TIntArrayList();
+    TIntArrayList learningSegmentHandles = new TIntArrayList();
+    /** Segments with at least one active synapse, in order of first activation */
+    TIntArrayList matchingSegmentHandles = new TIntArrayList();
+    /** Number of active synapses on each of the matching segments */
+    TIntArrayList matchingSegmentCounts = new TIntArrayList();
+    /** The store iteration during which this cycle was computed, segments created later are not part of it */
+    int iteration;
+    /** The other half of a double buffer, reused by the next compute cycle */
+    ComputeCycle buffer;
+    
     
     /**
      * Constructs a new {@code ComputeCycle}
      */
     public ComputeCycle() {}
     
+    /**
+     * Constructs a new {@code ComputeCycle} whose cell and column sets
+     * are views of its index based state.
+     * 
+     * @param cells     all cells, by index
+     * @param columns   all columns, by index
+     */
+    ComputeCycle(Cell[] cells, Column[] columns) {
+        activeCells = new IndexedSetView<Cell>(activeCellIndexes, cells);
+        winnerCells = new IndexedSetView<Cell>(winnerCellIndexes, cells);
+        predictiveCells = new IndexedSetView<Cell>(predictiveCellIndexes, cells);
+        predictedColumns = new IndexedSetView<Column>(predictedColumnIndexes, columns);
+    }
+    
+    /**
+     * Constructs a new {@code ComputeCycle} whose cell and column sets are
+     * bitsets over the cell and column index spaces, see {@link CellSet}.
+     * 
+     * @param cells     all cells, by index
+     * @param columns   the matrix holding all columns
+     */
+    ComputeCycle(Cell[] cells, SparseObjectMatrix<Column> columns) {
+        activeCells = new CellSet(cells);
+        winnerCells = new CellSet(cells);
+        predictiveCells = new CellSet(cells);
+        predictedColumns = new ColumnSet(columns);
+    }
+    
+    /**
+     * Returns a pair of {@code ComputeCycle}s referring to each other, which
+     * the flat {@link TemporalMemory} alternates between so that no state 
+     * needs to be allocated per compute cycle. A cycle returned by the
+     * {@code TemporalMemory} is therefore only valid until the compute 
+     * call after next.
+     * 
+     * @param cells     all cells, by index
+     * @param columns   all columns, by index
+     * @return  one half of the pair
+     */
+    static ComputeCycle doubleBuffered(Cell[] cells, Column[] columns) {
+        ComputeCycle first = new ComputeCycle(cells, columns);
+        ComputeCycle second = new ComputeCycle(cells, columns);
+        first.buffer = second;
+        second.buffer = first;
+        return first;
+    }
+    
     /**
      * Constructs a new {@code ComputeCycle} initialized with
      * the connections relevant to the current calling {@link Thread} for
@@ -132,4 +201,79 @@ public class ComputeCycle {
     public Map<DistalDendrite, Set<Synapse>> activeSynapsesForSegment() {
         return activeSynapsesForSegment;
     }
+    
+    /**
+     * Returns the indexes of the active cells in ascending order. Only
+     * populated when running on a {@link FlatSegmentStore}.
+     * @return
+     */
+    public TIntArrayList activeCellIndexes() {
+        return activeCellIndexes;
+    }
+    
+    /**
+     * Returns the indexes of the winner cells in ascending order. Only 
+     * populated when running on a {@link FlatSegmentStore}.
+     * @return
+     */
+    public TIntArrayList winnerCellIndexes() {
+        return winnerCellIndexes;
+    }
+    
+    /**
+     * Returns the indexes of the predictive cells in ascending order. Only 
+     * populated when running on a {@link FlatSegmentStore}.
+     * @return
+     */
+    public TIntArrayList predictiveCellIndexes() {
+        return predictiveCellIndexes;
+    }
+    
+    /**
+     * Returns the indexes of the predicted columns in ascending order. Only 
+     * populated when running on a {@link FlatSegmentStore}.
+     * @return
+     */
+    public TIntArrayList predictedColumnIndexes() {
+        return predictedColumnIndexes;
+    }
+    
+    /**
+     * Returns the handles of the active segments. Only populated when 
+     * running on a {@link FlatSegmentStore}.
+     * @return
+     */
+    public TIntArrayList activeSegmentHandles() {
+        return activeSegmentHandles;
+    }
+    
+    /**
+     * Returns the handles of the learning segments. Only populated when 
+     * running on a {@link FlatSegmentStore}.
+     * @return
+     */
+    public TIntArrayList learningSegmentHandles() {
+        return learningSegmentHandles;
+    }
+    
+    /**
+     * Clears all state held by this {@code ComputeCycle}
+     */
+    public void clear() {
+        activeCells.clear();
+        winnerCells.clear();
+        predictiveCells.clear();
+        predictedColumns.clear();
+        activeSegments.clear();
+        learningSegments.clear();
+        activeSynapsesForSegment.clear();
+        activeCellIndexes.resetQuick();
+        winnerCellIndexes.resetQuick();
+        predictiveCellIndexes.resetQuick();
+        predictedColumnIndexes.resetQuick();
+        activeSegmentHandles.resetQuick();
+        learningSegmentHandles.resetQuick();
+        matchingSegmentHandles.resetQuick();
+        matchingSegmentCounts.resetQuick();
+    }
 }
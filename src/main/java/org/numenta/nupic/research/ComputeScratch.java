@@ -0,0 +1,117 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.research;
+
+import java.util.Arrays;
+
+import org.numenta.nupic.model.FlatSegmentStore;
+import org.numenta.nupic.util.IndexSampler;
+
+/**
+ * Reusable working memory for a {@link TemporalMemory} running on a
+ * {@link FlatSegmentStore}. Holds the dense per-segment activity counters
+ * and the per-cell and per-column membership marks used during one compute
+ * cycle, so that none of them have to be allocated per record.
+ * <p>
+ * Marks are "stamped" rather than cleared: an index is a member of a given
+ * mark set if its entry equals the stamp handed out by {@link #nextStamp()}
+ * for that set, which makes emptying a set an O(1) operation.
+ */
+public class ComputeScratch {
+    /** Per segment count of synapses with an active presynaptic cell */
+    int[] numActivePotential = new int[0];
+    /** Per segment count of connected synapses with an active presynaptic cell */
+    int[] numActiveConnected = new int[0];
+    /** Per segment marks */
+    int[] segmentMarks = new int[0];
+
+    /** Per cell marks */
+    final int[] prevActiveCellMarks;
+    final int[] winnerCellMarks;
+    final int[] predictiveCellMarks;
+    final int[] excludedCellMarks;
+
+    /** Per column marks */
+    final int[] activeColumnMarks;
+    final int[] doneColumnMarks;
+
+    /** Growable buffers used while picking cells to learn on */
+    int[] candidates = new int[64];
+    int[] sortedPrevWinners = new int[64];
+    /** Draws candidate positions without shifting the candidate buffer */
+    final IndexSampler sampler = new IndexSampler();
+
+    private int stamp;
+
+
+    /**
+     * Constructs a new {@code ComputeScratch}
+     *
+     * @param numCells      the total number of cells
+     * @param numColumns    the total number of columns
+     */
+    public ComputeScratch(int numCells, int numColumns) {
+        prevActiveCellMarks = new int[numCells];
+        winnerCellMarks = new int[numCells];
+        predictiveCellMarks = new int[numCells];
+        excludedCellMarks = new int[numCells];
+        activeColumnMarks = new int[numColumns];
+        doneColumnMarks = new int[numColumns];
+    }
+
+    /**
+     * Returns a stamp value which has never been used before,
+     * effectively creating a new empty mark set.
+     * @return
+     */
+    int nextStamp() {
+        return ++stamp;
+    }
+
+    /**
+     * Ensures the per segment arrays can be indexed by every segment
+     * handle issued so far.
+     *
+     * @param segmentCapacity   see {@link FlatSegmentStore#getSegmentCapacity()}
+     */
+    void ensureSegmentCapacity(int segmentCapacity) {
+        if(numActivePotential.length < segmentCapacity) {
+            int capacity = Math.max(segmentCapacity, numActivePotential.length * 2);
+            numActivePotential = Arrays.copyOf(numActivePotential, capacity);
+            numActiveConnected = Arrays.copyOf(numActiveConnected, capacity);
+            segmentMarks = Arrays.copyOf(segmentMarks, capacity);
+        }
+    }
+
+    /**
+     * Ensures the candidate buffers can hold the specified number of cells.
+     * @param size
+     */
+    void ensureCandidateCapacity(int size) {
+        if(candidates.length < size) {
+            int capacity = Math.max(size, candidates.length * 2);
+            candidates = new int[capacity];
+            sortedPrevWinners = new int[capacity];
+        }
+    }
+}
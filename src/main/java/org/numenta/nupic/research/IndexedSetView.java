@@ -0,0 +1,110 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.research;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.model.Column;
+
+/**
+ * Read-through {@link java.util.Set} view of a sorted list of indexes into an object array,
+ * used to expose the index based state of a {@link ComputeCycle} as {@link org.numenta.nupic.model.Cell}
+ * and {@link org.numenta.nupic.model.Column} sets without copying it. Iteration follows the
+ * order of the index list, {@link #contains(Object)} is a binary search and {@link #clear()}
+ * clears the underlying list.
+ *
+ * @param <T>   the element type
+ */
+class IndexedSetView<T> extends AbstractSet<T> {
+    private final TIntArrayList indexes;
+    private final T[] lookup;
+
+    /**
+     * Constructs a new {@code IndexedSetView}
+     *
+     * @param indexes   the backing list of indexes, which must be kept sorted without duplicates
+     * @param lookup    the objects referred to by the indexes
+     */
+    IndexedSetView(TIntArrayList indexes, T[] lookup) {
+        this.indexes = indexes;
+        this.lookup = lookup;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < indexes.size();
+            }
+
+            @Override
+            public T next() {
+                if(next >= indexes.size()) {
+                    throw new NoSuchElementException();
+                }
+                return lookup[indexes.get(next++)];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("remove");
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return indexes.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if(o == null) return false;
+        int i = indexes.binarySearch(indexOf(o));
+        return i >= 0 && lookup[indexes.get(i)] == o;
+    }
+
+    /**
+     * Returns the index of the specified {@link org.numenta.nupic.model.Cell} or 
+     * {@link org.numenta.nupic.model.Column}, or -1 for other objects.
+     */
+    private static int indexOf(Object o) {
+        if(o instanceof Cell) return ((Cell)o).getIndex();
+        if(o instanceof Column) return ((Column)o).getIndex();
+        return -1;
+    }
+    
+    @Override
+    public void clear() {
+        indexes.resetQuick();
+    }
+}
@@ -0,0 +1,216 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.research;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import org.numenta.nupic.Connections;
+import org.numenta.nupic.model.Column;
+import org.numenta.nupic.model.Pool;
+
+/**
+ * Bookkeeping of a lazily initialized spatial pooler region, see
+ * {@link Connections#setSpLazyInit(boolean)}. No {@link Column} or 
+ * {@link Pool} exists until the column is first touched, either because
+ * an input bit which may lie in its potential pool turns on, or because 
+ * the column itself is selected for learning. Each column is then 
+ * initialized with a random generator derived from the seed and its index
+ * (see {@link SpatialPooler#columnRandom(Connections, int)}), so the
+ * region's state does not depend on the order in which columns are touched.
+ * <p>
+ * A column whose potential pool has never seen an active input bit would
+ * have no overlap anyway; until it is touched it is dormant, which also
+ * means it is not bumped up as a weak column.
+ */
+public class LazyColumns {
+    /** Columns whose potential pool is centered on each input bit, in compressed row form */
+    private final int[] centerOffsets;
+    private final int[] columnsByCenter;
+    /** Input bits whose potential columns have all been materialized */
+    private final boolean[] touchedInputs;
+    private final boolean[] materialized;
+    private int numMaterialized;
+    
+    
+    /**
+     * Indexes the columns of the specified {@link Connections} by the 
+     * input bit on which their potential pool is centered.
+     * 
+     * @param sp    the {@link SpatialPooler} mapping columns to inputs
+     * @param c     the {@link Connections} memory
+     */
+    public LazyColumns(SpatialPooler sp, Connections c) {
+        int numColumns = c.getNumColumns();
+        int numInputs = c.getNumInputs();
+        
+        int[] centers = new int[numColumns];
+        centerOffsets = new int[numInputs + 1];
+        for(int i = 0;i < numColumns;i++) {
+            centers[i] = sp.mapColumn(c, i);
+            centerOffsets[centers[i] + 1]++;
+        }
+        for(int i = 0;i < numInputs;i++) {
+            centerOffsets[i + 1] += centerOffsets[i];
+        }
+        columnsByCenter = new int[numColumns];
+        int[] next = new int[numInputs];
+        for(int i = 0;i < numColumns;i++) {
+            columnsByCenter[centerOffsets[centers[i]] + next[centers[i]]++] = i;
+        }
+        
+        touchedInputs = new boolean[numInputs];
+        materialized = new boolean[numColumns];
+    }
+    
+    /**
+     * Materializes every column whose potential pool may contain one of 
+     * the specified input bits. Each input bit is only expanded the first
+     * time it is seen.
+     * 
+     * @param sp            the {@link SpatialPooler} initializing the columns
+     * @param c             the {@link Connections} memory
+     * @param inputIndices  the indexes of the active input bits
+     */
+    public void touchInputs(SpatialPooler sp, Connections c, int[] inputIndices) {
+        for(int input : inputIndices) {
+            if(numMaterialized == materialized.length) return;
+            if(touchedInputs[input]) continue;
+            touchedInputs[input] = true;
+            
+            // Potential pools are wrapped boxes of potentialRadius around their
+            // center, so the centers of the pools containing an input bit are
+            // the bits of the same box around the input.
+            TIntArrayList centers = sp.getNeighborsND(c, input, c.getInputMatrix(), c.getPotentialRadius(), true);
+            centers.add(input);
+            for(int i = 0;i < centers.size();i++) {
+                int center = centers.get(i);
+                for(int j = centerOffsets[center];j < centerOffsets[center + 1];j++) {
+                    materialize(sp, c, columnsByCenter[j]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Materializes the specified columns
+     * 
+     * @param sp        the {@link SpatialPooler} initializing the columns
+     * @param c         the {@link Connections} memory
+     * @param columns   the column indexes
+     */
+    public void touchColumns(SpatialPooler sp, Connections c, int[] columns) {
+        for(int column : columns) {
+            materialize(sp, c, column);
+        }
+    }
+    
+    /**
+     * Materializes all columns not yet materialized
+     * 
+     * @param sp    the {@link SpatialPooler} initializing the columns
+     * @param c     the {@link Connections} memory
+     */
+    public void touchAll(SpatialPooler sp, Connections c) {
+        for(int i = 0;i < materialized.length && numMaterialized < materialized.length;i++) {
+            materialize(sp, c, i);
+        }
+    }
+    
+    /**
+     * Creates the {@link Column} and {@link Pool} of the specified
+     * column, unless they exist.
+     * 
+     * @param sp        the {@link SpatialPooler} initializing the column
+     * @param c         the {@link Connections} memory
+     * @param column    the column index
+     */
+    public void materialize(SpatialPooler sp, Connections c, int column) {
+        if(materialized[column]) return;
+        
+        sp.initColumn(c, column, SpatialPooler.columnRandom(c, column));
+        materialized[column] = true;
+        numMaterialized++;
+    }
+    
+    /**
+     * Returns a flag indicating whether the specified column has been materialized
+     * @param column    the column index
+     * @return
+     */
+    public boolean isMaterialized(int column) {
+        return materialized[column];
+    }
+    
+    /**
+     * Returns the number of columns materialized so far
+     * @return
+     */
+    public int getNumMaterialized() {
+        return numMaterialized;
+    }
+    
+    /**
+     * Returns the indexes of the columns materialized so far, in ascending order
+     * @return
+     */
+    public int[] getMaterializedColumns() {
+        return where(materialized);
+    }
+    
+    /**
+     * Returns the indexes of the input bits expanded so far, in ascending order
+     * @return
+     */
+    public int[] getTouchedInputs() {
+        return where(touchedInputs);
+    }
+    
+    /**
+     * Marks the specified input bits as expanded and columns as materialized
+     * without initializing anything, for restoring a snapshot whose columns 
+     * are read separately.
+     * 
+     * @param touchedInputs     the input bits expanded when the snapshot was taken
+     * @param columns           the columns materialized when the snapshot was taken
+     */
+    public void restore(int[] touchedInputs, int[] columns) {
+        for(int input : touchedInputs) {
+            this.touchedInputs[input] = true;
+        }
+        for(int column : columns) {
+            if(!materialized[column]) {
+                materialized[column] = true;
+                numMaterialized++;
+            }
+        }
+    }
+    
+    private static int[] where(boolean[] flags) {
+        TIntArrayList indexes = new TIntArrayList();
+        for(int i = 0;i < flags.length;i++) {
+            if(flags[i]) indexes.add(i);
+        }
+        return indexes.toArray();
+    }
+}
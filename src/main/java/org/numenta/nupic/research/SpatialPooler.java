@@ -30,6 +30,11 @@ import org.numenta.nupic.model.Column;
 import org.numenta.nupic.model.Pool;
 import org.numenta.nupic.util.ArrayUtils;
 import org.numenta.nupic.util.Condition;
+import org.numenta.nupic.util.IndexShards;
+import org.numenta.nupic.util.MersenneTwister;
+import org.numenta.nupic.util.SDR;
+import org.numenta.nupic.util.SnapshotReader;
+import org.numenta.nupic.util.SnapshotWriter;
 import org.numenta.nupic.util.SparseBinaryMatrix;
 import org.numenta.nupic.util.SparseMatrix;
 import org.numenta.nupic.util.SparseObjectMatrix;
@@ -93,8 +98,10 @@ public class SpatialPooler {
         c.setNumInputs(numInputs);
         c.setNumColumns(numColumns);
         
-        //Fill the sparse matrix with column objects
-        for(int i = 0;i < numColumns;i++) { mem.set(i, new Column(c.getCellsPerColumn(), i)); }
+        //Fill the sparse matrix with column objects, unless they are created on first use
+        if(!c.getSpLazyInit()) {
+            for(int i = 0;i < numColumns;i++) { mem.set(i, new Column(c.getCellsPerColumn(), i)); }
+        }
         
         c.setPotentialPools(new SparseObjectMatrix<Pool>(c.getMemory().getDimensions()));
         
@@ -118,24 +125,115 @@ public class SpatialPooler {
     /**
      * Step two of pooler initialization kept separate from initialization
      * of static members so that they may be set at a different point in 
-     * the initialization (as sometimes needed by tests).
+     * the initialization (as sometimes needed by tests). When lazy initialization
+     * is configured, columns are only indexed here and get connected on first use,
+     * see {@link LazyColumns}; with derived seeds they are initialized in parallel,
+     * see {@link Connections#setSpDerivedSeeds(boolean)}.
      * 
      * @param c		the {@link Connections} memory
      */
     public void connectAndConfigureInputs(Connections c) {
-    	// Initialize the set of permanence values for each column. Ensure that
-        // each column is connected to enough input bits to allow it to be
-        // activated.
-    	int numColumns = c.getNumColumns();
+    	if(c.getSpLazyInit()) {
+    		c.setLazyColumns(new LazyColumns(this, c));
+    	}else if(c.getSpDerivedSeeds()) {
+    		initColumnsDerived(c);
+    	}else{
+	    	// Initialize the set of permanence values for each column. Ensure that
+	        // each column is connected to enough input bits to allow it to be
+	        // activated.
+	    	int numColumns = c.getNumColumns();
+	        for(int i = 0;i < numColumns;i++) {
+	            initColumn(c, i, c.getRandom());
+	        }
+    	}
+        
+        updateInhibitionRadius(c);
+    }
+    
+    /**
+     * Creates the potential pool of the specified column and initializes 
+     * its permanences, ensuring that the column is connected to enough input
+     * bits to allow it to be activated.
+     * 
+     * @param c         the {@link Connections} memory
+     * @param index     the column index
+     * @param random    the random generator sampling the pool and its connections
+     */
+    public void initColumn(Connections c, int index, Random random) {
+        int[] potential = mapPotential(c, index, true, random);
+        Column column = c.getColumn(index);
+        c.getPotentialPools().set(index, column.createPotentialPool(c, potential));
+        double[] perm = initPermanence(c, potential, index, c.getInitConnectedPct(), random);
+        updatePermanencesForColumn(c, perm, column, potential, true);
+    }
+    
+    /**
+     * Initializes every column as {@link #initColumn(Connections, int, Random)} does
+     * with the random generator returned by {@link #columnRandom(Connections, int)}.
+     * The pools and permanences are sampled on the spatial pooler's threads, then
+     * the synapses are created in column order, so the result does not depend on
+     * the number of threads.
+     * 
+     * @param c     the {@link Connections} memory
+     */
+    private void initColumnsDerived(final Connections c) {
+        int numColumns = c.getNumColumns();
+        final int[][] potentials = new int[numColumns][];
+        final double[][] perms = new double[numColumns][];
+        IndexShards.Body body = new IndexShards.Body() {
+            @Override public void apply(int from, int to) {
+                double[] dense = new double[c.getNumInputs()];
+                for(int i = from;i < to;i++) {
+                    Random random = columnRandom(c, i);
+                    int[] potential = mapPotential(c, i, true, random);
+                    double[] perm = initPotentialPermanences(c, potential, c.getInitConnectedPct(), random);
+                    
+                    Arrays.fill(dense, 0);
+                    for(int j = 0;j < potential.length;j++) {
+                        dense[potential[j]] = perm[j];
+                    }
+                    raisePermanenceToThreshold(c, dense, potential);
+                    trimAndClip(c, dense);
+                    for(int j = 0;j < potential.length;j++) {
+                        perm[j] = dense[potential[j]];
+                    }
+                    potentials[i] = potential;
+                    perms[i] = perm;
+                }
+            }
+        };
+        if(c.getSpParallelism() > 1) {
+            IndexShards.run(c.getSpPool(), numColumns, body);
+        }else{
+            body.apply(0, numColumns);
+        }
+        
+        double[] dense = new double[c.getNumInputs()];
         for(int i = 0;i < numColumns;i++) {
-            int[] potential = mapPotential(c, i, true);
             Column column = c.getColumn(i);
-            c.getPotentialPools().set(i, column.createPotentialPool(c, potential));
-            double[] perm = initPermanence(c, potential, i, c.getInitConnectedPct());
-            updatePermanencesForColumn(c, perm, column, potential, true);
+            c.getPotentialPools().set(i, column.createPotentialPool(c, potentials[i]));
+            for(int j = 0;j < potentials[i].length;j++) {
+                dense[potentials[i][j]] = perms[i][j];
+            }
+            column.setProximalPermanences(c, dense);
+            for(int j = 0;j < potentials[i].length;j++) {
+                dense[potentials[i][j]] = 0;
+            }
+            potentials[i] = null;
+            perms[i] = null;
         }
-        
-        updateInhibitionRadius(c);
+    }
+    
+    /**
+     * Returns a random generator for the initialization of the specified column,
+     * derived from the configured seed and the column index only.
+     * 
+     * @param c         the {@link Connections} memory
+     * @param index     the column index
+     * @return
+     */
+    public static Random columnRandom(Connections c, int index) {
+        return new MersenneTwister(new int[] { c.getSeed(), index });
     }
     
     /**
@@ -169,11 +267,65 @@ public class SpatialPooler {
         }
         
         updateBookeepingVars(c, learn);
+        int[] inputIndices = learn || c.getLazyColumns() != null ? 
+            ArrayUtils.where(inputVector, ArrayUtils.INT_GREATER_THAN_0) : null;
+        if(c.getLazyColumns() != null) {
+            c.getLazyColumns().touchInputs(this, c, inputIndices);
+        }
         int[] overlaps = calculateOverlap(c, inputVector);
         
+        int[] activeColumns = computeActiveColumns(c, overlaps, inputIndices, learn, stripNeverLearned);
+        
+        Arrays.fill(activeArray, 0);
+        if(activeColumns.length > 0) {
+        	ArrayUtils.setIndexesTo(activeArray, activeColumns, 1);
+        }
+    }
+    
+    /**
+     * Same as {@link #compute(Connections, int[], int[], boolean, boolean)} for
+     * input and output held as {@link SDR}s, which spares converting between
+     * dense and sparse forms: overlaps are computed on the input's words, and 
+     * learning uses its on bits.
+     * 
+     * @param c                 the {@link Connections} memory encapsulation
+     * @param input             the input, of {@link Connections#getNumInputs()} bits
+     * @param activeColumns     set to the active columns, of {@link Connections#getNumColumns()} bits
+     * @param learn             learning mode flag
+     * @param stripNeverLearned whether to remove never learning columns when not learning
+     */
+    public void compute(Connections c, SDR input, SDR activeColumns, boolean learn, boolean stripNeverLearned) {
+        if(input.getSize() != c.getNumInputs()) {
+            throw new IllegalArgumentException("Input SDR must be same size as the defined number of inputs");
+        }
+        if(activeColumns.getSize() != c.getNumColumns()) {
+            throw new IllegalArgumentException("Output SDR must be same size as the defined number of columns");
+        }
+        
+        updateBookeepingVars(c, learn);
+        if(c.getLazyColumns() != null) {
+            c.getLazyColumns().touchInputs(this, c, input.getSparse());
+        }
+        int[] overlaps = calculateOverlap(c, input);
+        
+        activeColumns.setSparse(computeActiveColumns(c, overlaps, input.getSparse(), learn, stripNeverLearned));
+    }
+    
+    /**
+     * Inhibits the columns given their overlaps and, if learning, adapts
+     * the synapses and duty cycles of the winners.
+     * 
+     * @param c                 the {@link Connections} memory encapsulation
+     * @param overlaps          the overlap of each column with the input
+     * @param inputIndices      the indexes of the active input bits, needed when learning
+     * @param learn             learning mode flag
+     * @param stripNeverLearned whether to remove never learning columns when not learning
+     * @return  the indexes of the active columns
+     */
+    private int[] computeActiveColumns(Connections c, int[] overlaps, int[] inputIndices, boolean learn, boolean stripNeverLearned) {
         double[] boostedOverlaps;
         if(learn) {
-        	boostedOverlaps = ArrayUtils.multiply(c.getBoostFactors(), overlaps);
+        	boostedOverlaps = boostOverlaps(c, overlaps);
         }else{
         	boostedOverlaps = ArrayUtils.toDoubleArray(overlaps);
         }
@@ -181,7 +333,7 @@ public class SpatialPooler {
         int[] activeColumns = inhibitColumns(c, boostedOverlaps);
         
         if(learn) {
-        	adaptSynapses(c, inputVector, activeColumns);
+        	adaptSynapsesSparse(c, inputIndices, activeColumns);
         	updateDutyCycles(c, overlaps, activeColumns);
         	bumpUpWeakColumns(c);
         	updateBoostFactors(c);
@@ -193,10 +345,7 @@ public class SpatialPooler {
         	activeColumns = stripUnlearnedColumns(c, activeColumns).toArray();
         }
         
-        Arrays.fill(activeArray, 0);
-        if(activeColumns.length > 0) {
-        	ArrayUtils.setIndexesTo(activeArray, activeColumns, 1);
-        }
+        return activeColumns;
     }
     
     /**
@@ -266,15 +415,33 @@ public class SpatialPooler {
      * @param c
      */
     public void updateMinDutyCyclesLocal(Connections c) {
+    	ColumnNeighborhoods hood = c.getDutyCycleNeighborhoods();
+    	if(hood == null || !hood.isValidFor(c)) {
+    		c.setDutyCycleNeighborhoods(hood = new ColumnNeighborhoods(this, c, true));
+    	}
+    	int[] neighbors = hood.getNeighbors();
+    	double[] overlapDutyCycles = c.getOverlapDutyCycles();
+    	double[] activeDutyCycles = c.getActiveDutyCycles();
     	int len = c.getNumColumns();
     	for(int i = 0;i < len;i++) {
-    		int[] maskNeighbors = getNeighborsND(c, i, c.getMemory(), c.getInhibitionRadius(), true).toArray();
-    		c.getMinOverlapDutyCycles()[i] = ArrayUtils.max(
-    			ArrayUtils.sub(c.getOverlapDutyCycles(), maskNeighbors)) *
-    				c.getMinPctOverlapDutyCycles();
-    		c.getMinActiveDutyCycles()[i] = ArrayUtils.max(
-    			ArrayUtils.sub(c.getActiveDutyCycles(), maskNeighbors)) *
-    				c.getMinPctActiveDutyCycles();
+    		int start, end;
+    		if(hood.isStored()) {
+    			start = hood.getStart(i);
+    			end = hood.getEnd(i);
+    		}else{
+    			neighbors = getNeighborsND(c, i, c.getMemory(), hood.getRadius(), true).toArray();
+    			start = 0;
+    			end = neighbors.length;
+    		}
+    		double maxOverlap = Double.MIN_VALUE;
+    		double maxActive = Double.MIN_VALUE;
+    		for(int j = start;j < end;j++) {
+    			int n = neighbors[j];
+    			if(overlapDutyCycles[n] > maxOverlap) maxOverlap = overlapDutyCycles[n];
+    			if(activeDutyCycles[n] > maxActive) maxActive = activeDutyCycles[n];
+    		}
+    		c.getMinOverlapDutyCycles()[i] = maxOverlap * c.getMinPctOverlapDutyCycles();
+    		c.getMinActiveDutyCycles()[i] = maxActive * c.getMinPctActiveDutyCycles();
     	}
     }
     
@@ -381,11 +548,25 @@ public class SpatialPooler {
         }
         
         TDoubleArrayList avgCollected = new TDoubleArrayList();
+        LazyColumns lazy = c.getLazyColumns();
         int len = c.getNumColumns();
         for(int i = 0;i < len;i++) {
-            avgCollected.add(avgConnectedSpanForColumnND(c, i));
+            if(lazy == null || lazy.isMaterialized(i)) {
+                avgCollected.add(avgConnectedSpanForColumnND(c, i));
+            }
+        }
+        double avgConnectedSpan;
+        if(avgCollected.isEmpty()) {
+            // No column is connected yet, so take the span of a potential pool
+            int[] inputDims = c.getInputDimensions();
+            double[] spans = new double[inputDims.length];
+            for(int i = 0;i < spans.length;i++) {
+                spans[i] = Math.min(2 * c.getPotentialRadius() + 1, inputDims[i]);
+            }
+            avgConnectedSpan = ArrayUtils.average(spans);
+        }else{
+            avgConnectedSpan = ArrayUtils.average(avgCollected.toArray());
         }
-        double avgConnectedSpan = ArrayUtils.average(avgCollected.toArray());
         double diameter = avgConnectedSpan * avgColumnsPerInput(c);
         double radius = (diameter - 1) / 2.0d;
         radius = Math.max(1, radius);
@@ -424,22 +605,73 @@ public class SpatialPooler {
      * @param activeColumns		an array containing the indices of the columns that
      *              			survived inhibition.
      */
-    public void adaptSynapses(Connections c, int[] inputVector, int[] activeColumns) {
-    	int[] inputIndices = ArrayUtils.where(inputVector, ArrayUtils.INT_GREATER_THAN_0);
+    public void adaptSynapses(final Connections c, int[] inputVector, final int[] activeColumns) {
+    	adaptSynapsesSparse(c, ArrayUtils.where(inputVector, ArrayUtils.INT_GREATER_THAN_0), activeColumns);
+    }
+    
+    /**
+     * Same as {@link #adaptSynapses(Connections, int[], int[])} for an 
+     * input given by the indexes of its active bits.
+     * 
+     * @param c					the {@link Connections} (spatial pooler memory)
+     * @param inputIndices		the indexes of the active input bits
+     * @param activeColumns		an array containing the indices of the columns that
+     *              			survived inhibition.
+     */
+    public void adaptSynapsesSparse(final Connections c, int[] inputIndices, final int[] activeColumns) {
+    	if(c.getLazyColumns() != null) {
+    		c.getLazyColumns().touchColumns(this, c, activeColumns);
+    	}
     	
-    	double[] permChanges = new double[c.getNumInputs()];
+    	final double[] permChanges = new double[c.getNumInputs()];
     	Arrays.fill(permChanges, -1 * c.getSynPermInactiveDec());
     	ArrayUtils.setIndexesTo(permChanges, inputIndices, c.getSynPermActiveInc());
+    	
+    	if(c.getSpParallelism() > 1) {
+    		// The new permanences of each column only depend on its own pool, so they 
+    		// are computed in parallel and then written back in column order.
+    		final double[][] perms = new double[activeColumns.length][];
+    		IndexShards.run(c.getSpPool(), activeColumns.length, new IndexShards.Body() {
+    			@Override public void apply(int from, int to) {
+    				for(int i = from;i < to;i++) {
+    					perms[i] = adaptPoolPermanences(c, c.getPotentialPools().getObject(activeColumns[i]), permChanges);
+    				}
+    			}
+    		});
+    		for(int i = 0;i < activeColumns.length;i++) {
+    			c.getPotentialPools().getObject(activeColumns[i]).setPermanences(c, activeColumns[i], perms[i]);
+    		}
+    		return;
+    	}
+    	
     	for(int i = 0;i < activeColumns.length;i++) {
     		Pool pool = c.getPotentialPools().getObject(activeColumns[i]);
-    		double[] perm = pool.getDensePermanences(c);
-    		int[] indexes = pool.getSparseConnections();
-    		ArrayUtils.raiseValuesBy(permChanges, perm);
-    		Column col = c.getColumn(activeColumns[i]);
-    		updatePermanencesForColumn(c, perm, col, indexes, true);
+    		pool.setPermanences(c, activeColumns[i], adaptPoolPermanences(c, pool, permChanges));
     	}
     }
     
+    /**
+     * Returns the permanences of the specified pool, aligned with its 
+     * source indexes, after applying the per-input changes and then raising,
+     * trimming and clipping them. Only the pool's potential inputs are visited,
+     * which gives the same values as adapting the dense permanence row.
+     * 
+     * @param c				the {@link Connections} memory
+     * @param pool			the column's potential pool
+     * @param permChanges	the change of permanence for each input bit
+     * @return	the new permanences
+     */
+    private double[] adaptPoolPermanences(Connections c, Pool pool, double[] permChanges) {
+    	int[] inputs = pool.getSourceIndexes();
+    	double[] perm = pool.getSparsePermanences();
+    	for(int k = 0;k < perm.length;k++) {
+    		perm[k] += permChanges[inputs[k]];
+    	}
+    	raisePermanenceToThresholdSparse(c, perm);
+    	trimAndClip(c, perm);
+    	return perm;
+    }
+    
     /**
      * This method increases the permanence values of synapses of columns whose
      * activity level has been too low. Such columns are identified by having an
@@ -449,12 +681,19 @@ public class SpatialPooler {
      * @param c
      */
     public void bumpUpWeakColumns(final Connections c) {
+    	final LazyColumns lazy = c.getLazyColumns();
     	int[] weakColumns = ArrayUtils.where(c.getMemory().get1DIndexes(), new Condition.Adapter<Integer>() {
     		@Override public boolean eval(int i) {
-    			return c.getOverlapDutyCycles()[i] < c.getMinOverlapDutyCycles()[i];
+    			return c.getOverlapDutyCycles()[i] < c.getMinOverlapDutyCycles()[i] &&
+    				(lazy == null || lazy.isMaterialized(i));
     		}
     	});
     	
+    	if(c.getSpParallelism() > 1) {
+    		bumpUpWeakColumnsParallel(c, weakColumns);
+    		return;
+    	}
+    	
     	for(int i = 0;i < weakColumns.length;i++) {
     		Pool pool = c.getPotentialPools().getObject(weakColumns[i]);
     		double[] perm = pool.getSparsePermanences();
@@ -465,6 +704,34 @@ public class SpatialPooler {
     	}
     }
     
+    /**
+     * Parallel version of {@link #bumpUpWeakColumns(Connections)}: the raised
+     * permanences of the weak columns are computed on the spatial pooler's
+     * {@link java.util.concurrent.ForkJoinPool} and written back in column order.
+     * 
+     * @param c             the {@link Connections} memory
+     * @param weakColumns   the indexes of the columns to bump up
+     */
+    private void bumpUpWeakColumnsParallel(final Connections c, final int[] weakColumns) {
+    	final double[][] perms = new double[weakColumns.length][];
+    	final int[][] indexes = new int[weakColumns.length][];
+    	IndexShards.run(c.getSpPool(), weakColumns.length, new IndexShards.Body() {
+    		@Override public void apply(int from, int to) {
+    			for(int i = from;i < to;i++) {
+    				Pool pool = c.getPotentialPools().getObject(weakColumns[i]);
+    				perms[i] = pool.getSparsePermanences();
+    				indexes[i] = pool.getSparseConnections();
+    				ArrayUtils.raiseValuesBy(c.getSynPermBelowStimulusInc(), perms[i]);
+    				raisePermanenceToThresholdSparse(c, perms[i]);
+    				trimAndClip(c, perms[i]);
+    			}
+    		}
+    	});
+    	for(int i = 0;i < weakColumns.length;i++) {
+    		c.getColumn(weakColumns[i]).setProximalPermanencesSparse(c, perms[i], indexes[i]);
+    	}
+    }
+    
     /**
      * This method ensures that each column has enough connections to input bits
      * to allow it to become active. Since a column must have at least
@@ -539,9 +806,20 @@ public class SpatialPooler {
             raisePermanenceToThreshold(c, perm, maskPotential);
         }
         
+        trimAndClip(c, perm);
+        column.setProximalPermanences(c, perm);
+    }
+    
+    /**
+     * Zeroes the permanences at or below 'synPermTrimThreshold' and clips
+     * the others into the permanence range.
+     * 
+     * @param c         the {@link Connections} which is the memory model.
+     * @param perm      the permanence values to trim and clip
+     */
+    private void trimAndClip(Connections c, double[] perm) {
         ArrayUtils.lessThanOrEqualXThanSetToY(perm, c.getSynPermTrimThreshold(), 0);
         ArrayUtils.clip(perm, c.getSynPermMin(), c.getSynPermMax());
-        column.setProximalPermanences(c, perm);
     }
     
     /**
@@ -566,8 +844,7 @@ public class SpatialPooler {
             raisePermanenceToThresholdSparse(c, perm);
         }
         
-        ArrayUtils.lessThanOrEqualXThanSetToY(perm, c.getSynPermTrimThreshold(), 0);
-        ArrayUtils.clip(perm, c.getSynPermMin(), c.getSynPermMax());
+        trimAndClip(c, perm);
         column.setProximalPermanencesSparse(c, perm, maskPotential);
     }
     
@@ -583,7 +860,17 @@ public class SpatialPooler {
      * @return  a randomly generated permanence value
      */
     public static double initPermConnected(Connections c) {
-        double p = c.getSynPermConnected() + c.getRandom().nextDouble() * c.getSynPermActiveInc() / 4.0;
+        return initPermConnected(c, c.getRandom());
+    }
+    
+    /**
+     * Same as {@link #initPermConnected(Connections)} using the specified random generator.
+     * @param c         the {@link Connections} memory
+     * @param random    the random generator
+     * @return  a randomly generated permanence value
+     */
+    public static double initPermConnected(Connections c, Random random) {
+        double p = c.getSynPermConnected() + random.nextDouble() * c.getSynPermActiveInc() / 4.0;
         
         // Note from Python implementation on conditioning below:
         // Ensure we don't have too much unnecessary precision. A full 64 bits of
@@ -600,7 +887,17 @@ public class SpatialPooler {
      * @return  a randomly generated permanence value
      */
     public static double initPermNonConnected(Connections c) {
-        double p = c.getSynPermConnected() * c.getRandom().nextDouble();
+        return initPermNonConnected(c, c.getRandom());
+    }
+    
+    /**
+     * Same as {@link #initPermNonConnected(Connections)} using the specified random generator.
+     * @param c         the {@link Connections} memory
+     * @param random    the random generator
+     * @return  a randomly generated permanence value
+     */
+    public static double initPermNonConnected(Connections c, Random random) {
+        double p = c.getSynPermConnected() * random.nextDouble();
         
         // Note from Python implementation on conditioning below:
         // Ensure we don't have too much unnecessary precision. A full 64 bits of
@@ -627,25 +924,59 @@ public class SpatialPooler {
      * @return
      */
     public double[] initPermanence(Connections c, int[] potentialPool, int index, double connectedPct) {
+        return initPermanence(c, potentialPool, index, connectedPct, c.getRandom());
+    }
+    
+    /**
+     * Same as {@link #initPermanence(Connections, int[], int, double)}, picking
+     * the connected bits with the specified random generator.
+     * 
+     * @param c                 the {@link Connections} which is the memory model
+     * @param potentialPool     the sparse potential pool of the column
+     * @param index             the index of the column being initialized
+     * @param connectedPct      the percent of the input bits starting off connected
+     * @param random            the random generator
+     * @return
+     */
+    public double[] initPermanence(Connections c, int[] potentialPool, int index, double connectedPct, Random random) {
+        double[] potentialPerm = initPotentialPermanences(c, potentialPool, connectedPct, random);
+        double[] perm = new double[c.getNumInputs()];
+        for(int i = 0;i < potentialPool.length;i++) {
+            perm[potentialPool[i]] = potentialPerm[i];
+        }
+        c.getColumn(index).setProximalPermanences(c, perm);
+        return perm;
+    }
+    
+    /**
+     * Returns the initial permanences of a potential pool, aligned with it,
+     * drawing from the specified random generator as 
+     * {@link #initPermanence(Connections, int[], int, double, Random)} does.
+     * 
+     * @param c                 the {@link Connections} which is the memory model
+     * @param potentialPool     the sparse potential pool of the column
+     * @param connectedPct      the percent of the input bits starting off connected
+     * @param random            the random generator
+     * @return
+     */
+    private double[] initPotentialPermanences(Connections c, int[] potentialPool, double connectedPct, Random random) {
     	int count = (int)Math.round((double)potentialPool.length * connectedPct);
         TIntHashSet pick = new TIntHashSet();
-        Random random = c.getRandom();
         while(pick.size() < count) {
         	int randIdx = random.nextInt(potentialPool.length);
         	pick.add(potentialPool[randIdx]);
         }
         
-        double[] perm = new double[c.getNumInputs()];
-        for(int idx : potentialPool) {
-        	if(pick.contains(idx)) {
-                perm[idx] = initPermConnected(c);
+        double[] perm = new double[potentialPool.length];
+        for(int i = 0;i < potentialPool.length;i++) {
+        	if(pick.contains(potentialPool[i])) {
+                perm[i] = initPermConnected(c, random);
             }else{
-                perm[idx] = initPermNonConnected(c);
+                perm[i] = initPermNonConnected(c, random);
             }
         	
-        	perm[idx] = perm[idx] < c.getSynPermTrimThreshold() ? 0 : perm[idx];
+        	perm[i] = perm[i] < c.getSynPermTrimThreshold() ? 0 : perm[i];
         }
-        c.getColumn(index).setProximalPermanences(c, perm);
         return perm;
     }
     
@@ -711,6 +1042,20 @@ public class SpatialPooler {
      * @return
      */
     public int[] mapPotential(Connections c, int columnIndex, boolean wrapAround) {
+        return mapPotential(c, columnIndex, wrapAround, c.getRandom());
+    }
+    
+    /**
+     * Same as {@link #mapPotential(Connections, int, boolean)}, sampling
+     * the potential pool with the specified random generator.
+     * 
+     * @param c             {@link Connections} the main memory model
+     * @param columnIndex   the column index
+     * @param wrapAround    whether boundaries should be ignored
+     * @param random        the random generator
+     * @return
+     */
+    public int[] mapPotential(Connections c, int columnIndex, boolean wrapAround, Random random) {
         int inputIndex = mapColumn(c, columnIndex);
         
         TIntArrayList indices = getNeighborsND(c, inputIndex, c.getInputMatrix(), c.getPotentialRadius(), wrapAround);
@@ -718,7 +1063,7 @@ public class SpatialPooler {
         //TODO: See https://github.com/numenta/nupic.core/issues/128
         indices.sort();
         
-        return ArrayUtils.sample((int)Math.round(indices.size() * c.getPotentialPct()), indices, c.getRandom());
+        return ArrayUtils.sample((int)Math.round(indices.size() * c.getPotentialPct()), indices, random);
     }
 
     /**
@@ -824,13 +1169,85 @@ public class SpatialPooler {
      *                      the spatial pooler.
      * @return
      */
-    public int[] calculateOverlap(Connections c, int[] inputVector) {
-        int[] overlaps = new int[c.getNumColumns()];
-        c.getConnectedCounts().rightVecSumAtNZ(inputVector, overlaps);
+    public int[] calculateOverlap(final Connections c, final int[] inputVector) {
+        final int[] overlaps = new int[c.getNumColumns()];
+        if(c.getSpParallelism() > 1) {
+            // The input is converted once here rather than by every shard
+            final SparseBinaryMatrix connectedCounts = c.getConnectedCounts();
+            final int[] activeIndexes = connectedCounts.nonZeroIndexes(inputVector);
+            boolean binary = inputVector.length == c.getNumInputs();
+            for(int i = 0;i < activeIndexes.length && binary;i++) {
+                binary = inputVector[activeIndexes[i]] == 1;
+            }
+            if(binary) {
+                return calculateOverlap(c, SDR.fromSparse(inputVector.length, activeIndexes));
+            }
+            
+            IndexShards.run(c.getSpPool(), overlaps.length, new IndexShards.Body() {
+                @Override public void apply(int from, int to) {
+                    connectedCounts.rightVecSumAtNZ(inputVector, activeIndexes, overlaps, from, to);
+                }
+            });
+        }else{
+            c.getConnectedCounts().rightVecSumAtNZ(inputVector, overlaps);
+        }
         ArrayUtils.lessThanXThanSetToY(overlaps, (int)c.getStimulusThreshold(), 0);
         return overlaps;
     }
     
+    /**
+     * Same as {@link #calculateOverlap(Connections, int[])} for an {@link SDR}
+     * input, intersected with the connected synapses a word at a time.
+     *  
+     * @param c             the {@link Connections} memory encapsulation
+     * @param input         the input to the spatial pooler
+     * @return
+     */
+    public int[] calculateOverlap(final Connections c, final SDR input) {
+        final int[] overlaps = new int[c.getNumColumns()];
+        // Cached before sharding so that the shards don't race to compute it
+        input.getSparse();
+        if(c.getSpParallelism() > 1) {
+            IndexShards.run(c.getSpPool(), overlaps.length, new IndexShards.Body() {
+                @Override public void apply(int from, int to) {
+                    c.getConnectedCounts().rightVecSumAtNZ(input, overlaps, from, to);
+                }
+            });
+        }else{
+            c.getConnectedCounts().rightVecSumAtNZ(input, overlaps);
+        }
+        ArrayUtils.lessThanXThanSetToY(overlaps, (int)c.getStimulusThreshold(), 0);
+        return overlaps;
+    }
+    
+    /**
+     * Returns the overlaps multiplied by the columns' boost factors, 
+     * computed in column shards when the spatial pooler is parallel.
+     * 
+     * @param c             the {@link Connections} memory encapsulation
+     * @param overlaps      the overlap score of each column
+     * @return
+     */
+    public double[] boostOverlaps(Connections c, final int[] overlaps) {
+        final double[] boostFactors = c.getBoostFactors();
+        if(c.getSpParallelism() > 1) {
+            if(boostFactors.length != overlaps.length) {
+                throw new IllegalArgumentException(
+                    "The multiplicand array and the factor array must be the same length");
+            }
+            final double[] boosted = new double[overlaps.length];
+            IndexShards.run(c.getSpPool(), overlaps.length, new IndexShards.Body() {
+                @Override public void apply(int from, int to) {
+                    for(int i = from;i < to;i++) {
+                        boosted[i] = boostFactors[i] * overlaps[i];
+                    }
+                }
+            });
+            return boosted;
+        }
+        return ArrayUtils.multiply(boostFactors, overlaps);
+    }
+    
     /**
      * Return the overlap to connected counts ratio for a given column
      * @param c
@@ -893,7 +1310,7 @@ public class SpatialPooler {
     public int[] inhibitColumnsGlobal(Connections c, double[] overlaps, double density) {
     	int numCols = c.getNumColumns();
     	int numActive = (int)(density * numCols);
-    	int[] winners = ArrayUtils.nGreatest(overlaps, numActive);
+    	int[] winners = ArrayUtils.topK(overlaps, numActive);
     	Arrays.sort(winners);
     	return winners;
     }
@@ -911,20 +1328,39 @@ public class SpatialPooler {
      * @return
      */
     public int[] inhibitColumnsLocal(Connections c, double[] overlaps, double density) {
+    	ColumnNeighborhoods hood = c.getInhibitionNeighborhoods();
+    	if(hood == null || !hood.isValidFor(c)) {
+    		c.setInhibitionNeighborhoods(hood = new ColumnNeighborhoods(this, c, false));
+    	}
+    	int[] neighbors = hood.getNeighbors();
     	int numCols = c.getNumColumns();
     	int[] activeColumns = new int[numCols];
+    	int numWinners = 0;
     	double addToWinners = ArrayUtils.max(overlaps) / 1000.0;
     	for(int i = 0;i < numCols;i++) {
-    		TIntArrayList maskNeighbors = getNeighborsND(c, i, c.getMemory(), c.getInhibitionRadius(), false);
-    		double[] overlapSlice = ArrayUtils.sub(overlaps, maskNeighbors.toArray());
-    		int numActive = (int)(0.5 + density * (maskNeighbors.size() + 1));
-    		int numBigger = ArrayUtils.valueGreaterCount(overlaps[i], overlapSlice);
+    		int start, end;
+    		if(hood.isStored()) {
+    			start = hood.getStart(i);
+    			end = hood.getEnd(i);
+    		}else{
+    			neighbors = getNeighborsND(c, i, c.getMemory(), hood.getRadius(), false).toArray();
+    			start = 0;
+    			end = neighbors.length;
+    		}
+    		int numActive = (int)(0.5 + density * (end - start + 1));
+    		// The column wins unless numActive neighbors beat it, so 
+    		// counting can stop as soon as that order statistic is reached
+    		double overlap = overlaps[i];
+    		int numBigger = 0;
+    		for(int j = start;j < end && numBigger < numActive;j++) {
+    			if(overlaps[neighbors[j]] > overlap) numBigger++;
+    		}
     		if(numBigger < numActive) {
-    			activeColumns[i] = 1;
+    			activeColumns[numWinners++] = i;
     			overlaps[i] += addToWinners;
     		}
     	}
-    	return ArrayUtils.where(activeColumns, ArrayUtils.INT_GREATER_THAN_0);
+    	return Arrays.copyOf(activeColumns, numWinners);
     }
     
     /**
@@ -976,4 +1412,98 @@ public class SpatialPooler {
     	
     	c.setBoostFactors(boostInterim);
     }
+    
+    /**
+     * Writes the learned state of the specified {@link Connections}: the tie
+     * breakers, duty cycles and boost factors, and for every column its potential
+     * pool, the permanences of the pool's synapses and its connected inputs. 
+     * A lazily initialized region only writes the columns materialized so far,
+     * preceded by its {@link LazyColumns} bookkeeping.
+     * 
+     * @param c     the {@link Connections} memory
+     * @param out   the snapshot being written
+     * @see #readSnapshot(Connections, SnapshotReader)
+     */
+    public void writeSnapshot(Connections c, SnapshotWriter out) {
+        out.writeDoubleArray(c.getTieBreaker());
+        out.writeDoubleArray(c.getOverlapDutyCycles());
+        out.writeDoubleArray(c.getActiveDutyCycles());
+        out.writeDoubleArray(c.getMinOverlapDutyCycles());
+        out.writeDoubleArray(c.getMinActiveDutyCycles());
+        out.writeDoubleArray(c.getBoostFactors());
+        
+        LazyColumns lazy = c.getLazyColumns();
+        out.writeBoolean(lazy != null);
+        if(lazy != null) {
+            out.writeIntArray(lazy.getTouchedInputs());
+            out.writeIntArray(lazy.getMaterializedColumns());
+        }
+        
+        int numColumns = c.getNumColumns();
+        int[] connected = new int[c.getNumInputs()];
+        for(int i = 0;i < numColumns;i++) {
+            if(lazy != null && !lazy.isMaterialized(i)) continue;
+            
+            Pool pool = c.getPotentialPools().getObject(i);
+            out.writeIntArray(pool.getSparseConnections());
+            out.writeDoubleArray(pool.getSparsePermanences());
+            
+            int[] row = (int[])c.getConnectedCounts().getSlice(i);
+            int numConnected = 0;
+            for(int j = 0;j < row.length;j++) {
+                if(row[j] > 0) connected[numConnected++] = j;
+            }
+            out.writeIntArray(connected, 0, numConnected);
+        }
+    }
+    
+    /**
+     * Restores the state written by {@link #writeSnapshot(Connections, SnapshotWriter)}
+     * into the specified {@link Connections}, on which only {@link #initMatrices(Connections)}
+     * has been called. This takes the place of {@link #connectAndConfigureInputs(Connections)}.
+     * 
+     * @param c     the {@link Connections} memory
+     * @param in    the snapshot being read
+     */
+    public void readSnapshot(Connections c, SnapshotReader in) {
+        c.setTieBreaker(in.readDoubleArray());
+        c.setOverlapDutyCycles(in.readDoubleArray());
+        c.setActiveDutyCycles(in.readDoubleArray());
+        c.setMinOverlapDutyCycles(in.readDoubleArray());
+        c.setMinActiveDutyCycles(in.readDoubleArray());
+        c.setBoostFactors(in.readDoubleArray());
+        
+        // Columns which weren't materialized stay dormant
+        LazyColumns lazy = null;
+        if(in.readBoolean()) {
+            lazy = new LazyColumns(this, c);
+            lazy.restore(in.readIntArray(), in.readIntArray());
+            c.setLazyColumns(lazy);
+        }
+        
+        int numColumns = c.getNumColumns();
+        double[] dense = new double[c.getNumInputs()];
+        SparseBinaryMatrix connectedCounts = c.getConnectedCounts();
+        for(int i = 0;i < numColumns;i++) {
+            if(lazy != null && !lazy.isMaterialized(i)) continue;
+            
+            int[] potential = in.readIntArray();
+            double[] perms = in.readDoubleArray();
+            Column column = c.getColumn(i);
+            c.getPotentialPools().set(i, column.createPotentialPool(c, potential));
+            for(int j = 0;j < potential.length;j++) {
+                dense[potential[j]] = perms[j];
+            }
+            column.setProximalPermanences(c, dense);
+            for(int j = 0;j < potential.length;j++) {
+                dense[potential[j]] = 0;
+            }
+            
+            //Connections are restored as written rather than derived from the permanences
+            connectedCounts.clearStatistics(i);
+            for(int input : in.readIntArray()) {
+                connectedCounts.set(1, i, input);
+            }
+        }
+    }
 }
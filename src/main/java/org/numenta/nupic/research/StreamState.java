@@ -0,0 +1,163 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.research;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.numenta.nupic.Connections;
+import org.numenta.nupic.model.FlatSegmentStore;
+
+/**
+ * The activation state of one input stream of a {@link TemporalMemory} whose
+ * {@link FlatSegmentStore} is shared by many streams. Only the cell and segment
+ * indexes of the last cycle are kept (plus the stream's own random number generator), 
+ * so a stream costs a few kilobytes no matter how large the model is.
+ * <p>
+ * Streams are advanced with {@link TemporalMemory#compute(Connections, StreamState[], int[][], boolean)}.
+ * 
+ * @see TemporalMemory#createStream(Connections)
+ */
+public class StreamState {
+    private static final int[] EMPTY = new int[0];
+    
+    private int[] activeCells = EMPTY;
+    private int numActiveCells;
+    private int[] winnerCells = EMPTY;
+    private int numWinnerCells;
+    private int[] predictiveCells = EMPTY;
+    private int numPredictiveCells;
+    private int[] activeSegments = EMPTY;
+    private int numActiveSegments;
+    private int[] matchingSegments = EMPTY;
+    private int[] matchingSegmentCounts = EMPTY;
+    private int numMatchingSegments;
+    private int iteration;
+    
+    /** Used for the random choices of this stream, which keeps them independent of other streams */
+    final Random random;
+    
+    
+    /**
+     * Constructs a new empty {@code StreamState}
+     * 
+     * @param random    the random number generator of this stream
+     */
+    public StreamState(Random random) {
+        this.random = random;
+    }
+    
+    /**
+     * Copies this stream's state into the specified cycle, 
+     * which will act as the state of t-1.
+     * @param prev
+     */
+    void load(ComputeCycle prev) {
+        prev.clear();
+        prev.activeCellIndexes.add(activeCells, 0, numActiveCells);
+        prev.winnerCellIndexes.add(winnerCells, 0, numWinnerCells);
+        prev.predictiveCellIndexes.add(predictiveCells, 0, numPredictiveCells);
+        prev.activeSegmentHandles.add(activeSegments, 0, numActiveSegments);
+        prev.matchingSegmentHandles.add(matchingSegments, 0, numMatchingSegments);
+        prev.matchingSegmentCounts.add(matchingSegmentCounts, 0, numMatchingSegments);
+        prev.iteration = iteration;
+    }
+    
+    /**
+     * Stores the state of the specified, just computed, cycle 
+     * as this stream's state.
+     * @param cycle
+     */
+    void store(ComputeCycle cycle) {
+        numActiveCells = cycle.activeCellIndexes.size();
+        activeCells = copy(cycle.activeCellIndexes, activeCells);
+        numWinnerCells = cycle.winnerCellIndexes.size();
+        winnerCells = copy(cycle.winnerCellIndexes, winnerCells);
+        numPredictiveCells = cycle.predictiveCellIndexes.size();
+        predictiveCells = copy(cycle.predictiveCellIndexes, predictiveCells);
+        numActiveSegments = cycle.activeSegmentHandles.size();
+        activeSegments = copy(cycle.activeSegmentHandles, activeSegments);
+        numMatchingSegments = cycle.matchingSegmentHandles.size();
+        matchingSegments = copy(cycle.matchingSegmentHandles, matchingSegments);
+        matchingSegmentCounts = copy(cycle.matchingSegmentCounts, matchingSegmentCounts);
+        iteration = cycle.iteration;
+    }
+    
+    /**
+     * Copies the list into the specified array if it fits, 
+     * or into a new array otherwise.
+     */
+    private static int[] copy(TIntArrayList list, int[] into) {
+        if(into.length < list.size()) {
+            into = new int[list.size()];
+        }
+        list.toArray(into, 0, list.size());
+        return into;
+    }
+    
+    /**
+     * Clears the state of this stream, as at the beginning of a new sequence.
+     */
+    public void reset() {
+        numActiveCells = 0;
+        numWinnerCells = 0;
+        numPredictiveCells = 0;
+        numActiveSegments = 0;
+        numMatchingSegments = 0;
+    }
+    
+    /**
+     * Returns the indexes of the cells active in the last cycle
+     * @return
+     */
+    public int[] getActiveCells() {
+        return Arrays.copyOf(activeCells, numActiveCells);
+    }
+    
+    /**
+     * Returns the indexes of the winner cells of the last cycle
+     * @return
+     */
+    public int[] getWinnerCells() {
+        return Arrays.copyOf(winnerCells, numWinnerCells);
+    }
+    
+    /**
+     * Returns the indexes of the cells predicted for the next cycle
+     * @return
+     */
+    public int[] getPredictiveCells() {
+        return Arrays.copyOf(predictiveCells, numPredictiveCells);
+    }
+    
+    /**
+     * Returns the handles of the segments active in the last cycle
+     * @return
+     */
+    public int[] getActiveSegments() {
+        return Arrays.copyOf(activeSegments, numActiveSegments);
+    }
+}
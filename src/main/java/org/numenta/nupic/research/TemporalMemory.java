@@ -22,18 +22,36 @@
 
 package org.numenta.nupic.research;
 
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.numenta.nupic.Connections;
 import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.model.CellSampler;
 import org.numenta.nupic.model.Column;
 import org.numenta.nupic.model.DistalDendrite;
+import org.numenta.nupic.model.FlatSegmentStore;
 import org.numenta.nupic.model.Synapse;
+import org.numenta.nupic.util.IndexSampler;
+import org.numenta.nupic.util.IndexShards;
+import org.numenta.nupic.util.MersenneTwister;
+import org.numenta.nupic.util.SDR;
+import org.numenta.nupic.util.SnapshotReader;
+import org.numenta.nupic.util.SnapshotWriter;
 import org.numenta.nupic.util.SparseObjectMatrix;
 
 /**
@@ -43,6 +61,8 @@ import org.numenta.nupic.util.SparseObjectMatrix;
  * @author David Ray
  */
 public class TemporalMemory {
+    /** Permanences below this value are considered to have been decremented to 0 */
+    private static final double EPSILON = 0.00001;
     
     /**
      * Constructs a new {@code TemporalMemory}
@@ -74,25 +94,46 @@ public class TemporalMemory {
     	int cellsPerColumn = c.getCellsPerColumn();
         Cell[] cells = new Cell[numColumns * cellsPerColumn];
         
-        //Used as flag to determine if Column objects have been created.
-        Column colZero = matrix.getObject(0);
         for(int i = 0;i < numColumns;i++) {
-            Column column = colZero == null ? 
-            	new Column(cellsPerColumn, i) : matrix.getObject(i);
+            //Columns may have been created by the SpatialPooler, all or some of them
+            Column column = matrix.getObject(i);
+            if(column == null) {
+                matrix.set(i, column = new Column(cellsPerColumn, i));
+            }
             for(int j = 0;j < cellsPerColumn;j++) {
                 cells[i * cellsPerColumn + j] = column.getCell(j);
             }
-            //If columns have not been previously configured
-            if(colZero == null) matrix.set(i, column);
         }
         //Only the TemporalMemory initializes cells so no need to test 
         c.setCells(cells);
+        
+        if(c.getFlatStorage()) {
+            c.setSegmentStore(new FlatSegmentStore(cells.length));
+            c.setComputeScratch(new ComputeScratch(cells.length, numColumns));
+            Column[] columns = new Column[numColumns];
+            for(int i = 0;i < numColumns;i++) {
+                columns[i] = matrix.getObject(i);
+            }
+            publish(c, ComputeCycle.doubleBuffered(cells, columns));
+        }else{
+            ComputeCycle empty = new ComputeCycle(cells, matrix);
+            c.setActiveCells(empty.activeCells);
+            c.setWinnerCells(empty.winnerCells);
+            c.setPredictiveCells(empty.predictiveCells);
+            c.setPredictedColumns(empty.predictedColumns);
+        }
     }
     
     /////////////////////////// CORE FUNCTIONS /////////////////////////////
     
     /**
-     * Feeds input record through TM, performing inferencing and learning
+     * Feeds input record through TM, performing inferencing and learning.
+     * <p>
+     * Rather than materializing the active {@link Synapse}s of every segment as
+     * {@link #computeFn(Connections, Set, Set, Set, Map, Set, boolean)} does, segment
+     * activity is tracked with the per segment counters of the {@link Connections}
+     * (see {@link Connections#getNumActivePotential()}), which produces the same results.
+     * The {@link Connections#getActiveSynapsesForSegment()} map is therefore left empty.
      * 
      * @param connections		the connection memory
      * @param activeColumns     direct proximal dendrite input
@@ -100,9 +141,27 @@ public class TemporalMemory {
      * @return                  {@link ComputeCycle} container for one cycle of inference values.
      */
     public ComputeCycle compute(Connections connections, int[] activeColumns, boolean learn) {
-        ComputeCycle result = computeFn(connections, connections.getColumnSet(activeColumns), new LinkedHashSet<Cell>(connections.getPredictiveCells()), 
-            new LinkedHashSet<DistalDendrite>(connections.getActiveSegments()), new LinkedHashMap<DistalDendrite, Set<Synapse>>(connections.getActiveSynapsesForSegment()), 
-                new LinkedHashSet<Cell>(connections.getWinnerCells()), learn);
+        if(connections.getSegmentStore() != null) {
+            return computeFlat(connections, activeColumns, learn);
+        }
+        
+        connections.setTmIteration(connections.getTmIteration() + 1);
+        ComputeCycle result = newCycle(connections);
+        Set<Cell> prevActiveCells = connections.getActiveCells();
+        int prevSynapseCount = connections.getSynapseCount();
+        
+        Set<Column> activeColumnSet = connections.getColumnSet(activeColumns);
+        
+        activateCorrectlyPredictiveCells(result, connections.getPredictiveCells(), activeColumnSet);
+        
+        burstColumns(result, connections, activeColumnSet, result.predictedColumns);
+        
+        if(learn) {
+            learnOnSegments(connections, connections.getActiveSegments(), result.learningSegments, prevActiveCells, 
+                prevSynapseCount, result.winnerCells, connections.getWinnerCells());
+        }
+        
+        computePredictiveCells(connections, result);
         
         connections.setActiveCells(result.activeCells());
         connections.setWinnerCells(result.winnerCells());
@@ -115,6 +174,22 @@ public class TemporalMemory {
         return result; 
     }
     
+    /**
+     * Same as {@link #compute(Connections, int[], boolean)} for active 
+     * columns held in an {@link SDR}, whose cached sparse form is used.
+     * 
+     * @param connections       the connection memory
+     * @param activeColumns     direct proximal dendrite input
+     * @param learn             learning mode flag
+     * @return                  {@link ComputeCycle} container for one cycle of inference values.
+     */
+    public ComputeCycle compute(Connections connections, SDR activeColumns, boolean learn) {
+        if(activeColumns.getSize() != connections.getMemory().getMaxIndex() + 1) {
+            throw new IllegalArgumentException("Active column SDR must be same size as the number of columns");
+        }
+        return compute(connections, activeColumns.getSparse(), learn);
+    }
+    
     /**
      * Functional version of {@link #compute(int[], boolean)}. 
      * This method is stateless and concurrency safe.
@@ -131,7 +206,8 @@ public class TemporalMemory {
     public ComputeCycle computeFn(Connections c, Set<Column> activeColumns, Set<Cell> prevPredictiveCells, Set<DistalDendrite> prevActiveSegments,
         Map<DistalDendrite, Set<Synapse>> prevActiveSynapsesForSegment, Set<Cell> prevWinnerCells, boolean learn) {
         
-        ComputeCycle cycle = new ComputeCycle();
+        c.setTmIteration(c.getTmIteration() + 1);
+        ComputeCycle cycle = newCycle(c);
         
         activateCorrectlyPredictiveCells(cycle, prevPredictiveCells, activeColumns);
         
@@ -148,6 +224,18 @@ public class TemporalMemory {
         return cycle;
     }
 
+    /**
+     * Returns a new {@link ComputeCycle} whose cell and column sets are bitsets
+     * over the cells and columns of the specified {@link Connections}, once
+     * they have been initialized.
+     * 
+     * @param c     the connection memory
+     * @return
+     */
+    private ComputeCycle newCycle(Connections c) {
+        return c.getCells() == null ? new ComputeCycle() : new ComputeCycle(c.getCells(), c.getMemory());
+    }
+    
     /**
      * Phase 1: Activate the correctly predictive cells
      * 
@@ -210,10 +298,8 @@ public class TemporalMemory {
                 cycle.winnerCells.add(bestCell);
             }
             
-            int segmentCounter = c.getSegmentCount();
             if(bestSegment == null) {
-                bestSegment = bestCell.createSegment(c, segmentCounter);
-                c.setSegmentCount(segmentCounter + 1);
+                bestSegment = createSegment(c, bestCell);
             }
             
             cycle.learningSegments.add(bestSegment);
@@ -255,20 +341,16 @@ public class TemporalMemory {
             boolean isFromWinnerCell = winnerCells.contains(dd.getParentCell());
             
             Set<Synapse> activeSynapses = dd.getConnectedActiveSynapses(prevActiveSynapseSegments, 0);
+            dd.setLastUsedIteration(c.getTmIteration());
             
             if(isLearningSegment || isFromWinnerCell) {
                 dd.adaptSegment(c, activeSynapses, permanenceIncrement, permanenceDecrement);
+                if(c.getPruneSynapses() && pruneSynapses(c, dd, isLearningSegment)) continue;
             }
             
-            int synapseCounter = c.getSynapseCount(); 
             int n = c.getMaxNewSynapseCount() - activeSynapses.size();
             if(isLearningSegment && n > 0) {
-                Set<Cell> learnCells = dd.pickCellsToLearnOn(c, n, prevWinnerCells, c.getRandom());
-                for(Cell sourceCell : learnCells) {
-                    dd.createSynapse(c, sourceCell, c.getInitialPermanence(), synapseCounter);
-                    synapseCounter += 1;
-                }
-                c.setSynapseCount(synapseCounter);
+                growSynapses(c, dd, n, prevWinnerCells);
             }
         }
     }
@@ -320,6 +402,233 @@ public class TemporalMemory {
         return activesSynapses;
     }
     
+    /**
+     * Phase 2 using the segment activity counters of the {@link Connections} in 
+     * place of a map of active synapses.
+     * 
+     * @param cycle                 ComputeCycle interim values container
+     * @param c                     Connections temporal memory state
+     * @param activeColumns         active columns in t
+     * @param predictedColumns      predicted columns in t
+     * @see #burstColumns(ComputeCycle, Connections, Set, Set, Map)
+     */
+    public void burstColumns(ComputeCycle cycle, Connections c, Set<Column> activeColumns, Set<Column> predictedColumns) {
+        activeColumns.removeAll(predictedColumns);
+        for(Column column : activeColumns) {
+            List<Cell> cells = column.getCells();
+            cycle.activeCells.addAll(cells);
+            
+            Object[] bestSegmentAndCell = getBestMatchingCell(c, column);
+            DistalDendrite bestSegment = (DistalDendrite)bestSegmentAndCell[0];
+            Cell bestCell = (Cell)bestSegmentAndCell[1];
+            if(bestCell != null) {
+                cycle.winnerCells.add(bestCell);
+            }
+            
+            if(bestSegment == null) {
+                bestSegment = createSegment(c, bestCell);
+            }
+            
+            cycle.learningSegments.add(bestSegment);
+        }
+    }
+    
+    /**
+     * Phase 3 deciding which synapses were active in t-1 from the previously active
+     * cells rather than from a map of active synapses: a synapse was active if its
+     * source cell was active, and it already existed, in t-1. Synapses are indexed
+     * by the synapse counter, so those created during this cycle are the ones whose
+     * index is not below the counter's value at the start of the cycle.
+     * 
+     * @param c                     the Connections state of the temporal memory
+     * @param prevActiveSegments    the Set of segments active in the previous cycle.
+     * @param learningSegments      the Set of segments marked as learning
+     * @param prevActiveCells       the Set of cells active in the previous cycle
+     * @param prevSynapseCount      the synapse counter at the start of this cycle
+     * @param winnerCells           the Set of all winning cells
+     * @param prevWinnerCells       the Set of cells which were winners during the last compute cycle
+     * @see #learnOnSegments(Connections, Set, Set, Map, Set, Set)
+     */
+    public void learnOnSegments(Connections c, Set<DistalDendrite> prevActiveSegments, Set<DistalDendrite> learningSegments,
+        Set<Cell> prevActiveCells, int prevSynapseCount, Set<Cell> winnerCells, Set<Cell> prevWinnerCells) {
+        
+        double permanenceIncrement = c.getPermanenceIncrement();
+        double permanenceDecrement = c.getPermanenceDecrement();
+        
+        List<DistalDendrite> prevAndLearning = new ArrayList<DistalDendrite>(prevActiveSegments);
+        prevAndLearning.addAll(learningSegments);
+        
+        for(DistalDendrite dd : prevAndLearning) {
+            boolean isLearningSegment = learningSegments.contains(dd);
+            boolean isFromWinnerCell = winnerCells.contains(dd.getParentCell());
+            boolean adapt = isLearningSegment || isFromWinnerCell;
+            dd.setLastUsedIteration(c.getTmIteration());
+            
+            int numActive = 0;
+            for(Synapse synapse : c.getSynapses(dd)) {
+                boolean active = synapse.getIndex() < prevSynapseCount && prevActiveCells.contains(synapse.getSourceCell());
+                if(active) numActive++;
+                
+                if(adapt) {
+                    double permanence = synapse.getPermanence();
+                    permanence = active ? permanence + permanenceIncrement : permanence - permanenceDecrement;
+                    synapse.setPermanence(c, Math.max(0, Math.min(1.0, permanence)));
+                }
+            }
+            if(adapt && c.getPruneSynapses() && pruneSynapses(c, dd, isLearningSegment)) continue;
+            
+            int n = c.getMaxNewSynapseCount() - numActive;
+            if(isLearningSegment && n > 0) {
+                growSynapses(c, dd, n, prevWinnerCells);
+            }
+        }
+    }
+    
+    /**
+     * Creates a new segment on the specified cell, first destroying the cell's least 
+     * recently used segments if it already holds {@link Connections#getMaxSegmentsPerCell()}.
+     * Among segments last used during the same iteration the earliest created one goes first.
+     * 
+     * @param c         the Connections state of the temporal memory
+     * @param cell      the cell to create the segment on
+     * @return  the new segment
+     */
+    DistalDendrite createSegment(Connections c, Cell cell) {
+        List<DistalDendrite> segments = c.getSegments(cell);
+        while(segments.size() >= c.getMaxSegmentsPerCell()) {
+            DistalDendrite lru = null;
+            for(DistalDendrite dd : segments) {
+                if(lru == null || dd.getLastUsedIteration() < lru.getLastUsedIteration()) {
+                    lru = dd;
+                }
+            }
+            destroySegment(c, lru);
+        }
+        
+        DistalDendrite segment = c.createSegment(cell);
+        segment.setLastUsedIteration(c.getTmIteration());
+        c.setNumSegmentsCreated(c.getNumSegmentsCreated() + 1);
+        return segment;
+    }
+    
+    /**
+     * Destroys the specified segment along with its synapses.
+     * 
+     * @param c         the Connections state of the temporal memory
+     * @param segment   the segment to destroy
+     */
+    void destroySegment(Connections c, DistalDendrite segment) {
+        c.setNumSynapsesDestroyed(c.getNumSynapsesDestroyed() + c.getSynapses(segment).size());
+        c.setNumSegmentsDestroyed(c.getNumSegmentsDestroyed() + 1);
+        c.destroySegment(segment);
+    }
+    
+    /**
+     * Destroys the synapses of the specified segment whose permanence has been 
+     * decremented to 0, and the segment itself if that leaves it without synapses
+     * and it isn't a learning segment (which is about to grow new ones).
+     * 
+     * @param c                     the Connections state of the temporal memory
+     * @param segment               the segment just adapted
+     * @param isLearningSegment     whether the segment is a learning segment
+     * @return  true if the segment was destroyed
+     */
+    boolean pruneSynapses(Connections c, DistalDendrite segment, boolean isLearningSegment) {
+        List<Synapse> synapses = c.getSynapses(segment);
+        int numSynapses = synapses.size();
+        for(int i = numSynapses - 1;i >= 0;i--) {
+            Synapse synapse = synapses.get(i);
+            if(synapse.getPermanence() < EPSILON) {
+                c.destroySynapse(synapse);
+            }
+        }
+        
+        int destroyed = numSynapses - synapses.size();
+        c.setNumSynapsesDestroyed(c.getNumSynapsesDestroyed() + destroyed);
+        if(destroyed > 0 && synapses.isEmpty() && !isLearningSegment) {
+            destroySegment(c, segment);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Grows up to n new synapses on the specified learning segment, sourced from 
+     * randomly chosen previous winner cells. If the segment would then hold more than 
+     * {@link Connections#getMaxSynapsesPerSegment()} synapses its weakest synapses, 
+     * the earliest created among equals, are destroyed first to make room.
+     * 
+     * @param c                 the Connections state of the temporal memory
+     * @param segment           the segment to grow synapses on
+     * @param n                 the number of synapses to grow
+     * @param prevWinnerCells   the Set of cells which were winners during the last compute cycle
+     */
+    void growSynapses(Connections c, DistalDendrite segment, int n, Set<Cell> prevWinnerCells) {
+        int maxSynapses = c.getMaxSynapsesPerSegment();
+        n = Math.min(n, maxSynapses);
+        List<Synapse> synapses = c.getSynapses(segment);
+        for(int overrun = synapses.size() + n - maxSynapses;overrun > 0;overrun--) {
+            Synapse weakest = null;
+            for(Synapse synapse : synapses) {
+                if(weakest == null || synapse.getPermanence() < weakest.getPermanence()) {
+                    weakest = synapse;
+                }
+            }
+            c.destroySynapse(weakest);
+            c.setNumSynapsesDestroyed(c.getNumSynapsesDestroyed() + 1);
+        }
+        
+        int synapseCounter = c.getSynapseCount(); 
+        CellSampler scratch = c.getCellSampler();
+        int numLearnCells = segment.pickCellsToLearnOn(c, n, prevWinnerCells, c.getRandom(), scratch);
+        Cell[] learnCells = scratch.getPicks();
+        for(int i = 0;i < numLearnCells;i++) {
+            segment.createSynapse(c, learnCells[i], c.getInitialPermanence(), synapseCounter);
+            synapseCounter += 1;
+        }
+        c.setSynapseCount(synapseCounter);
+        c.setNumSynapsesCreated(c.getNumSynapsesCreated() + numLearnCells);
+    }
+    
+    /**
+     * Phase 4 by counting: a single pass over the receptor synapses of the active
+     * cells fills the segment activity counters of the {@link Connections}, which
+     * are then compared against the activation threshold.
+     * 
+     * @param c         the Connections state of the temporal memory
+     * @param cycle     the state during the current compute cycle
+     * @see #computePredictiveCells(Connections, ComputeCycle, Map)
+     */
+    public void computePredictiveCells(Connections c, ComputeCycle cycle) {
+        c.clearSegmentActivity();
+        c.ensureSegmentActivityCapacity(c.getSegmentCount());
+        
+        List<DistalDendrite> matchingSegments = c.getMatchingSegments();
+        double connectedPermanence = c.getConnectedPermanence();
+        for(Cell cell : cycle.activeCells) {
+            for(Synapse s : cell.getReceptorSynapses(c)) {
+                DistalDendrite dd = (DistalDendrite)s.getSegment();
+                int index = dd.getIndex();
+                c.ensureSegmentActivityCapacity(index + 1);
+                if(c.getNumActivePotential()[index]++ == 0) {
+                    matchingSegments.add(dd);
+                }
+                if(s.getPermanence() >= connectedPermanence) {
+                    c.getNumActiveConnected()[index]++;
+                }
+            }
+        }
+        
+        int activationThreshold = c.getActivationThreshold();
+        int[] numActiveConnected = c.getNumActiveConnected();
+        for(DistalDendrite dd : matchingSegments) {
+            if(numActiveConnected[dd.getIndex()] >= activationThreshold) {
+                cycle.activeSegments.add(dd);
+                cycle.predictiveCells.add(dd.getParentCell());
+            }
+        }
+    }
+    
     /**
      * Called to start the input of a new sequence.
      * 
@@ -331,6 +640,772 @@ public class TemporalMemory {
         connections.getActiveSegments().clear();
         connections.getActiveSynapsesForSegment().clear();
         connections.getWinnerCells().clear();
+        connections.clearSegmentActivity();
+        if(connections.getSegmentStore() != null) {
+            connections.getLastCycle().clear();
+        }
+    }
+    
+    
+    ///////////////////////// FLAT STORAGE FUNCTIONS /////////////////////////
+    
+    /**
+     * Feeds input record through TM using the {@link FlatSegmentStore} of the
+     * specified {@link Connections}. Performs the same four phases as 
+     * {@link #computeFn(Connections, Set, Set, Set, Map, Set, boolean)}, in the
+     * same order and with the same random draws, so that the results are 
+     * identical to those of the object representation.
+     * <p>
+     * All state lives in primitive index lists of a pair of double buffered 
+     * {@link ComputeCycle}s and in the {@link ComputeScratch}, so once their 
+     * capacities have settled no allocation takes place per record. The cell
+     * and column sets of the returned cycle are views of its index lists, and
+     * the cycle is reused by the compute call after next.
+     * 
+     * @param c                 the connection memory
+     * @param activeColumns     direct proximal dendrite input
+     * @param learn             learning mode flag
+     * @return                  {@link ComputeCycle} container for one cycle of inference values.
+     */
+    public ComputeCycle computeFlat(Connections c, int[] activeColumns, boolean learn) {
+        ComputeCycle prev = c.getLastCycle();
+        ComputeCycle cycle = prev.buffer;
+        
+        c.getSegmentStore().nextIteration();
+        advance(c, c.getComputeScratch(), c.getRandom(), prev, cycle, activeColumns, learn, true);
+        
+        publish(c, cycle);
+        
+        return cycle;
+    }
+    
+    /**
+     * Returns a new, empty {@link StreamState} for an input stream sharing the
+     * {@link FlatSegmentStore} of the specified {@link Connections}. The stream's
+     * random number generator is seeded from the one of the {@link Connections}.
+     * 
+     * @param c     the connection memory, which must use flat storage
+     * @return
+     */
+    public StreamState createStream(Connections c) {
+        if(c.getSegmentStore() == null) {
+            throw new IllegalArgumentException("Streams require a TemporalMemory initialized with flat storage");
+        }
+        return new StreamState(new MersenneTwister(c.getRandom().nextInt()));
+    }
+    
+    /**
+     * Advances each of the specified streams by one record, on the common 
+     * {@link ForkJoinPool}.
+     * 
+     * @see #compute(Connections, StreamState[], int[][], boolean, ForkJoinPool)
+     */
+    public void compute(Connections c, StreamState[] streams, int[][] activeColumns, boolean learn) {
+        compute(c, streams, activeColumns, learn, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Advances each of the specified streams by one record against the 
+     * {@link FlatSegmentStore} shared by all of them: stream i is fed 
+     * activeColumns[i]. The state of a stream after the call only depends on 
+     * its own state and input, and on the store.
+     * <p>
+     * Inference leaves the store untouched (unlike {@link #compute(Connections, int[], boolean)}
+     * no segments are created for bursting columns), so without learning the streams 
+     * are advanced in parallel on the specified pool. With learning the streams modify the
+     * store, and are advanced one after the other in array order.
+     * 
+     * @param c                 the connection memory shared by the streams
+     * @param streams           the states of the streams to advance
+     * @param activeColumns     the active columns of each stream
+     * @param learn             learning mode flag
+     * @param pool              the pool on which to infer in parallel
+     */
+    public void compute(final Connections c, final StreamState[] streams, final int[][] activeColumns, 
+        final boolean learn, ForkJoinPool pool) {
+        
+        if(c.getSegmentStore() == null) {
+            throw new IllegalArgumentException("Streams require a TemporalMemory initialized with flat storage");
+        }
+        if(streams.length != activeColumns.length) {
+            throw new IllegalArgumentException("Number of streams (" + streams.length + 
+                ") must match number of inputs (" + activeColumns.length + ")");
+        }
+        
+        IndexShards.Body body = new IndexShards.Body() {
+            @Override public void apply(int from, int to) {
+                ComputeScratch scratch = c.acquireStreamScratch();
+                ComputeCycle prev = new ComputeCycle();
+                ComputeCycle cycle = new ComputeCycle();
+                for(int i = from;i < to;i++) {
+                    streams[i].load(prev);
+                    if(learn) {
+                        c.getSegmentStore().nextIteration();
+                    }
+                    advance(c, scratch, streams[i].random, prev, cycle, activeColumns[i], learn, learn);
+                    streams[i].store(cycle);
+                }
+                c.releaseStreamScratch(scratch);
+            }
+        };
+        
+        if(learn) {
+            body.apply(0, streams.length);
+        }else{
+            IndexShards.run(pool, streams.length, 1, body);
+        }
+    }
+    
+    /**
+     * Performs the four phases of one cycle on flat storage, computing the 
+     * specified cycle from the specified state of t-1.
+     * 
+     * @param c                 the connection memory
+     * @param scratch           working memory
+     * @param random            the source of the cycle's random choices
+     * @param prev              the state of t-1
+     * @param cycle             ComputeCycle interim values container, cleared first
+     * @param activeColumns     direct proximal dendrite input
+     * @param learn             learning mode flag
+     * @param createSegments    whether a segment is created on the winner cell of
+     *                          a bursting column without a matching segment
+     */
+    void advance(Connections c, ComputeScratch scratch, Random random, ComputeCycle prev, ComputeCycle cycle, 
+        int[] activeColumns, boolean learn, boolean createSegments) {
+        
+        FlatSegmentStore store = c.getSegmentStore();
+        cycle.clear();
+        cycle.iteration = store.getIteration();
+        
+        //Restore the previous cycle's per segment activity
+        scratch.ensureSegmentCapacity(store.getSegmentCapacity());
+        TIntArrayList prevMatching = prev.matchingSegmentHandles;
+        for(int i = 0;i < prevMatching.size();i++) {
+            int segment = prevMatching.get(i);
+            if(existedIn(store, segment, prev)) {
+                scratch.numActivePotential[segment] = prev.matchingSegmentCounts.get(i);
+            }
+        }
+        
+        int prevActiveStamp = scratch.nextStamp();
+        TIntArrayList prevActiveCells = prev.activeCellIndexes;
+        for(int i = 0;i < prevActiveCells.size();i++) {
+            scratch.prevActiveCellMarks[prevActiveCells.get(i)] = prevActiveStamp;
+        }
+        
+        int doneStamp = activateCorrectlyPredictiveCells(c, scratch, cycle, prev.predictiveCellIndexes, activeColumns);
+        
+        burstColumns(c, store, scratch, random, cycle, activeColumns, doneStamp, createSegments);
+        //Bursting columns are visited in input order
+        cycle.activeCellIndexes.sort();
+        cycle.winnerCellIndexes.sort();
+        
+        if(learn) {
+            learnOnSegments(c, store, scratch, random, prev, cycle, prevActiveStamp);
+        }
+        
+        for(int i = 0;i < prevMatching.size();i++) {
+            scratch.numActivePotential[prevMatching.get(i)] = 0;
+        }
+        
+        computePredictiveCells(c, store, scratch, cycle);
+    }
+    
+    /**
+     * Phase 1 on flat storage: Activate the correctly predictive cells.
+     * 
+     * @param c                     the connection memory
+     * @param scratch               working memory
+     * @param cycle                 ComputeCycle interim values container
+     * @param prevPredictiveCells   indexes of the cells predictive in t-1
+     * @param activeColumns         active columns in t
+     * @return  the stamp marking the columns which have been processed
+     */
+    int activateCorrectlyPredictiveCells(Connections c, ComputeScratch scratch, ComputeCycle cycle, 
+        TIntArrayList prevPredictiveCells, int[] activeColumns) {
+        
+        int activeStamp = scratch.nextStamp();
+        for(int i = 0;i < activeColumns.length;i++) {
+            scratch.activeColumnMarks[activeColumns[i]] = activeStamp;
+        }
+        
+        int cellsPerColumn = c.getCellsPerColumn();
+        int doneStamp = scratch.nextStamp();
+        for(int i = 0;i < prevPredictiveCells.size();i++) {
+            int cell = prevPredictiveCells.get(i);
+            int column = cell / cellsPerColumn;
+            if(scratch.activeColumnMarks[column] == activeStamp) {
+                cycle.activeCellIndexes.add(cell);
+                cycle.winnerCellIndexes.add(cell);
+                if(scratch.doneColumnMarks[column] != doneStamp) {
+                    scratch.doneColumnMarks[column] = doneStamp;
+                    cycle.predictedColumnIndexes.add(column);
+                }
+            }
+        }
+        
+        return doneStamp;
+    }
+    
+    /**
+     * Phase 2 on flat storage: Burst unpredicted columns.
+     * 
+     * @param c                 the connection memory
+     * @param store             the segment store
+     * @param scratch           working memory, holding the segment activity of t-1
+     * @param random            the source of random choices
+     * @param cycle             ComputeCycle interim values container
+     * @param activeColumns     active columns in t
+     * @param doneStamp         the stamp marking the predicted columns
+     * @param createSegments    whether to create a learning segment when there's no matching one
+     */
+    void burstColumns(Connections c, FlatSegmentStore store, ComputeScratch scratch, Random random, ComputeCycle cycle, 
+        int[] activeColumns, int doneStamp, boolean createSegments) {
+        
+        int cellsPerColumn = c.getCellsPerColumn();
+        for(int i = 0;i < activeColumns.length;i++) {
+            int column = activeColumns[i];
+            if(scratch.doneColumnMarks[column] == doneStamp) continue;
+            scratch.doneColumnMarks[column] = doneStamp;
+            
+            int firstCell = column * cellsPerColumn;
+            for(int j = 0;j < cellsPerColumn;j++) {
+                cycle.activeCellIndexes.add(firstCell + j);
+            }
+            
+            int bestCell = -1;
+            int bestSegment = FlatSegmentStore.NONE;
+            int maxSynapses = 0;
+            for(int cell = firstCell;cell < firstCell + cellsPerColumn;cell++) {
+                int segment = getBestMatchingSegment(c, store, scratch, cell);
+                if(segment != FlatSegmentStore.NONE && scratch.numActivePotential[segment] > maxSynapses) {
+                    maxSynapses = scratch.numActivePotential[segment];
+                    bestCell = cell;
+                    bestSegment = segment;
+                }
+            }
+            
+            if(bestCell == -1) {
+                bestCell = getLeastUsedCell(c, store, random, firstCell);
+            }
+            cycle.winnerCellIndexes.add(bestCell);
+            
+            if(bestSegment == FlatSegmentStore.NONE) {
+                if(!createSegments) continue;
+                bestSegment = createSegment(c, store, bestCell);
+                scratch.ensureSegmentCapacity(store.getSegmentCapacity());
+            }
+            
+            cycle.learningSegmentHandles.add(bestSegment);
+        }
+    }
+    
+    /**
+     * Phase 3 on flat storage: Perform learning by adapting segments.
+     * 
+     * @param c                 the connection memory
+     * @param store             the segment store
+     * @param scratch           working memory
+     * @param random            the source of random choices
+     * @param prev              the state of t-1
+     * @param cycle             ComputeCycle interim values container
+     * @param prevActiveStamp   the stamp marking the cells active in t-1
+     */
+    void learnOnSegments(Connections c, FlatSegmentStore store, ComputeScratch scratch, Random random, 
+        ComputeCycle prev, ComputeCycle cycle, int prevActiveStamp) {
+        
+        int learningStamp = scratch.nextStamp();
+        TIntArrayList learningSegments = cycle.learningSegmentHandles;
+        for(int i = 0;i < learningSegments.size();i++) {
+            scratch.segmentMarks[learningSegments.get(i)] = learningStamp;
+        }
+        
+        int winnerStamp = scratch.nextStamp();
+        TIntArrayList winnerCells = cycle.winnerCellIndexes;
+        for(int i = 0;i < winnerCells.size();i++) {
+            scratch.winnerCellMarks[winnerCells.get(i)] = winnerStamp;
+        }
+        
+        int numPrevWinners = prev.winnerCellIndexes.size();
+        scratch.ensureCandidateCapacity(numPrevWinners);
+        prev.winnerCellIndexes.toArray(scratch.sortedPrevWinners, 0, numPrevWinners);
+        Arrays.sort(scratch.sortedPrevWinners, 0, numPrevWinners);
+        
+        double permanenceIncrement = c.getPermanenceIncrement();
+        double permanenceDecrement = c.getPermanenceDecrement();
+        int maxNewSynapseCount = c.getMaxNewSynapseCount();
+        int iteration = store.getIteration();
+        
+        TIntArrayList prevActiveSegments = prev.activeSegmentHandles;
+        int numPrevActive = prevActiveSegments.size();
+        for(int i = 0;i < numPrevActive + learningSegments.size();i++) {
+            int segment = i < numPrevActive ? prevActiveSegments.get(i) : learningSegments.get(i - numPrevActive);
+            if(i < numPrevActive && !existedIn(store, segment, prev)) continue;
+            store.touchSegment(segment);
+            boolean isLearningSegment = scratch.segmentMarks[segment] == learningStamp;
+            boolean isFromWinnerCell = scratch.winnerCellMarks[store.getSegmentCell(segment)] == winnerStamp;
+            boolean adapt = isLearningSegment || isFromWinnerCell;
+            
+            //Synapses grown during this cycle were not active in t-1
+            int numActive = 0;
+            for(int syn = store.firstSynapse(segment);syn != FlatSegmentStore.NONE;syn = store.nextSynapse(syn)) {
+                boolean active = scratch.prevActiveCellMarks[store.getPresynapticCell(syn)] == prevActiveStamp &&
+                    store.getSynapseBirth(syn) < iteration;
+                if(active) numActive++;
+                
+                if(adapt) {
+                    double permanence = store.getPermanence(syn);
+                    permanence = active ? permanence + permanenceIncrement : permanence - permanenceDecrement;
+                    store.setPermanence(syn, Math.max(0, Math.min(1.0, permanence)));
+                }
+            }
+            if(adapt && c.getPruneSynapses() && pruneSynapses(c, store, segment, isLearningSegment)) continue;
+            
+            int n = maxNewSynapseCount - numActive;
+            if(isLearningSegment && n > 0) {
+                n = makeRoomForSynapses(c, store, segment, n);
+                int created = growSynapses(c, store, scratch, random, segment, n, numPrevWinners);
+                c.setSynapseCount(c.getSynapseCount() + created);
+                c.setNumSynapsesCreated(c.getNumSynapsesCreated() + created);
+            }
+        }
+    }
+    
+    /**
+     * Returns true if the specified segment handle refers to a segment which
+     * already existed when the specified cycle was computed. Handles held by 
+     * the state of an input stream may since have been destroyed, and reused,
+     * by the learning of other streams.
+     * 
+     * @param store     the segment store
+     * @param segment   the segment handle
+     * @param cycle     a past cycle
+     * @return
+     */
+    boolean existedIn(FlatSegmentStore store, int segment, ComputeCycle cycle) {
+        return store.isSegment(segment) && store.getSegmentBirth(segment) <= cycle.iteration;
+    }
+    
+    /**
+     * Creates a new segment on the specified cell of flat storage, first destroying
+     * the cell's least recently used segments if it holds {@link Connections#getMaxSegmentsPerCell()}.
+     * 
+     * @param c         the connection memory
+     * @param store     the segment store
+     * @param cell      the index of the cell
+     * @return  the new segment's handle
+     * @see #createSegment(Connections, Cell)
+     */
+    int createSegment(Connections c, FlatSegmentStore store, int cell) {
+        while(store.getSegmentCount(cell) >= c.getMaxSegmentsPerCell()) {
+            destroySegment(c, store, store.leastRecentlyUsedSegment(cell));
+        }
+        
+        int segment = store.createSegment(cell);
+        c.setSegmentCount(store.getSegmentCapacity());
+        c.setNumSegmentsCreated(c.getNumSegmentsCreated() + 1);
+        return segment;
+    }
+    
+    /**
+     * Destroys the specified segment of flat storage along with its synapses.
+     * 
+     * @param c         the connection memory
+     * @param store     the segment store
+     * @param segment   the handle of the segment to destroy
+     */
+    void destroySegment(Connections c, FlatSegmentStore store, int segment) {
+        c.setNumSynapsesDestroyed(c.getNumSynapsesDestroyed() + store.getSynapseCount(segment));
+        c.setNumSegmentsDestroyed(c.getNumSegmentsDestroyed() + 1);
+        store.destroySegment(segment);
+    }
+    
+    /**
+     * Destroys the synapses of the specified segment of flat storage whose permanence 
+     * has been decremented to 0, and the segment itself if that leaves it without 
+     * synapses and it isn't a learning segment.
+     * 
+     * @param c                     the connection memory
+     * @param store                 the segment store
+     * @param segment               the handle of the segment just adapted
+     * @param isLearningSegment     whether the segment is a learning segment
+     * @return  true if the segment was destroyed
+     * @see #pruneSynapses(Connections, DistalDendrite, boolean)
+     */
+    boolean pruneSynapses(Connections c, FlatSegmentStore store, int segment, boolean isLearningSegment) {
+        int destroyed = 0;
+        for(int syn = store.firstSynapse(segment);syn != FlatSegmentStore.NONE;) {
+            int next = store.nextSynapse(syn);
+            if(store.getPermanence(syn) < EPSILON) {
+                store.destroySynapse(syn);
+                destroyed++;
+            }
+            syn = next;
+        }
+        
+        c.setNumSynapsesDestroyed(c.getNumSynapsesDestroyed() + destroyed);
+        if(destroyed > 0 && store.getSynapseCount(segment) == 0 && !isLearningSegment) {
+            destroySegment(c, store, segment);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Destroys the weakest synapses of the specified segment of flat storage, the 
+     * earliest created among equals, so that n more fit within {@link Connections#getMaxSynapsesPerSegment()}.
+     * 
+     * @param c         the connection memory
+     * @param store     the segment store
+     * @param segment   the handle of the segment about to grow synapses
+     * @param n         the number of synapses to grow
+     * @return  the number of synapses to grow, n capped by the limit
+     * @see #growSynapses(Connections, DistalDendrite, int, Set)
+     */
+    int makeRoomForSynapses(Connections c, FlatSegmentStore store, int segment, int n) {
+        int maxSynapses = c.getMaxSynapsesPerSegment();
+        n = Math.min(n, maxSynapses);
+        for(int overrun = store.getSynapseCount(segment) + n - maxSynapses;overrun > 0;overrun--) {
+            int weakest = FlatSegmentStore.NONE;
+            for(int syn = store.firstSynapse(segment);syn != FlatSegmentStore.NONE;syn = store.nextSynapse(syn)) {
+                if(weakest == FlatSegmentStore.NONE || store.getPermanence(syn) < store.getPermanence(weakest)) {
+                    weakest = syn;
+                }
+            }
+            store.destroySynapse(weakest);
+            c.setNumSynapsesDestroyed(c.getNumSynapsesDestroyed() + 1);
+        }
+        return n;
+    }
+    
+    /**
+     * Phase 4 on flat storage: Compute the active synapse counts of every segment 
+     * touched by the active cells, and from them the active segments and predictive cells.
+     * 
+     * @param c         the connection memory
+     * @param store     the segment store
+     * @param scratch   working memory
+     * @param cycle     ComputeCycle interim values container
+     */
+    void computePredictiveCells(Connections c, FlatSegmentStore store, ComputeScratch scratch, ComputeCycle cycle) {
+        scratch.ensureSegmentCapacity(store.getSegmentCapacity());
+        int[] potential = scratch.numActivePotential;
+        int[] connected = scratch.numActiveConnected;
+        double connectedPermanence = c.getConnectedPermanence();
+        TIntArrayList matching = cycle.matchingSegmentHandles;
+        
+        TIntArrayList activeCells = cycle.activeCellIndexes;
+        for(int i = 0;i < activeCells.size();i++) {
+            int cell = activeCells.get(i);
+            for(int syn = store.firstReceptor(cell);syn != FlatSegmentStore.NONE;syn = store.nextReceptor(syn)) {
+                int segment = store.getSynapseSegment(syn);
+                if(potential[segment]++ == 0) {
+                    matching.add(segment);
+                }
+                if(store.getPermanence(syn) >= connectedPermanence) {
+                    connected[segment]++;
+                }
+            }
+        }
+        
+        int activationThreshold = c.getActivationThreshold();
+        int predictiveStamp = scratch.nextStamp();
+        for(int i = 0;i < matching.size();i++) {
+            int segment = matching.get(i);
+            cycle.matchingSegmentCounts.add(potential[segment]);
+            if(connected[segment] >= activationThreshold) {
+                cycle.activeSegmentHandles.add(segment);
+                int cell = store.getSegmentCell(segment);
+                if(scratch.predictiveCellMarks[cell] != predictiveStamp) {
+                    scratch.predictiveCellMarks[cell] = predictiveStamp;
+                    cycle.predictiveCellIndexes.add(cell);
+                }
+            }
+            potential[segment] = 0;
+            connected[segment] = 0;
+        }
+        cycle.predictiveCellIndexes.sort();
+    }
+    
+    /**
+     * Returns the handle of the segment on the specified cell with the largest 
+     * number of synapses active in t-1, or {@link FlatSegmentStore#NONE} if no
+     * segment reaches the minimum threshold.
+     * 
+     * @param c         the connection memory
+     * @param store     the segment store
+     * @param scratch   working memory, holding the segment activity of t-1
+     * @param cell      the index of the cell
+     * @return
+     */
+    int getBestMatchingSegment(Connections c, FlatSegmentStore store, ComputeScratch scratch, int cell) {
+        int maxSynapses = c.getMinThreshold();
+        int bestSegment = FlatSegmentStore.NONE;
+        for(int s = store.firstSegment(cell);s != FlatSegmentStore.NONE;s = store.nextSegment(s)) {
+            if(scratch.numActivePotential[s] >= maxSynapses) {
+                maxSynapses = scratch.numActivePotential[s];
+                bestSegment = s;
+            }
+        }
+        return bestSegment;
+    }
+    
+    /**
+     * Returns a randomly chosen cell among the cells of the column 
+     * beginning at the specified cell having the fewest segments.
+     * 
+     * @param c             the connection memory
+     * @param store         the segment store
+     * @param random        the source of the random choice
+     * @param firstCell     the index of the column's first cell
+     * @return
+     */
+    int getLeastUsedCell(Connections c, FlatSegmentStore store, Random random, int firstCell) {
+        int lastCell = firstCell + c.getCellsPerColumn();
+        int minNumSegments = Integer.MAX_VALUE;
+        int numLeastUsed = 0;
+        for(int cell = firstCell;cell < lastCell;cell++) {
+            int numSegments = store.getSegmentCount(cell);
+            if(numSegments < minNumSegments) {
+                minNumSegments = numSegments;
+                numLeastUsed = 0;
+            }
+            if(numSegments == minNumSegments) {
+                numLeastUsed++;
+            }
+        }
+        
+        int index = random.nextInt(numLeastUsed);
+        for(int cell = firstCell;cell < lastCell;cell++) {
+            if(store.getSegmentCount(cell) == minNumSegments && index-- == 0) {
+                return cell;
+            }
+        }
+        throw new IllegalStateException("Least used cell not found");
+    }
+    
+    /**
+     * Grows up to n new synapses on the specified segment, sourced from randomly
+     * chosen previous winner cells which aren't already synapsed to the segment.
+     * 
+     * @param c                 the connection memory
+     * @param store             the segment store
+     * @param scratch           working memory, holding the sorted previous winners
+     * @param random            the source of random choices
+     * @param segment           the segment to grow synapses on
+     * @param n                 the maximum number of synapses to grow
+     * @param numPrevWinners    the number of previous winner cells
+     * @return  the number of synapses created
+     */
+    int growSynapses(Connections c, FlatSegmentStore store, ComputeScratch scratch, Random random, int segment, int n, int numPrevWinners) {
+        int excludedStamp = scratch.nextStamp();
+        for(int syn = store.firstSynapse(segment);syn != FlatSegmentStore.NONE;syn = store.nextSynapse(syn)) {
+            scratch.excludedCellMarks[store.getPresynapticCell(syn)] = excludedStamp;
+        }
+        
+        int[] candidates = scratch.candidates;
+        int numCandidates = 0;
+        for(int i = 0;i < numPrevWinners;i++) {
+            int cell = scratch.sortedPrevWinners[i];
+            if(scratch.excludedCellMarks[cell] != excludedStamp) {
+                candidates[numCandidates++] = cell;
+            }
+        }
+        
+        int numPick = Math.min(n, numCandidates);
+        double initialPermanence = c.getInitialPermanence();
+        IndexSampler sampler = scratch.sampler;
+        sampler.reset(numCandidates);
+        for(int x = 0;x < numPick;x++) {
+            store.createSynapse(segment, candidates[sampler.next(random)], initialPermanence);
+        }
+        return numPick;
+    }
+    
+    /**
+     * Publishes the {@link Cell} and {@link Column} set views of the 
+     * specified cycle into the {@link Connections}.
+     * 
+     * @param c         the connection memory
+     * @param cycle     the completed cycle
+     */
+    void publish(Connections c, ComputeCycle cycle) {
+        c.setActiveCells(cycle.activeCells);
+        c.setWinnerCells(cycle.winnerCells);
+        c.setPredictiveCells(cycle.predictiveCells);
+        c.setPredictedColumns(cycle.predictedColumns);
+        c.setActiveSegments(cycle.activeSegments);
+        c.setLearningSegments(cycle.learningSegments);
+        c.setActiveSynapsesForSegment(cycle.activeSynapsesForSegment);
+        c.setLastCycle(cycle);
+    }
+    
+    
+    /////////////////////////// SNAPSHOT FUNCTIONS ///////////////////////////
+    
+    /**
+     * Writes the distal segments and synapses of the specified {@link Connections},
+     * along with the state of the last cycle needed to continue with the next one.
+     * Object storage is written as segment records in the order of each cell's segment 
+     * list followed by synapse records in creation (index) order, flat storage as the 
+     * arrays of its {@link FlatSegmentStore}.
+     * 
+     * @param c     the connection memory
+     * @param out   the snapshot being written
+     * @see #readSnapshot(Connections, SnapshotReader)
+     */
+    public void writeSnapshot(Connections c, SnapshotWriter out) {
+        FlatSegmentStore store = c.getSegmentStore();
+        out.writeBoolean(store != null);
+        if(store != null) {
+            store.writeSnapshot(out);
+            ComputeCycle last = c.getLastCycle();
+            writeList(out, last.activeCellIndexes);
+            writeList(out, last.winnerCellIndexes);
+            writeList(out, last.predictiveCellIndexes);
+            writeList(out, last.predictedColumnIndexes);
+            writeList(out, last.activeSegmentHandles);
+            writeList(out, last.learningSegmentHandles);
+            writeList(out, last.matchingSegmentHandles);
+            writeList(out, last.matchingSegmentCounts);
+            return;
+        }
+        
+        List<DistalDendrite> segments = new ArrayList<DistalDendrite>();
+        List<Synapse> synapses = new ArrayList<Synapse>();
+        for(Cell cell : c.getCells()) {
+            for(DistalDendrite dd : c.getSegments(cell)) {
+                segments.add(dd);
+                synapses.addAll(c.getSynapses(dd));
+            }
+        }
+        Collections.sort(synapses, new Comparator<Synapse>() {
+            @Override public int compare(Synapse a, Synapse b) {
+                return Integer.compare(a.getIndex(), b.getIndex());
+            }
+        });
+        
+        out.writeInt(c.getTmIteration());
+        out.writeIntArray(c.getFreeSegmentIndexes().toArray());
+        out.writeInt(segments.size());
+        for(DistalDendrite dd : segments) {
+            out.writeInt(dd.getParentCell().getIndex());
+            out.writeInt(dd.getIndex());
+            out.writeInt(dd.getLastUsedIteration());
+        }
+        out.writeInt(synapses.size());
+        for(Synapse s : synapses) {
+            out.writeInt(((DistalDendrite)s.getSegment()).getIndex());
+            out.writeInt(s.getSourceCell().getIndex());
+            out.writeDouble(s.getPermanence());
+            out.writeInt(s.getIndex());
+        }
+        
+        out.writeIntArray(cellIndexes(c.getActiveCells()));
+        out.writeIntArray(cellIndexes(c.getWinnerCells()));
+        int[] predictedColumns = new int[c.getPredictedColumns().size()];
+        int i = 0;
+        for(Column column : c.getPredictedColumns()) {
+            predictedColumns[i++] = column.getIndex();
+        }
+        out.writeIntArray(predictedColumns);
+        int[] learningSegments = new int[c.getLearningSegments().size()];
+        i = 0;
+        for(DistalDendrite dd : c.getLearningSegments()) {
+            learningSegments[i++] = dd.getIndex();
+        }
+        out.writeIntArray(learningSegments);
+    }
+    
+    /**
+     * Restores the state written by {@link #writeSnapshot(Connections, SnapshotWriter)}
+     * into the specified {@link Connections}, which must have just been initialized
+     * by {@link #init(Connections)} with the same parameters. 
+     * <p>
+     * For object storage the predictive cells and active segments are not stored 
+     * but recomputed from the restored active cells, which also refills the segment 
+     * activity counters the next cycle depends on.
+     * 
+     * @param c     the freshly initialized connection memory
+     * @param in    the snapshot being read
+     */
+    public void readSnapshot(Connections c, SnapshotReader in) {
+        boolean flat = in.readBoolean();
+        if(flat != (c.getSegmentStore() != null)) {
+            throw new IllegalArgumentException("Snapshot was written with flatStorage=" + flat + 
+                " but the connections are configured otherwise");
+        }
+        if(flat) {
+            c.getSegmentStore().readSnapshot(in);
+            ComputeCycle last = c.getLastCycle();
+            last.clear();
+            readList(in, last.activeCellIndexes);
+            readList(in, last.winnerCellIndexes);
+            readList(in, last.predictiveCellIndexes);
+            readList(in, last.predictedColumnIndexes);
+            readList(in, last.activeSegmentHandles);
+            readList(in, last.learningSegmentHandles);
+            readList(in, last.matchingSegmentHandles);
+            readList(in, last.matchingSegmentCounts);
+            last.iteration = c.getSegmentStore().getIteration();
+            publish(c, last);
+            return;
+        }
+        
+        Cell[] cells = c.getCells();
+        c.setTmIteration(in.readInt());
+        c.getFreeSegmentIndexes().add(in.readIntArray());
+        TIntObjectMap<DistalDendrite> segments = new TIntObjectHashMap<DistalDendrite>();
+        int numSegments = in.readInt();
+        for(int i = 0;i < numSegments;i++) {
+            Cell cell = cells[in.readInt()];
+            int index = in.readInt();
+            DistalDendrite dd = cell.createSegment(c, index);
+            dd.setLastUsedIteration(in.readInt());
+            segments.put(index, dd);
+        }
+        int numSynapses = in.readInt();
+        for(int i = 0;i < numSynapses;i++) {
+            DistalDendrite dd = segments.get(in.readInt());
+            Cell sourceCell = cells[in.readInt()];
+            double permanence = in.readDouble();
+            dd.createSynapse(c, sourceCell, permanence, in.readInt());
+        }
+        
+        ComputeCycle cycle = newCycle(c);
+        Collections.addAll(cycle.activeCells, c.getCells(in.readIntArray()));
+        Collections.addAll(cycle.winnerCells, c.getCells(in.readIntArray()));
+        for(int column : in.readIntArray()) {
+            cycle.predictedColumns.add(c.getColumn(column));
+        }
+        for(int segment : in.readIntArray()) {
+            cycle.learningSegments.add(segments.get(segment));
+        }
+        computePredictiveCells(c, cycle);
+        
+        c.setActiveCells(cycle.activeCells);
+        c.setWinnerCells(cycle.winnerCells);
+        c.setPredictiveCells(cycle.predictiveCells);
+        c.setPredictedColumns(cycle.predictedColumns);
+        c.setActiveSegments(cycle.activeSegments);
+        c.setLearningSegments(cycle.learningSegments);
+    }
+    
+    private static void writeList(SnapshotWriter out, TIntArrayList list) {
+        out.writeIntArray(list.toArray());
+    }
+    
+    private static void readList(SnapshotReader in, TIntArrayList list) {
+        list.add(in.readIntArray());
+    }
+    
+    private static int[] cellIndexes(Collection<Cell> cells) {
+        int[] retVal = new int[cells.size()];
+        int i = 0;
+        for(Cell cell : cells) {
+            retVal[i++] = cell.getIndex();
+        }
+        return retVal;
     }
     
     
@@ -372,6 +1447,76 @@ public class TemporalMemory {
         return retVal;
     }
     
+    /**
+     * Gets the cell with the best matching segment, reading the number of active
+     * synapses of each segment from the activity counters of the {@link Connections}.
+     * 
+     * @param c         encapsulated memory and state
+     * @param column    {@link Column} within which to search for best cell
+     * @return      an object array whose first index contains a segment, and the second contains a cell
+     * @see #getBestMatchingCell(Connections, Column, Map)
+     */
+    public Object[] getBestMatchingCell(Connections c, Column column) {
+        Object[] retVal = new Object[2];
+        Cell bestCell = null;
+        DistalDendrite bestSegment = null;
+        int maxSynapses = 0;
+        for(Cell cell : column.getCells()) {
+            DistalDendrite dd = getBestMatchingSegment(c, cell);
+            if(dd != null) {
+                int numActive = getNumActivePotential(c, dd);
+                if(numActive > maxSynapses) {
+                    maxSynapses = numActive;
+                    bestCell = cell;
+                    bestSegment = dd;
+                }
+            }
+        }
+        
+        if(bestCell == null) {
+            bestCell = column.getLeastUsedCell(c, c.getRandom());
+        }
+        
+        retVal[0] = bestSegment;
+        retVal[1] = bestCell;
+        return retVal;
+    }
+    
+    /**
+     * Gets the segment on a cell with the largest number of active synapses,
+     * reading them from the activity counters of the {@link Connections}.
+     * 
+     * @param c         encapsulated memory and state
+     * @param cell      the {@link Cell} whose segments are searched
+     * @return  the best segment
+     * @see #getBestMatchingSegment(Connections, Cell, Map)
+     */
+    public DistalDendrite getBestMatchingSegment(Connections c, Cell cell) {
+        int maxSynapses = c.getMinThreshold();
+        DistalDendrite bestSegment = null;
+        for(DistalDendrite dd : cell.getSegments(c)) {
+            int numActive = getNumActivePotential(c, dd);
+            if(numActive >= maxSynapses) {
+                maxSynapses = numActive;
+                bestSegment = dd;
+            }
+        }
+        return bestSegment;
+    }
+    
+    /**
+     * Returns the number of synapses on the specified segment 
+     * which were active in the last compute cycle.
+     * 
+     * @param c     encapsulated memory and state
+     * @param dd    the segment
+     * @return
+     */
+    private int getNumActivePotential(Connections c, DistalDendrite dd) {
+        int[] counts = c.getNumActivePotential();
+        return dd.getIndex() < counts.length ? counts[dd.getIndex()] : 0;
+    }
+    
     /**
      * Gets the segment on a cell with the largest number of activate synapses,
      * including all synapses with non-zero permanences.
@@ -26,7 +26,6 @@ import gnu.trove.list.TDoubleList;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
-import gnu.trove.map.hash.TDoubleIntHashMap;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 
@@ -795,6 +794,63 @@ public class ArrayUtils {
         return retVal.toArray();
     }
     
+    /**
+     * Returns the number of distinct values present in both of the specified
+     * arrays, which is the length of the array {@link #in1d(int[], int[])}
+     * returns for them, without allocating. Both arrays must be sorted in
+     * ascending order.
+     * 
+     * @param sorted1   ascending array of values
+     * @param sorted2   ascending array of values
+     * @return  the number of distinct common values
+     */
+    public static int intersectionCount(int[] sorted1, int[] sorted2) {
+        return intersectionCount(sorted1, sorted1.length, sorted2, sorted2.length);
+    }
+    
+    /**
+     * Same as {@link #intersectionCount(int[], int[])} for the first 
+     * length1 and length2 values of the specified arrays, which allows
+     * partially filled buffers to be compared.
+     * 
+     * @param sorted1   ascending array of values
+     * @param length1   the number of values of sorted1 to compare
+     * @param sorted2   ascending array of values
+     * @param length2   the number of values of sorted2 to compare
+     * @return  the number of distinct common values
+     */
+    public static int intersectionCount(int[] sorted1, int length1, int[] sorted2, int length2) {
+        int count = 0;
+        int i = 0, j = 0;
+        while(i < length1 && j < length2) {
+            int a = sorted1[i], b = sorted2[j];
+            if(a < b) {
+                i++;
+            }else if(a > b) {
+                j++;
+            }else{
+                count++;
+                while(++i < length1 && sorted1[i] == a);
+                while(++j < length2 && sorted2[j] == a);
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Returns a flag indicating whether the specified array is
+     * sorted in ascending order.
+     * 
+     * @param array
+     * @return
+     */
+    public static boolean isSorted(int[] array) {
+        for(int i = 1;i < array.length;i++) {
+            if(array[i - 1] > array[i]) return false;
+        }
+        return true;
+    }
+    
     /**
      * Returns the sum of all contents in the specified array.
      * @param array
@@ -1128,29 +1184,205 @@ public class ArrayUtils {
     }
 
     /**
-     * Returns an array containing the n greatest values.
+     * Returns the indexes of the n greatest values, ordered from the greatest
+     * value down. Equal values are ordered by ascending index. The specified 
+     * array is not modified.
+     * 
      * @param array
      * @param n
      * @return
+     * @see #topK(double[], int)
      */
     public static int[] nGreatest(double[] array, int n) {
-        TDoubleIntHashMap places = new TDoubleIntHashMap();
-        int i;
-        double key;
-        for (int j = 1; j < array.length; j++) {
-            key = array[j];
-            for (i = j - 1; i >= 0 && array[i] < key; i--) {
-                array[i + 1] = array[i];
+        return topK(array, n);
+    }
+
+    /**
+     * Returns the indexes of the k greatest values of the specified array,
+     * ordered from the greatest value down. Equal values are ordered by 
+     * ascending index, so the result is fully deterministic. Delegates to
+     * {@link #topKHeap(double[], int)} when k is small relative to the length 
+     * of the array, and to {@link #topKSelect(double[], int)} otherwise; both
+     * return the same result.
+     * 
+     * @param array     the values to select from
+     * @param k         the number of indexes to return
+     * @return
+     */
+    public static int[] topK(double[] array, int k) {
+        checkTopK(array, k);
+        return k <= array.length / 16 ? topKHeap(array, k) : topKSelect(array, k);
+    }
+
+    /**
+     * Top-k selection using a bounded min-heap of size k. O(n log k)
+     * 
+     * @param array     the values to select from
+     * @param k         the number of indexes to return
+     * @return  the indexes of the k greatest values, ordered from the greatest down
+     * @see #topK(double[], int)
+     */
+    public static int[] topKHeap(double[] array, int k) {
+        checkTopK(array, k);
+        int[] heap = new int[k];
+        int size = 0;
+        for(int i = 0;i < array.length;i++) {
+            if(size < k) {
+                //Sift up
+                int child = size++;
+                while(child > 0) {
+                    int parent = (child - 1) >>> 1;
+                    if(!ranksAbove(array, heap[parent], i)) break;
+                    heap[child] = heap[parent];
+                    child = parent;
+                }
+                heap[child] = i;
+            }else if(k > 0 && ranksAbove(array, i, heap[0])) {
+                heap[0] = i;
+                siftDown(array, heap, 0, k);
+            }
+        }
+        
+        //Repeatedly removing the root yields the least ranked first
+        for(int end = k - 1;end > 0;end--) {
+            int root = heap[0];
+            heap[0] = heap[end];
+            heap[end] = root;
+            siftDown(array, heap, 0, end);
+        }
+        return heap;
+    }
+
+    /**
+     * Top-k selection using introselect on a permutation of the indexes.
+     * O(n) on average, bounded by O(n log n) through a heapsort fallback.
+     * 
+     * @param array     the values to select from
+     * @param k         the number of indexes to return
+     * @return  the indexes of the k greatest values, ordered from the greatest down
+     * @see #topK(double[], int)
+     */
+    public static int[] topKSelect(double[] array, int k) {
+        int[] permutation = new int[array.length];
+        topKSelect(array, k, permutation);
+        return Arrays.copyOf(permutation, k);
+    }
+
+    /**
+     * Top-k selection using introselect, writing into a caller supplied index
+     * permutation so that repeated selections need not allocate. On return the
+     * first k entries of the permutation hold the indexes of the k greatest values,
+     * ordered from the greatest down; the remaining entries hold the other indexes
+     * in no particular order.
+     * 
+     * @param array         the values to select from
+     * @param k             the number of greatest values to select
+     * @param permutation   output array at least as long as the values array
+     */
+    public static void topKSelect(double[] array, int k, int[] permutation) {
+        checkTopK(array, k);
+        if(permutation.length < array.length) {
+            throw new IllegalArgumentException("Permutation length " + permutation.length + 
+                " is less than array length " + array.length);
+        }
+        int n = array.length;
+        for(int i = 0;i < n;i++) {
+            permutation[i] = i;
+        }
+        if(k == 0) return;
+        
+        int lo = 0;
+        int hi = n - 1;
+        int target = k - 1;
+        int depthLimit = 2 * (32 - Integer.numberOfLeadingZeros(n));
+        while(hi > lo) {
+            if(depthLimit-- == 0) {
+                heapSortByRank(array, permutation, lo, hi + 1);
+                break;
+            }
+            
+            //Median of three, moved to hi
+            int mid = (lo + hi) >>> 1;
+            if(ranksAbove(array, permutation[mid], permutation[lo])) swap(permutation, mid, lo);
+            if(ranksAbove(array, permutation[hi], permutation[lo])) swap(permutation, hi, lo);
+            if(ranksAbove(array, permutation[mid], permutation[hi])) swap(permutation, mid, hi);
+            
+            int pivot = permutation[hi];
+            int store = lo;
+            for(int i = lo;i < hi;i++) {
+                if(ranksAbove(array, permutation[i], pivot)) {
+                    swap(permutation, i, store++);
+                }
+            }
+            swap(permutation, store, hi);
+            
+            if(store == target) break;
+            if(store < target) {
+                lo = store + 1;
+            }else{
+                hi = store - 1;
             }
-            array[i + 1] = key;
-            places.put(key, j);
         }
+        
+        heapSortByRank(array, permutation, 0, k);
+    }
 
-        int[] retVal = new int[n];
-        for (i = 0; i < n; i++) {
-            retVal[i] = places.get(array[i]);
+    /**
+     * Returns true if the value at index a ranks above the value at index b,
+     * that is if it is greater, or equal with a lower index.
+     */
+    private static boolean ranksAbove(double[] array, int a, int b) {
+        return array[a] > array[b] || (array[a] == array[b] && a < b);
+    }
+
+    /**
+     * Restores the property of a heap whose root is the least ranked index,
+     * below the specified position.
+     */
+    private static void siftDown(double[] array, int[] heap, int pos, int size) {
+        int value = heap[pos];
+        while(true) {
+            int child = 2 * pos + 1;
+            if(child >= size) break;
+            if(child + 1 < size && ranksAbove(array, heap[child], heap[child + 1])) {
+                child++;
+            }
+            if(ranksAbove(array, heap[child], value)) break;
+            heap[pos] = heap[child];
+            pos = child;
         }
-        return retVal;
+        heap[pos] = value;
+    }
+
+    /**
+     * Sorts the specified range of indexes from the greatest ranked down.
+     */
+    private static void heapSortByRank(double[] array, int[] indexes, int from, int to) {
+        int size = to - from;
+        if(size < 2) return;
+        int[] heap = from == 0 ? indexes : Arrays.copyOfRange(indexes, from, to);
+        for(int i = size / 2 - 1;i >= 0;i--) {
+            siftDown(array, heap, i, size);
+        }
+        for(int end = size - 1;end > 0;end--) {
+            swap(heap, 0, end);
+            siftDown(array, heap, 0, end);
+        }
+        if(heap != indexes) {
+            System.arraycopy(heap, 0, indexes, from, size);
+        }
+    }
+
+    private static void checkTopK(double[] array, int k) {
+        if(k < 0 || k > array.length) {
+            throw new IllegalArgumentException("k must be between 0 and " + array.length + ", was " + k);
+        }
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
     }
 
     /**
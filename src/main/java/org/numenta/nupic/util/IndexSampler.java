@@ -0,0 +1,123 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.util;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Draws positions without replacement from the range [0, size), where each draw
+ * picks {@code random.nextInt(remaining)} and maps it onto the remaining positions
+ * in ascending order. This is the same sequence of choices as repeatedly removing
+ * a random element from a sorted {@link java.util.List}, but each draw costs
+ * O(log size) instead of the O(size) shift of a list removal, and the 
+ * buffers are reused between samples.
+ * <p>
+ * The remaining positions are counted by a Fenwick (binary indexed) tree.
+ */
+public class IndexSampler {
+    private int[] tree = new int[1];
+    private int size;
+    private int remaining;
+    private int topBit;
+    
+    
+    /**
+     * Starts a new sample over the positions [0, size)
+     * 
+     * @param size  the number of positions to draw from
+     */
+    public void reset(int size) {
+        if(size < 0) {
+            throw new IllegalArgumentException("Sample size must be non-negative: " + size);
+        }
+        if(tree.length < size + 1) {
+            tree = new int[Math.max(size + 1, tree.length * 2)];
+        }
+        
+        // Linear time construction: every position starts out present
+        for(int i = 1;i <= size;i++) {
+            tree[i] = 1;
+        }
+        for(int i = 1;i <= size;i++) {
+            int parent = i + (i & -i);
+            if(parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+        
+        this.size = size;
+        this.remaining = size;
+        this.topBit = size == 0 ? 0 : Integer.highestOneBit(size);
+    }
+    
+    /**
+     * Returns the number of positions not yet drawn
+     * @return
+     */
+    public int remaining() {
+        return remaining;
+    }
+    
+    /**
+     * Draws and removes the {@code random.nextInt(remaining())}th 
+     * remaining position.
+     * 
+     * @param random    the source of the random choice
+     * @return  the drawn position
+     */
+    public int next(Random random) {
+        if(remaining == 0) {
+            throw new NoSuchElementException();
+        }
+        return remove(random.nextInt(remaining));
+    }
+    
+    /**
+     * Removes and returns the remaining position having the specified rank
+     * among the remaining positions in ascending order.
+     * 
+     * @param rank  the zero based rank
+     * @return  the removed position
+     */
+    public int remove(int rank) {
+        if(rank < 0 || rank >= remaining) {
+            throw new IllegalArgumentException("Rank " + rank + " out of range [0, " + remaining + ")");
+        }
+        
+        int node = 0;
+        for(int bit = topBit;bit != 0;bit >>= 1) {
+            int next = node + bit;
+            if(next <= size && tree[next] <= rank) {
+                node = next;
+                rank -= tree[next];
+            }
+        }
+        
+        for(int i = node + 1;i <= size;i += i & -i) {
+            tree[i]--;
+        }
+        remaining--;
+        return node;
+    }
+}
@@ -0,0 +1,112 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a range of indexes (of columns, streams, ...) into contiguous shards
+ * which are processed on a {@link ForkJoinPool}. Each shard only writes the
+ * entries of its own range, so the combined result does not depend on how
+ * (or in which order) the shards were executed.
+ */
+public class IndexShards {
+    /** Shards smaller than this are not split any further */
+    public static final int MIN_SHARD_SIZE = 64;
+    
+    /**
+     * Work applied to one shard of the index range
+     */
+    public interface Body {
+        /**
+         * Processes the indexes from (inclusive) to (exclusive)
+         * @param from
+         * @param to
+         */
+        void apply(int from, int to);
+    }
+    
+    private IndexShards() {}
+    
+    /**
+     * Applies the specified {@link Body} to all indexes in [0, size), 
+     * sharded across the specified pool, and returns once all shards
+     * are done.
+     * 
+     * @param pool      the {@link ForkJoinPool} to execute on
+     * @param size      the number of indexes
+     * @param body      the work to apply
+     */
+    public static void run(ForkJoinPool pool, int size, Body body) {
+        run(pool, size, MIN_SHARD_SIZE, body);
+    }
+    
+    /**
+     * Applies the specified {@link Body} to all indexes in [0, size), 
+     * sharded across the specified pool into shards of at least the 
+     * specified size, and returns once all shards are done.
+     * 
+     * @param pool          the {@link ForkJoinPool} to execute on
+     * @param size          the number of indexes
+     * @param minShardSize  the size below which shards are not split
+     * @param body          the work to apply
+     */
+    public static void run(ForkJoinPool pool, int size, int minShardSize, Body body) {
+        int grain = Math.max(minShardSize, size / (pool.getParallelism() * 4));
+        if(size <= grain) {
+            body.apply(0, size);
+            return;
+        }
+        pool.invoke(new ShardAction(body, 0, size, grain));
+    }
+    
+    /**
+     * Recursively halves its range until it is no larger than the grain
+     */
+    @SuppressWarnings("serial")
+    private static class ShardAction extends RecursiveAction {
+        private final Body body;
+        private final int from;
+        private final int to;
+        private final int grain;
+        
+        ShardAction(Body body, int from, int to, int grain) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+        
+        @Override
+        protected void compute() {
+            if(to - from <= grain) {
+                body.apply(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ShardAction(body, from, mid, grain), new ShardAction(body, mid, to, grain));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.util;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link java.util.Set} of objects which each have a fixed index in a known
+ * index space (such as the cells or columns of a region), stored as an {@link SDR}
+ * over that space. Membership tests, insertions and removals are single word 
+ * operations and iteration follows ascending index order. The underlying {@link SDR}
+ * is exposed by {@link #getSDR()}, so the members can be handed on as sorted indexes 
+ * without conversion.
+ * <p>
+ * Subclasses map objects to their indexes and back.
+ *
+ * @param <T>   the element type
+ */
+public abstract class IndexedBitSet<T> extends AbstractSet<T> {
+    private final SDR bits;
+    private int size;
+    
+    
+    /**
+     * Constructs a new, empty {@code IndexedBitSet}
+     * 
+     * @param capacity  the size of the index space
+     */
+    protected IndexedBitSet(int capacity) {
+        this.bits = new SDR(capacity);
+    }
+    
+    /**
+     * Returns the index of the specified object, or -1 if it 
+     * isn't an element of this set's index space.
+     * 
+     * @param o     the object
+     * @return
+     */
+    protected abstract int indexOf(Object o);
+    
+    /**
+     * Returns the element having the specified index
+     * @param index
+     * @return
+     */
+    protected abstract T get(int index);
+    
+    /**
+     * Returns true if the element having the specified index is a member
+     * @param index
+     * @return
+     */
+    public boolean containsIndex(int index) {
+        return bits.get(index);
+    }
+    
+    /**
+     * Adds the element having the specified index
+     * @param index
+     * @return  true if it wasn't a member already
+     */
+    public boolean addIndex(int index) {
+        if(bits.get(index)) return false;
+        bits.set(index);
+        size++;
+        return true;
+    }
+    
+    /**
+     * Removes the element having the specified index
+     * @param index
+     * @return  true if it was a member
+     */
+    public boolean removeIndex(int index) {
+        if(!bits.get(index)) return false;
+        bits.clear(index);
+        size--;
+        return true;
+    }
+    
+    /**
+     * Returns the indexes of the members in ascending order. The array is 
+     * cached until this set changes and must not be modified.
+     * @return
+     */
+    public int[] getIndexes() {
+        return bits.getSparse();
+    }
+    
+    /**
+     * Returns the {@link SDR} holding the members of this set, 
+     * which must not be modified.
+     * @return
+     */
+    public SDR getSDR() {
+        return bits;
+    }
+    
+    @Override
+    public boolean add(T e) {
+        int index = indexOf(e);
+        if(index < 0) {
+            throw new IllegalArgumentException(e + " is not part of this set's index space");
+        }
+        return addIndex(index);
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        int index = indexOf(o);
+        return index >= 0 && bits.get(index);
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        return index >= 0 && removeIndex(index);
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public void clear() {
+        if(size > 0) {
+            bits.clear();
+            size = 0;
+        }
+    }
+    
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            /** Live words, each read into {@code word} before its bits are visited, so removals don't disturb iteration */
+            private final long[] words = bits.getWords();
+            private int wordIndex = -1;
+            private long word;
+            private int last = -1;
+            
+            @Override
+            public boolean hasNext() {
+                while(word == 0) {
+                    if(++wordIndex >= words.length) {
+                        wordIndex = words.length;
+                        return false;
+                    }
+                    word = words[wordIndex];
+                }
+                return true;
+            }
+            
+            @Override
+            public T next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                return get(last);
+            }
+            
+            @Override
+            public void remove() {
+                if(last < 0 || !containsIndex(last)) {
+                    throw new IllegalStateException();
+                }
+                removeIndex(last);
+            }
+        };
+    }
+}
@@ -0,0 +1,370 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A sparse distributed representation: a fixed size binary vector stored as 
+ * a bitset, one {@code long} word per 64 bits, which is 32 times smaller 
+ * than the dense {@code int[]} form. The sorted indexes of the on bits (the 
+ * sparse form) are computed on demand and cached until the next mutation.
+ * <p>
+ * Overlap, union and intersection work a whole word at a time using 
+ * {@link Long#bitCount(long)}, and the word layout matches the rows of
+ * {@link SparseBinaryMatrix}, so an {@code SDR} can be intersected with 
+ * them directly (see {@link SparseBinaryMatrix#rightVecSumAtNZ(SDR, int[], int, int)}).
+ */
+public class SDR {
+    private final int size;
+    private final long[] words;
+    /** Cached sorted on bit indexes, null if stale */
+    private int[] sparse;
+    
+    
+    /**
+     * Constructs a new, empty {@code SDR}
+     * 
+     * @param size  the number of bits
+     */
+    public SDR(int size) {
+        if(size < 0) {
+            throw new IllegalArgumentException("Size must not be negative: " + size);
+        }
+        this.size = size;
+        this.words = new long[(size + 63) >>> 6];
+    }
+    
+    /**
+     * Returns a new {@code SDR} with the on bits of the specified dense array,
+     * any non-zero value of which is taken as an on bit.
+     * 
+     * @param dense     the dense representation
+     * @return
+     */
+    public static SDR fromDense(int[] dense) {
+        SDR sdr = new SDR(dense.length);
+        sdr.setDense(dense);
+        return sdr;
+    }
+    
+    /**
+     * Returns a new {@code SDR} with the specified on bits
+     * 
+     * @param size      the number of bits
+     * @param indexes   the indexes of the on bits, in any order
+     * @return
+     */
+    public static SDR fromSparse(int size, int[] indexes) {
+        SDR sdr = new SDR(size);
+        sdr.setSparse(indexes);
+        return sdr;
+    }
+    
+    /**
+     * Returns the number of bits
+     * @return
+     */
+    public int getSize() {
+        return size;
+    }
+    
+    /**
+     * Returns the backing words, bit i being bit (i % 64) of word (i / 64).
+     * The array must not be modified.
+     * @return
+     */
+    public long[] getWords() {
+        return words;
+    }
+    
+    /**
+     * Returns true if the specified bit is on
+     * @param index
+     * @return
+     */
+    public boolean get(int index) {
+        checkIndex(index);
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+    
+    /**
+     * Turns the specified bit on
+     * @param index
+     */
+    public void set(int index) {
+        checkIndex(index);
+        words[index >>> 6] |= 1L << index;
+        sparse = null;
+    }
+    
+    /**
+     * Turns the specified bit off
+     * @param index
+     */
+    public void clear(int index) {
+        checkIndex(index);
+        words[index >>> 6] &= ~(1L << index);
+        sparse = null;
+    }
+    
+    /**
+     * Turns all bits off
+     */
+    public void clear() {
+        Arrays.fill(words, 0);
+        sparse = null;
+    }
+    
+    /**
+     * Replaces the on bits with those of the specified dense array,
+     * any non-zero value of which is taken as an on bit.
+     * 
+     * @param dense     the dense representation, of length {@link #getSize()}
+     */
+    public void setDense(int[] dense) {
+        checkSize(dense.length);
+        Arrays.fill(words, 0);
+        for(int i = 0;i < dense.length;i++) {
+            if(dense[i] != 0) words[i >>> 6] |= 1L << i;
+        }
+        sparse = null;
+    }
+    
+    /**
+     * Replaces the on bits with the specified ones
+     * 
+     * @param indexes   the indexes of the on bits, in any order
+     */
+    public void setSparse(int[] indexes) {
+        Arrays.fill(words, 0);
+        for(int index : indexes) {
+            checkIndex(index);
+            words[index >>> 6] |= 1L << index;
+        }
+        sparse = null;
+    }
+    
+    /**
+     * Replaces the on bits with those of the specified {@code SDR}
+     * 
+     * @param other     an {@code SDR} of the same size
+     */
+    public void setSDR(SDR other) {
+        checkSize(other.size);
+        System.arraycopy(other.words, 0, words, 0, words.length);
+        sparse = other.sparse;
+    }
+    
+    /**
+     * Returns the number of on bits
+     * @return
+     */
+    public int cardinality() {
+        if(sparse != null) return sparse.length;
+        int count = 0;
+        for(long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+    
+    /**
+     * Returns the indexes of the on bits in ascending order. The array is 
+     * cached until this {@code SDR} changes and must not be modified.
+     * @return
+     */
+    public int[] getSparse() {
+        if(sparse == null) {
+            int[] indexes = new int[cardinality()];
+            for(int w = 0, k = 0;w < words.length;w++) {
+                long word = words[w];
+                while(word != 0) {
+                    indexes[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            sparse = indexes;
+        }
+        return sparse;
+    }
+    
+    /**
+     * Returns a new dense array, with 1's at the on bits and 0's elsewhere
+     * @return
+     */
+    public int[] getDense() {
+        int[] dense = new int[size];
+        getDense(dense);
+        return dense;
+    }
+    
+    /**
+     * Writes the dense form of this {@code SDR} into the specified array
+     * 
+     * @param dense     the array to fill, of length {@link #getSize()}
+     */
+    public void getDense(int[] dense) {
+        checkSize(dense.length);
+        Arrays.fill(dense, 0);
+        for(int index : getSparse()) {
+            dense[index] = 1;
+        }
+    }
+    
+    /**
+     * Returns the number of bits which are on in both this and the specified {@code SDR}
+     * 
+     * @param other     an {@code SDR} of the same size
+     * @return
+     */
+    public int overlap(SDR other) {
+        checkSize(other.size);
+        int count = 0;
+        for(int w = 0;w < words.length;w++) {
+            count += Long.bitCount(words[w] & other.words[w]);
+        }
+        return count;
+    }
+    
+    /**
+     * Turns off the bits which are off in the specified {@code SDR}
+     * 
+     * @param other     an {@code SDR} of the same size
+     */
+    public void and(SDR other) {
+        checkSize(other.size);
+        for(int w = 0;w < words.length;w++) {
+            words[w] &= other.words[w];
+        }
+        sparse = null;
+    }
+    
+    /**
+     * Turns on the bits which are on in the specified {@code SDR}
+     * 
+     * @param other     an {@code SDR} of the same size
+     */
+    public void or(SDR other) {
+        checkSize(other.size);
+        for(int w = 0;w < words.length;w++) {
+            words[w] |= other.words[w];
+        }
+        sparse = null;
+    }
+    
+    /**
+     * Returns a new {@code SDR} of the bits on in both this and the specified {@code SDR}
+     * 
+     * @param other     an {@code SDR} of the same size
+     * @return
+     */
+    public SDR intersection(SDR other) {
+        SDR result = copy();
+        result.and(other);
+        return result;
+    }
+    
+    /**
+     * Returns a new {@code SDR} of the bits on in either this or the specified {@code SDR}
+     * 
+     * @param other     an {@code SDR} of the same size
+     * @return
+     */
+    public SDR union(SDR other) {
+        SDR result = copy();
+        result.or(other);
+        return result;
+    }
+    
+    /**
+     * Returns a new {@code SDR} with the specified number of on bits of this
+     * one, chosen uniformly at random, or a copy if there are no more on bits
+     * than that.
+     * 
+     * @param count     the number of on bits to keep
+     * @param random    the source of randomness
+     * @return
+     */
+    public SDR subsample(int count, Random random) {
+        if(count < 0) {
+            throw new IllegalArgumentException("Count must not be negative: " + count);
+        }
+        int[] indexes = getSparse();
+        if(count >= indexes.length) return copy();
+        
+        // Partial Fisher-Yates shuffle of a copy of the on bits
+        int[] shuffled = indexes.clone();
+        SDR result = new SDR(size);
+        for(int i = 0;i < count;i++) {
+            int j = i + random.nextInt(shuffled.length - i);
+            int index = shuffled[j];
+            shuffled[j] = shuffled[i];
+            shuffled[i] = index;
+            result.words[index >>> 6] |= 1L << index;
+        }
+        return result;
+    }
+    
+    /**
+     * Returns a copy of this {@code SDR}
+     * @return
+     */
+    public SDR copy() {
+        SDR copy = new SDR(size);
+        copy.setSDR(this);
+        return copy;
+    }
+    
+    private void checkIndex(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+    
+    private void checkSize(int otherSize) {
+        if(otherSize != size) {
+            throw new IllegalArgumentException("Size mismatch: " + otherSize + " != " + size);
+        }
+    }
+    
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(words);
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj) return true;
+        if(obj == null || getClass() != obj.getClass()) return false;
+        SDR other = (SDR)obj;
+        return size == other.size && Arrays.equals(words, other.words);
+    }
+    
+    @Override
+    public String toString() {
+        return "SDR[" + size + "]" + Arrays.toString(getSparse());
+    }
+}
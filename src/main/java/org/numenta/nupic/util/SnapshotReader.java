@@ -0,0 +1,146 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the binary form written by a {@link SnapshotWriter} from a 
+ * {@link ByteBuffer}, typically a slice of a {@link java.nio.MappedByteBuffer}.
+ * Primitive arrays are copied out of the buffer in bulk.
+ * 
+ * @see SnapshotWriter
+ * @see Snapshottable
+ */
+public class SnapshotReader {
+    private final ByteBuffer buffer;
+    
+    
+    /**
+     * Constructs a new {@code SnapshotReader} reading from the
+     * current position of the specified buffer.
+     * 
+     * @param buffer    the bytes to read
+     */
+    public SnapshotReader(ByteBuffer buffer) {
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    public int readInt() {
+        return buffer.getInt();
+    }
+    
+    public long readLong() {
+        return buffer.getLong();
+    }
+    
+    public double readDouble() {
+        return buffer.getDouble();
+    }
+    
+    public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+    
+    /**
+     * Reads a length, checking it against the bytes left for elements 
+     * of the specified size, so that a corrupt length fails fast.
+     */
+    private int readLength(int elementSize) {
+        int length = buffer.getInt();
+        if(length < 0 || (long)length * elementSize > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+    
+    public byte[] readBytes() {
+        byte[] bytes = new byte[readLength(1)];
+        buffer.get(bytes);
+        return bytes;
+    }
+    
+    public String readString() {
+        return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+    
+    public int[] readIntArray() {
+        int[] values = new int[readLength(4)];
+        readIntArray(values, 0, values.length);
+        return values;
+    }
+    
+    /**
+     * Reads an int array into the specified array, which must be
+     * large enough to hold it.
+     * 
+     * @param into      the destination
+     * @return          the number of elements read
+     */
+    public int readIntArray(int[] into) {
+        int length = readLength(4);
+        readIntArray(into, 0, length);
+        return length;
+    }
+    
+    private void readIntArray(int[] into, int offset, int length) {
+        buffer.asIntBuffer().get(into, offset, length);
+        buffer.position(buffer.position() + 4 * length);
+    }
+    
+    public double[] readDoubleArray() {
+        double[] values = new double[readLength(8)];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + 8 * values.length);
+        return values;
+    }
+    
+    /**
+     * Restores the state written by {@link SnapshotWriter#writeRandom(MersenneTwister)}
+     * into the specified generator.
+     * 
+     * @param random    the generator to restore
+     */
+    public void readRandom(MersenneTwister random) {
+        try {
+            random.readState(new DataInputStream(new ByteArrayInputStream(readBytes())));
+        }catch(IOException e) {
+            throw new IllegalArgumentException("Corrupt random number generator state", e);
+        }
+    }
+    
+    /**
+     * Returns the number of bytes left to read
+     * @return
+     */
+    public int remaining() {
+        return buffer.remaining();
+    }
+}
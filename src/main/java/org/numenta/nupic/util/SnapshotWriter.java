@@ -0,0 +1,215 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Accumulates the binary form of a model snapshot in a growable little endian
+ * {@link ByteBuffer}. Arrays are written as their length followed by their 
+ * elements, so that {@link SnapshotReader} can read them back in bulk.
+ * 
+ * @see SnapshotReader
+ * @see Snapshottable
+ */
+public class SnapshotWriter {
+    private ByteBuffer buffer;
+    
+    
+    /**
+     * Constructs a new {@code SnapshotWriter} with a small initial capacity
+     */
+    public SnapshotWriter() {
+        this(4096);
+    }
+    
+    /**
+     * Constructs a new {@code SnapshotWriter}
+     * 
+     * @param capacity  the initial capacity in bytes
+     */
+    public SnapshotWriter(int capacity) {
+        buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Makes room for the specified number of additional bytes.
+     * @param bytes
+     */
+    private void ensureRemaining(int bytes) {
+        if(buffer.remaining() < bytes) {
+            long required = (long)buffer.position() + bytes;
+            if(required > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Snapshot section exceeds " + Integer.MAX_VALUE + " bytes");
+            }
+            int capacity = (int)Math.min(Integer.MAX_VALUE, Math.max(required, 2L * buffer.capacity()));
+            ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+    
+    public SnapshotWriter writeInt(int value) {
+        ensureRemaining(4);
+        buffer.putInt(value);
+        return this;
+    }
+    
+    public SnapshotWriter writeLong(long value) {
+        ensureRemaining(8);
+        buffer.putLong(value);
+        return this;
+    }
+    
+    public SnapshotWriter writeDouble(double value) {
+        ensureRemaining(8);
+        buffer.putDouble(value);
+        return this;
+    }
+    
+    public SnapshotWriter writeBoolean(boolean value) {
+        ensureRemaining(1);
+        buffer.put(value ? (byte)1 : (byte)0);
+        return this;
+    }
+    
+    /**
+     * Writes the length of the specified bytes followed by the bytes
+     * @param bytes
+     * @return
+     */
+    public SnapshotWriter writeBytes(byte[] bytes) {
+        writeInt(bytes.length);
+        ensureRemaining(bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+    
+    /**
+     * Writes the specified string as UTF-8 bytes
+     * @param s
+     * @return
+     */
+    public SnapshotWriter writeString(String s) {
+        return writeBytes(s.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Writes the length of the specified array followed by its elements
+     * @param values
+     * @return
+     */
+    public SnapshotWriter writeIntArray(int[] values) {
+        return writeIntArray(values, 0, values.length);
+    }
+    
+    /**
+     * Writes the specified number of elements of the specified array,
+     * preceded by that number.
+     * 
+     * @param values    the array holding the elements
+     * @param offset    the index of the first element to write
+     * @param length    the number of elements to write
+     * @return
+     */
+    public SnapshotWriter writeIntArray(int[] values, int offset, int length) {
+        writeInt(length);
+        ensureRemaining(4 * length);
+        buffer.asIntBuffer().put(values, offset, length);
+        buffer.position(buffer.position() + 4 * length);
+        return this;
+    }
+    
+    /**
+     * Writes the length of the specified array followed by its elements
+     * @param values
+     * @return
+     */
+    public SnapshotWriter writeDoubleArray(double[] values) {
+        return writeDoubleArray(values, 0, values.length);
+    }
+    
+    /**
+     * Writes the specified number of elements of the specified array,
+     * preceded by that number.
+     * 
+     * @param values    the array holding the elements
+     * @param offset    the index of the first element to write
+     * @param length    the number of elements to write
+     * @return
+     */
+    public SnapshotWriter writeDoubleArray(double[] values, int offset, int length) {
+        writeInt(length);
+        ensureRemaining(8 * length);
+        buffer.asDoubleBuffer().put(values, offset, length);
+        buffer.position(buffer.position() + 8 * length);
+        return this;
+    }
+    
+    /**
+     * Writes the complete state of the specified generator, so that 
+     * it can be continued where it left off.
+     * 
+     * @param random    the generator
+     * @return
+     */
+    public SnapshotWriter writeRandom(MersenneTwister random) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            random.writeState(new DataOutputStream(bytes));
+        }catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writeBytes(bytes.toByteArray());
+    }
+    
+    /**
+     * Returns the number of bytes written so far
+     * @return
+     */
+    public int size() {
+        return buffer.position();
+    }
+    
+    /**
+     * Writes all bytes written so far to the specified channel.
+     * 
+     * @param channel   the destination
+     * @throws IOException
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        view.flip();
+        while(view.hasRemaining()) {
+            channel.write(view);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.util;
+
+/**
+ * Implemented by objects whose learned state can be written to and 
+ * restored from a binary model snapshot.
+ * <p>
+ * {@link #readSnapshot(SnapshotReader)} is called on an instance configured
+ * the same way as the one which wrote the snapshot, and replaces its learned 
+ * state with the one read.
+ * 
+ * @see org.numenta.nupic.ModelSnapshot
+ */
+public interface Snapshottable {
+    /**
+     * Writes the learned state of this object
+     * @param out
+     */
+    public void writeSnapshot(SnapshotWriter out);
+    
+    /**
+     * Replaces the learned state of this object with the one read
+     * @param in
+     */
+    public void readSnapshot(SnapshotReader in);
+}
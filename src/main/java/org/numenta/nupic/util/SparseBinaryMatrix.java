@@ -25,18 +25,31 @@ package org.numenta.nupic.util;
 import gnu.trove.TIntCollection;
 import gnu.trove.iterator.TIntIterator;
 import gnu.trove.list.TIntList;
-import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntIntMap;
 import gnu.trove.map.hash.TIntIntHashMap;
 
 import java.lang.reflect.Array;
 import java.util.Arrays;
 
+/**
+ * Binary matrix whose rows (the outermost dimension) are stored as bitsets,
+ * one {@code long} word per 64 entries of the flattened inner dimensions.
+ * The number of on bits of every row is maintained incrementally as bits flip,
+ * and {@link #rightVecSumAtNZ(int[], int[])} either visits only the non-zero
+ * entries of the input vector, or intersects whole words with the input, 
+ * whichever touches less memory. Any non-zero value set is stored as a 1 bit.
+ */
 @SuppressWarnings("rawtypes")
 public class SparseBinaryMatrix extends SparseMatrix {
     private TIntIntMap sparseMap = new TIntIntHashMap();
-    private TIntList trueCounts;
-    private Object backingArray;
+    private int[] trueCounts;
+    /** Number of rows, the size of the outermost dimension */
+    private final int numRows;
+    /** Number of entries in one row, the product of the inner dimensions */
+    private final int rowLength;
+    private final int wordsPerRow;
+    /** Row major bitset rows, {@link #wordsPerRow} words per row */
+    private final long[] bits;
     
     public SparseBinaryMatrix(int[] dimensions) {
         this(dimensions, false);
@@ -44,65 +57,281 @@ public class SparseBinaryMatrix extends SparseMatrix {
     
     public SparseBinaryMatrix(int[] dimensions, boolean useColumnMajorOrdering) {
         super(dimensions, useColumnMajorOrdering);
-        this.backingArray = Array.newInstance(int.class, dimensions);
-        this.trueCounts = new TIntArrayList(dimensions[0]);
-        for(int i = 0;i < dimensions[0];i++) {
-        	trueCounts.add(0);
+        this.numRows = dimensions[0];
+        int length = 1;
+        for(int i = 1;i < dimensions.length;i++) {
+            length *= dimensions[i];
         }
+        this.rowLength = length;
+        this.wordsPerRow = (rowLength + 63) >>> 6;
+        this.bits = new long[numRows * wordsPerRow];
+        this.trueCounts = new int[numRows];
     }
     
     /**
-     * Called during mutation operations to simultaneously set the value
-     * on the backing array dynamically.
+     * Called during mutation operations to simultaneously set the bit
+     * in the row bitsets, updating the row's true count if it flips.
      * @param val
      * @param coordinates
      */
     private void back(int val, int... coordinates) {
-		ArrayUtils.setValue(this.backingArray, val, coordinates);
-        //update true counts
-        trueCounts.set(coordinates[0], ArrayUtils.aggregateArray(((Object[])this.backingArray)[coordinates[0]]));
-	}
+        int row = coordinates[0];
+        int offset = rowOffset(coordinates);
+        int word = row * wordsPerRow + (offset >>> 6);
+        long mask = 1L << offset;
+        boolean wasSet = (bits[word] & mask) != 0;
+        if(val != 0 && !wasSet) {
+            bits[word] |= mask;
+            trueCounts[row]++;
+        }else if(val == 0 && wasSet) {
+            bits[word] &= ~mask;
+            trueCounts[row]--;
+        }
+    }
+    
+    /**
+     * Returns the row major offset within its row of the entry 
+     * at the specified coordinates.
+     */
+    private int rowOffset(int[] coordinates) {
+        int offset = 0;
+        for(int i = 1;i < dimensions.length;i++) {
+            offset = offset * dimensions[i] + coordinates[i];
+        }
+        return offset;
+    }
+    
+    /**
+     * Returns true if the bit at the specified row and 
+     * row offset is set.
+     */
+    private boolean isSet(int row, int offset) {
+        return (bits[row * wordsPerRow + (offset >>> 6)] & (1L << offset)) != 0;
+    }
     
     /**
      * Returns the slice specified by the passed in coordinates.
      * The array is returned as an object, therefore it is the caller's
      * responsibility to cast the array to the appropriate dimensions.
+     * The returned array is a dense copy; changing it does not change 
+     * this matrix.
      * 
      * @param coordinates	the coordinates which specify the returned array
      * @return	the array specified
      * @throws	IllegalArgumentException if the specified coordinates address
      * 			an actual value instead of the array holding it.
      */
-     public Object getSlice(int... coordinates) {
-		Object slice = backingArray;
-		for(int i = 0;i < coordinates.length;i++) {
-			Object s = Array.get(slice, coordinates[i]);
-			slice = s.getClass().isArray() ? s : s;
-		}
-		//Ensure return value is of type Array
-		if(!slice.getClass().isArray()) {
-			throw new IllegalArgumentException(
-				"This method only returns the array holding the specified index: " + 
-					Arrays.toString(coordinates));
-		}
-		
-		return slice;
-	}
+    public Object getSlice(int... coordinates) {
+        if(coordinates.length >= dimensions.length) {
+            throw new IllegalArgumentException(
+                "This method only returns the array holding the specified index: " + 
+                    Arrays.toString(coordinates));
+        }
+        
+        int[] sliceDims = Arrays.copyOfRange(dimensions, coordinates.length, dimensions.length);
+        Object slice = Array.newInstance(int.class, sliceDims);
+        if(coordinates.length == 0 && dimensions.length == 1) {
+            for(int row = 0;row < numRows;row++) {
+                ((int[])slice)[row] = isSet(row, 0) ? 1 : 0;
+            }
+        }else if(coordinates.length == 0) {
+            for(int row = 0;row < numRows;row++) {
+                fillSlice(Array.get(slice, row), row, 0, 1);
+            }
+        }else{
+            //Offset within the row of the first entry of the slice
+            int offset = 0;
+            for(int i = 1;i < dimensions.length;i++) {
+                offset = offset * dimensions[i] + (i < coordinates.length ? coordinates[i] : 0);
+            }
+            fillSlice(slice, coordinates[0], offset, coordinates.length);
+        }
+        return slice;
+    }
+    
+    /**
+     * Recursively fills the dense slice array from the row bitset
+     */
+    private int fillSlice(Object slice, int row, int offset, int dimension) {
+        if(dimension == dimensions.length - 1) {
+            int[] values = (int[])slice;
+            for(int i = 0;i < values.length;i++) {
+                values[i] = isSet(row, offset++) ? 1 : 0;
+            }
+            return offset;
+        }
+        for(int i = 0;i < dimensions[dimension];i++) {
+            offset = fillSlice(Array.get(slice, i), row, offset, dimension + 1);
+        }
+        return offset;
+    }
     
     /**
      * Fills the specified results array with the result of the 
-     * matrix vector multiplication.
+     * matrix vector multiplication, adding to each row's entry the 
+     * sum of the input values at the row's on bits.
      * 
      * @param inputVector		the right side vector
      * @param results			the results array
      */
     public void rightVecSumAtNZ(int[] inputVector, int[] results) {
-    	for(int i = 0;i < dimensions[0];i++) {
-    		int[] slice = (int[])(dimensions.length > 1 ? getSlice(i) : backingArray);
-    		for(int j = 0;j < slice.length;j++) {
-    			results[i] += (inputVector[j] * slice[j]);
-    		}
-    	}
+        rightVecSumAtNZ(inputVector, results, 0, numRows);
+    }
+    
+    /**
+     * Same as {@link #rightVecSumAtNZ(int[], int[])} restricted to the rows
+     * from (inclusive) to (exclusive); the entries of the results array 
+     * outside of that range are not touched, which allows disjoint row
+     * ranges to be summed concurrently.
+     * 
+     * @param inputVector       the right side vector
+     * @param results           the results array
+     * @param fromRow           the first row to sum
+     * @param toRow             the row following the last row to sum
+     */
+    public void rightVecSumAtNZ(int[] inputVector, int[] results, int fromRow, int toRow) {
+        int length = Math.min(inputVector.length, rowLength);
+        int numActive = 0;
+        boolean binary = true;
+        for(int j = 0;j < length;j++) {
+            if(inputVector[j] != 0) {
+                numActive++;
+                binary &= inputVector[j] == 1;
+            }
+        }
+        if(numActive == 0) return;
+        
+        if(binary && numActive > wordsPerRow) {
+            //Dense input: intersect whole words
+            long[] inputWords = new long[wordsPerRow];
+            for(int j = 0;j < length;j++) {
+                if(inputVector[j] != 0) inputWords[j >>> 6] |= 1L << j;
+            }
+            for(int row = fromRow, base = fromRow * wordsPerRow;row < toRow;row++, base += wordsPerRow) {
+                if(trueCounts[row] == 0) continue;
+                int sum = 0;
+                for(int w = 0;w < wordsPerRow;w++) {
+                    sum += Long.bitCount(bits[base + w] & inputWords[w]);
+                }
+                results[row] += sum;
+            }
+        }else{
+            rightVecSumAtNZ(inputVector, nonZeroIndexes(inputVector), results, fromRow, toRow);
+        }
+    }
+    
+    /**
+     * Returns the indexes of the non-zero entries of the specified input 
+     * vector which lie within the length of a row, in ascending order.
+     * 
+     * @param inputVector       the right side vector
+     * @return
+     */
+    public int[] nonZeroIndexes(int[] inputVector) {
+        int length = Math.min(inputVector.length, rowLength);
+        int numActive = 0;
+        for(int j = 0;j < length;j++) {
+            if(inputVector[j] != 0) numActive++;
+        }
+        int[] activeIndexes = new int[numActive];
+        for(int j = 0, k = 0;j < length;j++) {
+            if(inputVector[j] != 0) activeIndexes[k++] = j;
+        }
+        return activeIndexes;
+    }
+    
+    /**
+     * Same as {@link #rightVecSumAtNZ(int[], int[], int, int)} for an input vector
+     * whose non-zero entries were already found by {@link #nonZeroIndexes(int[])}, 
+     * so that the vector is scanned once rather than once per row range.
+     * 
+     * @param inputVector       the right side vector
+     * @param activeIndexes     the indexes of its non-zero entries
+     * @param results           the results array
+     * @param fromRow           the first row to sum
+     * @param toRow             the row following the last row to sum
+     */
+    public void rightVecSumAtNZ(int[] inputVector, int[] activeIndexes, int[] results, int fromRow, int toRow) {
+        for(int row = fromRow;row < toRow;row++) {
+            if(trueCounts[row] == 0) continue;
+            int sum = 0;
+            for(int k = 0;k < activeIndexes.length;k++) {
+                int j = activeIndexes[k];
+                if(isSet(row, j)) sum += inputVector[j];
+            }
+            results[row] += sum;
+        }
+    }
+    
+    /**
+     * Adds to each row's entry of the results array the number of on bits
+     * it shares with the specified {@link SDR}. The SDR's words are laid out
+     * like the rows' words, so dense input is intersected without conversion.
+     * 
+     * @param input     the right side vector, of the length of a row
+     * @param results   the results array
+     */
+    public void rightVecSumAtNZ(SDR input, int[] results) {
+        rightVecSumAtNZ(input, results, 0, numRows);
+    }
+    
+    /**
+     * Same as {@link #rightVecSumAtNZ(SDR, int[])} restricted to the rows
+     * from (inclusive) to (exclusive).
+     * 
+     * @param input             the right side vector, of the length of a row
+     * @param results           the results array
+     * @param fromRow           the first row to sum
+     * @param toRow             the row following the last row to sum
+     */
+    public void rightVecSumAtNZ(SDR input, int[] results, int fromRow, int toRow) {
+        if(input.getSize() != rowLength) {
+            throw new IllegalArgumentException(
+                "Input size " + input.getSize() + " does not match the row length " + rowLength);
+        }
+        int[] activeIndexes = input.getSparse();
+        if(activeIndexes.length == 0) return;
+        
+        if(activeIndexes.length > wordsPerRow) {
+            long[] inputWords = input.getWords();
+            for(int row = fromRow, base = fromRow * wordsPerRow;row < toRow;row++, base += wordsPerRow) {
+                if(trueCounts[row] == 0) continue;
+                int sum = 0;
+                for(int w = 0;w < wordsPerRow;w++) {
+                    sum += Long.bitCount(bits[base + w] & inputWords[w]);
+                }
+                results[row] += sum;
+            }
+        }else{
+            for(int row = fromRow;row < toRow;row++) {
+                if(trueCounts[row] == 0) continue;
+                int sum = 0;
+                for(int k = 0;k < activeIndexes.length;k++) {
+                    if(isSet(row, activeIndexes[k])) sum++;
+                }
+                results[row] += sum;
+            }
+        }
+    }
+    
+    /**
+     * Adds to each row's entry of the results array the number of the 
+     * specified active input indexes at which the row has an on bit. 
+     * Equivalent to {@link #rightVecSumAtNZ(int[], int[])} with a binary input 
+     * vector, for callers which already hold the sparse form of the input.
+     * 
+     * @param activeIndexes     the indexes of the on bits of the input
+     * @param results           the results array
+     */
+    public void rightVecSumAtNZSparse(int[] activeIndexes, int[] results) {
+        for(int row = 0;row < numRows;row++) {
+            if(trueCounts[row] == 0) continue;
+            int sum = 0;
+            for(int k = 0;k < activeIndexes.length;k++) {
+                if(isSet(row, activeIndexes[k])) sum++;
+            }
+            results[row] += sum;
+        }
     }
     
     /**
@@ -146,15 +375,15 @@ public class SparseBinaryMatrix extends SparseMatrix {
     }
     
     /**
-     * Sets the value at the specified index skipping the automatic
-     * truth statistic tallying of the real method.
+     * Sets the value at the specified index. Row counts are derived from
+     * the row bits, so unlike it once did this no longer skips them, and 
+     * is the same as {@link #set(int, int)}.
      * 
      * @param index     the index the object will occupy
      * @param object    the object to be indexed.
      */
     public SparseBinaryMatrix setForTest(int index, int value) {
-        sparseMap.put(index, value);         
-        return this;
+        return set(index, value);
     }
     
     /**
@@ -179,16 +408,33 @@ public class SparseBinaryMatrix extends SparseMatrix {
      * @return
      */
     public int getTrueCount(int index) {
-    	return trueCounts.get(index);
+    	return trueCounts[index];
     }
     
     /**
-     * Sets the count of 1's on the specified row.
+     * Recomputes the count of 1's on the specified row from its bits. The 
+     * count is maintained as bits flip and can't be forced to another value,
+     * so the specified count is ignored.
+     * 
      * @param index
      * @param count
+     * @deprecated use {@link #recountRow(int)}
      */
+    @Deprecated
     public void setTrueCount(int index, int count) {
-    	this.trueCounts.set(index, count);
+    	recountRow(index);
+    }
+    
+    /**
+     * Recomputes the count of 1's on the specified row from its bits
+     * @param row
+     */
+    public void recountRow(int row) {
+        int count = 0;
+        for(int w = row * wordsPerRow, end = w + wordsPerRow;w < end;w++) {
+            count += Long.bitCount(bits[w]);
+        }
+        trueCounts[row] = count;
     }
     
     /**
@@ -196,7 +442,7 @@ public class SparseBinaryMatrix extends SparseMatrix {
      * @return
      */
     public int[] getTrueCounts() {
-    	return trueCounts.toArray();
+    	return trueCounts.clone();
     }
     
     /**
@@ -204,10 +450,29 @@ public class SparseBinaryMatrix extends SparseMatrix {
      * being set
      */
     public void clearStatistics(int row) {
-    	int[] slice = (int[])Array.get(backingArray, row);
-    	Arrays.fill(slice, 0);
-		trueCounts.set(row, 0);
-		sparseMap.put(row, 0);
+        int base = row * wordsPerRow;
+        for(int w = 0;w < wordsPerRow;w++) {
+            for(long word = bits[base + w];word != 0;word &= word - 1) {
+                int offset = (w << 6) + Long.numberOfTrailingZeros(word);
+                sparseMap.remove(computeIndex(rowCoordinates(row, offset), false));
+            }
+        }
+        Arrays.fill(bits, base, base + wordsPerRow, 0L);
+        trueCounts[row] = 0;
+    }
+    
+    /**
+     * Returns the coordinates of the entry at the specified 
+     * row and row major offset within the row.
+     */
+    private int[] rowCoordinates(int row, int offset) {
+        int[] coordinates = new int[dimensions.length];
+        coordinates[0] = row;
+        for(int i = dimensions.length - 1;i > 0;i--) {
+            coordinates[i] = offset % dimensions[i];
+            offset /= dimensions[i];
+        }
+        return coordinates;
     }
     
     /**
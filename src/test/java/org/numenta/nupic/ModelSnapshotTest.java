@@ -0,0 +1,261 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.numenta.nupic.algorithms.CLAClassifier;
+import org.numenta.nupic.algorithms.ClassifierResult;
+import org.numenta.nupic.encoders.RandomDistributedScalarEncoder;
+import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.research.ComputeCycle;
+import org.numenta.nupic.research.SpatialPooler;
+import org.numenta.nupic.research.TemporalMemory;
+import org.numenta.nupic.util.MersenneTwister;
+
+public class ModelSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private SpatialPooler sp = new SpatialPooler();
+    private TemporalMemory tm = new TemporalMemory();
+    
+    private Connections createConnections(boolean flat, boolean bounded) {
+        Parameters p = Parameters.getAllDefaultParameters();
+        p.setInputDimensions(new int[] { 200 });
+        p.setColumnDimensions(new int[] { 128 });
+        p.setCellsPerColumn(4);
+        p.setPotentialRadius(200);
+        p.setGlobalInhibition(true);
+        p.setActivationThreshold(4);
+        p.setMinThreshold(3);
+        p.setMaxNewSynapseCount(6);
+        p.setFlatStorage(flat);
+        if(bounded) {
+            p.setMaxSegmentsPerCell(1);
+            p.setMaxSynapsesPerSegment(4);
+            p.setPruneSynapses(true);
+        }
+        p.setRandom(new MersenneTwister(42));
+        
+        Connections c = new Connections();
+        p.apply(c);
+        sp.init(c);
+        tm.init(c);
+        return c;
+    }
+    
+    private RandomDistributedScalarEncoder createEncoder() {
+        return RandomDistributedScalarEncoder.builder()
+            .n(200).w(21).resolution(1).build();
+    }
+    
+    private CLAClassifier createClassifier() {
+        return new CLAClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0);
+    }
+    
+    /**
+     * Feeds one value through encoder, pooler, memory and classifier,
+     * returning everything that is observable about the step.
+     */
+    private String step(Connections c, RandomDistributedScalarEncoder encoder, CLAClassifier classifier, 
+        int recordNum, double value) {
+        
+        int[] input = encoder.encode(value);
+        int[] active = new int[c.getNumColumns()];
+        sp.compute(c, input, active, true, true);
+        int[] activeColumns = where(active);
+        ComputeCycle cycle = tm.compute(c, activeColumns, true);
+        
+        Map<String, Object> classification = new HashMap<String, Object>();
+        classification.put("bucketIdx", encoder.getBucketIndices(value)[0]);
+        classification.put("actValue", value);
+        int[] patternNZ = new int[cycle.activeCells().size()];
+        int i = 0;
+        for(Cell cell : cycle.activeCells()) {
+            patternNZ[i++] = cell.getIndex();
+        }
+        ClassifierResult<Double> result = classifier.compute(recordNum, classification, patternNZ, true, true);
+        
+        return Arrays.toString(input) + Arrays.toString(activeColumns) + 
+            Connections.asCellIndexes(c.getActiveCells()) + Connections.asCellIndexes(c.getWinnerCells()) +
+            Connections.asCellIndexes(c.getPredictiveCells()) + Arrays.toString(result.getStats(1)) + 
+            c.getSegmentCount() + "/" + c.getSynapseCount();
+    }
+    
+    private static int[] where(int[] dense) {
+        TIntArrayList retVal = new TIntArrayList();
+        for(int i = 0;i < dense.length;i++) {
+            if(dense[i] == 1) retVal.add(i);
+        }
+        return retVal.toArray();
+    }
+    
+    private void roundTrip(boolean flat, boolean bounded) throws IOException {
+        Connections c = createConnections(flat, bounded);
+        RandomDistributedScalarEncoder encoder = createEncoder();
+        CLAClassifier classifier = createClassifier();
+        for(int i = 0;i < 60;i++) {
+            step(c, encoder, classifier, i, i % 10);
+        }
+        
+        File file = folder.newFile("model.snapshot");
+        new ModelSnapshot(c).add("encoder", encoder).add("classifier", classifier).write(file);
+        
+        ModelSnapshot snapshot = ModelSnapshot.load(file);
+        Connections loaded = snapshot.getConnections();
+        RandomDistributedScalarEncoder loadedEncoder = snapshot.restore("encoder", createEncoder());
+        CLAClassifier loadedClassifier = snapshot.restore("classifier", createClassifier());
+        
+        assertEquals(c.getSegmentCount(), loaded.getSegmentCount());
+        assertEquals(c.getSynapseCount(), loaded.getSynapseCount());
+        assertEquals(c.getNumSynapsesDestroyed(), loaded.getNumSynapsesDestroyed());
+        assertTrue(!bounded || c.getNumSynapsesDestroyed() > 0);
+        assertEquals(c.getMaxSegmentsPerCell(), loaded.getMaxSegmentsPerCell());
+        assertArrayEquals(c.getBoostFactors(), loaded.getBoostFactors(), 0);
+        assertEquals(c.getInhibitionRadius(), loaded.getInhibitionRadius());
+        
+        //Values beyond the trained range create new encoder buckets
+        for(int i = 60;i < 90;i++) {
+            double value = i < 75 ? i % 10 : i - 60;
+            assertEquals(step(c, encoder, classifier, i, value), 
+                step(loaded, loadedEncoder, loadedClassifier, i, value));
+        }
+        assertEquals(c.getRandom().nextInt(), loaded.getRandom().nextInt());
+    }
+    
+    @Test
+    public void testRoundTripObjectStorage() throws IOException {
+        roundTrip(false, false);
+    }
+    
+    @Test
+    public void testRoundTripFlatStorage() throws IOException {
+        roundTrip(true, false);
+    }
+    
+    @Test
+    public void testRoundTripBoundedObjectStorage() throws IOException {
+        roundTrip(false, true);
+    }
+    
+    @Test
+    public void testRoundTripBoundedFlatStorage() throws IOException {
+        roundTrip(true, true);
+    }
+    
+    @Test
+    public void testRoundTripLazySpatialPooler() throws IOException {
+        Parameters p = Parameters.getAllDefaultParameters();
+        p.setInputDimensions(new int[] { 400 });
+        p.setColumnDimensions(new int[] { 800 });
+        p.setPotentialRadius(8);
+        p.setGlobalInhibition(true);
+        p.setParameterByKey(Parameters.KEY.NUM_ACTIVE_COLUMNS_PER_INH_AREA, 10.0);
+        p.setSpLazyInit(true);
+        p.setRandom(new MersenneTwister(42));
+        Connections c = new Connections();
+        p.apply(c);
+        sp.init(c);
+        
+        // Only inputs 0 - 49 are active before the snapshot, all of them after it
+        MersenneTwister random = new MersenneTwister(42);
+        int[] active = new int[c.getNumColumns()];
+        for(int i = 0;i < 20;i++) {
+            sp.compute(c, randomInput(random, c.getNumInputs(), 50), active, true, false);
+        }
+        
+        File file = folder.newFile("lazy.snapshot");
+        new ModelSnapshot(c).write(file);
+        Connections loaded = ModelSnapshot.load(file).getConnections();
+        
+        // The restored region stays lazy, with the same columns materialized
+        int numMaterialized = c.getLazyColumns().getNumMaterialized();
+        assertTrue(numMaterialized < c.getNumColumns() / 2);
+        assertEquals(numMaterialized, loaded.getLazyColumns().getNumMaterialized());
+        for(int i = 0;i < c.getNumColumns();i++) {
+            assertEquals(c.getLazyColumns().isMaterialized(i), loaded.getLazyColumns().isMaterialized(i));
+            assertEquals(c.getLazyColumns().isMaterialized(i), loaded.getPotentialPools().getObject(i) != null);
+        }
+        
+        int[] loadedActive = new int[loaded.getNumColumns()];
+        for(int i = 0;i < 20;i++) {
+            int[] input = randomInput(random, c.getNumInputs(), c.getNumInputs());
+            sp.compute(c, input, active, true, false);
+            sp.compute(loaded, input, loadedActive, true, false);
+            assertArrayEquals(active, loadedActive);
+        }
+        assertEquals(c.getLazyColumns().getNumMaterialized(), loaded.getLazyColumns().getNumMaterialized());
+    }
+    
+    private static int[] randomInput(MersenneTwister random, int numInputs, int numUsed) {
+        int[] input = new int[numInputs];
+        for(int j = 0;j < numUsed;j++) {
+            input[j] = random.nextDouble() < 0.2 ? 1 : 0;
+        }
+        return input;
+    }
+    
+    @Test
+    public void testRejectsForeignFile() throws IOException {
+        File file = folder.newFile("foreign.snapshot");
+        try(FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+        }
+        try {
+            ModelSnapshot.load(file);
+            fail();
+        }catch(IOException e) {
+            assertEquals("Not a model snapshot: " + file, e.getMessage());
+        }
+    }
+    
+    @Test
+    public void testRestoreUnknownSection() throws IOException {
+        Connections c = createConnections(false, false);
+        File file = folder.newFile("model.snapshot");
+        new ModelSnapshot(c).write(file);
+        try {
+            ModelSnapshot.load(file).restore("classifier", createClassifier());
+            fail();
+        }catch(IllegalArgumentException e) {
+            assertEquals("No snapshot section named classifier", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.numenta.nupic.algorithms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.numenta.nupic.algorithms.Anomaly.KEY_MODE;
+import static org.numenta.nupic.algorithms.Anomaly.KEY_USE_MOVING_AVG;
+import static org.numenta.nupic.algorithms.Anomaly.KEY_WINDOW_SIZE;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.numenta.nupic.algorithms.Anomaly.Mode;
+import org.numenta.nupic.util.MersenneTwister;
+
+/**
+ * Tests for {@link AnomalyBatch}
+ */
+public class AnomalyBatchTest {
+    
+    private int[] randomColumns(Random random, int numColumns, int count) {
+        int[] columns = new int[count];
+        for(int i = 0;i < count;i++) {
+            columns[i] = random.nextInt(numColumns);
+        }
+        Arrays.sort(columns);
+        return columns;
+    }
+    
+    @Test
+    public void testBatchMatchesSingleStreams() {
+        Map<String, Object> params = new HashMap<>();
+        params.put(KEY_MODE, Mode.PURE);
+        params.put(KEY_USE_MOVING_AVG, true);
+        params.put(KEY_WINDOW_SIZE, 3);
+        
+        int numStreams = 500;
+        AnomalyBatch serial = new AnomalyBatch(params, numStreams);
+        AnomalyBatch parallel = new AnomalyBatch(params, numStreams, 4);
+        Anomaly[] single = new Anomaly[numStreams];
+        for(int i = 0;i < numStreams;i++) {
+            single[i] = Anomaly.create(params);
+        }
+        
+        Random random = new MersenneTwister(42);
+        int[][] active = new int[numStreams][];
+        int[][] predicted = new int[numStreams][];
+        double[] serialRaw = new double[numStreams], serialScores = new double[numStreams];
+        double[] parallelRaw = new double[numStreams], parallelScores = new double[numStreams];
+        for(int step = 0;step < 5;step++) {
+            for(int i = 0;i < numStreams;i++) {
+                active[i] = randomColumns(random, 64, random.nextInt(10));
+                predicted[i] = randomColumns(random, 64, random.nextInt(10));
+            }
+            serial.compute(active, predicted, null, null, serialRaw, serialScores);
+            parallel.compute(active, predicted, null, null, parallelRaw, parallelScores);
+            
+            for(int i = 0;i < numStreams;i++) {
+                double raw = Anomaly.computeRawAnomalyScore(active[i], predicted[i]);
+                assertEquals(raw, serialRaw[i], 0);
+                assertEquals(single[i].compute(active[i], predicted[i], 0, 0), serialScores[i], 0);
+            }
+            assertTrue(Arrays.equals(serialRaw, parallelRaw));
+            assertTrue(Arrays.equals(serialScores, parallelScores));
+        }
+        parallel.close();
+    }
+    
+    @Test
+    public void testLikelihoodRequiresInputValues() {
+        Map<String, Object> params = new HashMap<>();
+        params.put(KEY_MODE, Mode.LIKELIHOOD);
+        AnomalyBatch batch = new AnomalyBatch(params, 2);
+        try {
+            batch.compute(new int[2][0], new int[2][0], null, null, new double[2], new double[2]);
+            fail();
+        }catch(Exception e) {
+            assertEquals(IllegalArgumentException.class, e.getClass());
+            assertEquals("inputValues cannot be null in the likelihood modes", e.getMessage());
+        }
+    }
+    
+    @Test
+    public void testStreamCountMismatch() {
+        Map<String, Object> params = new HashMap<>();
+        params.put(KEY_MODE, Mode.PURE);
+        AnomalyBatch batch = new AnomalyBatch(params, 2);
+        try {
+            batch.compute(new int[2][0], new int[1][0], null, null, new double[2], new double[2]);
+            fail();
+        }catch(Exception e) {
+            assertEquals(IllegalArgumentException.class, e.getClass());
+        }
+    }
+}
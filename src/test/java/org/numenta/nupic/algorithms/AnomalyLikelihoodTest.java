@@ -340,6 +340,36 @@ public class AnomalyLikelihoodTest {
         assertEquals(recordList.total, metrics3.getParams().movingAverage().getTotal(), 0);
     }
     
+    /**
+     * Tests that the streaming estimate made by anomalyProbability() agrees
+     * with periodically re-estimating from the whole history in batch.
+     */
+    @Test
+    public void testAnomalyProbabilityMatchesBatchEstimate() {
+        AnomalyLikelihood streaming = new AnomalyLikelihood(false, 0, false, 100, 100);
+        AnomalyLikelihood batch = new AnomalyLikelihood(false, 0, false, 100, 100);
+        List<Sample> data = generateSampleData(0.2, 0.2, 0.2, 0.2);
+        data.addAll(generateSampleData(0.5, 0.1, 0.2, 0.2).subList(0, 300));
+        
+        List<Sample> history = new ArrayList<>();
+        AnomalyParams params = null;
+        for(int i = 0;i < data.size();i++) {
+            Sample sample = data.get(i);
+            double expected = 0.5;
+            if(i >= 200) {
+                if(params == null || i % 100 == 0) {
+                    params = batch.estimateAnomalyLikelihoods(history, 10, 100).getParams();
+                }
+                AnomalyLikelihoodMetrics metrics = batch.updateAnomalyLikelihoods(Arrays.asList(sample), params);
+                params = metrics.getParams();
+                expected = 1.0 - metrics.getLikelihoods()[0];
+            }
+            history.add(sample);
+            
+            assertEquals(expected, streaming.anomalyProbability(sample.value, sample.score, sample.date), 1e-9);
+        }
+    }
+    
     /**
      * This calls estimateAnomalyLikelihoods with flat distributions and
      * ensures things don't crash.
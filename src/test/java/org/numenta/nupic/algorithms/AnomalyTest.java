@@ -1,6 +1,7 @@
 package org.numenta.nupic.algorithms;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.numenta.nupic.algorithms.Anomaly.KEY_MODE;
 import static org.numenta.nupic.algorithms.Anomaly.KEY_USE_MOVING_AVG;
 import static org.numenta.nupic.algorithms.Anomaly.KEY_WINDOW_SIZE;
@@ -10,6 +11,7 @@ import java.util.Map;
 
 import org.junit.Test;
 import org.numenta.nupic.algorithms.Anomaly.Mode;
+import org.numenta.nupic.util.SDR;
 
 /**
  * Tests for anomaly score functions and classes.
@@ -49,6 +51,34 @@ public class AnomalyTest {
         assertEquals(score, 2.0 / 3.0, 0.001);
     }
 
+    @Test
+    public void testComputeRawAnomalyScoreUnsorted() {
+        // Sorted and unsorted columns (with duplicates) score the same
+        double score = Anomaly.computeRawAnomalyScore(new int[] { 2, 3, 3, 6, 7 }, new int[] { 3, 5, 7 });
+        assertEquals(3.0 / 5.0, score, 0);
+        score = Anomaly.computeRawAnomalyScore(new int[] { 7, 3, 6, 3, 2 }, new int[] { 5, 7, 3 });
+        assertEquals(3.0 / 5.0, score, 0);
+    }
+    
+    @Test
+    public void testComputeRawAnomalyScoreNoPrediction() {
+        // Before the first prediction every active column is unpredicted
+        assertEquals(1.0, Anomaly.computeRawAnomalyScore(new int[] { 2, 3, 6 }, null), 0);
+        assertEquals(1.0, Anomaly.computeRawAnomalyScore(new int[] { 6, 2, 3 }, new int[0]), 0);
+        assertEquals(0.0, Anomaly.computeRawAnomalyScore(new int[0], null), 0);
+    }
+    
+    @Test
+    public void testComputeRawAnomalyScoreSDR() {
+        SDR active = SDR.fromSparse(100, new int[] { 2, 3, 6, 70, 99 });
+        SDR predicted = SDR.fromSparse(100, new int[] { 3, 5, 70, 99 });
+        assertEquals(Anomaly.computeRawAnomalyScore(active.getSparse(), predicted.getSparse()), 
+            Anomaly.computeRawAnomalyScore(active, predicted), 0);
+        assertEquals(2.0 / 5.0, Anomaly.computeRawAnomalyScore(active, predicted), 0);
+        assertEquals(1.0, Anomaly.computeRawAnomalyScore(new SDR(100), predicted), 0);
+        assertEquals(0.0, Anomaly.computeRawAnomalyScore(new SDR(100), new SDR(100)), 0);
+    }
+
     /////////////////////////////////////////////////////////////////
     
     @Test
@@ -96,6 +126,24 @@ public class AnomalyTest {
         assertEquals(2.0 / 3.0, score, 0);
     }
     
+    @Test
+    public void testColumnOnlySubclass() {
+        // Subclasses need only implement the column array compute()
+        Anomaly anomalyComputer = new Anomaly() {
+            @Override
+            public double compute(int[] activeColumns, int[] predictedColumns, double inputValue, long timestamp) {
+                return computeRawAnomalyScore(activeColumns, predictedColumns);
+            }
+        };
+        assertEquals(1.0, anomalyComputer.compute(new int[] { 2, 4, 6 }, new int[] { 3, 5, 7 }, 0, 0), 0);
+        try {
+            anomalyComputer.compute(1.0, 0, 0);
+            fail();
+        }catch(Exception e) {
+            assertEquals(UnsupportedOperationException.class, e.getClass());
+        }
+    }
+    
     @Test
     public void testAnomalyCumulative() {
         Map<String, Object> params = new HashMap<>();
@@ -246,6 +246,33 @@ public class CLAClassifierTest {
 		assertEquals(0.87699877, result.getStat(1, 5), 0.00001);
 	}
 	
+	@Test
+	public void testManyBucketsSerialization() {
+		// Grows the bit history rows past their initial width and keeps
+		// several steps, then checks a deserialized copy stays in lock step.
+		classifier = new CLAClassifier(new TIntArrayList(new int[] { 1, 3 }), 0.05, 0.3, 0);
+		int recordNum = 0;
+		for(;recordNum < 200;recordNum++) {
+			int bucket = (recordNum * 7) % 40;
+			compute(classifier, recordNum, new int[] { bucket, 100 + bucket, 500 + (recordNum % 3) }, bucket, bucket * 2.0);
+		}
+		
+		CLAClassifier c = CLAClassifier.deSerialize(classifier.serialize());
+		for(;recordNum < 220;recordNum++) {
+			int bucket = (recordNum * 7) % 40;
+			int[] pattern = new int[] { bucket, 100 + bucket, 500 + (recordNum % 3) };
+			ClassifierResult<Double> expected = compute(classifier, recordNum, pattern, bucket, bucket * 2.0);
+			ClassifierResult<Double> actual = compute(c, recordNum, pattern, bucket, bucket * 2.0);
+			assertEquals(40, actual.getStatCount(1));
+			assertTrue(Arrays.equals(expected.getStats(1), actual.getStats(1)));
+			assertTrue(Arrays.equals(expected.getStats(3), actual.getStats(3)));
+		}
+		
+		int bucket = (recordNum * 7) % 40;
+		ClassifierResult<Double> result = compute(c, recordNum, new int[] { (bucket + 40 - 7) % 40 }, bucket, bucket * 2.0);
+		assertEquals(bucket, result.getMostProbableBucketIndex(1));
+	}
+	
 	@Test
 	public void testOverlapPattern() {
 		setUp();
@@ -56,6 +56,23 @@ public class CategoryEncoderTest {
 		ce = builder.build();
 	}
 
+	@Test
+	public void testEncodingCache() {
+		String[] categories = new String[] { "ES", "GB", "US" };
+
+		setUp();
+		builder.radius(1);
+		builder.categoryList(Arrays.<String>asList(categories));
+		initCE();
+		CategoryEncoder cached = builder.cacheSize(2).build();
+
+		for(String category : new String[] { "US", "ES", "US", "unknown", "US", "GB" }) {
+			assertTrue(Arrays.equals(ce.encode(category), cached.encode(category)));
+		}
+		assertEquals(2, cached.getEncodingCache().getHits());
+		assertEquals(4, cached.getEncodingCache().getMisses());
+	}
+
 	@Test
 	public void testCategoryEncoder() {
 		String[] categories = new String[] { "ES", "GB", "US" };
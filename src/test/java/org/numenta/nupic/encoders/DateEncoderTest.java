@@ -261,5 +261,20 @@ public class DateEncoderTest {
             }
         }
     }
-}
 
+    @Test
+    public void testEncodingCache() {
+        setUp();
+        DateEncoder cached = builder.cacheSize(64).build();
+        assertEquals(64, cached.getEncodingCache().getCapacity());
+
+        for (int i = 0; i < 2; i++) {
+            for (int hour = 0; hour < 24; hour++) {
+                Date date = dt.plusDays(hour % 3).withHourOfDay(hour).toDate();
+                assertArrayEquals(de.encode(date), cached.encode(date));
+            }
+        }
+        assertEquals(24, cached.getEncodingCache().getMisses());
+        assertEquals(24, cached.getEncodingCache().getHits());
+    }
+}
@@ -0,0 +1,99 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.encoders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class EncoderCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        EncoderCache cache = new EncoderCache(2);
+        int[] output = new int[6];
+        
+        cache.put(1, new int[] { 1, 1, 0, 0, 0, 0 });
+        cache.put(2, new int[] { 0, 0, 1, 1, 0, 0 });
+        assertTrue(cache.copyTo(1, output));
+        assertArrayEquals(new int[] { 1, 1, 0, 0, 0, 0 }, output);
+        
+        // Key 2 is now the least recently used one
+        cache.put(3, new int[] { 0, 0, 0, 0, 1, 1 });
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        
+        Arrays.fill(output, 7);
+        assertFalse(cache.copyTo(2, output));
+        assertArrayEquals(new int[] { 7, 7, 7, 7, 7, 7 }, output);
+        assertTrue(cache.copyTo(3, output));
+        assertArrayEquals(new int[] { 0, 0, 0, 0, 1, 1 }, output);
+        assertTrue(cache.copyTo(1, output));
+        
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.75, cache.getHitRate(), 0);
+        
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(cache.copyTo(1, output));
+    }
+    
+    @Test
+    public void testScalarEncoderCache() {
+        ScalarEncoder.Builder builder = ScalarEncoder.builder()
+            .n(14)
+            .w(3)
+            .minVal(1.0)
+            .maxVal(8.0)
+            .periodic(true)
+            .forced(true);
+        ScalarEncoder plain = builder.build();
+        assertNull(plain.getEncodingCache());
+        
+        ScalarEncoder cached = builder.cacheSize(4).build();
+        for(int i = 0;i < 3;i++) {
+            for(double d = 1.0;d < 8.0;d += 0.5) {
+                assertArrayEquals(plain.encode(d), cached.encode(d));
+            }
+        }
+        
+        // 14 buckets cycling through 4 entries always miss, 
+        // while a repeated value hits
+        EncoderCache cache = cached.getEncodingCache();
+        assertEquals(0, cache.getHits());
+        assertEquals(4, cache.size());
+        cached.encode(7.5);
+        assertEquals(1, cache.getHits());
+        
+        cached.setCacheSize(0);
+        assertNull(cached.getEncodingCache());
+        assertArrayEquals(plain.encode(7.5), cached.encode(7.5));
+    }
+}
@@ -21,8 +21,10 @@
  */
 package org.numenta.nupic.encoders;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -150,6 +152,118 @@ public class MultiEncoderTest {
 		runMixedTests(me);
 	}
 	
+	public static class Record {
+		public double myval;
+		private double dow;
+		
+		public Record(double dow, double myval) {
+			this.dow = dow;
+			this.myval = myval;
+		}
+		
+		public double getDow() {
+			return dow;
+		}
+	}
+	
+	private MultiEncoder buildScalarEncoder(MultiEncoder.FieldAccessor myvalAccessor) {
+		setUp();
+		initME();
+		
+		me.addEncoder("dow", ScalarEncoder.builder()
+				.w(3)
+				.resolution(1)
+				.minVal(1)
+				.maxVal(8)
+				.periodic(true)
+				.name("day of week")
+				.forced(true)
+				.build());
+		me.addEncoder("myval", ScalarEncoder.builder()
+				.w(5)
+				.resolution(1)
+				.minVal(1)
+				.maxVal(10)
+				.periodic(false)
+				.name("aux")
+				.forced(true)
+				.build(), myvalAccessor);
+		return me;
+	}
+	
+	/**
+	 * Test that object inputs are read through their getters and fields,
+	 * or a given accessor, and encode as the equivalent map does.
+	 */
+	@Test
+	public void testObjectInput() {
+		runScalarTests(buildScalarEncoder(null));
+		
+		int[] expected = new int[]{0, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1};
+		assertArrayEquals(expected, me.encode(new Record(3., 10.)));
+		
+		List<int[]> fields = me.encodeEachField(new Record(3., 10.));
+		assertEquals(2, fields.size());
+		assertArrayEquals(Arrays.copyOfRange(expected, 0, 7), fields.get(0));
+		assertArrayEquals(Arrays.copyOfRange(expected, 7, 21), fields.get(1));
+		
+		// Inputs of several classes may be mixed
+		Map<String, Object> d = new HashMap<String, Object>();
+		d.put("dow",  3.);
+		d.put("myval",  10.);
+		assertArrayEquals(expected, me.encode(d));
+		assertArrayEquals(expected, me.encode(new Record(3., 10.)));
+		
+		me = buildScalarEncoder(new MultiEncoder.FieldAccessor() {
+			@Override public Object get(Object input) {
+				return ((Record)input).myval * 2;
+			}
+		});
+		assertArrayEquals(expected, me.encode(new Record(3., 5.)));
+	}
+	
+	/**
+	 * Test that encoding at an offset writes only the encoder's slice
+	 */
+	@Test
+	public void testEncodeIntoArrayAtOffset() {
+		buildScalarEncoder(null);
+		
+		int[] expected = me.encode(new Record(3., 10.));
+		int[] output = new int[expected.length + 10];
+		Arrays.fill(output, 1);
+		me.encodeIntoArray(new Record(3., 10.), output, 4);
+		
+		assertArrayEquals(expected, Arrays.copyOfRange(output, 4, 4 + expected.length));
+		for(int i = 0;i < 4;i++) {
+			assertEquals(1, output[i]);
+		}
+		for(int i = 4 + expected.length;i < output.length;i++) {
+			assertEquals(1, output[i]);
+		}
+	}
+	
+	@Test
+	public void testUnknownField() {
+		buildScalarEncoder(null);
+		
+		Map<String, Object> d = new HashMap<String, Object>();
+		d.put("dow",  3.);
+		try {
+			me.encode(d);
+			fail();
+		}catch(IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("Unknown field name myval"));
+		}
+		
+		try {
+			me.encode("not a record");
+			fail();
+		}catch(IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("Unknown field name dow"));
+		}
+	}
+	
 	@SuppressWarnings("unchecked")
 	public void runScalarTests(MultiEncoder me) {
 		// should be 7 bits wide
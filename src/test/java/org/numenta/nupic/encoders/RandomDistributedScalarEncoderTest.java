@@ -1,11 +1,16 @@
 package org.numenta.nupic.encoders;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertThat;
 import static org.hamcrest.CoreMatchers.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -15,6 +20,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.numenta.nupic.FieldMetaType;
+import org.numenta.nupic.util.SnapshotReader;
+import org.numenta.nupic.util.SnapshotWriter;
 import org.numenta.nupic.util.Tuple;
 
 /**
@@ -46,17 +53,17 @@ public class RandomDistributedScalarEncoderTest {
 		assertEquals("Width of the vector is incorrect", e0.length, 500);
 		assertEquals("Offset doesn't correspond to middle bucket",
 				rdse.getBucketIndices(0)[0], rdse.getMaxBuckets() / 2);
-		assertEquals("Number of buckets is not 1", 1, rdse.bucketMap.size());
+		assertEquals("Number of buckets is not 1", 1, rdse.getNumBuckets());
 
 		int e1[] = rdse.encode(1.0);
-		assertEquals("Number of buckets is not 2", 2, rdse.bucketMap.size());
+		assertEquals("Number of buckets is not 2", 2, rdse.getNumBuckets());
 		assertEquals("Number of on bits is incorrect", getOnBits(e1), 23);
 		assertEquals("Width of the vector is incorrect", e0.length, 500);
 		assertEquals("Overlap is not equal to w-1", computeOverlap(e0, e1), 22);
 
 		int e25[] = rdse.encode(25.0);
 		assertTrue("Buckets created are not more than 23",
-				rdse.bucketMap.size() > 23);
+				rdse.getNumBuckets() > 23);
 		assertEquals("Number of on bits is incorrect", getOnBits(e1), 23);
 		assertEquals("Width of the vector is incorrect", e0.length, 500);
 		assertTrue("Overlap is too high", computeOverlap(e0, e25) < 4);
@@ -69,6 +76,53 @@ public class RandomDistributedScalarEncoderTest {
 				rdse.encode(1.0), is(equalTo(e1)));
 	}
 
+	@Test
+	public void testEncodingCache() {
+		builder = RandomDistributedScalarEncoder.builder()
+				.name("enc")
+				.resolution(1)
+				.w(23)
+				.n(500)
+				.setOffset(0);
+		RandomDistributedScalarEncoder plain = builder.build();
+		rdse = builder.cacheSize(16).build();
+
+		for (int i = 0; i < 100; i++) {
+			double value = (i * 7) % 13;
+			assertArrayEquals(plain.encode(value), rdse.encode(value));
+		}
+		assertEquals(13, rdse.getEncodingCache().getMisses());
+		assertEquals(87, rdse.getEncodingCache().getHits());
+	}
+
+	@Test
+	public void testSnapshot() {
+		builder = RandomDistributedScalarEncoder.builder()
+				.name("enc")
+				.resolution(1)
+				.w(23)
+				.n(500);
+		rdse = builder.build();
+		for (int i = -5; i <= 5; i++)
+			rdse.encode((double) i);
+
+		SnapshotWriter out = new SnapshotWriter();
+		rdse.writeSnapshot(out);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			out.writeTo(Channels.newChannel(bytes));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		RandomDistributedScalarEncoder restored = builder.build();
+		restored.readSnapshot(new SnapshotReader(ByteBuffer.wrap(bytes.toByteArray())));
+		assertEquals(rdse.getOffset(), restored.getOffset());
+		assertArrayEquals(rdse.buckets, restored.buckets);
+		assertEquals(rdse.rng.nextInt(), restored.rng.nextInt());
+		assertThat(restored.encode(25.0), is(equalTo(rdse.encode(25.0))));
+	}
+
 	@Test
 	public void testMissingValues() {
 		builder = RandomDistributedScalarEncoder.builder()
@@ -83,6 +137,45 @@ public class RandomDistributedScalarEncoderTest {
 		assertEquals(0, getOnBits(e1));
 	}
 
+	@Test
+	public void testDistantValue() {
+		builder = RandomDistributedScalarEncoder.builder()
+				.name("enc")
+				.resolution(1)
+				.setMaxBuckets(4000)
+				.setOffset(0);
+		rdse = builder.build();
+
+		int[] e0 = rdse.encode(0.0);
+		int[] far = rdse.encode(1000.0);
+		assertEquals(1001, rdse.getNumBuckets());
+		assertEquals(rdse.getW(), getOnBits(far));
+		assertTrue("Overlap is too high", computeOverlap(e0, far) <= rdse.getMaxOverlap());
+		assertTrue("Representations do not overlap properly",
+				validateEncoder(rdse, 7));
+	}
+
+	@Test
+	public void testBucketLookahead() {
+		builder = RandomDistributedScalarEncoder.builder()
+				.name("enc")
+				.resolution(1)
+				.setOffset(0);
+		rdse = builder.setBucketLookahead(10).build();
+
+		rdse.encode(1.0);
+		assertEquals(12, rdse.getNumBuckets());
+		rdse.encode(11.0);
+		assertEquals(12, rdse.getNumBuckets());
+		rdse.encode(-2.0);
+		assertEquals(24, rdse.getNumBuckets());
+		assertTrue("Representations do not overlap properly",
+				validateEncoder(rdse, 1));
+
+		exception.expect(IllegalArgumentException.class);
+		rdse.setBucketLookahead(-1);
+	}
+
 	@Test
 	public void testResolution() {
 		builder = RandomDistributedScalarEncoder.builder()
@@ -123,14 +216,14 @@ public class RandomDistributedScalarEncoderTest {
 		rdse.encode(7.0);
 
 		assertEquals("maxBuckets exceeded", rdse.getMaxBuckets(),
-				rdse.bucketMap.size());
+				rdse.getNumBuckets());
 
 		assertThat("mapBucketIndexToNonZeroBits did not handle negative index",
 				rdse.mapBucketIndexToNonZeroBits(-1),
-				is(equalTo(rdse.bucketMap.get(0))));
+				is(equalTo(rdse.buckets[0])));
 		assertThat("mapBucketIndexToNonZeroBits did not handle negative index",
 				rdse.mapBucketIndexToNonZeroBits(1000),
-				is(equalTo(rdse.bucketMap.get(9))));
+				is(equalTo(rdse.buckets[9])));
 
 		int[] e23 = rdse.encode(23.0);
 		int[] e6 = rdse.encode(6.0);
@@ -293,12 +386,12 @@ public class RandomDistributedScalarEncoderTest {
 
 		int midIdx = rdse.getMaxBuckets() / 2;
 
-		rdse.bucketMap.put(midIdx - 2, getRangeAsList(3, 8));
-		rdse.bucketMap.put(midIdx - 1, getRangeAsList(4, 9));
-		rdse.bucketMap.put(midIdx, getRangeAsList(5, 10));
-		rdse.bucketMap.put(midIdx + 1, getRangeAsList(6, 11));
-		rdse.bucketMap.put(midIdx + 2, getRangeAsList(7, 12));
-		rdse.bucketMap.put(midIdx + 3, getRangeAsList(8, 13));
+		rdse.putBucket(midIdx - 2, getRange(3, 8));
+		rdse.putBucket(midIdx - 1, getRange(4, 9));
+		rdse.putBucket(midIdx, getRange(5, 10));
+		rdse.putBucket(midIdx + 1, getRange(6, 11));
+		rdse.putBucket(midIdx + 2, getRange(7, 12));
+		rdse.putBucket(midIdx + 3, getRange(8, 13));
 		rdse.minIndex = midIdx - 2;
 		rdse.maxIndex = midIdx + 3;
 
@@ -324,12 +417,12 @@ public class RandomDistributedScalarEncoderTest {
 
 		int midIdx = rdse.getMaxBuckets() / 2;
 
-		rdse.bucketMap.put(midIdx - 2, getRangeAsList(3, 8));
-		rdse.bucketMap.put(midIdx - 1, getRangeAsList(4, 9));
-		rdse.bucketMap.put(midIdx, getRangeAsList(5, 10));
-		rdse.bucketMap.put(midIdx + 1, getRangeAsList(6, 11));
-		rdse.bucketMap.put(midIdx + 2, getRangeAsList(7, 12));
-		rdse.bucketMap.put(midIdx + 3, getRangeAsList(8, 13));
+		rdse.putBucket(midIdx - 2, getRange(3, 8));
+		rdse.putBucket(midIdx - 1, getRange(4, 9));
+		rdse.putBucket(midIdx, getRange(5, 10));
+		rdse.putBucket(midIdx + 1, getRange(6, 11));
+		rdse.putBucket(midIdx + 2, getRange(7, 12));
+		rdse.putBucket(midIdx + 3, getRange(8, 13));
 		rdse.minIndex = midIdx - 2;
 		rdse.maxIndex = midIdx + 3;
 
@@ -349,12 +442,12 @@ public class RandomDistributedScalarEncoderTest {
 
 		int midIdx = rdse.getMaxBuckets() / 2;
 
-		rdse.bucketMap.put(midIdx - 2, getRangeAsList(3, 8));
-		rdse.bucketMap.put(midIdx - 1, getRangeAsList(4, 9));
-		rdse.bucketMap.put(midIdx, getRangeAsList(5, 10));
-		rdse.bucketMap.put(midIdx + 1, getRangeAsList(6, 11));
-		rdse.bucketMap.put(midIdx + 2, getRangeAsList(7, 12));
-		rdse.bucketMap.put(midIdx + 3, getRangeAsList(8, 13));
+		rdse.putBucket(midIdx - 2, getRange(3, 8));
+		rdse.putBucket(midIdx - 1, getRange(4, 9));
+		rdse.putBucket(midIdx, getRange(5, 10));
+		rdse.putBucket(midIdx + 1, getRange(6, 11));
+		rdse.putBucket(midIdx + 2, getRange(7, 12));
+		rdse.putBucket(midIdx + 3, getRange(8, 13));
 		rdse.minIndex = midIdx - 2;
 		rdse.maxIndex = midIdx + 3;
 
@@ -374,13 +467,13 @@ public class RandomDistributedScalarEncoderTest {
 
 		int midIdx = rdse.getMaxBuckets() / 2;
 
-		rdse.bucketMap.put(midIdx - 3, getRangeAsList(4, 9));
-		rdse.bucketMap.put(midIdx - 2, getRangeAsList(3, 8));
-		rdse.bucketMap.put(midIdx - 1, getRangeAsList(4, 9));
-		rdse.bucketMap.put(midIdx, getRangeAsList(5, 10));
-		rdse.bucketMap.put(midIdx + 1, getRangeAsList(6, 11));
-		rdse.bucketMap.put(midIdx + 2, getRangeAsList(7, 12));
-		rdse.bucketMap.put(midIdx + 3, getRangeAsList(8, 13));
+		rdse.putBucket(midIdx - 3, getRange(4, 9));
+		rdse.putBucket(midIdx - 2, getRange(3, 8));
+		rdse.putBucket(midIdx - 1, getRange(4, 9));
+		rdse.putBucket(midIdx, getRange(5, 10));
+		rdse.putBucket(midIdx + 1, getRange(6, 11));
+		rdse.putBucket(midIdx + 2, getRange(7, 12));
+		rdse.putBucket(midIdx + 3, getRange(8, 13));
 		rdse.minIndex = midIdx - 3;
 		rdse.maxIndex = midIdx + 3;
 
@@ -459,16 +552,16 @@ public class RandomDistributedScalarEncoderTest {
 		// not valid for java as it does not follow duck typing
 	}
 
-	private List<Integer> getRangeAsList(int lowerBound, int upperBound) {
+	private int[] getRange(int lowerBound, int upperBound) {
 		if (lowerBound > upperBound)
 			return null;
 
-		Integer[] arr = new Integer[upperBound - lowerBound];
+		int[] arr = new int[upperBound - lowerBound];
 		for (int i = lowerBound; i < upperBound; i++) {
 			arr[i - lowerBound] = i;
 		}
 
-		return Arrays.asList(arr);
+		return arr;
 	}
 
 	@Test
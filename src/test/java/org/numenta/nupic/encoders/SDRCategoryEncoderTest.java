@@ -24,6 +24,7 @@ package org.numenta.nupic.encoders;
 
 import org.junit.Test;
 import org.numenta.nupic.util.ArrayUtils;
+import org.numenta.nupic.util.SDR;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -101,6 +102,10 @@ public class SDRCategoryEncoderTest {
         assertEquals(ArrayUtils.aggregateArray(us), bitsOn);
         x = sdrCategoryEncoder.decode(us);
         assertEquals(x.getFields().get("foo").getDescription(), "US");
+        x = sdrCategoryEncoder.decode(sdrCategoryEncoder.encodeToSDR("US"), null);
+        assertEquals(x.getFields().get("foo").getDescription(), "US");
+        x = sdrCategoryEncoder.decode(SDR.fromDense(es), "parent");
+        assertEquals(x.getFields().get("parent.foo").getDescription(), "ES");
 
         topDown = sdrCategoryEncoder.topDownCompute(us).get(0);
         assertEquals(topDown.getValue(), "US");
@@ -197,6 +202,28 @@ public class SDRCategoryEncoderTest {
         }
     }
 
+    @Test
+    public void testManyCategories() {
+        SDRCategoryEncoder sdrCategoryEncoder = SDRCategoryEncoder.builder()
+                .n(1000)
+                .w(21)
+                .name("host").build();
+        int numCategories = 5000;
+        for (int i = 0; i < numCategories; i++) {
+            sdrCategoryEncoder.encode("host" + i);
+        }
+        assertEquals(numCategories + 1, sdrCategoryEncoder.getBucketValues(String.class).size());
+
+        for (int i = 0; i < numCategories; i += 97) {
+            int[] encoded = sdrCategoryEncoder.encode("host" + i);
+            assertEquals("host" + i, sdrCategoryEncoder.decode(encoded).getFields().get("host").getDescription());
+            EncoderResult topDown = sdrCategoryEncoder.topDownCompute(encoded).get(0);
+            assertEquals("host" + i, topDown.getValue());
+            assertTrue(Arrays.equals(encoded, topDown.getEncoding()));
+        }
+        assertEquals("", sdrCategoryEncoder.decode(new int[1000]).getFields().get("host").getDescription());
+    }
+
     @Test
     public void testAutoGrow() {
         //testing auto-grow
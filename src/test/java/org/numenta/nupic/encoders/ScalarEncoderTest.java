@@ -26,6 +26,7 @@ import gnu.trove.list.array.TDoubleArrayList;
 import org.junit.Test;
 import org.numenta.nupic.util.ArrayUtils;
 import org.numenta.nupic.util.MinMax;
+import org.numenta.nupic.util.SDR;
 import org.numenta.nupic.util.Tuple;
 
 import java.util.ArrayList;
@@ -113,6 +114,27 @@ public class ScalarEncoderTest {
 		assertEquals(1.5d, se.getRadius(), 0);
 	}
 
+	@Test
+	public void testEncodeIntoSDR() {
+		setUp();
+		initSE();
+		
+		SDR sdr = new SDR(se.getN());
+		for(double d = 1.0;d <= 8.0;d += 0.1) {
+			se.encodeIntoSDR(d, sdr);
+			assertTrue(Arrays.equals(se.encode(d), sdr.getDense()));
+		}
+		se.encodeIntoSDR(Encoder.SENTINEL_VALUE_FOR_MISSING_DATA, sdr);
+		assertEquals(0, sdr.cardinality());
+		
+		setUp();
+		builder.periodic(false).n(20).maxVal(10.0);
+		initSE();
+		for(double d = 1.0;d <= 10.0;d += 0.25) {
+			assertTrue(Arrays.equals(se.encode(d), se.encodeToSDR(d).getDense()));
+		}
+	}
+
 	/**
 	 * Test that we get the same encoder when we construct it using resolution
      * instead of n
@@ -24,18 +24,17 @@ package org.numenta.nupic.examples.qt;
 
 import static org.junit.Assert.*;
 
-import java.util.Arrays;
-
 import gnu.trove.list.array.TIntArrayList;
 
 import org.junit.Test;
 import org.numenta.nupic.Parameters;
 import org.numenta.nupic.Parameters.KEY;
 import org.numenta.nupic.algorithms.CLAClassifier;
-import org.numenta.nupic.encoders.ScalarEncoder;
-import org.numenta.nupic.examples.qt.QuickTest.Layer;
+import org.numenta.nupic.network.Inference;
+import org.numenta.nupic.network.Network;
 import org.numenta.nupic.research.SpatialPooler;
 import org.numenta.nupic.research.TemporalMemory;
+import org.numenta.nupic.util.MersenneTwister;
 
 /**
  * Mostly added so that coveralls won't bitch and whine. The code
@@ -56,39 +55,24 @@ public class QuickTestTest {
     }
 
     @Test
-    public void testRunThroughLayer() {
-        Layer<Double> layer = null;
-        try {
-            Parameters params = QuickTest.getParameters();
-            
-            //Layer components
-            ScalarEncoder.Builder dayBuilder =
-                ScalarEncoder.builder()
-                    .n(8)
-                    .w(3)
-                    .radius(1.0)
-                    .minVal(1.0)
-                    .maxVal(8)
-                    .periodic(true)
-                    .forced(true)
-                    .resolution(1);
-            ScalarEncoder encoder = dayBuilder.build();
-            SpatialPooler sp = new SpatialPooler();
-            TemporalMemory tm = new TemporalMemory();
-            CLAClassifier classifier = new CLAClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0);
-            
-            layer = QuickTest.getLayer(params, encoder, sp, tm, classifier);
-            
-            for(double i = 1, x = 0;x < 10000;i = (i == 7 ? 1 : i + 1), x++) {// USE "X" here to control run length
-                if (i == 1) tm.reset(layer.getMemory());
-                QuickTest.runThroughLayer(layer, i, (int)i, (int)x);
-            }
-        }catch(Exception e) {
-            fail();
+    public void testRunThroughNetwork() {
+        Parameters params = QuickTest.getParameters();
+        params.setRandom(new MersenneTwister(42));
+        
+        Network<Double> network = QuickTest.getNetwork(params, QuickTest.getEncoder(), new SpatialPooler(), 
+            new TemporalMemory(), new CLAClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0));
+        
+        Inference<Double> inference = null;
+        for(double i = 1, x = 0;x < 10000;i = (i == 7 ? 1 : i + 1), x++) {// USE "X" here to control run length
+            if (i == 1) network.reset();
+            inference = network.compute(i);
         }
         
-        System.out.println("actual = " + Arrays.toString(layer.getActual()) + ",  predicted = " + Arrays.toString(layer.getPredicted()));
-        //assertArrayEquals(layer.getActual(), layer.getPredicted());
+        assertEquals(9999, inference.getRecordNum());
+        assertEquals(4.0, inference.getInput(), 0.0);
+        assertEquals(8, inference.getEncoding().length);
+        assertFalse(inference.getActiveColumns().isEmpty());
+        assertNotNull(inference.getClassification().getStats(1));
     }
 
 }
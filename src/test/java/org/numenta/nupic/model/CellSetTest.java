@@ -0,0 +1,133 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.numenta.nupic.Connections;
+import org.numenta.nupic.research.TemporalMemory;
+
+public class CellSetTest {
+    
+    private Connections createConnections() {
+        Connections cn = new Connections();
+        cn.setColumnDimensions(new int[] { 40 });
+        cn.setCellsPerColumn(4);
+        new TemporalMemory().init(cn);
+        return cn;
+    }
+    
+    @Test
+    public void testSortedMembership() {
+        Connections cn = createConnections();
+        CellSet set = new CellSet(cn.getCells());
+        for(int index : new int[] { 130, 3, 64, 63, 3 }) {
+            set.add(cn.getCell(index));
+        }
+        
+        assertEquals(4, set.size());
+        assertTrue(set.contains(cn.getCell(64)));
+        assertFalse(set.contains(cn.getCell(65)));
+        assertFalse(set.contains("cell"));
+        assertArrayEquals(new int[] { 3, 63, 64, 130 }, set.getIndexes());
+        
+        List<Integer> iterated = new ArrayList<Integer>();
+        for(Cell cell : set) {
+            iterated.add(cell.getIndex());
+        }
+        assertEquals(Arrays.asList(3, 63, 64, 130), iterated);
+        
+        // Equal to any Set with the same members
+        Set<Cell> hashSet = new LinkedHashSet<Cell>();
+        for(int index : new int[] { 64, 130, 3, 63 }) {
+            hashSet.add(cn.getCell(index));
+        }
+        assertEquals(hashSet, set);
+        assertEquals(set, hashSet);
+        assertEquals(hashSet.hashCode(), set.hashCode());
+        
+        assertTrue(set.remove(cn.getCell(63)));
+        assertFalse(set.remove(cn.getCell(63)));
+        assertArrayEquals(new int[] { 3, 64, 130 }, set.getIndexes());
+        
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.iterator().hasNext());
+    }
+    
+    @Test
+    public void testIteratorRemove() {
+        Connections cn = createConnections();
+        CellSet set = new CellSet(cn.getCells());
+        for(int i = 0;i < 160;i += 5) {
+            set.add(cn.getCell(i));
+        }
+        
+        for(Iterator<Cell> it = set.iterator();it.hasNext();) {
+            if(it.next().getIndex() % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(16, set.size());
+        for(int index : set.getIndexes()) {
+            assertEquals(1, index % 2);
+        }
+    }
+    
+    @Test
+    public void testRejectsForeignCells() {
+        CellSet set = new CellSet(createConnections().getCells());
+        Cell foreign = createConnections().getCell(5);
+        assertFalse(set.contains(foreign));
+        try {
+            set.add(foreign);
+            fail();
+        }catch(IllegalArgumentException e) {
+            assertEquals(0, set.size());
+        }
+    }
+    
+    @Test
+    public void testColumnSet() {
+        Connections cn = createConnections();
+        ColumnSet set = new ColumnSet(cn.getMemory());
+        set.add(cn.getColumn(39));
+        set.add(cn.getColumn(0));
+        assertTrue(set.contains(cn.getColumn(39)));
+        assertFalse(set.contains(cn.getColumn(1)));
+        assertArrayEquals(new int[] { 0, 39 }, set.getIndexes());
+        assertEquals(Connections.asColumnIndexes(set), Connections.asColumnIndexes(cn.getColumnList(new int[] { 0, 39 })));
+    }
+}
@@ -0,0 +1,123 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FlatSegmentStoreTest {
+
+    @Test
+    public void testCreateSegmentsAndSynapses() {
+        FlatSegmentStore store = new FlatSegmentStore(10);
+        
+        int s0 = store.createSegment(3);
+        int s1 = store.createSegment(3);
+        int s2 = store.createSegment(5);
+        assertEquals(3, store.numSegments());
+        assertEquals(2, store.getSegmentCount(3));
+        assertEquals(s0, store.firstSegment(3));
+        assertEquals(s1, store.nextSegment(s0));
+        assertEquals(FlatSegmentStore.NONE, store.nextSegment(s1));
+        assertEquals(5, store.getSegmentCell(s2));
+        
+        int syn0 = store.createSynapse(s0, 7, 0.2);
+        int syn1 = store.createSynapse(s0, 8, 0.3);
+        int syn2 = store.createSynapse(s2, 7, 0.4);
+        assertEquals(3, store.numSynapses());
+        assertEquals(2, store.getSynapseCount(s0));
+        assertEquals(syn0, store.firstSynapse(s0));
+        assertEquals(syn1, store.nextSynapse(syn0));
+        assertEquals(FlatSegmentStore.NONE, store.nextSynapse(syn1));
+        
+        //Receptors of cell 7 in creation order
+        assertEquals(2, store.getReceptorCount(7));
+        assertEquals(syn0, store.firstReceptor(7));
+        assertEquals(syn2, store.nextReceptor(syn0));
+        assertEquals(FlatSegmentStore.NONE, store.nextReceptor(syn2));
+        
+        assertEquals(s2, store.getSynapseSegment(syn2));
+        assertEquals(8, store.getPresynapticCell(syn1));
+        assertEquals(0.3, store.getPermanence(syn1), 0.0);
+        store.setPermanence(syn1, 0.6);
+        assertEquals(0.6, store.getPermanence(syn1), 0.0);
+    }
+    
+    @Test
+    public void testDestroyAndReuse() {
+        FlatSegmentStore store = new FlatSegmentStore(10);
+        
+        int s0 = store.createSegment(1);
+        int s1 = store.createSegment(1);
+        int syn0 = store.createSynapse(s0, 2, 0.2);
+        store.createSynapse(s0, 3, 0.2);
+        int syn2 = store.createSynapse(s1, 2, 0.2);
+        
+        store.destroySegment(s0);
+        assertFalse(store.isSegment(s0));
+        assertFalse(store.isSynapse(syn0));
+        assertEquals(1, store.numSegments());
+        assertEquals(1, store.numSynapses());
+        assertEquals(s1, store.firstSegment(1));
+        assertEquals(syn2, store.firstReceptor(2));
+        assertEquals(0, store.getReceptorCount(3));
+        
+        //Freed handles are reused before the arrays grow
+        int s2 = store.createSegment(4);
+        assertEquals(s0, s2);
+        assertTrue(store.isSegment(s2));
+        assertEquals(2, store.getSegmentCapacity());
+        
+        int syn3 = store.createSynapse(s2, 5, 0.5);
+        assertTrue(syn3 == syn0 || syn3 == syn0 + 1);
+        assertEquals(3, store.getSynapseCapacity());
+    }
+    
+    @Test
+    public void testGrowth() {
+        FlatSegmentStore store = new FlatSegmentStore(2);
+        int segment = store.createSegment(0);
+        for(int i = 0;i < 10000;i++) {
+            store.createSynapse(segment, 1, i / 10000.0);
+        }
+        assertEquals(10000, store.getSynapseCount(segment));
+        assertEquals(10000, store.getReceptorCount(1));
+        
+        int i = 0;
+        for(int syn = store.firstSynapse(segment);syn != FlatSegmentStore.NONE;syn = store.nextSynapse(syn)) {
+            assertEquals(i++ / 10000.0, store.getPermanence(syn), 0.0);
+        }
+        assertEquals(10000, i);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testDestroyDeadSynapse() {
+        FlatSegmentStore store = new FlatSegmentStore(2);
+        int synapse = store.createSynapse(store.createSegment(0), 1, 0.5);
+        store.destroySynapse(synapse);
+        store.destroySynapse(synapse);
+    }
+}
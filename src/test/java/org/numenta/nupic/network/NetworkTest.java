@@ -0,0 +1,329 @@
+package org.numenta.nupic.network;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.numenta.nupic.Connections;
+import org.numenta.nupic.Parameters;
+import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.algorithms.CLAClassifier;
+import org.numenta.nupic.encoders.ScalarEncoder;
+import org.numenta.nupic.research.SpatialPooler;
+import org.numenta.nupic.research.TemporalMemory;
+import org.numenta.nupic.util.MersenneTwister;
+
+/**
+ * Tests for {@link Network}
+ */
+public class NetworkTest {
+    
+    private Network<Double> createNetwork(boolean flat) {
+        Parameters p = Parameters.getAllDefaultParameters();
+        p.setParameterByKey(KEY.INPUT_DIMENSIONS, new int[] { 16 });
+        p.setParameterByKey(KEY.COLUMN_DIMENSIONS, new int[] { 64 });
+        p.setParameterByKey(KEY.CELLS_PER_COLUMN, 4);
+        p.setParameterByKey(KEY.POTENTIAL_RADIUS, 16);
+        p.setParameterByKey(KEY.GLOBAL_INHIBITIONS, true);
+        p.setParameterByKey(KEY.NUM_ACTIVE_COLUMNS_PER_INH_AREA, 5.0);
+        p.setParameterByKey(KEY.MIN_THRESHOLD, 2);
+        p.setParameterByKey(KEY.ACTIVATION_THRESHOLD, 2);
+        p.setParameterByKey(KEY.FLAT_STORAGE, flat);
+        p.setRandom(new MersenneTwister(42));
+        
+        Connections c = new Connections();
+        p.apply(c);
+        SpatialPooler sp = new SpatialPooler();
+        sp.init(c);
+        TemporalMemory tm = new TemporalMemory();
+        tm.init(c);
+        
+        ScalarEncoder encoder = ScalarEncoder.builder()
+            .n(16)
+            .w(3)
+            .minVal(0)
+            .maxVal(10)
+            .periodic(true)
+            .forced(true)
+            .build();
+        
+        return new Network<Double>()
+            .add(new EncoderRegion<Double>(encoder))
+            .add(new SpatialPoolerRegion(c, sp))
+            .add(new TemporalMemoryRegion(c, tm))
+            .add(new ClassifierRegion(new CLAClassifier(new TIntArrayList(new int[] { 1 }), 0.1, 0.3, 0)));
+    }
+    
+    /**
+     * Copy of the parts of an {@link Inference} which are compared
+     */
+    private static class Record {
+        int recordNum;
+        int bucketIdx;
+        int[] encoding;
+        int[] activeColumns;
+        int[] activeCells;
+        int[] predictiveColumns;
+        double anomalyScore;
+        double[] stats;
+        
+        Record(Inference<Double> inference) {
+            recordNum = inference.getRecordNum();
+            bucketIdx = inference.getBucketIndex();
+            encoding = inference.getEncoding().clone();
+            activeColumns = inference.getActiveColumns().toArray();
+            activeCells = inference.getActiveCells().toArray();
+            predictiveColumns = inference.getPredictiveColumns().toArray();
+            anomalyScore = inference.getAnomalyScore();
+            stats = inference.getClassification().getStats(1);
+        }
+    }
+    
+    private void assertSameRecords(List<Record> expected, List<Record> actual) {
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0;i < expected.size();i++) {
+            Record e = expected.get(i), a = actual.get(i);
+            assertEquals(i, a.recordNum);
+            assertEquals(e.bucketIdx, a.bucketIdx);
+            assertArrayEquals(e.encoding, a.encoding);
+            assertArrayEquals(e.activeColumns, a.activeColumns);
+            assertArrayEquals(e.activeCells, a.activeCells);
+            assertArrayEquals(e.predictiveColumns, a.predictiveColumns);
+            assertEquals(e.anomalyScore, a.anomalyScore, 0);
+            assertArrayEquals(e.stats, a.stats, 0);
+        }
+    }
+    
+    private void testStreamingMatchesSynchronous(boolean flat, int depth) throws InterruptedException {
+        int numRecords = 300;
+        
+        Network<Double> sync = createNetwork(flat);
+        List<Record> expected = new ArrayList<Record>();
+        for(int i = 0;i < numRecords;i++) {
+            if(i % 10 == 0) sync.reset();
+            expected.add(new Record(sync.compute((double)(i % 10))));
+        }
+        
+        Network<Double> streaming = createNetwork(flat);
+        if(depth > 0) streaming.setDepth(depth);
+        final List<Record> actual = new ArrayList<Record>();
+        final boolean[] completed = new boolean[1];
+        streaming.start(new Subscriber<Double>() {
+            @Override public void onNext(Inference<Double> inference) {
+                actual.add(new Record(inference));
+            }
+            @Override public void onError(Throwable t) {
+                fail(t.toString());
+            }
+            @Override public void onComplete() {
+                completed[0] = true;
+            }
+        });
+        assertTrue(streaming.isStreaming());
+        for(int i = 0;i < numRecords;i++) {
+            if(i % 10 == 0) streaming.reset();
+            streaming.push((double)(i % 10));
+        }
+        streaming.close();
+        
+        assertFalse(streaming.isStreaming());
+        assertTrue(completed[0]);
+        assertSameRecords(expected, actual);
+    }
+    
+    @Test
+    public void testStreamingMatchesSynchronous() throws InterruptedException {
+        testStreamingMatchesSynchronous(false, 0);
+    }
+    
+    @Test
+    public void testStreamingMatchesSynchronousFlat() throws InterruptedException {
+        testStreamingMatchesSynchronous(true, 0);
+        testStreamingMatchesSynchronous(true, 1);
+    }
+    
+    @Test
+    public void testComputeReusesInference() {
+        Network<Double> network = createNetwork(true);
+        Inference<Double> first = network.compute(1.0);
+        int[] encoding = first.getEncoding();
+        int[] activeArray = first.getActiveArray();
+        
+        Inference<Double> second = network.compute(2.0);
+        assertSame(first, second);
+        assertSame(encoding, second.getEncoding());
+        assertSame(activeArray, second.getActiveArray());
+        assertEquals(1, second.getRecordNum());
+    }
+    
+    @Test
+    public void testRegionFailure() throws InterruptedException {
+        Network<Double> network = createNetwork(true);
+        network.add(new Region() {
+            @Override public void compute(Inference<?> inference) {
+                if(inference.getRecordNum() == 5) {
+                    throw new IllegalStateException("record 5");
+                }
+            }
+        });
+        
+        final List<Integer> delivered = new ArrayList<Integer>();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        final boolean[] completed = new boolean[1];
+        network.start(new Subscriber<Double>() {
+            @Override public void onNext(Inference<Double> inference) {
+                delivered.add(inference.getRecordNum());
+            }
+            @Override public void onError(Throwable t) {
+                errors.add(t);
+            }
+            @Override public void onComplete() {
+                completed[0] = true;
+            }
+        });
+        for(int i = 0;i < 20;i++) {
+            network.push((double)(i % 10));
+        }
+        network.close();
+        
+        assertEquals(1, errors.size());
+        assertEquals("record 5", errors.get(0).getMessage());
+        assertFalse(completed[0]);
+        assertEquals(5, delivered.size());
+        for(int i = 0;i < delivered.size();i++) {
+            assertEquals(i, (int)delivered.get(i));
+        }
+    }
+    
+    /**
+     * Creates a region which fails on the specified record
+     */
+    private Region failingRegion(final int recordNum) {
+        return new Region() {
+            @Override public void compute(Inference<?> inference) {
+                if(inference.getRecordNum() == recordNum) {
+                    throw new IllegalStateException("record " + recordNum);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Creates a region which holds every record for the specified time
+     */
+    private Region slowRegion(final long millis) {
+        return new Region() {
+            @Override public void compute(Inference<?> inference) {
+                try {
+                    Thread.sleep(millis);
+                }catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+    
+    @Test
+    public void testMiddleRegionFailure() throws InterruptedException {
+        Network<Double> network = new Network<Double>();
+        network.add(failingRegion(-1));
+        network.add(failingRegion(6));
+        network.add(slowRegion(5));
+        network.add(slowRegion(5));
+        network.setDepth(8);
+        
+        final List<Integer> delivered = new ArrayList<Integer>();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        final boolean[] completed = new boolean[1];
+        network.start(new Subscriber<Double>() {
+            @Override public void onNext(Inference<Double> inference) {
+                assertTrue(errors.isEmpty());
+                delivered.add(inference.getRecordNum());
+            }
+            @Override public void onError(Throwable t) {
+                errors.add(t);
+            }
+            @Override public void onComplete() {
+                completed[0] = true;
+            }
+        });
+        for(int i = 0;i < 20;i++) {
+            network.push((double)i);
+        }
+        network.close();
+        
+        assertEquals(1, errors.size());
+        assertEquals("record 6", errors.get(0).getMessage());
+        assertFalse(completed[0]);
+        assertEquals(6, delivered.size());
+        for(int i = 0;i < delivered.size();i++) {
+            assertEquals(i, (int)delivered.get(i));
+        }
+    }
+    
+    @Test(timeout = 10000)
+    public void testSubscriberFailureReleasesProducer() throws InterruptedException {
+        Network<Double> network = new Network<Double>();
+        network.add(failingRegion(3));
+        network.add(slowRegion(1));
+        network.setDepth(2);
+        
+        network.start(new Subscriber<Double>() {
+            @Override public void onNext(Inference<Double> inference) {}
+            @Override public void onError(Throwable t) {
+                throw new IllegalStateException("subscriber");
+            }
+            @Override public void onComplete() {}
+        });
+        for(int i = 0;i < 50;i++) {
+            try {
+                network.push((double)i);
+            }catch(IllegalStateException e) {
+                assertEquals("Network stream terminated abnormally", e.getMessage());
+            }
+        }
+        network.close();
+        assertFalse(network.isStreaming());
+    }
+    
+    @Test
+    public void testIllegalStates() throws InterruptedException {
+        Network<Double> network = createNetwork(true);
+        try {
+            network.push(1.0);
+            fail();
+        }catch(Exception e) {
+            assertEquals(IllegalStateException.class, e.getClass());
+        }
+        try {
+            network.setDepth(0);
+            fail();
+        }catch(Exception e) {
+            assertEquals(IllegalArgumentException.class, e.getClass());
+        }
+        
+        network.start(new Subscriber<Double>() {
+            @Override public void onNext(Inference<Double> inference) {}
+            @Override public void onError(Throwable t) {}
+            @Override public void onComplete() {}
+        });
+        try {
+            network.compute(1.0);
+            fail();
+        }catch(Exception e) {
+            assertEquals(IllegalStateException.class, e.getClass());
+        }
+        network.close();
+        
+        assertEquals(0, network.compute(1.0).getRecordNum());
+    }
+}
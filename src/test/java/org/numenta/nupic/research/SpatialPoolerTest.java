@@ -23,7 +23,9 @@ package org.numenta.nupic.research;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
 
@@ -33,11 +35,13 @@ import org.junit.Test;
 import org.numenta.nupic.Connections;
 import org.numenta.nupic.Parameters;
 import org.numenta.nupic.Parameters.KEY;
+import org.numenta.nupic.model.Column;
 import org.numenta.nupic.model.Pool;
 import org.numenta.nupic.research.SpatialPooler;
 import org.numenta.nupic.util.ArrayUtils;
 import org.numenta.nupic.util.Condition;
 import org.numenta.nupic.util.MersenneTwister;
+import org.numenta.nupic.util.SDR;
 import org.numenta.nupic.util.SparseBinaryMatrix;
 import org.numenta.nupic.util.SparseMatrix;
 import org.numenta.nupic.util.SparseObjectMatrix;
@@ -636,6 +640,302 @@ public class SpatialPoolerTest {
     	assertTrue(Arrays.equals(trueActive, active));
     }
     
+    @Test
+    public void testInhibitColumnsLocalNeighborhoodIndex() {
+    	setupParameters();
+    	parameters.setInputDimensions(new int[] { 8, 8 });
+    	parameters.setColumnDimensions(new int[] { 8, 8 });
+    	initSP();
+    	
+    	MersenneTwister random = new MersenneTwister(42);
+    	double density = 0.3;
+    	for(int radius = 0;radius < 4;radius++) {
+    		mem.setInhibitionRadius(radius);
+    		for(int trial = 0;trial < 5;trial++) {
+    			// Integer overlaps so that ties and the "add to winners" bonus matter
+    			double[] overlaps = new double[mem.getNumColumns()];
+    			for(int i = 0;i < overlaps.length;i++) {
+    				overlaps[i] = random.nextInt(5);
+    			}
+    			double[] expectedOverlaps = Arrays.copyOf(overlaps, overlaps.length);
+    			TIntArrayList expected = new TIntArrayList();
+    			double addToWinners = ArrayUtils.max(expectedOverlaps) / 1000.0;
+    			for(int i = 0;i < expectedOverlaps.length;i++) {
+    				int[] neighbors = sp.getNeighborsND(mem, i, mem.getMemory(), radius, false).toArray();
+    				int numActive = (int)(0.5 + density * (neighbors.length + 1));
+    				int numBigger = ArrayUtils.valueGreaterCount(
+    					expectedOverlaps[i], ArrayUtils.sub(expectedOverlaps, neighbors));
+    				if(numBigger < numActive) {
+    					expected.add(i);
+    					expectedOverlaps[i] += addToWinners;
+    				}
+    			}
+    			
+    			int[] active = sp.inhibitColumnsLocal(mem, overlaps, density);
+    			assertTrue(Arrays.equals(expected.toArray(), active));
+    			assertTrue(Arrays.equals(expectedOverlaps, overlaps));
+    		}
+    	}
+    	
+    	// The index is only rebuilt when the inhibition radius changes
+    	ColumnNeighborhoods hood = mem.getInhibitionNeighborhoods();
+    	assertEquals(3, hood.getRadius());
+    	sp.inhibitColumnsLocal(mem, new double[mem.getNumColumns()], density);
+    	assertTrue(hood == mem.getInhibitionNeighborhoods());
+    	mem.setInhibitionRadius(2);
+    	sp.inhibitColumnsLocal(mem, new double[mem.getNumColumns()], density);
+    	assertFalse(hood == mem.getInhibitionNeighborhoods());
+    	assertEquals(2, mem.getInhibitionNeighborhoods().getRadius());
+    }
+    
+    @Test
+    public void testUnstoredNeighborhoods() {
+    	setupParameters();
+    	parameters.setInputDimensions(new int[] { 8, 8 });
+    	parameters.setColumnDimensions(new int[] { 8, 8 });
+    	initSP();
+    	mem.setInhibitionRadius(2);
+    	
+    	// 64 columns of at most 5 x 5 - 1 neighbors
+    	assertEquals(64 * 24, ColumnNeighborhoods.estimateSize(new int[] { 8, 8 }, 2));
+    	assertEquals(64 * 63, ColumnNeighborhoods.estimateSize(new int[] { 8, 8 }, 10));
+    	
+    	MersenneTwister random = new MersenneTwister(42);
+    	double[] overlaps = new double[mem.getNumColumns()];
+    	for(int i = 0;i < overlaps.length;i++) {
+    		overlaps[i] = random.nextInt(5);
+    	}
+    	double[] unstoredOverlaps = Arrays.copyOf(overlaps, overlaps.length);
+    	mem.setActiveDutyCycles(Arrays.copyOf(overlaps, overlaps.length));
+    	mem.setOverlapDutyCycles(Arrays.copyOf(overlaps, overlaps.length));
+    	
+    	int[] expected = sp.inhibitColumnsLocal(mem, overlaps, 0.3);
+    	assertTrue(mem.getInhibitionNeighborhoods().isStored());
+    	sp.updateMinDutyCyclesLocal(mem);
+    	double[] expectedMinActive = Arrays.copyOf(mem.getMinActiveDutyCycles(), overlaps.length);
+    	double[] expectedMinOverlap = Arrays.copyOf(mem.getMinOverlapDutyCycles(), overlaps.length);
+    	
+    	// Past the size limit, neighborhoods are computed on the fly with the same results
+    	ColumnNeighborhoods hood = new ColumnNeighborhoods(sp, mem, false, 64 * 24 - 1);
+    	assertFalse(hood.isStored());
+    	assertNull(hood.getNeighbors());
+    	assertTrue(hood.isValidFor(mem));
+    	mem.setInhibitionNeighborhoods(hood);
+    	mem.setDutyCycleNeighborhoods(new ColumnNeighborhoods(sp, mem, true, 0));
+    	
+    	assertTrue(Arrays.equals(expected, sp.inhibitColumnsLocal(mem, unstoredOverlaps, 0.3)));
+    	assertTrue(Arrays.equals(overlaps, unstoredOverlaps));
+    	sp.updateMinDutyCyclesLocal(mem);
+    	assertTrue(Arrays.equals(expectedMinActive, mem.getMinActiveDutyCycles()));
+    	assertTrue(Arrays.equals(expectedMinOverlap, mem.getMinOverlapDutyCycles()));
+    	assertTrue(hood == mem.getInhibitionNeighborhoods());
+    }
+    
+    @Test
+    public void testParallelComputeMatchesSerial() {
+    	setupParameters();
+    	parameters.setInputDimensions(new int[] { 32, 32 });
+    	parameters.setColumnDimensions(new int[] { 64, 32 });
+    	parameters.setPotentialRadius(32);
+    	parameters.setParameterByKey(KEY.GLOBAL_INHIBITIONS, true);
+    	parameters.setParameterByKey(KEY.NUM_ACTIVE_COLUMNS_PER_INH_AREA, 40.0);
+    	parameters.setParameterByKey(KEY.SYN_PERM_TRIM_THRESHOLD, 0.005);
+    	parameters.setParameterByKey(KEY.DUTY_CYCLE_PERIOD, 5);
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	SpatialPooler serialSP = sp;
+    	Connections serial = mem;
+    	
+    	parameters.setSpParallelism(4);
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	SpatialPooler parallelSP = sp;
+    	Connections parallel = mem;
+    	assertEquals(4, parallel.getSpParallelism());
+    	
+    	MersenneTwister random = new MersenneTwister(42);
+    	int[] serialActive = new int[serial.getNumColumns()];
+    	int[] parallelActive = new int[parallel.getNumColumns()];
+    	for(int i = 0;i < 20;i++) {
+    		int[] input = new int[serial.getNumInputs()];
+    		for(int j = 0;j < input.length;j++) {
+    			input[j] = random.nextDouble() < 0.1 ? 1 : 0;
+    		}
+    		serialSP.compute(serial, input, serialActive, true, false);
+    		parallelSP.compute(parallel, input, parallelActive, true, false);
+    		assertTrue(Arrays.equals(serialActive, parallelActive));
+    	}
+    	
+    	assertTrue(Arrays.equals(serial.getBoostFactors(), parallel.getBoostFactors()));
+    	assertTrue(Arrays.equals(serial.getConnectedCounts().getTrueCounts(), 
+    		parallel.getConnectedCounts().getTrueCounts()));
+    	for(int i = 0;i < serial.getNumColumns();i++) {
+    		assertTrue(Arrays.equals(
+    			serial.getPotentialPools().getObject(i).getDensePermanences(serial),
+    			parallel.getPotentialPools().getObject(i).getDensePermanences(parallel)));
+    	}
+    }
+    
+    @Test
+    public void testSDRComputeMatchesDense() {
+    	setupParameters();
+    	parameters.setInputDimensions(new int[] { 32, 32 });
+    	parameters.setColumnDimensions(new int[] { 64, 32 });
+    	parameters.setPotentialRadius(32);
+    	parameters.setParameterByKey(KEY.GLOBAL_INHIBITIONS, true);
+    	parameters.setParameterByKey(KEY.NUM_ACTIVE_COLUMNS_PER_INH_AREA, 40.0);
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	SpatialPooler denseSP = sp;
+    	Connections dense = mem;
+    	
+    	parameters.setSpParallelism(2);
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	SpatialPooler sdrSP = sp;
+    	Connections sdr = mem;
+    	
+    	MersenneTwister random = new MersenneTwister(42);
+    	int[] denseActive = new int[dense.getNumColumns()];
+    	SDR input = new SDR(sdr.getNumInputs());
+    	SDR sdrActive = new SDR(sdr.getNumColumns());
+    	for(int i = 0;i < 30;i++) {
+    		int[] inputVector = new int[dense.getNumInputs()];
+    		for(int j = 0;j < inputVector.length;j++) {
+    			inputVector[j] = random.nextDouble() < (i % 2 == 0 ? 0.02 : 0.2) ? 1 : 0;
+    		}
+    		input.setDense(inputVector);
+    		boolean learn = i < 20;
+    		denseSP.compute(dense, inputVector, denseActive, learn, true);
+    		sdrSP.compute(sdr, input, sdrActive, learn, true);
+    		assertTrue(Arrays.equals(denseActive, sdrActive.getDense()));
+    	}
+    	
+    	try {
+    		sdrSP.compute(sdr, new SDR(5), sdrActive, true, false);
+    		fail();
+    	}catch(Exception e) {
+    		assertEquals(IllegalArgumentException.class, e.getClass());
+    	}
+    }
+    
+    @Test
+    public void testLazyInit() {
+    	setupParameters();
+    	parameters.setInputDimensions(new int[] { 400 });
+    	parameters.setColumnDimensions(new int[] { 800 });
+    	parameters.setPotentialRadius(8);
+    	parameters.setParameterByKey(KEY.GLOBAL_INHIBITIONS, true);
+    	parameters.setParameterByKey(KEY.NUM_ACTIVE_COLUMNS_PER_INH_AREA, 10.0);
+    	parameters.setSpLazyInit(true);
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	
+    	LazyColumns lazy = mem.getLazyColumns();
+    	assertEquals(0, lazy.getNumMaterialized());
+    	assertEquals(null, mem.getMemory().getObject(0));
+    	assertEquals(null, mem.getPotentialPools().getObject(0));
+    	
+    	// Only inputs 0 - 49 are ever active
+    	MersenneTwister random = new MersenneTwister(42);
+    	int[][] inputs = new int[20][];
+    	for(int i = 0;i < inputs.length;i++) {
+    		inputs[i] = new int[mem.getNumInputs()];
+    		for(int j = 0;j < 50;j++) {
+    			inputs[i][j] = random.nextDouble() < 0.2 ? 1 : 0;
+    		}
+    	}
+    	
+    	int[] activeArray = new int[mem.getNumColumns()];
+    	for(int[] input : inputs) {
+    		sp.compute(mem, input, activeArray, true, false);
+    	}
+    	int numMaterialized = lazy.getNumMaterialized();
+    	assertTrue(numMaterialized > 0);
+    	assertTrue(numMaterialized < mem.getNumColumns() / 2);
+    	for(int i = 0;i < mem.getNumColumns();i++) {
+    		assertEquals(lazy.isMaterialized(i), mem.getPotentialPools().getObject(i) != null);
+    		if(activeArray[i] == 1) {
+    			assertTrue(lazy.isMaterialized(i));
+    		}
+    	}
+    	// The spatial pooler never creates cells
+    	assertNull(mem.getCells());
+    	
+    	// Lazily created pools count as proximal synapses, leaving the distal count alone
+    	int numProximal = 0;
+    	for(int i = 0;i < mem.getNumColumns();i++) {
+    		Pool pool = mem.getPotentialPools().getObject(i);
+    		if(pool != null) numProximal += pool.size();
+    	}
+    	assertEquals(numProximal, mem.getProxSynCount());
+    	assertEquals(0, mem.getSynapseCount());
+    	
+    	// Columns are the same whatever order they are touched in
+    	int column = ArrayUtils.where(activeArray, ArrayUtils.WHERE_1)[0];
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	sp.initColumn(mem, column, SpatialPooler.columnRandom(mem, column));
+    	Pool lazyPool = mem.getPotentialPools().getObject(column);
+    	
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	int[] replayed = new int[mem.getNumColumns()];
+    	mem.getLazyColumns().touchAll(sp, mem);
+    	mem.getLazyColumns().touchAll(sp, mem);
+    	assertEquals(mem.getNumColumns(), mem.getLazyColumns().getNumMaterialized());
+    	assertTrue(Arrays.equals(lazyPool.getDensePermanences(mem), 
+    		mem.getPotentialPools().getObject(column).getDensePermanences(mem)));
+    	
+    	// Materializing everything up front does not change the columns' first response
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	int[] first = new int[mem.getNumColumns()];
+    	sp.compute(mem, inputs[0], first, false, false);
+    	mem.getLazyColumns().touchAll(sp, mem);
+    	sp.compute(mem, inputs[0], replayed, false, false);
+    	assertTrue(Arrays.equals(first, replayed));
+    }
+    
+    @Test
+    public void testDerivedSeedsInit() {
+    	setupParameters();
+    	parameters.setInputDimensions(new int[] { 32, 32 });
+    	parameters.setColumnDimensions(new int[] { 32, 32 });
+    	parameters.setPotentialRadius(6);
+    	parameters.setSpDerivedSeeds(true);
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	Connections serial = mem;
+    	
+    	parameters.setSpParallelism(4);
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	Connections parallel = mem;
+    	
+    	// Lazily created columns are initialized the same way
+    	parameters.setSpParallelism(1);
+    	parameters.setSpLazyInit(true);
+    	parameters.setRandom(new MersenneTwister(42));
+    	initSP();
+    	mem.getLazyColumns().touchAll(sp, mem);
+    	sp.updateInhibitionRadius(mem);
+    	Connections lazy = mem;
+    	
+    	for(int i = 0;i < serial.getNumColumns();i++) {
+    		Pool pool = serial.getPotentialPools().getObject(i);
+    		for(Connections other : new Connections[] { parallel, lazy }) {
+    			Pool otherPool = other.getPotentialPools().getObject(i);
+    			assertTrue(Arrays.equals(pool.getSparseConnections(), otherPool.getSparseConnections()));
+    			assertTrue(Arrays.equals(pool.getDensePermanences(serial), otherPool.getDensePermanences(other)));
+    			assertTrue(Arrays.equals((int[])serial.getConnectedCounts().getSlice(i), 
+    				(int[])other.getConnectedCounts().getSlice(i)));
+    		}
+    	}
+    	assertEquals(serial.getInhibitionRadius(), parallel.getInhibitionRadius());
+    	assertEquals(serial.getInhibitionRadius(), lazy.getInhibitionRadius());
+    }
+    
     @Test
     public void testUpdateBoostFactors() {
     	setupParameters();
@@ -1110,6 +1410,29 @@ public class SpatialPoolerTest {
     	}
     }
     
+    @Test
+    public void testPoolAlignedPermanences() {
+    	setupParameters();
+    	parameters.setInputDimensions(new int[] { 8 });
+    	parameters.setColumnDimensions(new int[] { 4 });
+    	initSP();
+    	
+    	// Inputs given out of order are kept sorted, with aligned permanences
+    	Column column = mem.getColumn(0);
+    	column.setProximalConnectedSynapsesForTest(mem, new int[] { 6, 1, 4 });
+    	Pool pool = mem.getPotentialPools().getObject(0);
+    	assertTrue(Arrays.equals(new int[] { 1, 4, 6 }, pool.getSparseConnections()));
+    	
+    	column.setProximalPermanencesSparse(mem, new double[] { 0.05, 0.2, 0.15 }, pool.getSparseConnections());
+    	assertTrue(Arrays.equals(new double[] { 0, 0.05, 0, 0, 0.2, 0, 0.15, 0 }, pool.getDensePermanences(mem)));
+    	
+    	// Connected counts are kept by input index, not by position in the pool
+    	int[] connected = (int[])mem.getConnectedCounts().getSlice(0);
+    	assertTrue(Arrays.equals(new int[] { 0, 0, 0, 0, 1, 0, 1, 0 }, connected));
+    	assertEquals(2, mem.getConnectedCounts().getTrueCount(0));
+    	assertTrue(Arrays.equals(new int[] { 0, 0, 0, 0, 1, 0, 1, 0 }, pool.getDenseConnections(mem)));
+    }
+    
     @Test
     public void testUpdateInhibitionRadius() {
     	setupParameters();
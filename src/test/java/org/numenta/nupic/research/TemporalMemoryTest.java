@@ -21,7 +21,9 @@
  */
 package org.numenta.nupic.research;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -37,11 +39,15 @@ import java.util.Set;
 import org.junit.Test;
 import org.numenta.nupic.Connections;
 import org.numenta.nupic.model.Cell;
+import org.numenta.nupic.model.CellSampler;
+import org.numenta.nupic.model.CellSet;
 import org.numenta.nupic.model.Column;
 import org.numenta.nupic.model.DistalDendrite;
+import org.numenta.nupic.model.FlatSegmentStore;
 import org.numenta.nupic.model.Synapse;
 import org.numenta.nupic.research.ComputeCycle;
 import org.numenta.nupic.research.TemporalMemory;
+import org.numenta.nupic.util.MersenneTwister;
 
 
 /**
@@ -680,4 +686,329 @@ public class TemporalMemoryTest {
         List<Cell> learnCells = new ArrayList<Cell>(dd.pickCellsToLearnOn(cn, 2, winnerCells, cn.getRandom()));
         assertTrue(learnCells.isEmpty());
     }
+    
+    @Test
+    public void testPickCellsToLearnOnReusesScratch() {
+        TemporalMemory tm = new TemporalMemory();
+        Connections cn = new Connections();
+        tm.init(cn);
+        
+        DistalDendrite dd = cn.getCell(0).createSegment(cn, 0);
+        dd.createSynapse(cn, cn.getCell(58), 0.6, 0);
+        
+        // A CellSet and an unordered set of the same cells pick the same
+        CellSet winnerCells = new CellSet(cn.getCells());
+        Set<Cell> unordered = new LinkedHashSet<Cell>();
+        for(int index : new int[] { 93, 4, 58, 47 }) {
+            winnerCells.add(cn.getCell(index));
+            unordered.add(cn.getCell(index));
+        }
+        
+        CellSampler scratch = cn.getCellSampler();
+        assertTrue(scratch == cn.getCellSampler());
+        cn.setRandom(new MersenneTwister(42));
+        int numPicked = dd.pickCellsToLearnOn(cn, 2, winnerCells, cn.getRandom(), scratch);
+        Cell[] picks = Arrays.copyOf(scratch.getPicks(), numPicked);
+        
+        cn.setRandom(new MersenneTwister(42));
+        assertEquals(2, dd.pickCellsToLearnOn(cn, 2, unordered, cn.getRandom(), scratch));
+        assertArrayEquals(picks, Arrays.copyOf(scratch.getPicks(), 2));
+        
+        cn.setRandom(new MersenneTwister(42));
+        assertEquals(Arrays.asList(picks), new ArrayList<Cell>(dd.pickCellsToLearnOn(cn, 2, unordered, cn.getRandom())));
+        
+        assertEquals(3, dd.pickCellsToLearnOn(cn, 100, winnerCells, cn.getRandom(), scratch));
+        assertFalse(Arrays.asList(scratch.getPicks()).subList(0, 3).contains(cn.getCell(58)));
+    }
+    
+    @Test
+    public void testFlatStorageMatchesObjectStorage() {
+        TemporalMemory tm = new TemporalMemory();
+        Connections objectCn = createSequenceConnections(false);
+        Connections flatCn = createSequenceConnections(true);
+        tm.init(objectCn);
+        tm.init(flatCn);
+        assertNull(objectCn.getSegmentStore());
+        assertTrue(flatCn.getSegmentStore() != null);
+        
+        Random random = new Random(42);
+        int[][] sequence = new int[8][];
+        for(int i = 0;i < sequence.length;i++) {
+            sequence[i] = new int[6];
+            for(int j = 0;j < sequence[i].length;j++) {
+                sequence[i][j] = random.nextInt(64);
+            }
+        }
+        
+        int numPredicted = 0;
+        for(int i = 0;i < 200;i++) {
+            if(i % 40 == 0) {
+                tm.reset(objectCn);
+                tm.reset(flatCn);
+            }
+            int[] activeColumns = sequence[i % sequence.length];
+            boolean learn = i < 160;
+            ComputeCycle objectCycle = tm.compute(objectCn, activeColumns, learn);
+            ComputeCycle flatCycle = tm.compute(flatCn, activeColumns, learn);
+            
+            assertEquals(Connections.asCellIndexes(objectCycle.activeCells()), Connections.asCellIndexes(flatCycle.activeCells()));
+            assertEquals(Connections.asCellIndexes(objectCycle.winnerCells()), Connections.asCellIndexes(flatCycle.winnerCells()));
+            assertEquals(Connections.asCellIndexes(objectCycle.predictiveCells()), Connections.asCellIndexes(flatCycle.predictiveCells()));
+            assertEquals(Connections.asColumnIndexes(objectCycle.predictedColumns()), Connections.asColumnIndexes(flatCycle.predictedColumns()));
+            assertEquals(objectCycle.activeSegments().size(), flatCycle.activeSegmentHandles().size());
+            assertEquals(objectCn.getSegmentCount(), flatCn.getSegmentCount());
+            assertEquals(objectCn.getSynapseCount(), flatCn.getSynapseCount());
+            
+            numPredicted += flatCycle.predictedColumns().size();
+        }
+        
+        assertEquals(objectCn.getSegmentCount(), flatCn.getSegmentStore().numSegments());
+        assertEquals(objectCn.getSynapseCount(), flatCn.getSegmentStore().numSynapses());
+        
+        FlatSegmentStore store = flatCn.getSegmentStore();
+        for(Cell cell : objectCn.getCells()) {
+            int segment = store.firstSegment(cell.getIndex());
+            for(DistalDendrite dd : cell.getSegments(objectCn)) {
+                int synapse = store.firstSynapse(segment);
+                for(Synapse s : dd.getAllSynapses(objectCn)) {
+                    assertEquals(s.getSourceCell().getIndex(), store.getPresynapticCell(synapse));
+                    assertEquals(s.getPermanence(), store.getPermanence(synapse), 0.0);
+                    synapse = store.nextSynapse(synapse);
+                }
+                assertEquals(FlatSegmentStore.NONE, synapse);
+                segment = store.nextSegment(segment);
+            }
+            assertEquals(FlatSegmentStore.NONE, segment);
+        }
+        //Make sure the sequence was actually learned
+        assertTrue(numPredicted > 0);
+    }
+    
+    @Test
+    public void testBoundedStorage() {
+        TemporalMemory tm = new TemporalMemory();
+        Connections objectCn = createSequenceConnections(false);
+        Connections flatCn = createSequenceConnections(true);
+        for(Connections cn : new Connections[] { objectCn, flatCn }) {
+            cn.setMaxSegmentsPerCell(2);
+            cn.setMaxSynapsesPerSegment(6);
+            cn.setPruneSynapses(true);
+            cn.setPermanenceDecrement(0.15);
+            tm.init(cn);
+        }
+        
+        //Repeating sequences interleaved with noise, so that segments keep being recycled
+        Random random = new Random(42);
+        int[][] sequence = new int[8][];
+        for(int i = 0;i < sequence.length;i++) {
+            sequence[i] = new int[6];
+            for(int j = 0;j < sequence[i].length;j++) {
+                sequence[i][j] = random.nextInt(64);
+            }
+        }
+        
+        FlatSegmentStore store = flatCn.getSegmentStore();
+        for(int i = 0;i < 400;i++) {
+            int[] activeColumns = sequence[i % sequence.length];
+            if(i % 3 == 0) {
+                activeColumns = new int[] { random.nextInt(64), random.nextInt(64), random.nextInt(64) };
+            }
+            ComputeCycle objectCycle = tm.compute(objectCn, activeColumns, true);
+            ComputeCycle flatCycle = tm.compute(flatCn, activeColumns, true);
+            
+            assertEquals(Connections.asCellIndexes(objectCycle.activeCells()), Connections.asCellIndexes(flatCycle.activeCells()));
+            assertEquals(Connections.asCellIndexes(objectCycle.winnerCells()), Connections.asCellIndexes(flatCycle.winnerCells()));
+            assertEquals(Connections.asCellIndexes(objectCycle.predictiveCells()), Connections.asCellIndexes(flatCycle.predictiveCells()));
+            assertEquals(objectCn.getSegmentCount(), flatCn.getSegmentCount());
+            assertEquals(objectCn.getNumSegmentsCreated(), flatCn.getNumSegmentsCreated());
+            assertEquals(objectCn.getNumSegmentsDestroyed(), flatCn.getNumSegmentsDestroyed());
+            assertEquals(objectCn.getNumSynapsesCreated(), flatCn.getNumSynapsesCreated());
+            assertEquals(objectCn.getNumSynapsesDestroyed(), flatCn.getNumSynapsesDestroyed());
+        }
+        
+        assertTrue(flatCn.getNumSegmentsDestroyed() > 0);
+        assertTrue(flatCn.getNumSynapsesDestroyed() > 0);
+        assertEquals(flatCn.getNumSegmentsCreated() - flatCn.getNumSegmentsDestroyed(), store.numSegments());
+        assertEquals(flatCn.getNumSynapsesCreated() - flatCn.getNumSynapsesDestroyed(), store.numSynapses());
+        //Recycled segment indexes keep the segment counter at the peak number of live segments
+        assertTrue(flatCn.getSegmentCount() < flatCn.getNumSegmentsCreated());
+        
+        int numSynapses = 0;
+        for(Cell cell : objectCn.getCells()) {
+            assertTrue(cell.getSegments(objectCn).size() <= 2);
+            assertEquals(cell.getSegments(objectCn).size(), store.getSegmentCount(cell.getIndex()));
+            int segment = store.firstSegment(cell.getIndex());
+            for(DistalDendrite dd : cell.getSegments(objectCn)) {
+                assertEquals(dd.getIndex(), segment);
+                assertTrue(dd.getAllSynapses(objectCn).size() <= 6);
+                int synapse = store.firstSynapse(segment);
+                for(Synapse s : dd.getAllSynapses(objectCn)) {
+                    assertEquals(s.getSourceCell().getIndex(), store.getPresynapticCell(synapse));
+                    assertEquals(s.getPermanence(), store.getPermanence(synapse), 0.0);
+                    assertTrue(s.getPermanence() > 0);
+                    synapse = store.nextSynapse(synapse);
+                    numSynapses++;
+                }
+                segment = store.nextSegment(segment);
+            }
+        }
+        assertEquals(store.numSynapses(), numSynapses);
+    }
+    
+    @Test
+    public void testFlatComputeReusesCycles() {
+        TemporalMemory tm = new TemporalMemory();
+        Connections cn = createSequenceConnections(true);
+        tm.init(cn);
+        
+        ComputeCycle first = tm.compute(cn, new int[] { 1, 2, 3 }, true);
+        ComputeCycle second = tm.compute(cn, new int[] { 4, 5, 6 }, true);
+        assertTrue(first != second);
+        assertTrue(cn.getLastCycle() == second);
+        assertTrue(cn.getActiveCells() == second.activeCells());
+        assertEquals(12, second.activeCells().size());
+        assertTrue(second.activeCells().contains(cn.getCell(16)));
+        assertTrue(!second.activeCells().contains(cn.getCell(4)));
+        
+        ComputeCycle third = tm.compute(cn, new int[] { 1, 2, 3 }, true);
+        assertTrue(first == third);
+        assertEquals(Arrays.asList(4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15), 
+            Connections.asCellIndexes(third.activeCells()));
+        
+        tm.reset(cn);
+        assertTrue(cn.getActiveCells().isEmpty());
+        assertTrue(cn.getWinnerCells().isEmpty());
+        assertEquals(0, third.activeCellIndexes().size());
+        assertEquals(0, third.activeSegmentHandles().size());
+    }
+    
+    @Test
+    public void testComputeCountingMatchesComputeFn() {
+        TemporalMemory tm = new TemporalMemory();
+        Connections countingCn = createSequenceConnections(false);
+        Connections mapCn = createSequenceConnections(false);
+        tm.init(countingCn);
+        tm.init(mapCn);
+        
+        Random random = new Random(7);
+        int[][] sequence = new int[6][];
+        for(int i = 0;i < sequence.length;i++) {
+            sequence[i] = new int[5];
+            for(int j = 0;j < sequence[i].length;j++) {
+                sequence[i][j] = random.nextInt(64);
+            }
+        }
+        
+        ComputeCycle mapCycle = new ComputeCycle();
+        for(int i = 0;i < 120;i++) {
+            int[] activeColumns = sequence[i % sequence.length];
+            ComputeCycle countingCycle = tm.compute(countingCn, activeColumns, true);
+            mapCycle = tm.computeFn(mapCn, mapCn.getColumnSet(activeColumns), mapCycle.predictiveCells(), 
+                mapCycle.activeSegments(), mapCycle.activeSynapsesForSegment(), mapCycle.winnerCells(), true);
+            
+            assertEquals(Connections.asCellIndexes(mapCycle.activeCells()), Connections.asCellIndexes(countingCycle.activeCells()));
+            assertEquals(Connections.asCellIndexes(mapCycle.winnerCells()), Connections.asCellIndexes(countingCycle.winnerCells()));
+            assertEquals(Connections.asCellIndexes(mapCycle.predictiveCells()), Connections.asCellIndexes(countingCycle.predictiveCells()));
+            assertEquals(mapCycle.activeSegments().size(), countingCycle.activeSegments().size());
+            assertEquals(mapCycle.activeSynapsesForSegment().size(), countingCn.getMatchingSegments().size());
+            assertEquals(mapCn.getSynapseCount(), countingCn.getSynapseCount());
+        }
+        assertTrue(countingCn.getPredictiveCells().size() > 0);
+    }
+    
+    @Test
+    public void testStreamsShareFlatStore() {
+        TemporalMemory tm = new TemporalMemory();
+        Connections shared = createSequenceConnections(true);
+        Connections reference = createSequenceConnections(true);
+        tm.init(shared);
+        tm.init(reference);
+        
+        Random random = new Random(42);
+        int[][][] sequences = new int[2][8][6];
+        for(int[][] sequence : sequences) {
+            for(int[] activeColumns : sequence) {
+                for(int j = 0;j < activeColumns.length;j++) {
+                    activeColumns[j] = random.nextInt(64);
+                }
+            }
+        }
+        
+        for(int i = 0;i < 320;i++) {
+            if(i % 40 == 0) {
+                tm.reset(shared);
+                tm.reset(reference);
+            }
+            int[] activeColumns = sequences[(i / 40) % 2][i % 8];
+            tm.compute(shared, activeColumns, true);
+            tm.compute(reference, activeColumns, true);
+        }
+        
+        //Stream k is fed sequence k % 2, starting at element k
+        int numStreams = 3;
+        int numSteps = 16;
+        List<List<Integer>> expectedActive = new ArrayList<>();
+        List<List<Integer>> expectedPredictive = new ArrayList<>();
+        for(int k = 0;k < numStreams;k++) {
+            tm.reset(reference);
+            for(int step = 0;step < numSteps;step++) {
+                ComputeCycle cycle = tm.compute(reference, sequences[k % 2][(k + step) % 8], false);
+                expectedActive.add(sorted(cycle.activeCellIndexes().toArray()));
+                expectedPredictive.add(sorted(cycle.predictiveCellIndexes().toArray()));
+            }
+        }
+        
+        int segmentCount = shared.getSegmentCount();
+        int synapseCount = shared.getSynapseCount();
+        StreamState[] streams = new StreamState[numStreams];
+        for(int k = 0;k < numStreams;k++) {
+            streams[k] = tm.createStream(shared);
+        }
+        int numPredicted = 0;
+        for(int step = 0;step < numSteps;step++) {
+            int[][] inputs = new int[numStreams][];
+            for(int k = 0;k < numStreams;k++) {
+                inputs[k] = sequences[k % 2][(k + step) % 8];
+            }
+            tm.compute(shared, streams, inputs, false);
+            for(int k = 0;k < numStreams;k++) {
+                assertEquals(expectedActive.get(k * numSteps + step), sorted(streams[k].getActiveCells()));
+                assertEquals(expectedPredictive.get(k * numSteps + step), sorted(streams[k].getPredictiveCells()));
+                numPredicted += streams[k].getPredictiveCells().length;
+            }
+        }
+        assertTrue(numPredicted > 0);
+        //Inference leaves the shared store untouched
+        assertEquals(segmentCount, shared.getSegmentStore().numSegments());
+        assertEquals(synapseCount, shared.getSegmentStore().numSynapses());
+        
+        streams[0].reset();
+        assertEquals(0, streams[0].getActiveCells().length);
+        tm.compute(shared, streams, new int[][] { { 1, 2 }, { 3, 4 }, { 5, 6 } }, true);
+        tm.compute(shared, streams, new int[][] { { 7, 8 }, { 9, 10 }, { 11, 12 } }, true);
+        assertTrue(shared.getSegmentStore().numSynapses() > synapseCount);
+        assertEquals(shared.getSynapseCount(), shared.getSegmentStore().numSynapses());
+    }
+    
+    private List<Integer> sorted(int[] indexes) {
+        Arrays.sort(indexes);
+        List<Integer> list = new ArrayList<Integer>();
+        for(int i : indexes) {
+            list.add(i);
+        }
+        return list;
+    }
+    
+    private Connections createSequenceConnections(boolean flatStorage) {
+        Connections cn = new Connections();
+        cn.setColumnDimensions(new int[] { 64 });
+        cn.setCellsPerColumn(4);
+        cn.setActivationThreshold(3);
+        cn.setMinThreshold(2);
+        cn.setMaxNewSynapseCount(5);
+        cn.setInitialPermanence(0.41);
+        cn.setConnectedPermanence(0.5);
+        cn.setFlatStorage(flatStorage);
+        return cn;
+    }
 }
@@ -309,4 +309,69 @@ public class ArrayUtilsTest {
 		assertTrue(Arrays.equals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 0},
 				ArrayUtils.concatAll(new int[]{1, 2}, new int[]{3, 4, 5, 6, 7}, new int[]{8, 9, 0})));
 	}
+
+    @Test
+    public void testNGreatestWithDuplicates() {
+        double[] overlaps = new double[] { 1, 3, 2, 3, 0, 2, 3 };
+        double[] copy = overlaps.clone();
+        assertTrue(Arrays.equals(new int[] { 1, 3, 6, 2 }, ArrayUtils.nGreatest(overlaps, 4)));
+        //The input must not be modified
+        assertTrue(Arrays.equals(copy, overlaps));
+    }
+
+    @Test
+    public void testTopK() {
+        java.util.Random random = new java.util.Random(42);
+        for(int trial = 0;trial < 50;trial++) {
+            int n = 1 + random.nextInt(500);
+            final double[] values = new double[n];
+            for(int i = 0;i < n;i++) {
+                //Few distinct values to produce lots of ties
+                values[i] = random.nextInt(trial % 2 == 0 ? 10 : 1000);
+            }
+            
+            Integer[] expected = new Integer[n];
+            for(int i = 0;i < n;i++) expected[i] = i;
+            Arrays.sort(expected, new java.util.Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    int cmp = Double.compare(values[b], values[a]);
+                    return cmp != 0 ? cmp : a.compareTo(b);
+                }
+            });
+            
+            for(int k : new int[] { 0, 1, n / 20, n / 3, n }) {
+                int[] heap = ArrayUtils.topKHeap(values, k);
+                int[] select = ArrayUtils.topKSelect(values, k);
+                int[] auto = ArrayUtils.topK(values, k);
+                assertEquals(k, heap.length);
+                for(int i = 0;i < k;i++) {
+                    assertEquals((int)expected[i], heap[i]);
+                    assertEquals((int)expected[i], select[i]);
+                    assertEquals((int)expected[i], auto[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTopKSelectPermutation() {
+        double[] values = new double[] { 5, 1, 4, 1, 5, 9, 2, 6 };
+        int[] permutation = new int[10];
+        ArrayUtils.topKSelect(values, 3, permutation);
+        assertEquals(5, permutation[0]);
+        assertEquals(7, permutation[1]);
+        assertEquals(0, permutation[2]);
+        
+        //All indexes remain present exactly once
+        int[] sorted = Arrays.copyOf(permutation, values.length);
+        Arrays.sort(sorted);
+        for(int i = 0;i < sorted.length;i++) {
+            assertEquals(i, sorted[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTopKTooLarge() {
+        ArrayUtils.topK(new double[] { 1, 2 }, 3);
+    }
 }
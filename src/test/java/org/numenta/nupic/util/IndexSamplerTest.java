@@ -0,0 +1,84 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+package org.numenta.nupic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IndexSamplerTest {
+
+    /**
+     * The draws must match removing random elements from a sorted list,
+     * so that seeded results don't change.
+     */
+    @Test
+    public void testMatchesListRemoval() {
+        IndexSampler sampler = new IndexSampler();
+        for(int size : new int[] { 0, 1, 2, 7, 8, 9, 100 }) {
+            Random expectedRandom = new MersenneTwister(42);
+            Random random = new MersenneTwister(42);
+            
+            List<Integer> positions = new ArrayList<Integer>();
+            for(int i = 0;i < size;i++) {
+                positions.add(i);
+            }
+            
+            sampler.reset(size);
+            for(int i = 0;i < size;i++) {
+                int expected = positions.remove(expectedRandom.nextInt(positions.size()));
+                assertEquals(expected, sampler.next(random));
+                assertEquals(size - i - 1, sampler.remaining());
+            }
+        }
+    }
+    
+    @Test
+    public void testRemoveByRank() {
+        IndexSampler sampler = new IndexSampler();
+        sampler.reset(5);
+        assertEquals(2, sampler.remove(2));
+        assertEquals(3, sampler.remove(2));
+        assertEquals(0, sampler.remove(0));
+        assertEquals(4, sampler.remove(1));
+        assertEquals(1, sampler.remove(0));
+        
+        try {
+            sampler.next(new Random(1));
+            fail();
+        }catch(NoSuchElementException e) {}
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testRankOutOfRange() {
+        IndexSampler sampler = new IndexSampler();
+        sampler.reset(3);
+        sampler.remove(3);
+    }
+}
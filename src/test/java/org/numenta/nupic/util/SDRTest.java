@@ -0,0 +1,124 @@
+/* ---------------------------------------------------------------------
+ * Numenta Platform for Intelligent Computing (NuPIC)
+ * Copyright (C) 2014, Numenta, Inc.  Unless you have an agreement
+ * with Numenta, Inc., for a separate license for this software code, the
+ * following terms and conditions apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ *
+ * http://numenta.org/licenses/
+ * ---------------------------------------------------------------------
+ */
+
+
+package org.numenta.nupic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SDRTest {
+    
+    @Test
+    public void testDenseAndSparseForms() {
+        int[] dense = new int[130];
+        dense[0] = dense[63] = dense[64] = dense[129] = 1;
+        SDR sdr = SDR.fromDense(dense);
+        
+        assertEquals(130, sdr.getSize());
+        assertEquals(3, sdr.getWords().length);
+        assertEquals(4, sdr.cardinality());
+        assertArrayEquals(new int[] { 0, 63, 64, 129 }, sdr.getSparse());
+        assertArrayEquals(dense, sdr.getDense());
+        assertEquals(sdr, SDR.fromSparse(130, new int[] { 129, 64, 0, 63 }));
+        assertTrue(sdr.get(63));
+        assertFalse(sdr.get(62));
+        
+        // The sparse form is cached until the next change
+        int[] sparse = sdr.getSparse();
+        assertSame(sparse, sdr.getSparse());
+        sdr.set(100);
+        sdr.clear(0);
+        assertArrayEquals(new int[] { 63, 64, 100, 129 }, sdr.getSparse());
+        sdr.clear();
+        assertEquals(0, sdr.cardinality());
+        assertEquals(0, sdr.getSparse().length);
+    }
+    
+    @Test
+    public void testOverlapUnionIntersection() {
+        SDR a = SDR.fromSparse(200, new int[] { 1, 5, 70, 150, 199 });
+        SDR b = SDR.fromSparse(200, new int[] { 5, 6, 70, 151, 199 });
+        
+        assertEquals(3, a.overlap(b));
+        assertArrayEquals(new int[] { 5, 70, 199 }, a.intersection(b).getSparse());
+        assertArrayEquals(new int[] { 1, 5, 6, 70, 150, 151, 199 }, a.union(b).getSparse());
+        
+        // Non destructive forms leave the operands unchanged
+        assertEquals(5, a.cardinality());
+        assertEquals(5, b.cardinality());
+        
+        SDR c = a.copy();
+        c.and(b);
+        assertEquals(a.intersection(b), c);
+        c.or(a);
+        assertEquals(a, c);
+        
+        try {
+            a.overlap(new SDR(100));
+            fail();
+        }catch(Exception e) {
+            assertEquals(IllegalArgumentException.class, e.getClass());
+        }
+    }
+    
+    @Test
+    public void testSubsample() {
+        SDR sdr = new SDR(1000);
+        for(int i = 0;i < 1000;i += 10) {
+            sdr.set(i);
+        }
+        SDR sample = sdr.subsample(20, new MersenneTwister(42));
+        
+        assertEquals(20, sample.cardinality());
+        assertEquals(20, sample.overlap(sdr));
+        assertEquals(sample, sdr.subsample(20, new MersenneTwister(42)));
+        assertNotEquals(sample, sdr.subsample(20, new MersenneTwister(43)));
+        assertEquals(sdr, sdr.subsample(500, new Random(42)));
+    }
+    
+    @Test
+    public void testBounds() {
+        SDR sdr = new SDR(70);
+        try {
+            sdr.set(70);
+            fail();
+        }catch(Exception e) {
+            assertEquals(IndexOutOfBoundsException.class, e.getClass());
+        }
+        try {
+            sdr.setDense(new int[71]);
+            fail();
+        }catch(Exception e) {
+            assertEquals(IllegalArgumentException.class, e.getClass());
+        }
+    }
+}
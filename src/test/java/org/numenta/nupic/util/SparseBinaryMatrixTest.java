@@ -29,6 +29,7 @@ import java.util.Arrays;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class SparseBinaryMatrixTest {
@@ -160,6 +161,30 @@ public class SparseBinaryMatrixTest {
         }
     }
 
+    @Test
+    public void testCountsFollowBits() {
+        SparseBinaryMatrix sm = new SparseBinaryMatrix(new int[]{3, 10});
+        sm.set(1, 0, 2);
+        sm.set(1, 0, 7);
+
+        //Recounting derives the count from the row bits
+        sm.recountRow(0);
+        assertEquals(2, sm.getTrueCount(0));
+        sm.set(0, 0, 2);
+        assertEquals(1, sm.getTrueCount(0));
+
+        //setForTest sets bits, so the entry takes part in overlaps
+        sm.setForTest(13, 1);
+        assertEquals(1, sm.getIntValue(1, 3));
+        assertEquals(1, sm.getTrueCount(1));
+        int[] input = new int[10];
+        input[3] = 1;
+        input[7] = 1;
+        int[] results = new int[3];
+        sm.rightVecSumAtNZ(input, results);
+        assertTrue(Arrays.equals(new int[]{1, 1, 0}, results));
+    }
+
 
     public static void fillWithSomeRandomValues(Object array, Random r, int... sizes) {
         for (int i = 0; i < sizes[0]; i++)
@@ -214,5 +239,79 @@ public class SparseBinaryMatrixTest {
 
     }
 
+    @Test
+    public void testRightVecSumAtNZMatchesDenseProduct() {
+        Random r = new Random(42);
+        int[] dimensions = new int[]{ 40, 150 };
+        int[][] connected = new int[40][150];
+        SparseBinaryMatrix sm = new SparseBinaryMatrix(dimensions);
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 150; j++) {
+                connected[i][j] = r.nextInt(4) == 0 ? 1 : 0;
+                sm.set(connected[i][j], i, j);
+            }
+        }
+
+        //Sparse, dense and non-binary inputs exercise both kernels
+        for (int density : new int[]{ 50, 2, 1 }) {
+            int[] inputVector = new int[150];
+            int[] activeIndexes = new int[150];
+            int numActive = 0;
+            for (int j = 0; j < 150; j++) {
+                if (r.nextInt(density) == 0) {
+                    inputVector[j] = 1;
+                    activeIndexes[numActive++] = j;
+                }
+            }
+            int[] results = new int[40];
+            int[] sparseResults = new int[40];
+            int[] sdrResults = new int[40];
+            sm.rightVecSumAtNZ(inputVector, results);
+            sm.rightVecSumAtNZSparse(Arrays.copyOf(activeIndexes, numActive), sparseResults);
+            sm.rightVecSumAtNZ(SDR.fromDense(inputVector), sdrResults);
+            for (int i = 0; i < 40; i++) {
+                int expected = 0;
+                for (int j = 0; j < 150; j++) {
+                    expected += connected[i][j] * inputVector[j];
+                }
+                assertEquals(expected, results[i]);
+                assertEquals(expected, sparseResults[i]);
+                assertEquals(expected, sdrResults[i]);
+            }
+        }
+
+        int[] weighted = new int[150];
+        weighted[3] = 2;
+        weighted[77] = 5;
+        int[] results = new int[40];
+        sm.rightVecSumAtNZ(weighted, results);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(connected[i][3] * 2 + connected[i][77] * 5, results[i]);
+        }
+
+        //Converted once, then summed in row ranges
+        int[] activeIndexes = sm.nonZeroIndexes(weighted);
+        assertTrue(Arrays.equals(new int[]{ 3, 77 }, activeIndexes));
+        int[] rangeResults = new int[40];
+        sm.rightVecSumAtNZ(weighted, activeIndexes, rangeResults, 0, 13);
+        sm.rightVecSumAtNZ(weighted, activeIndexes, rangeResults, 13, 40);
+        assertTrue(Arrays.equals(results, rangeResults));
+    }
+
+    @Test
+    public void testTrueCountsMaintainedIncrementally() {
+        SparseBinaryMatrix sm = new SparseBinaryMatrix(new int[]{ 3, 100 });
+        sm.set(1, 1, 5);
+        sm.set(1, 1, 5);
+        sm.set(1, 1, 70);
+        assertEquals(2, sm.getTrueCount(1));
+        sm.set(0, 1, 5);
+        assertEquals(1, sm.getTrueCount(1));
+        assertEquals(0, sm.getTrueCount(0));
 
+        sm.clearStatistics(1);
+        assertEquals(0, sm.getTrueCount(1));
+        assertEquals(0, sm.getIntValue(1, 70));
+        assertEquals(0, ((int[])sm.getSlice(1))[70]);
+    }
 }